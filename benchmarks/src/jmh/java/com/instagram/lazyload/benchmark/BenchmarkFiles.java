@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/** Helpers which create files used by benchmarks. */
+final class BenchmarkFiles {
+
+  private BenchmarkFiles() {}
+
+  static File createTempDirectory(String prefix) throws IOException {
+    File directory = File.createTempFile(prefix, "");
+    if (!directory.delete() || !directory.mkdir()) {
+      throw new IOException("Unable to create a directory");
+    }
+    return directory;
+  }
+
+  static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  /** Writes a file of a given size filled with random (so incompressible) bytes */
+  static void writeRandomFile(File file, int sizeBytes) throws IOException {
+    byte[] content = new byte[sizeBytes];
+    new Random(sizeBytes).nextBytes(content);
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(content);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Writes a jar (which stands in for a dex file) containing given classes. Bytecode of the classes
+   * is taken from the classpath, so they can be defined again by a class loader of the jar.
+   */
+  static void writeJar(File file, Class... classes) throws IOException {
+    JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(file));
+    try {
+      for (Class clazz : classes) {
+        String entryName = clazz.getName().replace('.', '/') + ".class";
+        jarOutputStream.putNextEntry(new ZipEntry(entryName));
+        jarOutputStream.write(readClassFile(entryName));
+        jarOutputStream.closeEntry();
+      }
+    } finally {
+      jarOutputStream.close();
+    }
+  }
+
+  private static byte[] readClassFile(String entryName) throws IOException {
+    InputStream inputStream = BenchmarkFiles.class.getClassLoader().getResourceAsStream(entryName);
+    if (inputStream == null) {
+      throw new IOException("Class file not found " + entryName);
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buf = new byte[8 * 1024];
+      int len;
+      while ((len = inputStream.read(buf)) > 0) {
+        bytes.write(buf, 0, len);
+      }
+      return bytes.toByteArray();
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /** Class put into every benchmark dex file, so that no dex file is empty. */
+  public static class FillerClass {}
+
+  /** Class which is put only into the last benchmark dex file. */
+  public static class TargetClass {}
+}
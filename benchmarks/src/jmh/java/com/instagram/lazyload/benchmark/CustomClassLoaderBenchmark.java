@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import com.instagram.lazyload.base.CustomClassLoader;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures class lookups in {@link CustomClassLoader} with a growing number of added dex files.
+ * Every lookup which is not served by the system class loader walks dex files in order, so a class
+ * in the last dex file is the worst case hit and a class which is in none of them is a miss (e.g.
+ * a probe for an optional class). The class loader is a process-wide singleton, so every parameter
+ * value has to run in its own fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class CustomClassLoaderBenchmark {
+
+  private static final String TARGET_CLASS_NAME = BenchmarkFiles.TargetClass.class.getName();
+  private static final String MISSING_CLASS_NAME =
+      "com.instagram.lazyload.benchmark.MissingClass";
+
+  @Param({"1", "10", "100"})
+  public int dexFileCount;
+
+  private File mDirectory;
+  private CustomClassLoader mClassLoader;
+
+  @Setup
+  public void setUp() throws IOException {
+    mDirectory = BenchmarkFiles.createTempDirectory("dex");
+    mClassLoader = CustomClassLoader.getInstance();
+    for (int i = 0; i < dexFileCount; ++i) {
+      File dexFile = new File(mDirectory, "module_" + i + ".jar");
+      if (i == dexFileCount - 1) {
+        BenchmarkFiles.writeJar(
+            dexFile, BenchmarkFiles.FillerClass.class, BenchmarkFiles.TargetClass.class);
+      } else {
+        BenchmarkFiles.writeJar(dexFile, BenchmarkFiles.FillerClass.class);
+      }
+      mClassLoader.addDex(dexFile, new File(mDirectory, "module_" + i + ".odex"));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkFiles.deleteRecursively(mDirectory);
+  }
+
+  @Benchmark
+  public Class findClassHit() throws ClassNotFoundException {
+    return mClassLoader.loadClass(TARGET_CLASS_NAME);
+  }
+
+  @Benchmark
+  public Object findClassMiss() {
+    try {
+      return mClassLoader.loadClass(MISSING_CLASS_NAME);
+    } catch (ClassNotFoundException e) {
+      return e;
+    }
+  }
+}
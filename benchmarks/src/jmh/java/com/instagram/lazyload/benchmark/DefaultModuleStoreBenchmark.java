@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import android.content.Context;
+import com.instagram.lazyload.base.DefaultModuleStore;
+import com.instagram.lazyload.base.ModuleManifest;
+import com.instagram.lazyload.base.ModuleManifestReader;
+import com.instagram.lazyload.base.ModulePathsAndDependencies;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link DefaultModuleStore#resolveModulePaths} of a module which has to be extracted from
+ * assets first (cold) and of a module which was already extracted (warm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DefaultModuleStoreBenchmark {
+
+  private static final String MODULE_NAME = "java.com.instagram.benchmark_module";
+  private static final int DEX_FILE_SIZE_BYTES = 256 * 1024;
+
+  @State(Scope.Benchmark)
+  public static class Environment {
+    File mDirectory;
+    Context mContext;
+    ModuleManifestReader mModuleManifestReader;
+
+    @Setup
+    public void setUp() throws IOException {
+      mDirectory = BenchmarkFiles.createTempDirectory("store");
+      File assetsDirectory = new File(mDirectory, "assets");
+      File moduleAssetsDirectory = new File(assetsDirectory, MODULE_NAME);
+      if (!moduleAssetsDirectory.mkdirs()) {
+        throw new IOException("Unable to create a directory");
+      }
+      BenchmarkFiles.writeRandomFile(
+          new File(moduleAssetsDirectory, "module.dex"), DEX_FILE_SIZE_BYTES);
+      mContext = new Context(new File(mDirectory, "data"), assetsDirectory);
+      final ModuleManifest moduleManifest =
+          new ModuleManifest.Builder(MODULE_NAME)
+              .setModuleHash("hash")
+              .setDexFileName("module.dex")
+              .build();
+      mModuleManifestReader =
+          new ModuleManifestReader() {
+            @Override
+            public ModuleManifest readModuleManifest(String moduleName) {
+              return moduleManifest;
+            }
+          };
+    }
+
+    @TearDown
+    public void tearDown() {
+      BenchmarkFiles.deleteRecursively(mDirectory);
+    }
+  }
+
+  /** A fresh store and an empty modules directory for every invocation */
+  @State(Scope.Thread)
+  public static class ColdStore {
+    DefaultModuleStore mModuleStore;
+
+    @Setup(Level.Invocation)
+    public void setUp(Environment environment) {
+      BenchmarkFiles.deleteRecursively(
+          DefaultModuleStore.getDirectoryForAllModules(environment.mContext));
+      mModuleStore = new DefaultModuleStore(environment.mContext);
+    }
+  }
+
+  /** A store which has already extracted the module */
+  @State(Scope.Thread)
+  public static class WarmStore {
+    DefaultModuleStore mModuleStore;
+
+    @Setup
+    public void setUp(Environment environment) throws IOException {
+      mModuleStore = new DefaultModuleStore(environment.mContext);
+      mModuleStore.resolveModulePaths(environment.mModuleManifestReader, MODULE_NAME);
+    }
+  }
+
+  @Benchmark
+  public ModulePathsAndDependencies resolveCold(Environment environment, ColdStore coldStore)
+      throws IOException {
+    return coldStore.mModuleStore.resolveModulePaths(
+        environment.mModuleManifestReader, MODULE_NAME);
+  }
+
+  @Benchmark
+  public ModulePathsAndDependencies resolveWarm(Environment environment, WarmStore warmStore)
+      throws IOException {
+    return warmStore.mModuleStore.resolveModulePaths(
+        environment.mModuleManifestReader, MODULE_NAME);
+  }
+}
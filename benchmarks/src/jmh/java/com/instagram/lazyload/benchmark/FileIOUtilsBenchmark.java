@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import com.instagram.lazyload.base.FileIOUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures copying of a module file into the data directory, from a stream (separate assets) and
+ * from a memory-mapped buffer (a module bundle). Both copies end with an fsync, so results depend
+ * on the storage the temporary directory is on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FileIOUtilsBenchmark {
+
+  @Param({"4096", "262144", "4194304"})
+  public int payloadSizeBytes;
+
+  private File mDirectory;
+  private File mSourceFile;
+  private File mTargetFile;
+  private MappedByteBuffer mMappedSource;
+
+  @Setup
+  public void setUp() throws IOException {
+    mDirectory = BenchmarkFiles.createTempDirectory("copy");
+    mSourceFile = new File(mDirectory, "source.dex");
+    mTargetFile = new File(mDirectory, "target.dex");
+    BenchmarkFiles.writeRandomFile(mSourceFile, payloadSizeBytes);
+    FileInputStream inputStream = new FileInputStream(mSourceFile);
+    try {
+      FileChannel channel = inputStream.getChannel();
+      mMappedSource = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkFiles.deleteRecursively(mDirectory);
+  }
+
+  @Benchmark
+  public void copyFromStream() throws IOException {
+    FileIOUtils.copyFile(new FileInputStream(mSourceFile), new FileOutputStream(mTargetFile));
+  }
+
+  @Benchmark
+  public void copyFromMappedBuffer() throws IOException {
+    FileIOUtils.copyFile(mMappedSource.duplicate(), new FileOutputStream(mTargetFile));
+  }
+}
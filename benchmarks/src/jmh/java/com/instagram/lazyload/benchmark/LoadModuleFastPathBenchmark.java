@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import android.content.Context;
+import com.instagram.lazyload.base.DefautlLoaderAlgorithm;
+import com.instagram.lazyload.base.DexAdder;
+import com.instagram.lazyload.base.LazyLoadListener;
+import com.instagram.lazyload.base.LazyLoadingException;
+import com.instagram.lazyload.base.LazyModuleLoader;
+import com.instagram.lazyload.base.ModuleLoadMetrics;
+import com.instagram.lazyload.base.ModuleManifest;
+import com.instagram.lazyload.base.ModuleManifestReader;
+import com.instagram.lazyload.base.ModulePathsAndDependencies;
+import com.instagram.lazyload.base.ModuleStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures loading of a module which is already installed, the path taken by every load except the
+ * first one. With metrics enabled it also shows the overhead of the phase listener.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class LoadModuleFastPathBenchmark {
+
+  private static final String MODULE_NAME = "java.com.instagram.benchmark_module";
+  private static final String CLASS_NAME = BenchmarkFiles.TargetClass.class.getName();
+
+  @Param({"false", "true"})
+  public boolean metricsEnabled;
+
+  private DefautlLoaderAlgorithm mLoaderAlgorithm;
+  private LazyModuleLoader mLazyModuleLoader;
+
+  @Setup
+  public void setUp() throws IOException {
+    Context context = new Context(new File("."), new File("."));
+    DefautlLoaderAlgorithm.Builder builder =
+        new DefautlLoaderAlgorithm.Builder(
+            context,
+            new InstalledModuleStore(),
+            new ModuleManifestReader() {
+              @Override
+              public ModuleManifest readModuleManifest(String moduleName) {
+                return new ModuleManifest.Builder(moduleName).build();
+              }
+            },
+            new LazyLoadListener() {
+              @Override
+              public void moduleLazilyLoaded(String module, long loadTimeMs) {}
+
+              @Override
+              public void moduleLazilyInstalled(String module, long loadTimeMs) {}
+            },
+            new DexAdder() {
+              @Override
+              public void addDex(File dexFile, File odexFile) {}
+            });
+    if (metricsEnabled) {
+      builder.setLoadPhaseListener(new ModuleLoadMetrics());
+    }
+    mLoaderAlgorithm = builder.build();
+    mLoaderAlgorithm.installModule(MODULE_NAME);
+    mLazyModuleLoader = new LazyModuleLoader(context, mLoaderAlgorithm);
+  }
+
+  @Benchmark
+  public Class loaderAlgorithmLoadModule() throws LazyLoadingException {
+    return mLoaderAlgorithm.loadModule(MODULE_NAME, CLASS_NAME);
+  }
+
+  @Benchmark
+  public Class lazyModuleLoaderLoadModule() throws LazyLoadingException {
+    return mLazyModuleLoader.loadModule(MODULE_NAME, CLASS_NAME);
+  }
+
+  /** Store of a module without any files, injecting it only marks it as loaded */
+  private static class InstalledModuleStore implements ModuleStore {
+
+    @Override
+    public ModulePathsAndDependencies resolveModulePaths(
+        ModuleManifestReader moduleManifestReader, String moduleName) {
+      return new ModulePathsAndDependencies(
+          moduleName, null, null, null, Collections.<String>emptyList());
+    }
+  }
+}
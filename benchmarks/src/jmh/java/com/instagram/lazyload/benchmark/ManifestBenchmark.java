@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import com.instagram.lazyload.base.ModuleManifest;
+import com.instagram.lazyload.base.ModulePathsAndDependencies;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures construction of the value objects created on every resolve of module paths, a cost paid
+ * even when a module is already installed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ManifestBenchmark {
+
+  private final File mDexFile = new File("/data/app_modules/module/dex_modules/module.dex");
+  private final File mOptimizedDexFile =
+      new File("/data/app_modules/module/opt_dex_modules/module.dex");
+  private final File mNativeLibsDirectory = new File("/data/app_modules/module/libs/armeabi-v7a");
+  private final ModuleManifest mModuleManifest = buildModuleManifest();
+
+  @Benchmark
+  public ModuleManifest buildModuleManifest() {
+    return new ModuleManifest.Builder("java.com.instagram.benchmark_module")
+        .setModuleHash("0123456789abcdef")
+        .setDexFileName("module.dex")
+        .setContainsNativeLib(true)
+        .addDependency("java.com.instagram.dependency_a")
+        .addDependency("java.com.instagram.dependency_b")
+        .build();
+  }
+
+  @Benchmark
+  public ModulePathsAndDependencies createModulePathsAndDependencies() {
+    return new ModulePathsAndDependencies(
+        mModuleManifest.getModuleName(),
+        mDexFile,
+        mOptimizedDexFile,
+        mNativeLibsDirectory,
+        mModuleManifest.getModuleDependencies());
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import android.content.Context;
+import com.instagram.lazyload.base.DefaultModuleFileIO;
+import com.instagram.lazyload.base.DefaultModuleStore;
+import com.instagram.lazyload.base.ModuleBundle;
+import com.instagram.lazyload.base.ModuleBundleWriter;
+import com.instagram.lazyload.base.ModuleDurability;
+import com.instagram.lazyload.base.ModuleManifest;
+import com.instagram.lazyload.base.ModuleManifestReader;
+import com.instagram.lazyload.base.ModulePathsAndDependencies;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a first install (extraction into the data directory) of a module, and of a batch of
+ * modules as on an app upgrade, on storage modeled by {@link ThrottledModuleFileIO}. Default
+ * parameters model eMMC of a low-end device, other storage can be modeled from the command line,
+ * e.g. {@code -p bandwidthMBps=80 -p iops=1000 -p syncLatencyUs=5000}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ThrottledInstallBenchmark {
+
+  private static final String MODULE_NAME = "java.com.instagram.benchmark_module_";
+  private static final String DEX_FILE_NAME = "module.dex";
+  private static final int BATCH_MODULE_COUNT = 8;
+
+  @Param({"65536", "1048576", "8388608"})
+  public int moduleSizeBytes;
+
+  /** Copy from a separate asset or from a slice of a memory-mapped bundle */
+  @Param({"asset", "bundle"})
+  public String source;
+
+  @Param({"STRICT", "GROUP_COMMIT"})
+  public ModuleDurability durability;
+
+  @Param({"20"})
+  public int bandwidthMBps;
+
+  @Param({"200"})
+  public int iops;
+
+  @Param({"20000"})
+  public int syncLatencyUs;
+
+  private File mDirectory;
+  private Context mContext;
+  private ModuleBundle mModuleBundle;
+  private ModuleManifestReader mModuleManifestReader;
+  private List<String> mModuleNames;
+  private DefaultModuleStore mModuleStore;
+
+  @Setup
+  public void setUp() throws IOException {
+    mDirectory = BenchmarkFiles.createTempDirectory("install");
+    File assetsDirectory = new File(mDirectory, "assets");
+    Map<String, File> bundleEntries = new HashMap<>();
+    mModuleNames = new ArrayList<>();
+    for (int i = 0; i < BATCH_MODULE_COUNT; ++i) {
+      String moduleName = MODULE_NAME + i;
+      File moduleAssetsDirectory = new File(assetsDirectory, moduleName);
+      if (!moduleAssetsDirectory.mkdirs()) {
+        throw new IOException("Unable to create a directory");
+      }
+      File dexFile = new File(moduleAssetsDirectory, DEX_FILE_NAME);
+      BenchmarkFiles.writeRandomFile(dexFile, moduleSizeBytes);
+      bundleEntries.put(moduleName + File.separator + DEX_FILE_NAME, dexFile);
+      mModuleNames.add(moduleName);
+    }
+    if ("bundle".equals(source)) {
+      File bundleFile = new File(mDirectory, "modules.bundle");
+      ModuleBundleWriter.write(bundleEntries, bundleFile);
+      mModuleBundle = ModuleBundle.fromFile(bundleFile);
+    }
+    mContext = new Context(new File(mDirectory, "data"), assetsDirectory);
+    mModuleManifestReader =
+        new ModuleManifestReader() {
+          @Override
+          public ModuleManifest readModuleManifest(String moduleName) {
+            return new ModuleManifest.Builder(moduleName)
+                .setModuleHash("hash")
+                .setDexFileName(DEX_FILE_NAME)
+                .build();
+          }
+        };
+  }
+
+  /** Every install starts from an empty modules directory and a fresh store */
+  @Setup(Level.Invocation)
+  public void setUpInstall() {
+    BenchmarkFiles.deleteRecursively(DefaultModuleStore.getDirectoryForAllModules(mContext));
+    mModuleStore =
+        new DefaultModuleStore.Builder(mContext)
+            .setModuleBundle(mModuleBundle)
+            .setDurability(durability)
+            .setFileIO(
+                new ThrottledModuleFileIO(
+                    new DefaultModuleFileIO(), bandwidthMBps * 1024L * 1024L, iops, syncLatencyUs))
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkFiles.deleteRecursively(mDirectory);
+  }
+
+  @Benchmark
+  public ModulePathsAndDependencies install() throws IOException {
+    return mModuleStore.resolveModulePaths(mModuleManifestReader, mModuleNames.get(0));
+  }
+
+  @Benchmark
+  public void installBatch() throws IOException {
+    mModuleStore.extractModules(mModuleManifestReader, mModuleNames);
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.benchmark;
+
+import com.instagram.lazyload.base.ModuleFileIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * File operations which take as long as they would on a slower storage (e.g. eMMC of a low-end
+ * device). Every operation is done for real and then delayed until its modeled duration elapses:
+ * writes are limited by bandwidth, every created file, directory or rename costs a metadata I/O
+ * limited by IOPS, and every sync adds a fixed latency. Operations which are slower for real than
+ * the model are not delayed.
+ */
+class ThrottledModuleFileIO implements ModuleFileIO {
+
+  private final ModuleFileIO mFileIO;
+  private final long mBandwidthBytesPerSecond;
+  private final long mIoNs;
+  private final long mSyncLatencyNs;
+
+  ThrottledModuleFileIO(
+      ModuleFileIO fileIO, long bandwidthBytesPerSecond, int iops, long syncLatencyUs) {
+    mFileIO = fileIO;
+    mBandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    mIoNs = TimeUnit.SECONDS.toNanos(1) / iops;
+    mSyncLatencyNs = TimeUnit.MICROSECONDS.toNanos(syncLatencyUs);
+  }
+
+  @Override
+  public void createDirectory(File directory) throws IOException {
+    long startTime = System.nanoTime();
+    boolean exists = directory.isDirectory();
+    mFileIO.createDirectory(directory);
+    delayUntil(startTime + (exists ? 0 : mIoNs));
+  }
+
+  @Override
+  public void copy(InputStream from, File to, boolean sync) throws IOException {
+    long startTime = System.nanoTime();
+    mFileIO.copy(from, to, sync);
+    delayUntil(startTime + getWriteNs(to.length(), sync));
+  }
+
+  @Override
+  public void copy(ByteBuffer from, File to, boolean sync) throws IOException {
+    long startTime = System.nanoTime();
+    mFileIO.copy(from, to, sync);
+    delayUntil(startTime + getWriteNs(to.length(), sync));
+  }
+
+  @Override
+  public void rename(File from, File to) throws IOException {
+    long startTime = System.nanoTime();
+    mFileIO.rename(from, to);
+    delayUntil(startTime + mIoNs);
+  }
+
+  @Override
+  public void sync(File file) throws IOException {
+    long startTime = System.nanoTime();
+    mFileIO.sync(file);
+    delayUntil(startTime + mSyncLatencyNs);
+  }
+
+  @Override
+  public void syncDirectory(File directory) throws IOException {
+    long startTime = System.nanoTime();
+    mFileIO.syncDirectory(directory);
+    delayUntil(startTime + mSyncLatencyNs);
+  }
+
+  private long getWriteNs(long bytes, boolean sync) {
+    return mIoNs
+        + bytes * TimeUnit.SECONDS.toNanos(1) / mBandwidthBytesPerSecond
+        + (sync ? mSyncLatencyNs : 0);
+  }
+
+  private static void delayUntil(long deadline) {
+    long remainingNs;
+    while ((remainingNs = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remainingNs);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public final class R {
+
+  private R() {}
+
+  /** JVM stand-in for the Android class, it's only referenced by the loader. */
+  public static final class drawable {
+
+    public static final int ic_menu_rotate = 0x01080045;
+
+    private drawable() {}
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.app;
+
+import android.content.Intent;
+import android.os.IBinder;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public abstract class Service {
+
+  public static final int START_NOT_STICKY = 2;
+  public static final int START_REDELIVER_INTENT = 3;
+
+  public void onCreate() {}
+
+  public int onStartCommand(Intent intent, int flags, int startId) {
+    return 0;
+  }
+
+  public abstract IBinder onBind(Intent intent);
+
+  public boolean onUnbind(Intent intent) {
+    return false;
+  }
+
+  public void onDestroy() {}
+
+  public final void stopSelf() {}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.content;
+
+import android.content.res.AssetManager;
+import android.os.PowerManager;
+import java.io.File;
+
+/**
+ * JVM stand-in for the Android class used to run the loader in benchmarks. Directories are created
+ * under a data directory and assets are read from a plain directory.
+ */
+public class Context {
+
+  public static final int MODE_PRIVATE = 0;
+  public static final String POWER_SERVICE = "power";
+
+  private final File mDataDirectory;
+  private final AssetManager mAssetManager;
+
+  public Context(File dataDirectory, File assetsDirectory) {
+    mDataDirectory = dataDirectory;
+    mAssetManager = new AssetManager(assetsDirectory);
+  }
+
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  public ClassLoader getClassLoader() {
+    return Context.class.getClassLoader();
+  }
+
+  public File getDir(String name, int mode) {
+    File directory = new File(mDataDirectory, "app_" + name);
+    directory.mkdirs();
+    return directory;
+  }
+
+  public AssetManager getAssets() {
+    return mAssetManager;
+  }
+
+  public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+    return null;
+  }
+
+  public Object getSystemService(String name) {
+    return POWER_SERVICE.equals(name) ? new PowerManager() : null;
+  }
+}
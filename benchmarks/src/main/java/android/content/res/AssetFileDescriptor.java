@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.content.res;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/** JVM stand-in for the Android class which describes a whole file. */
+public class AssetFileDescriptor implements Closeable {
+
+  private final File mFile;
+  private final long mStartOffset;
+  private final long mLength;
+
+  public AssetFileDescriptor(File file, long startOffset, long length) {
+    mFile = file;
+    mStartOffset = startOffset;
+    mLength = length;
+  }
+
+  public FileInputStream createInputStream() throws IOException {
+    return new FileInputStream(mFile);
+  }
+
+  public long getStartOffset() {
+    return mStartOffset;
+  }
+
+  public long getLength() {
+    return mLength;
+  }
+
+  @Override
+  public void close() {}
+}
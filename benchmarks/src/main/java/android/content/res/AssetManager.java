@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** JVM stand-in for the Android class which reads assets from a plain directory. */
+public final class AssetManager {
+
+  private final File mAssetsDirectory;
+
+  public AssetManager(File assetsDirectory) {
+    mAssetsDirectory = assetsDirectory;
+  }
+
+  public InputStream open(String fileName) throws IOException {
+    return new FileInputStream(new File(mAssetsDirectory, fileName));
+  }
+
+  public AssetFileDescriptor openFd(String fileName) throws IOException {
+    File file = new File(mAssetsDirectory, fileName);
+    return new AssetFileDescriptor(file, 0, file.length());
+  }
+}
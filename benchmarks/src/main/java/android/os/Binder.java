@@ -0,0 +1,25 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class, transactions are dispatched directly. */
+public class Binder implements IBinder {
+
+  protected boolean onTransact(int code, Parcel data, Parcel reply, int flags)
+      throws RemoteException {
+    return false;
+  }
+
+  @Override
+  public final boolean transact(int code, Parcel data, Parcel reply, int flags)
+      throws RemoteException {
+    return onTransact(code, data, reply, flags);
+  }
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class with values describing the current JVM. */
+public class Build {
+
+  public static final String CPU_ABI = System.getProperty("os.arch");
+  public static final String FINGERPRINT = System.getProperty("java.vendor");
+
+  public static class VERSION {
+    public static final int SDK_INT = 0;
+  }
+
+  public static class VERSION_CODES {
+    public static final int JELLY_BEAN_MR2 = 18;
+    public static final int KITKAT_WATCH = 20;
+    public static final int LOLLIPOP = 21;
+  }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class, there is no looper on the JVM, so it runs posted tasks. */
+public class Handler {
+
+  public Handler(Looper looper) {}
+
+  public final boolean post(Runnable runnable) {
+    runnable.run();
+    return true;
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class, there is no main looper on the JVM. */
+public final class Looper {
+
+  public static Looper getMainLooper() {
+    return null;
+  }
+
+  public Thread getThread() {
+    return null;
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class, thread priorities are ignored. */
+public class Process {
+
+  public static final int THREAD_PRIORITY_BACKGROUND = 10;
+  public static final int THREAD_PRIORITY_LOWEST = 19;
+
+  public static void setThreadPriority(int priority) {}
+
+  public static void setThreadPriority(int tid, int priority) {}
+
+  public static int getThreadPriority(int tid) {
+    return 0;
+  }
+
+  public static int myTid() {
+    return 0;
+  }
+}
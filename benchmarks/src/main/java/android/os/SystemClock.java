@@ -0,0 +1,18 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.os;
+
+/** JVM stand-in for the Android class backed by a monotonic clock of the JVM. */
+public final class SystemClock {
+
+  public static long uptimeMillis() {
+    return System.nanoTime() / 1000000;
+  }
+}
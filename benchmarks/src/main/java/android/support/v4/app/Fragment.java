@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.support.v4.app;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public class Fragment {
+
+  public final Activity getActivity() {
+    return null;
+  }
+
+  public void onCreate(Bundle savedInstanceState) {}
+
+  public View onCreateView(
+      LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+    return null;
+  }
+
+  public void onActivityCreated(Bundle savedInstanceState) {}
+
+  public void onStart() {}
+
+  public void onResume() {}
+
+  public void onPause() {}
+
+  public void onStop() {}
+
+  public void onDestroyView() {}
+
+  public void onDestroy() {}
+
+  public void onDetach() {}
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.system;
+
+import java.io.FileDescriptor;
+
+/**
+ * JVM stand-in for the Android class. It's never called because the stand-in of Build reports an
+ * API level which doesn't have it.
+ */
+public final class Os {
+
+  public static FileDescriptor open(String path, int flags, int mode) throws ErrnoException {
+    throw new UnsupportedOperationException();
+  }
+
+  public static void fsync(FileDescriptor fd) throws ErrnoException {
+    throw new UnsupportedOperationException();
+  }
+
+  public static void close(FileDescriptor fd) throws ErrnoException {
+    throw new UnsupportedOperationException();
+  }
+}
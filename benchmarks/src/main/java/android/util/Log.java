@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.util;
+
+/** JVM stand-in for the Android class which prints to the standard error. */
+public final class Log {
+
+  public static int w(String tag, String message, Throwable error) {
+    System.err.println(tag + ": " + message + " " + error);
+    return 0;
+  }
+
+  public static int e(String tag, String message, Throwable error) {
+    System.err.println(tag + ": " + message + " " + error);
+    return 0;
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.view;
+
+import android.content.Context;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public abstract class ViewGroup extends View {
+
+  public ViewGroup(Context context) {
+    super(context);
+  }
+
+  public void addView(View child) {}
+
+  public void removeAllViews() {}
+
+  /** JVM stand-in for the Android class, it's only referenced by the loader. */
+  public static class LayoutParams {
+
+    public static final int MATCH_PARENT = -1;
+    public static final int WRAP_CONTENT = -2;
+
+    public LayoutParams(int width, int height) {}
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.widget;
+
+import android.content.Context;
+import android.view.ViewGroup;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public class FrameLayout extends ViewGroup {
+
+  public FrameLayout(Context context) {
+    super(context);
+  }
+
+  /** JVM stand-in for the Android class, it's only referenced by the loader. */
+  public static class LayoutParams extends ViewGroup.LayoutParams {
+
+    public LayoutParams(int width, int height, int gravity) {
+      super(width, height);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package android.widget;
+
+import android.content.Context;
+import android.view.View;
+
+/** JVM stand-in for the Android class, it's only referenced by the loader. */
+public class ProgressBar extends View {
+
+  public ProgressBar(Context context) {
+    super(context);
+  }
+}
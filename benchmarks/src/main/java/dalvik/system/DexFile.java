@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package dalvik.system;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * JVM stand-in for the Android class which loads classes from a jar file instead of a dex file.
+ * Classes are defined by a class loader of the jar (a child of the loader passed to {@link
+ * #loadClass}), the real class defines them in the passed loader directly.
+ */
+public final class DexFile {
+
+  private final String mFileName;
+  private final JarFile mJarFile;
+  private volatile JarClassLoader mJarClassLoader;
+
+  private DexFile(String fileName) throws IOException {
+    mFileName = fileName;
+    mJarFile = new JarFile(fileName);
+  }
+
+  /** The optimized file is not produced, there is nothing to optimize on the JVM */
+  public static DexFile loadDex(String sourcePathName, String outputPathName, int flags)
+      throws IOException {
+    return new DexFile(sourcePathName);
+  }
+
+  public String getName() {
+    return mFileName;
+  }
+
+  public void close() throws IOException {
+    mJarFile.close();
+  }
+
+  /** Returns a class or null if the jar doesn't contain it */
+  public Class loadClass(String name, ClassLoader loader) {
+    ZipEntry entry = mJarFile.getEntry(name.replace('.', '/') + ".class");
+    if (entry == null) {
+      return null;
+    }
+    JarClassLoader jarClassLoader = mJarClassLoader;
+    if (jarClassLoader == null) {
+      synchronized (this) {
+        if (mJarClassLoader == null) {
+          mJarClassLoader = new JarClassLoader(loader);
+        }
+        jarClassLoader = mJarClassLoader;
+      }
+    }
+    try {
+      return jarClassLoader.defineClass(name, entry);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private class JarClassLoader extends ClassLoader {
+
+    JarClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    synchronized Class defineClass(String name, ZipEntry entry) throws IOException {
+      Class loadedClass = findLoadedClass(name);
+      if (loadedClass != null) {
+        return loadedClass;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      InputStream inputStream = mJarFile.getInputStream(entry);
+      try {
+        byte[] buf = new byte[8 * 1024];
+        int len;
+        while ((len = inputStream.read(buf)) > 0) {
+          bytes.write(buf, 0, len);
+        }
+      } finally {
+        inputStream.close();
+      }
+      return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+    }
+  }
+}
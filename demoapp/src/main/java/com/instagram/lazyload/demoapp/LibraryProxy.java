@@ -52,7 +52,7 @@ public class LibraryProxy {
     try {
       LazyModuleLoaderHelper.createLoaderWithoutNativeLibrariesSupport(
           context,
-          new ManifestReader(),
+          new ManifestReader(context),
           mLazyLoadListener).installModule(ManifestReader.LazyLoadedModule);
     } catch (Exception e) {
       Log.e(TAG, "Failed to install a module", e);
@@ -8,36 +8,44 @@
 
 package com.instagram.lazyload.demoapp;
 
+import android.content.Context;
+
+import com.instagram.lazyload.base.BinaryModuleManifestReader;
 import com.instagram.lazyload.base.ModuleManifest;
 import com.instagram.lazyload.base.ModuleManifestReader;
 
 import java.io.IOException;
 
 /**
- * Class that creates manifests for lazy loaded modules. Manifests contains metadata about modules.
+ * Class that reads manifests for lazy loaded modules. Manifests contains metadata about modules and
+ * are generated at build time into assets/modules.idx (see generateModuleManifestIndex task).
  */
 class ManifestReader implements ModuleManifestReader {
 
   public final static String LazyLoadedService = "LazyLoadedService";
   public final static String LazyLoadedModule = "LazyLoadedModule";
 
-  // Those files need to be placed in the assets/ folder of demo app
-  private final static String ServiceFileName = "lazyservice.apk";
-  private final static String LibraryFileName = "lazylibrary.dex";
+  private final static String IndexFileName = "modules.idx";
+
+  // The index is mapped once and shared by all loaders
+  private static BinaryModuleManifestReader sIndexReader;
+
+  private final Context mContext;
 
-  // Hash of the module may be useful when versioning of modules needs to be added
-  private final static String ModuleHash = "null";
+  ManifestReader(Context context) {
+    mContext = context.getApplicationContext();
+  }
 
   @Override
   public ModuleManifest readModuleManifest(String moduleName) throws IOException {
-    if (moduleName.equals(LazyLoadedService)) {
-      return new ModuleManifest.Builder(moduleName).setModuleHash(ModuleHash).setDexFileName
-          (ServiceFileName).build();
-    } else if (moduleName.equals(LazyLoadedModule)) {
-      return new ModuleManifest.Builder(moduleName).setModuleHash(ModuleHash).setDexFileName
-          (LibraryFileName).build();
-    } else {
-      return null;
+    return getIndexReader(mContext).readModuleManifest(moduleName);
+  }
+
+  private static synchronized BinaryModuleManifestReader getIndexReader(Context context)
+      throws IOException {
+    if (sIndexReader == null) {
+      sIndexReader = BinaryModuleManifestReader.fromAsset(context, IndexFileName);
     }
+    return sIndexReader;
   }
 }
@@ -8,24 +8,22 @@
 
 package com.instagram.lazyload.demoapp;
 
-import android.app.Service;
-import android.content.Intent;
-import android.os.IBinder;
 import android.util.Log;
 
 import com.instagram.lazyload.base.LazyLoadListener;
-import com.instagram.lazyload.base.LazyLoadingException;
+import com.instagram.lazyload.base.LazyModuleLoader;
 import com.instagram.lazyload.base.LazyModuleLoaderHelper;
-import com.instagram.lazyload.base.ServiceLike;
+import com.instagram.lazyload.base.LazyServiceHost;
 
 /**
  * The only responsibility of this service is to load a implementation of the real service (from
  * a file from assets folder) and delegate all the calls to that service.
  * <p>
  * This service is located in the main classes.dex file and can be created any time (no need to
- * load a service form secondary dex file before creating this service).
+ * load a service form secondary dex file before creating this service). The service is loaded in
+ * the background and calls made in the meantime are delegated once it's loaded.
  */
-public class ServiceProxy extends Service {
+public class ServiceProxy extends LazyServiceHost {
 
   private final static String TAG = "ServiceProxy";
 
@@ -44,35 +42,21 @@ public class ServiceProxy extends Service {
     }
   };
 
-  private ServiceLike mLazyLoadedService;
-
-  @Override
-  public void onCreate() {
-    try {
-      mLazyLoadedService = LazyModuleLoaderHelper.createLoaderWithoutNativeLibrariesSupport(
-          this,
-          new ManifestReader(),
-          mLazyLoadListener).loadServiceModule(
-          ManifestReader.LazyLoadedService,
-          CLASS_NAME);
-    } catch (LazyLoadingException e) {
-      Log.e(TAG, "Failed to lazy loaded a service", e);
-    }
-    mLazyLoadedService.onCreate();
-  }
-
   @Override
-  public IBinder onBind(Intent intent) {
-    return mLazyLoadedService.onBind(intent);
+  protected LazyModuleLoader getLazyModuleLoader() {
+    return LazyModuleLoaderHelper.createLoaderWithoutNativeLibrariesSupport(
+        this,
+        new ManifestReader(this),
+        mLazyLoadListener);
   }
 
   @Override
-  public boolean onUnbind(Intent intent) {
-    return mLazyLoadedService.onUnbind(intent);
+  protected String getModuleName() {
+    return ManifestReader.LazyLoadedService;
   }
 
   @Override
-  public void onDestroy() {
-    mLazyLoadedService.onDestroy();
+  protected String getServiceLikeClassName() {
+    return CLASS_NAME;
   }
 }
@@ -0,0 +1,509 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates code which lets the base app use classes of lazily loaded modules without reflection:
+ *
+ * <p>(1) For a class annotated with {@code LazyModuleImplementation} it generates a {@code
+ * LazyModuleFactory} into the module, which creates instances of the class by calling its
+ * constructor directly. The factory is named after the class with a LazyFactory suffix, so the
+ * loader can find it by name of the class. Outside of the package name '_' is doubled and the '$'
+ * of nested classes is replaced by "_0", so two classes never get the same factory or proxy name.
+ *
+ * <p>(2) For an interface annotated with {@code LazyModuleProxy} it generates a proxy into the
+ * base app, which forwards every call to the implementation by a plain interface call with the same
+ * signature, i.e. without boxing of arguments or varargs arrays. The implementation is held by a
+ * {@code DeferredModuleInstance}, so the proxy can be used before the module is loaded.
+ *
+ * <p>Annotations are matched by name, so the processor doesn't depend on the loader nor Android.
+ */
+@SupportedAnnotationTypes({
+  LazyModuleProcessor.IMPLEMENTATION_ANNOTATION,
+  LazyModuleProcessor.PROXY_ANNOTATION
+})
+public class LazyModuleProcessor extends AbstractProcessor {
+
+  static final String IMPLEMENTATION_ANNOTATION =
+      "com.instagram.lazyload.base.LazyModuleImplementation";
+  static final String PROXY_ANNOTATION = "com.instagram.lazyload.base.LazyModuleProxy";
+
+  private static final String FACTORY_INTERFACE = "com.instagram.lazyload.base.LazyModuleFactory";
+  private static final String LOADER_CLASS = "com.instagram.lazyload.base.LazyModuleLoader";
+  private static final String DEFERRED_INSTANCE_CLASS =
+      "com.instagram.lazyload.base.DeferredModuleInstance";
+  private static final String FACTORY_SUFFIX = "LazyFactory";
+  private static final String PROXY_SUFFIX = "LazyProxy";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      String annotationName = annotation.getQualifiedName().toString();
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        try {
+          if (IMPLEMENTATION_ANNOTATION.equals(annotationName)) {
+            generateFactory((TypeElement) element);
+          } else {
+            generateProxy((TypeElement) element, getAnnotationMirror(element, annotationName));
+          }
+        } catch (ProcessingException e) {
+          processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+        } catch (IOException e) {
+          processingEnv
+              .getMessager()
+              .printMessage(
+                  Diagnostic.Kind.ERROR, "Unable to write generated code: " + e, element);
+        }
+      }
+    }
+    return true;
+  }
+
+  private void generateFactory(TypeElement type) throws ProcessingException, IOException {
+    if (type.getKind() != ElementKind.CLASS
+        || type.getModifiers().contains(Modifier.ABSTRACT)
+        || !isAccessible(type)) {
+      throw new ProcessingException(
+          "Lazy module implementation must be a public, non-abstract, top-level or static class");
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new ProcessingException("Lazy module implementation must not be generic");
+    }
+    ExecutableElement constructor = findConstructor(type);
+    String typeName = type.getQualifiedName().toString();
+    String arguments =
+        constructor.getParameters().isEmpty()
+            ? ""
+            : "(" + erasure(constructor.getParameters().get(0).asType()) + ") host";
+
+    GeneratedClass factory = new GeneratedClass(type, FACTORY_SUFFIX);
+    StringBuilder code = factory.begin();
+    code.append("/** Generated by LazyModuleProcessor, creates {@link ")
+        .append(typeName)
+        .append("} without reflection. */\n")
+        .append("public final class ")
+        .append(factory.mSimpleName)
+        .append(" implements ")
+        .append(FACTORY_INTERFACE)
+        .append('<')
+        .append(typeName)
+        .append("> {\n\n")
+        .append("  @Override\n")
+        .append("  public ")
+        .append(typeName)
+        .append(" create(Object host) {\n")
+        .append("    return new ")
+        .append(typeName)
+        .append('(')
+        .append(arguments)
+        .append(");\n")
+        .append("  }\n")
+        .append("}\n");
+    factory.write(code);
+  }
+
+  /** Returns a public constructor with a single argument or, if there is none, without arguments */
+  private static ExecutableElement findConstructor(TypeElement type) throws ProcessingException {
+    ExecutableElement noArgumentConstructor = null;
+    ExecutableElement singleArgumentConstructor = null;
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (!constructor.getModifiers().contains(Modifier.PUBLIC)) {
+        continue;
+      }
+      int parameterCount = constructor.getParameters().size();
+      if (parameterCount == 0) {
+        noArgumentConstructor = constructor;
+      } else if (parameterCount == 1) {
+        if (singleArgumentConstructor != null) {
+          throw new ProcessingException(
+              "Lazy module implementation must have at most one public constructor with an"
+                  + " argument");
+        }
+        singleArgumentConstructor = constructor;
+      }
+    }
+    if (singleArgumentConstructor != null) {
+      return singleArgumentConstructor;
+    }
+    if (noArgumentConstructor != null) {
+      return noArgumentConstructor;
+    }
+    throw new ProcessingException(
+        "Lazy module implementation must have a public constructor with at most one argument");
+  }
+
+  private void generateProxy(TypeElement type, AnnotationMirror annotation)
+      throws ProcessingException, IOException {
+    if (type.getKind() != ElementKind.INTERFACE || !isAccessible(type)) {
+      throw new ProcessingException(
+          "Lazy module proxy can be generated for public interfaces only");
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new ProcessingException("Lazy module proxy can't be generated for generic interfaces");
+    }
+    String moduleName = getAnnotationValue(annotation, "module");
+    String implementation = getAnnotationValue(annotation, "implementation");
+    String typeName = type.getQualifiedName().toString();
+
+    GeneratedClass proxy = new GeneratedClass(type, PROXY_SUFFIX);
+    StringBuilder code = proxy.begin();
+    code.append("/**\n")
+        .append(" * Generated by LazyModuleProcessor, it forwards calls to {@code ")
+        .append(implementation)
+        .append("}\n")
+        .append(" * from module {@code ")
+        .append(moduleName)
+        .append("}.\n")
+        .append(" */\n")
+        .append("public final class ")
+        .append(proxy.mSimpleName)
+        .append(" implements ")
+        .append(typeName)
+        .append(" {\n\n")
+        .append("  private static final String MODULE_NAME = ")
+        .append(processingEnv.getElementUtils().getConstantExpression(moduleName))
+        .append(";\n")
+        .append("  private static final String IMPLEMENTATION_CLASS_NAME = ")
+        .append(processingEnv.getElementUtils().getConstantExpression(implementation))
+        .append(";\n\n")
+        .append("  private final ")
+        .append(DEFERRED_INSTANCE_CLASS)
+        .append('<')
+        .append(typeName)
+        .append("> mInstance;\n\n")
+        .append("  /** Creates a proxy which loads the module on first call on the calling")
+        .append(" thread. */\n")
+        .append("  public ")
+        .append(proxy.mSimpleName)
+        .append('(')
+        .append(LOADER_CLASS)
+        .append(" loader) {\n")
+        .append("    mInstance =\n")
+        .append("        new ")
+        .append(DEFERRED_INSTANCE_CLASS)
+        .append("<>(\n")
+        .append("            loader, ")
+        .append(typeName)
+        .append(".class, MODULE_NAME, IMPLEMENTATION_CLASS_NAME);\n")
+        .append("  }\n\n")
+        .append("  /**\n")
+        .append("   * Creates a proxy which starts loading the module on a given executor right")
+        .append(" away. Calls of\n")
+        .append("   * methods which return void are queued until the module is loaded, other")
+        .append(" calls wait for it\n")
+        .append("   * at most a given time.\n")
+        .append("   */\n")
+        .append("  public ")
+        .append(proxy.mSimpleName)
+        .append("(\n")
+        .append("      ")
+        .append(LOADER_CLASS)
+        .append(" loader,\n")
+        .append("      java.util.concurrent.Executor executor,\n")
+        .append("      long timeoutMs) {\n")
+        .append("    this(loader, executor, timeoutMs, null);\n")
+        .append("  }\n\n")
+        .append("  /** Same as above, calls dropped when the load fails are reported to")
+        .append(" a listener. */\n")
+        .append("  public ")
+        .append(proxy.mSimpleName)
+        .append("(\n")
+        .append("      ")
+        .append(LOADER_CLASS)
+        .append(" loader,\n")
+        .append("      java.util.concurrent.Executor executor,\n")
+        .append("      long timeoutMs,\n")
+        .append("      ")
+        .append(DEFERRED_INSTANCE_CLASS)
+        .append(".LoadFailureListener loadFailureListener) {\n")
+        .append("    mInstance =\n")
+        .append("        new ")
+        .append(DEFERRED_INSTANCE_CLASS)
+        .append("<>(\n")
+        .append("            loader,\n")
+        .append("            ")
+        .append(typeName)
+        .append(".class,\n")
+        .append("            MODULE_NAME,\n")
+        .append("            IMPLEMENTATION_CLASS_NAME,\n")
+        .append("            executor,\n")
+        .append("            timeoutMs,\n")
+        .append("            loadFailureListener);\n")
+        .append("  }\n\n")
+        .append("  /**\n")
+        .append("   * Returns the implementation, it waits for the module to be loaded if")
+        .append(" needed.\n")
+        .append("   *\n")
+        .append("   * @throws IllegalStateException if the module can't be loaded\n")
+        .append("   */\n")
+        .append("  public ")
+        .append(typeName)
+        .append(" getDelegate() {\n")
+        .append("    return mInstance.get();\n")
+        .append("  }\n");
+    Set<String> signatures = new HashSet<>();
+    DeclaredType declaredType = (DeclaredType) type.asType();
+    for (ExecutableElement method :
+        ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE
+          || method.getModifiers().contains(Modifier.STATIC)) {
+        // Methods of Object are implemented by the proxy itself
+        continue;
+      }
+      ExecutableType methodType =
+          (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method);
+      if (signatures.add(getSignature(method, methodType))) {
+        appendForwardingMethod(code, typeName, method, methodType);
+      }
+    }
+    code.append("}\n");
+    proxy.write(code);
+  }
+
+  /**
+   * Appends a method which forwards a call to the implementation. A call of a method which returns
+   * void and doesn't throw checked exceptions is deferred if the implementation is not ready yet.
+   */
+  private void appendForwardingMethod(
+      StringBuilder code, String typeName, ExecutableElement method, ExecutableType methodType) {
+    code.append("\n  @Override\n  public ");
+    List<? extends TypeVariable> typeVariables = methodType.getTypeVariables();
+    if (!typeVariables.isEmpty()) {
+      code.append('<');
+      for (int i = 0; i < typeVariables.size(); ++i) {
+        TypeParameterElement typeParameter =
+            (TypeParameterElement) typeVariables.get(i).asElement();
+        code.append(i > 0 ? ", " : "").append(typeParameter.getSimpleName());
+        List<? extends TypeMirror> bounds = typeParameter.getBounds();
+        if (bounds.size() > 1 || !isObject(bounds.get(0))) {
+          for (int j = 0; j < bounds.size(); ++j) {
+            code.append(j > 0 ? " & " : " extends ").append(bounds.get(j));
+          }
+        }
+      }
+      code.append("> ");
+    }
+    code.append(methodType.getReturnType()).append(' ').append(method.getSimpleName()).append('(');
+    List<? extends VariableElement> parameters = method.getParameters();
+    List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+    StringBuilder arguments = new StringBuilder();
+    for (int i = 0; i < parameters.size(); ++i) {
+      String parameterType = parameterTypes.get(i).toString();
+      if (method.isVarArgs() && i == parameters.size() - 1) {
+        parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+      }
+      // Parameters are captured by deferred calls
+      code.append(i > 0 ? ", " : "")
+          .append("final ")
+          .append(parameterType)
+          .append(' ')
+          .append(parameters.get(i).getSimpleName());
+      arguments.append(i > 0 ? ", " : "").append(parameters.get(i).getSimpleName());
+    }
+    code.append(')');
+    List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+    for (int i = 0; i < thrownTypes.size(); ++i) {
+      code.append(i > 0 ? ", " : " throws ").append(thrownTypes.get(i));
+    }
+    code.append(" {\n");
+    String call = "." + method.getSimpleName() + "(" + arguments + ");\n";
+    if (methodType.getReturnType().getKind() != TypeKind.VOID) {
+      code.append("    return mInstance.get()").append(call);
+    } else if (!thrownTypes.isEmpty()) {
+      code.append("    mInstance.get()").append(call);
+    } else {
+      // The fast path doesn't allocate, names with '$' don't clash with names of parameters
+      code.append("    ")
+          .append(typeName)
+          .append(" delegate$ = mInstance.getIfReady();\n")
+          .append("    if (delegate$ != null) {\n")
+          .append("      delegate$")
+          .append(call)
+          .append("      return;\n")
+          .append("    }\n")
+          .append("    mInstance.run(\n")
+          .append("        new ")
+          .append(DEFERRED_INSTANCE_CLASS)
+          .append(".Call<")
+          .append(typeName)
+          .append(">() {\n")
+          .append("          @Override\n")
+          .append("          public void run(")
+          .append(typeName)
+          .append(" instance$) {\n")
+          .append("            instance$")
+          .append(call)
+          .append("          }\n")
+          .append("        });\n");
+    }
+    code.append("  }\n");
+  }
+
+  private String getSignature(ExecutableElement method, ExecutableType methodType) {
+    StringBuilder signature = new StringBuilder(method.getSimpleName());
+    for (TypeMirror parameterType : methodType.getParameterTypes()) {
+      signature.append(',').append(erasure(parameterType));
+    }
+    return signature.toString();
+  }
+
+  private String erasure(TypeMirror type) {
+    return processingEnv.getTypeUtils().erasure(type).toString();
+  }
+
+  private static boolean isObject(TypeMirror type) {
+    return "java.lang.Object".equals(type.toString());
+  }
+
+  /**
+   * Classes of the base app and of a module may be loaded by different class loaders, so they can
+   * only access each other's public types.
+   */
+  private static boolean isAccessible(TypeElement type) {
+    Element element = type;
+    while (element instanceof TypeElement) {
+      TypeElement typeElement = (TypeElement) element;
+      if (!typeElement.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      if (typeElement.getNestingKind() == NestingKind.MEMBER
+          && typeElement.getKind() == ElementKind.CLASS
+          && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+        return false;
+      }
+      element = typeElement.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private static AnnotationMirror getAnnotationMirror(Element element, String annotationName)
+      throws ProcessingException {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+        return annotation;
+      }
+    }
+    throw new ProcessingException("Missing annotation " + annotationName);
+  }
+
+  private static String getAnnotationValue(AnnotationMirror annotation, String name)
+      throws ProcessingException {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+        annotation.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue().toString();
+      }
+    }
+    throw new ProcessingException("Missing annotation value " + name);
+  }
+
+  /** A class generated next to the type it's generated for */
+  private class GeneratedClass {
+    private final TypeElement mOriginatingType;
+    private final String mPackageName;
+    private final String mSimpleName;
+
+    GeneratedClass(TypeElement originatingType, String suffix) {
+      mOriginatingType = originatingType;
+      mPackageName =
+          processingEnv
+              .getElementUtils()
+              .getPackageOf(originatingType)
+              .getQualifiedName()
+              .toString();
+      String binaryName =
+          processingEnv.getElementUtils().getBinaryName(originatingType).toString();
+      mSimpleName =
+          escapeNestedName(
+                  mPackageName.isEmpty()
+                      ? binaryName
+                      : binaryName.substring(mPackageName.length() + 1))
+              + suffix;
+    }
+
+    StringBuilder begin() {
+      StringBuilder code = new StringBuilder();
+      if (!mPackageName.isEmpty()) {
+        code.append("package ").append(mPackageName).append(";\n\n");
+      }
+      return code;
+    }
+
+    void write(StringBuilder code) throws IOException {
+      String qualifiedName =
+          mPackageName.isEmpty() ? mSimpleName : mPackageName + "." + mSimpleName;
+      Writer writer =
+          processingEnv.getFiler().createSourceFile(qualifiedName, mOriginatingType).openWriter();
+      try {
+        writer.write(code.toString());
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+  /** Must match LazyModuleLoader#getFactoryClassName, which finds factories by this name */
+  private static String escapeNestedName(String binarySimpleName) {
+    StringBuilder name = new StringBuilder(binarySimpleName.length());
+    for (int i = 0; i < binarySimpleName.length(); ++i) {
+      char c = binarySimpleName.charAt(i);
+      if (c == '_') {
+        name.append("__");
+      } else if (c == '$') {
+        name.append("_0");
+      } else {
+        name.append(c);
+      }
+    }
+    return name.toString();
+  }
+
+  private static class ProcessingException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    ProcessingException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for LazyModuleProcessor class. */
+public class LazyModuleProcessorTest {
+
+  // Classes of the loader referenced by generated code, the loader itself depends on Android
+  private static final File LOADER_SOURCE_DIRECTORY =
+      new File("../ig-lazy-module-loader/src/main/java/com/instagram/lazyload/base");
+  private static final String[] LOADER_SOURCE_FILES = {
+    "LazyModuleImplementation.java",
+    "LazyModuleProxy.java",
+    "LazyModuleFactory.java",
+    "LazyLoadingException.java",
+    "DeferredModuleInstance.java",
+  };
+  private static final JavaFileObject LOADER_STAND_IN_SOURCE =
+      source(
+          "com.instagram.lazyload.base.LazyModuleLoader",
+          "package com.instagram.lazyload.base;",
+          "public class LazyModuleLoader {",
+          "  public Object createModuleInstance(String moduleName, String className)",
+          "      throws LazyLoadingException {",
+          "    try {",
+          "      return ((LazyModuleFactory<?>) Class.forName(className + \"LazyFactory\")",
+          "          .newInstance()).create(moduleName);",
+          "    } catch (Exception e) {",
+          "      throw new LazyLoadingException(e);",
+          "    }",
+          "  }",
+          "}");
+
+  private static final JavaFileObject API_SOURCE =
+      source(
+          "test.CalculatorApi",
+          "package test;",
+          "import com.instagram.lazyload.base.LazyModuleProxy;",
+          "@LazyModuleProxy(module = \"calculator_module\", implementation = \"test.Calculator\")",
+          "public interface CalculatorApi extends java.util.concurrent.Callable<String> {",
+          "  int add(int first, int second);",
+          "  long sum(long... values);",
+          "  <T extends Comparable<T>> T max(T first, T second);",
+          "  void reset();",
+          "}");
+
+  private static final JavaFileObject IMPLEMENTATION_SOURCE =
+      source(
+          "test.Calculator",
+          "package test;",
+          "import com.instagram.lazyload.base.LazyModuleImplementation;",
+          "@LazyModuleImplementation",
+          "public class Calculator implements CalculatorApi {",
+          "  private final String mHost;",
+          "  private int mResetCount;",
+          "  public Calculator(String host) {",
+          "    mHost = host;",
+          "  }",
+          "  public int add(int first, int second) {",
+          "    return first + second;",
+          "  }",
+          "  public long sum(long... values) {",
+          "    long sum = 0;",
+          "    for (long value : values) {",
+          "      sum += value;",
+          "    }",
+          "    return sum;",
+          "  }",
+          "  public <T extends Comparable<T>> T max(T first, T second) {",
+          "    return first.compareTo(second) >= 0 ? first : second;",
+          "  }",
+          "  public void reset() {",
+          "    ++mResetCount;",
+          "  }",
+          "  public String call() {",
+          "    return mHost + \" \" + mResetCount;",
+          "  }",
+          "}");
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mClassesDirectory = null;
+  private File mGeneratedSourcesDirectory = null;
+  private DiagnosticCollector<JavaFileObject> mDiagnostics = null;
+  private ClassLoader mClassLoader = null;
+
+  @Before
+  public void setUp() throws IOException {
+    mClassesDirectory = mTemporaryFolder.newFolder("classes");
+    mGeneratedSourcesDirectory = mTemporaryFolder.newFolder("generated");
+    mDiagnostics = new DiagnosticCollector<>();
+  }
+
+  @Test
+  public void testThatFactoryCallsConstructorWithHost() throws Exception {
+    // given
+    Assert.assertTrue(compile(API_SOURCE, IMPLEMENTATION_SOURCE));
+
+    // when
+    Object factory = loadClass("test.CalculatorLazyFactory").newInstance();
+    Object calculator =
+        factory.getClass().getMethod("create", Object.class).invoke(factory, "host");
+
+    // then
+    Assert.assertEquals("test.Calculator", calculator.getClass().getName());
+    Assert.assertEquals("host 0", ((Callable<?>) calculator).call());
+  }
+
+  @Test
+  public void testThatProxyForwardsCallsToImplementation() throws Exception {
+    // given
+    Assert.assertTrue(compile(API_SOURCE, IMPLEMENTATION_SOURCE));
+    Class<?> proxyClass = loadClass("test.CalculatorApiLazyProxy");
+    Class<?> loaderClass = loadClass("com.instagram.lazyload.base.LazyModuleLoader");
+    Object proxy = proxyClass.getConstructor(loaderClass).newInstance(loaderClass.newInstance());
+    Method sum = proxyClass.getMethod("sum", long[].class);
+
+    // when
+    proxyClass.getMethod("reset").invoke(proxy);
+    Object addResult = proxyClass.getMethod("add", int.class, int.class).invoke(proxy, 2, 3);
+    Object sumResult = sum.invoke(proxy, new Object[] {new long[] {1, 2, 3}});
+    Object maxResult =
+        proxyClass.getMethod("max", Comparable.class, Comparable.class).invoke(proxy, "a", "b");
+
+    // then
+    Assert.assertEquals(5, addResult);
+    Assert.assertEquals(6L, sumResult);
+    Assert.assertTrue(sum.isVarArgs());
+    Assert.assertEquals("b", maxResult);
+    // Inherited method is forwarded too and all calls went to the same implementation
+    Assert.assertEquals("calculator_module 1", ((Callable<?>) proxy).call());
+  }
+
+  @Test
+  public void testThatDeferredCallsAreReplayedOnceModuleIsLoaded() throws Exception {
+    // given
+    Assert.assertTrue(compile(API_SOURCE, IMPLEMENTATION_SOURCE));
+    Class<?> proxyClass = loadClass("test.CalculatorApiLazyProxy");
+    Class<?> loaderClass = loadClass("com.instagram.lazyload.base.LazyModuleLoader");
+    final List<Runnable> tasks = new ArrayList<>();
+    Executor executor =
+        new Executor() {
+          @Override
+          public void execute(Runnable task) {
+            tasks.add(task);
+          }
+        };
+    Object proxy =
+        proxyClass
+            .getConstructor(loaderClass, Executor.class, long.class)
+            .newInstance(loaderClass.newInstance(), executor, 1000L);
+
+    // when
+    proxyClass.getMethod("reset").invoke(proxy);
+    proxyClass.getMethod("reset").invoke(proxy);
+    Assert.assertEquals(1, tasks.size());
+    tasks.get(0).run();
+
+    // then
+    Assert.assertEquals("calculator_module 2", ((Callable<?>) proxy).call());
+  }
+
+  @Test
+  public void testThatNestedClassAndClassWithUnderscoreGetDifferentFactories() throws Exception {
+    // given
+    JavaFileObject nestedSource =
+        source(
+            "test.B",
+            "package test;",
+            "public class B {",
+            "  @com.instagram.lazyload.base.LazyModuleImplementation",
+            "  public static class C {}",
+            "}");
+    JavaFileObject underscoreSource =
+        source(
+            "test.B_C",
+            "package test;",
+            "@com.instagram.lazyload.base.LazyModuleImplementation",
+            "public class B_C {}");
+
+    // when
+    boolean compiled = compile(nestedSource, underscoreSource);
+
+    // then
+    Assert.assertTrue(getErrors(), compiled);
+    Assert.assertEquals("test.B$C", createWithFactory("test.B_0CLazyFactory").getClass().getName());
+    Assert.assertEquals("test.B_C", createWithFactory("test.B__CLazyFactory").getClass().getName());
+  }
+
+  @Test
+  public void testThatImplementationWithoutPublicConstructorIsRejected() throws IOException {
+    // given
+    JavaFileObject implementationSource =
+        source(
+            "test.Hidden",
+            "package test;",
+            "@com.instagram.lazyload.base.LazyModuleImplementation",
+            "public class Hidden {",
+            "  private Hidden() {}",
+            "}");
+
+    // when
+    boolean compiled = compile(implementationSource);
+
+    // then
+    Assert.assertFalse(compiled);
+    Assert.assertTrue(getErrors().contains("public constructor"));
+  }
+
+  private boolean compile(JavaFileObject... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(mDiagnostics, null, null);
+    try {
+      List<File> loaderFiles = new ArrayList<>();
+      for (String loaderSourceFile : LOADER_SOURCE_FILES) {
+        loaderFiles.add(new File(LOADER_SOURCE_DIRECTORY, loaderSourceFile));
+      }
+      List<JavaFileObject> allSources = new ArrayList<>();
+      for (JavaFileObject loaderSource : fileManager.getJavaFileObjectsFromFiles(loaderFiles)) {
+        allSources.add(loaderSource);
+      }
+      allSources.add(LOADER_STAND_IN_SOURCE);
+      allSources.addAll(Arrays.asList(sources));
+      List<String> options =
+          Arrays.asList(
+              "-d",
+              mClassesDirectory.getPath(),
+              "-s",
+              mGeneratedSourcesDirectory.getPath(),
+              "-classpath",
+              System.getProperty("java.class.path"),
+              "-processor",
+              LazyModuleProcessor.class.getName());
+      return compiler.getTask(null, fileManager, mDiagnostics, options, null, allSources).call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private Object createWithFactory(String factoryClassName) throws Exception {
+    Object factory = loadClass(factoryClassName).newInstance();
+    return factory.getClass().getMethod("create", Object.class).invoke(factory, "host");
+  }
+
+  private Class<?> loadClass(String className) throws Exception {
+    if (mClassLoader == null) {
+      mClassLoader =
+          new URLClassLoader(
+              new URL[] {mClassesDirectory.toURI().toURL()}, getClass().getClassLoader());
+    }
+    return Class.forName(className, true, mClassLoader);
+  }
+
+  private String getErrors() {
+    StringBuilder errors = new StringBuilder();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.append(diagnostic.getMessage(null)).append('\n');
+      }
+    }
+    return errors.toString();
+  }
+
+  private static JavaFileObject source(String className, final String... lines) {
+    return new SimpleJavaFileObject(
+        URI.create("string:///" + className.replace('.', '/') + ".java"),
+        JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+          content.append(line).append('\n');
+        }
+        return content;
+      }
+    };
+  }
+}
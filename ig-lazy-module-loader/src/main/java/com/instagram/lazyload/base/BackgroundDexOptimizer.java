@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.os.Process;
+import dalvik.system.DexFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Post-install compilation stage for lazily loaded modules. It moves dex optimization off the
+ * critical path and uses recorded usage profiles to make the steady state faster:
+ *
+ * <p>(1) {@link #prepareModule} extracts a module and runs dexopt (or dex2oat) on a low priority
+ * background thread. The result is written to a pending location and swapped in by {@link
+ * DefaultModuleStore} next time the module is resolved (usually on next launch), so a first load
+ * finds an optimized dex file and does not pay optimization cost.
+ *
+ * <p>(2) {@link #onModuleInjected} starts recording hot classes of a module and, if a profile from
+ * previous sessions exists, loads those classes in the background so that class loading and
+ * verification happen before the module code needs them.
+ *
+ * <p>(3) {@link #reoptimizeStaleModules} does the same for modules whose optimized dex files
+ * became invalid after an OS update.
+ *
+ * <p>(4) {@link #saveProfiles()} persists recorded profiles, it can be called e.g. when app goes to
+ * background.
+ *
+ * <p>Note that {@link DexFile} API does not allow to pass a profile to the compiler, hence the
+ * profile is used to warm up classes rather than to drive compilation.
+ */
+public class BackgroundDexOptimizer {
+
+  private final Executor mExecutor;
+  private final ModuleProfiler mModuleProfiler;
+  private final ClassLoader mClassLoader;
+  private final ModuleDurability mDurability;
+  private final ConcurrentHashMap<String, File> mProfiledDexFiles = new ConcurrentHashMap<>();
+
+  public BackgroundDexOptimizer(
+      Executor executor, ModuleProfiler moduleProfiler, ClassLoader classLoader) {
+    this(executor, moduleProfiler, classLoader, ModuleDurability.STRICT);
+  }
+
+  /**
+   * @param durability whether optimized dex files are synced before they're marked ready, it should
+   *     be the same as durability of the store, see {@link ModuleDurability}
+   */
+  public BackgroundDexOptimizer(
+      Executor executor,
+      ModuleProfiler moduleProfiler,
+      ClassLoader classLoader,
+      ModuleDurability durability) {
+    mExecutor = executor;
+    mModuleProfiler = moduleProfiler;
+    mClassLoader = classLoader;
+    mDurability = durability;
+  }
+
+  /**
+   * Creates an optimizer which runs on a single background thread and records profiles using
+   * {@link CustomClassLoader}.
+   */
+  public static BackgroundDexOptimizer createDefault(ClassLoader appClassLoader) {
+    ModuleProfiler moduleProfiler = new ModuleProfiler();
+    CustomClassLoader.getInstance().setModuleProfiler(moduleProfiler);
+    return new BackgroundDexOptimizer(
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LazyModuleDexOptimizer");
+                thread.setDaemon(true);
+                return thread;
+              }
+            }),
+        moduleProfiler,
+        appClassLoader);
+  }
+
+  /**
+   * Schedules extraction and optimization of a module (and its dependencies) without injecting it
+   * into the class loader. Failures are not fatal, the module will be optimized on first load.
+   */
+  public void prepareModule(
+      final ModuleStore moduleStore,
+      final ModuleManifestReader moduleManifestReader,
+      final String moduleName) {
+    mExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+              prepareModuleSync(moduleStore, moduleManifestReader, moduleName);
+            } catch (IOException e) {
+              // Ignore, the module will be optimized when it is first loaded.
+            }
+          }
+        });
+  }
+
+  /**
+   * Re-optimizes, in the background, installed modules whose optimized dex files were produced
+   * under a different runtime or system image, so that users don't pay for re-optimization when
+   * they open such module. It's meant to be called on process start.
+   *
+   * @param moduleNames modules of the current app version, e.g. all modules listed by {@link
+   *     BinaryModuleManifestReader#getModuleNames()}
+   */
+  public void reoptimizeStaleModules(
+      final Context context,
+      final ModuleManifestReader moduleManifestReader,
+      final Collection<String> moduleNames) {
+    mExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+            List<ModulePathsAndDependencies> staleModules;
+            try {
+              staleModules =
+                  DefaultModuleStore.findModulesWithStaleOptimizedDex(
+                      context, moduleManifestReader, moduleNames);
+            } catch (IOException e) {
+              // Ignore, modules will be re-optimized when they are loaded.
+              return;
+            }
+            for (ModulePathsAndDependencies staleModule : staleModules) {
+              try {
+                optimize(staleModule.getDexFile(), staleModule.getOptimizedDexFile());
+              } catch (IOException e) {
+                // Ignore, the module will be re-optimized when it is loaded.
+              }
+            }
+          }
+        });
+  }
+
+  /**
+   * Called after a module was added to the class loader. A fingerprint of its optimized dex file is
+   * recorded in the background, so that it can be re-optimized when it gets invalidated by an OS
+   * update, see {@link #reoptimizeStaleModules}.
+   */
+  public void onModuleInjected(ModulePathsAndDependencies modulePathsAndDependencies) {
+    final File dexFile = modulePathsAndDependencies.getDexFile();
+    final File optimizedDexFile = modulePathsAndDependencies.getOptimizedDexFile();
+    if (dexFile == null) {
+      return;
+    }
+    mModuleProfiler.startProfiling(dexFile);
+    mProfiledDexFiles.put(dexFile.getAbsolutePath(), dexFile);
+    mExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            recordFingerprint(optimizedDexFile);
+            preloadHotClasses(dexFile);
+          }
+        });
+  }
+
+  /** Persists profiles of all modules injected in this process. */
+  public void saveProfiles() throws IOException {
+    for (File dexFile : mProfiledDexFiles.values()) {
+      List<String> hotClasses = mModuleProfiler.getHotClasses(dexFile);
+      if (!hotClasses.isEmpty()) {
+        ModuleProfiler.writeProfile(DefaultModuleStore.getProfileFile(dexFile), hotClasses);
+      }
+    }
+  }
+
+  private void prepareModuleSync(
+      ModuleStore moduleStore, ModuleManifestReader moduleManifestReader, String moduleName)
+      throws IOException {
+    ModulePathsAndDependencies modulePathsAndDependencies =
+        moduleStore.resolveModulePaths(moduleManifestReader, moduleName);
+    for (String dependency : modulePathsAndDependencies.getModuleDependencies()) {
+      prepareModuleSync(moduleStore, moduleManifestReader, dependency);
+    }
+    File dexFile = modulePathsAndDependencies.getDexFile();
+    File optimizedDexFile = modulePathsAndDependencies.getOptimizedDexFile();
+    if (dexFile == null || optimizedDexFile == null || optimizedDexFile.exists()) {
+      return;
+    }
+    optimize(dexFile, optimizedDexFile);
+  }
+
+  /**
+   * Produces an optimized dex file in the pending location. It never writes to the optimized dex
+   * file directly because the same file can be loaded by the foreground at the same time.
+   */
+  void optimize(File dexFile, File optimizedDexFile) throws IOException {
+    File pendingOptimizedDexFile = DefaultModuleStore.getPendingOptimizedDexFile(optimizedDexFile);
+    // Every process runs this on start, so the same module may be optimized by another process.
+    ModuleFileLock lock = ModuleFileLock.acquire(optimizedDexFile.getParentFile().getParentFile());
+    try {
+      if (DefaultModuleStore.isPendingOptimizedDexReady(pendingOptimizedDexFile)
+          && !OptimizedDexFingerprint.isStale(pendingOptimizedDexFile)) {
+        return;
+      }
+      FileIOUtils.createDirectoryOrThrow(pendingOptimizedDexFile.getParentFile());
+      // Leftovers of interrupted optimization must not be reused
+      DefaultModuleStore.discardPendingOptimizedDex(pendingOptimizedDexFile);
+      DexFile optimizedDex =
+          DexFile.loadDex(
+              dexFile.getAbsolutePath(), pendingOptimizedDexFile.getAbsolutePath(), 0 /* flags */);
+      optimizedDex.close();
+      OptimizedDexFingerprint.record(pendingOptimizedDexFile);
+      if (mDurability != ModuleDurability.RELAXED) {
+        // The ready marker must not outlive a crash which the files it marks don't survive
+        FileIOUtils.syncFile(pendingOptimizedDexFile);
+        FileIOUtils.syncFile(OptimizedDexFingerprint.getFingerprintFile(pendingOptimizedDexFile));
+        FileIOUtils.syncDirectory(pendingOptimizedDexFile.getParentFile());
+      }
+      DefaultModuleStore.markPendingOptimizedDexReady(pendingOptimizedDexFile);
+    } finally {
+      lock.release();
+    }
+  }
+
+  private static void recordFingerprint(@Nullable File optimizedDexFile) {
+    if (optimizedDexFile == null) {
+      return;
+    }
+    try {
+      OptimizedDexFingerprint.record(optimizedDexFile);
+    } catch (IOException e) {
+      // Ignore, without a fingerprint the module is re-optimized by the next check.
+    }
+  }
+
+  private void preloadHotClasses(File dexFile) {
+    List<String> hotClasses;
+    try {
+      hotClasses = ModuleProfiler.readProfile(DefaultModuleStore.getProfileFile(dexFile));
+    } catch (IOException e) {
+      return;
+    }
+    for (String className : hotClasses) {
+      try {
+        // Do not initialize classes, static initializers should run when the module decides so.
+        Class.forName(className, false, mClassLoader);
+      } catch (ClassNotFoundException | LinkageError e) {
+        // Profile may be out of date, ignore classes which no longer exist.
+      }
+    }
+  }
+}
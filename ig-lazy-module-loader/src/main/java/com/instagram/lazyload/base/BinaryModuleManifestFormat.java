@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.nio.charset.Charset;
+
+/**
+ * Binary format of a module manifest index shared by {@link BinaryModuleManifestWriter} and {@link
+ * BinaryModuleManifestReader}. It doesn't depend on Android APIs, so it can be used by build steps.
+ *
+ * <p>Format (all numbers are big-endian):
+ *
+ * <pre>
+ * header:       int magic, int version, int module count, int reserved
+ * entries:      module count * 48 bytes sorted by UTF-8 bytes of module names:
+ *               int name offset, int name length, int hash offset, int hash length,
+ *               int dex file name offset, int dex file name length, int dependencies offset,
+ *               int dependency count, long module size, int flags, int pre-install priority
+ * dependencies: int name offset, int name length
+ * strings:      UTF-8 bytes, offsets are relative to the beginning of the index
+ * </pre>
+ *
+ * Missing strings (e.g. a module without dex file) have length -1. The pre-install priority used
+ * to be reserved, so indexes written before it have priority 0 for all modules.
+ */
+final class BinaryModuleManifestFormat {
+
+  static final int MAGIC = 0x4c4d4958; // "LMIX"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int ENTRY_SIZE = 48;
+  static final int DEPENDENCY_SIZE = 8;
+  static final int FLAG_CONTAINS_NATIVE_LIB = 1;
+
+  static final int ENTRY_NAME_OFFSET = 0;
+  static final int ENTRY_HASH_OFFSET = 8;
+  static final int ENTRY_DEX_FILE_NAME_OFFSET = 16;
+  static final int ENTRY_DEPENDENCIES_OFFSET = 24;
+  static final int ENTRY_MODULE_SIZE_OFFSET = 32;
+  static final int ENTRY_FLAGS_OFFSET = 40;
+  static final int ENTRY_PRE_INSTALL_PRIORITY_OFFSET = 44;
+
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private BinaryModuleManifestFormat() {}
+}
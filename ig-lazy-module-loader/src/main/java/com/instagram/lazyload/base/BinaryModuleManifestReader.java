@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Reads manifests of all modules from a compact binary index which is generated at build time by
+ * {@link BinaryModuleManifestWriter}. The index is memory-mapped, lookups are a binary search over
+ * the mapped bytes and don't decode any strings except for the manifest that is returned. Returned
+ * manifests are cached, so next lookups of the same module don't allocate at all.
+ *
+ * <p>See {@link BinaryModuleManifestFormat} for description of the format.
+ */
+public class BinaryModuleManifestReader implements ModuleManifestReader {
+
+  private final ByteBuffer mBuffer;
+  private final int mModuleCount;
+  private final AtomicReferenceArray<ModuleManifest> mModuleManifests;
+
+  public BinaryModuleManifestReader(ByteBuffer buffer) throws IOException {
+    mBuffer = buffer;
+    if (buffer.capacity() < BinaryModuleManifestFormat.HEADER_SIZE
+        || buffer.getInt(0) != BinaryModuleManifestFormat.MAGIC) {
+      throw new IOException("Not a module manifest index");
+    }
+    if (buffer.getInt(4) != BinaryModuleManifestFormat.VERSION) {
+      throw new IOException("Unsupported module manifest index version " + buffer.getInt(4));
+    }
+    mModuleCount = buffer.getInt(8);
+    long entriesEnd =
+        BinaryModuleManifestFormat.HEADER_SIZE
+            + (long) mModuleCount * BinaryModuleManifestFormat.ENTRY_SIZE;
+    if (mModuleCount < 0 || entriesEnd > buffer.capacity()) {
+      throw new IOException("Corrupted module manifest index");
+    }
+    mModuleManifests = new AtomicReferenceArray<>(mModuleCount);
+  }
+
+  /** Memory-maps an index stored in a file. */
+  public static BinaryModuleManifestReader fromFile(File indexFile) throws IOException {
+    FileInputStream inputStream = new FileInputStream(indexFile);
+    try {
+      FileChannel channel = inputStream.getChannel();
+      // The mapping stays valid after the channel is closed
+      return new BinaryModuleManifestReader(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Memory-maps an index stored in assets. The asset must not be compressed by aapt, see
+   * aaptOptions.noCompress in the build file.
+   */
+  public static BinaryModuleManifestReader fromAsset(Context context, String assetName)
+      throws IOException {
+    AssetFileDescriptor assetFileDescriptor = context.getAssets().openFd(assetName);
+    try {
+      FileInputStream inputStream = assetFileDescriptor.createInputStream();
+      try {
+        return new BinaryModuleManifestReader(
+            inputStream
+                .getChannel()
+                .map(
+                    FileChannel.MapMode.READ_ONLY,
+                    assetFileDescriptor.getStartOffset(),
+                    assetFileDescriptor.getLength()));
+      } finally {
+        inputStream.close();
+      }
+    } finally {
+      assetFileDescriptor.close();
+    }
+  }
+
+  @Override
+  public ModuleManifest readModuleManifest(String moduleName) throws IOException {
+    int index = findModule(moduleName);
+    if (index < 0) {
+      throw new IOException("Unknown module " + moduleName);
+    }
+    return getModuleManifest(index);
+  }
+
+  /** Returns the number of modules in the index */
+  public int getModuleCount() {
+    return mModuleCount;
+  }
+
+  /** Returns names of all modules in the index */
+  public List<String> getModuleNames() {
+    List<String> moduleNames = new ArrayList<>(mModuleCount);
+    for (int i = 0; i < mModuleCount; ++i) {
+      moduleNames.add(getModuleManifest(i).getModuleName());
+    }
+    return moduleNames;
+  }
+
+  private ModuleManifest getModuleManifest(int index) {
+    ModuleManifest moduleManifest = mModuleManifests.get(index);
+    if (moduleManifest == null) {
+      moduleManifest = decodeModuleManifest(getEntryPosition(index));
+      // Another thread may have decoded it in the meantime, both instances are equal
+      mModuleManifests.set(index, moduleManifest);
+    }
+    return moduleManifest;
+  }
+
+  private ModuleManifest decodeModuleManifest(int entry) {
+    int flags = mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_FLAGS_OFFSET);
+    int preInstallPriority =
+        mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_PRE_INSTALL_PRIORITY_OFFSET);
+    ModuleManifest.Builder builder =
+        new ModuleManifest.Builder(readString(entry + BinaryModuleManifestFormat.ENTRY_NAME_OFFSET))
+            .setModuleHash(readString(entry + BinaryModuleManifestFormat.ENTRY_HASH_OFFSET))
+            .setDexFileName(
+                readString(entry + BinaryModuleManifestFormat.ENTRY_DEX_FILE_NAME_OFFSET))
+            .setModuleSizeBytes(
+                mBuffer.getLong(entry + BinaryModuleManifestFormat.ENTRY_MODULE_SIZE_OFFSET))
+            .setContainsNativeLib(
+                (flags & BinaryModuleManifestFormat.FLAG_CONTAINS_NATIVE_LIB) != 0)
+            .setPreInstallPriority(preInstallPriority);
+    int dependencies =
+        mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_DEPENDENCIES_OFFSET);
+    int dependencyCount =
+        mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_DEPENDENCIES_OFFSET + 4);
+    for (int i = 0; i < dependencyCount; ++i) {
+      builder.addDependency(
+          readString(dependencies + i * BinaryModuleManifestFormat.DEPENDENCY_SIZE));
+    }
+    return builder.build();
+  }
+
+  /** Reads a string referenced by an (offset, length) pair located at a given position */
+  @Nullable
+  private String readString(int position) {
+    int offset = mBuffer.getInt(position);
+    int length = mBuffer.getInt(position + 4);
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    ByteBuffer buffer = mBuffer.duplicate();
+    buffer.position(offset);
+    buffer.get(bytes);
+    return new String(bytes, BinaryModuleManifestFormat.UTF_8);
+  }
+
+  private int findModule(String moduleName) {
+    int low = 0;
+    int high = mModuleCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int entry = getEntryPosition(middle);
+      int result =
+          compareName(
+              moduleName,
+              mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_NAME_OFFSET),
+              mBuffer.getInt(entry + BinaryModuleManifestFormat.ENTRY_NAME_OFFSET + 4));
+      if (result > 0) {
+        low = middle + 1;
+      } else if (result < 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares UTF-8 bytes of a name with bytes stored in the index. Module names are usually ASCII,
+   * so the name is encoded only if it contains other characters.
+   */
+  private int compareName(String name, int offset, int length) {
+    int nameLength = name.length();
+    for (int i = 0; i < nameLength; ++i) {
+      char c = name.charAt(i);
+      if (c >= 0x80) {
+        return compareBytes(name.getBytes(BinaryModuleManifestFormat.UTF_8), offset, length);
+      }
+      if (i == length) {
+        return 1;
+      }
+      int result = c - (mBuffer.get(offset + i) & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return nameLength == length ? 0 : -1;
+  }
+
+  private int compareBytes(byte[] name, int offset, int length) {
+    int commonLength = Math.min(name.length, length);
+    for (int i = 0; i < commonLength; ++i) {
+      int result = (name[i] & 0xff) - (mBuffer.get(offset + i) & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return name.length - length;
+  }
+
+  private static int getEntryPosition(int index) {
+    return BinaryModuleManifestFormat.HEADER_SIZE + index * BinaryModuleManifestFormat.ENTRY_SIZE;
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Writes manifests of all modules into a binary index read by {@link BinaryModuleManifestReader}.
+ * It's meant to be run at build time (it does not depend on Android APIs), see buildSrc and the
+ * demoapp build file for an example of a build step that generates the index into assets.
+ */
+public class BinaryModuleManifestWriter {
+
+  public static void write(Collection<ModuleManifest> moduleManifests, OutputStream outputStream)
+      throws IOException {
+    List<ModuleManifest> sortedManifests = new ArrayList<>(moduleManifests);
+    // Reader does a binary search over UTF-8 bytes of module names
+    Collections.sort(
+        sortedManifests,
+        new Comparator<ModuleManifest>() {
+          @Override
+          public int compare(ModuleManifest first, ModuleManifest second) {
+            return compareBytes(encode(first.getModuleName()), encode(second.getModuleName()));
+          }
+        });
+
+    int dependencyCount = 0;
+    for (ModuleManifest moduleManifest : sortedManifests) {
+      dependencyCount += moduleManifest.getModuleDependencies().size();
+    }
+    int dependenciesPosition =
+        BinaryModuleManifestFormat.HEADER_SIZE
+            + sortedManifests.size() * BinaryModuleManifestFormat.ENTRY_SIZE;
+    StringPool stringPool =
+        new StringPool(
+            dependenciesPosition + dependencyCount * BinaryModuleManifestFormat.DEPENDENCY_SIZE);
+
+    ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    DataOutputStream index = new DataOutputStream(indexBytes);
+    index.writeInt(BinaryModuleManifestFormat.MAGIC);
+    index.writeInt(BinaryModuleManifestFormat.VERSION);
+    index.writeInt(sortedManifests.size());
+    index.writeInt(0);
+
+    int nextDependencyPosition = dependenciesPosition;
+    for (ModuleManifest moduleManifest : sortedManifests) {
+      int moduleDependencyCount = moduleManifest.getModuleDependencies().size();
+      stringPool.writeReference(index, moduleManifest.getModuleName());
+      stringPool.writeReference(index, moduleManifest.getModuleHash());
+      stringPool.writeReference(index, moduleManifest.getDexFileName());
+      index.writeInt(nextDependencyPosition);
+      index.writeInt(moduleDependencyCount);
+      index.writeLong(moduleManifest.getModuleSizeBytes());
+      index.writeInt(
+          moduleManifest.containsNativeLib()
+              ? BinaryModuleManifestFormat.FLAG_CONTAINS_NATIVE_LIB
+              : 0);
+      index.writeInt(moduleManifest.getPreInstallPriority());
+      nextDependencyPosition += moduleDependencyCount * BinaryModuleManifestFormat.DEPENDENCY_SIZE;
+    }
+    for (ModuleManifest moduleManifest : sortedManifests) {
+      for (String dependency : moduleManifest.getModuleDependencies()) {
+        stringPool.writeReference(index, dependency);
+      }
+    }
+    stringPool.writeStrings(index);
+    index.flush();
+    indexBytes.writeTo(outputStream);
+  }
+
+  private static byte[] encode(String string) {
+    return string.getBytes(BinaryModuleManifestFormat.UTF_8);
+  }
+
+  private static int compareBytes(byte[] first, byte[] second) {
+    int commonLength = Math.min(first.length, second.length);
+    for (int i = 0; i < commonLength; ++i) {
+      int result = (first[i] & 0xff) - (second[i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return first.length - second.length;
+  }
+
+  /** Deduplicates strings (e.g. dependencies are names of other modules) */
+  private static class StringPool {
+    private final Map<String, Integer> mOffsets = new HashMap<>();
+    private final ByteArrayOutputStream mStrings = new ByteArrayOutputStream();
+    private final int mPosition;
+
+    StringPool(int position) {
+      mPosition = position;
+    }
+
+    void writeReference(DataOutputStream index, @Nullable String string) throws IOException {
+      if (string == null) {
+        index.writeInt(0);
+        index.writeInt(-1);
+        return;
+      }
+      byte[] bytes = encode(string);
+      Integer offset = mOffsets.get(string);
+      if (offset == null) {
+        offset = mPosition + mStrings.size();
+        mStrings.write(bytes);
+        mOffsets.put(string, offset);
+      }
+      index.writeInt(offset);
+      index.writeInt(bytes.length);
+    }
+
+    void writeStrings(DataOutputStream index) throws IOException {
+      mStrings.writeTo(index);
+    }
+  }
+}
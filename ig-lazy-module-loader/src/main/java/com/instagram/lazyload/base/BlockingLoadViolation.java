@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.util.Locale;
+
+/**
+ * Reported by {@link MainThreadLoadPolicy} when a module was loaded or installed on the main thread
+ * in a way that blocks it. Its stack trace is the stack of the code which requested the load.
+ */
+public class BlockingLoadViolation extends RuntimeException {
+
+  /** Why a load is considered blocking */
+  public enum Reason {
+    /** Loading took longer than the threshold of the policy */
+    SLOW,
+    /** Files of a module had to be copied into data dir */
+    COLD_COPY,
+    /** A dex file of a module had to be optimized */
+    DEXOPT
+  }
+
+  private final String mModuleName;
+  private final LoadPhase mPhase;
+  private final long mDurationNs;
+  private final Reason mReason;
+
+  BlockingLoadViolation(String moduleName, LoadPhase phase, long durationNs, Reason reason) {
+    super(
+        String.format(
+            (Locale) null,
+            "%s of %s on the main thread took %d ms (%s)",
+            phase,
+            moduleName,
+            durationNs / 1000000,
+            reason));
+    mModuleName = moduleName;
+    mPhase = phase;
+    mDurationNs = durationNs;
+    mReason = reason;
+  }
+
+  public String getModuleName() {
+    return mModuleName;
+  }
+
+  /** Returns the phase of the whole load, e.g. {@link LoadPhase#COLD_LOAD} */
+  public LoadPhase getPhase() {
+    return mPhase;
+  }
+
+  public long getDurationNs() {
+    return mDurationNs;
+  }
+
+  public Reason getReason() {
+    return mReason;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Trace sink which writes sections into a file in Chrome trace event format (JSON array of
+ * duration events), so that traces captured on a plain JVM (e.g. in benchmarks) can be opened in
+ * chrome://tracing or Perfetto. Close the sink to finish the file.
+ */
+public class ChromeTraceSink implements ModuleTrace.TraceSink, Closeable {
+
+  private final Writer mWriter;
+  private boolean mIsFirstEvent = true;
+  @Nullable private IOException mError;
+
+  public ChromeTraceSink(File traceFile) throws IOException {
+    mWriter =
+        new BufferedWriter(
+            new OutputStreamWriter(
+                new FileOutputStream(traceFile), Charset.forName("UTF-8")));
+    mWriter.write("[");
+  }
+
+  @Override
+  public void beginSection(String sectionName) {
+    writeEvent("B", sectionName);
+  }
+
+  @Override
+  public void endSection() {
+    writeEvent("E", null);
+  }
+
+  /** Finishes the trace file, it throws if any event could not be written. */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      mWriter.write("\n]\n");
+    } finally {
+      mWriter.close();
+    }
+    if (mError != null) {
+      throw mError;
+    }
+  }
+
+  private synchronized void writeEvent(String phase, @Nullable String sectionName) {
+    long timestampUs = System.nanoTime() / 1000;
+    StringBuilder event = new StringBuilder(128);
+    event.append(mIsFirstEvent ? "\n" : ",\n");
+    event.append("{\"ph\":\"").append(phase).append('"');
+    if (sectionName != null) {
+      event.append(",\"name\":\"");
+      appendEscaped(event, sectionName);
+      event.append('"');
+    }
+    event.append(",\"ts\":").append(timestampUs);
+    event.append(",\"pid\":0,\"tid\":").append(Thread.currentThread().getId()).append('}');
+    try {
+      mWriter.write(event.toString());
+      mIsFirstEvent = false;
+    } catch (IOException e) {
+      // Sections are emitted from loading code which shouldn't fail because of tracing
+      if (mError == null) {
+        mError = e;
+      }
+    }
+  }
+
+  private static void appendEscaped(StringBuilder builder, String string) {
+    for (int i = 0; i < string.length(); ++i) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format((Locale) null, "\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+  }
+}
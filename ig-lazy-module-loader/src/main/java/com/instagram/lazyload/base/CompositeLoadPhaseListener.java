@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/** Forwards load phases to several listeners, e.g. to {@link ModuleLoadMetrics} and a log. */
+public class CompositeLoadPhaseListener implements LoadPhaseListener {
+
+  private final LoadPhaseListener[] mListeners;
+
+  public CompositeLoadPhaseListener(LoadPhaseListener... listeners) {
+    mListeners = listeners.clone();
+  }
+
+  @Override
+  public void onPhaseStarted(String moduleName, LoadPhase phase) {
+    for (LoadPhaseListener listener : mListeners) {
+      listener.onPhaseStarted(moduleName, phase);
+    }
+  }
+
+  @Override
+  public void onPhaseFinished(String moduleName, LoadPhase phase, long durationNs) {
+    for (LoadPhaseListener listener : mListeners) {
+      listener.onPhaseFinished(moduleName, phase, durationNs);
+    }
+  }
+
+  @Override
+  public void onPhaseFailed(String moduleName, LoadPhase phase, long durationNs, Throwable error) {
+    for (LoadPhaseListener listener : mListeners) {
+      listener.onPhaseFailed(moduleName, phase, durationNs, error);
+    }
+  }
+
+  @Override
+  public void onModuleExtracted(String moduleName, long bytesCopied) {
+    for (LoadPhaseListener listener : mListeners) {
+      listener.onModuleExtracted(moduleName, bytesCopied);
+    }
+  }
+}
@@ -42,6 +42,7 @@ public final class CustomClassLoader extends ClassLoader implements DexAdder {
 
   private DexFile[] mDexFiles = new DexFile[0];
   private final ClassLoader mAppClassLoader;
+  @Nullable private volatile ModuleProfiler mModuleProfiler;
 
   private CustomClassLoader() {
     super(SYSTEM_CLASSLOADER);
@@ -76,12 +77,21 @@ public final class CustomClassLoader extends ClassLoader implements DexAdder {
       // class thinks that was loaded by app loader rather than this custom class loader.
       Class foundClass = mDexFiles[i].loadClass(className, mAppClassLoader);
       if (foundClass != null) {
+        ModuleProfiler moduleProfiler = mModuleProfiler;
+        if (moduleProfiler != null) {
+          moduleProfiler.recordClassLoaded(mDexFiles[i].getName(), className);
+        }
         return foundClass;
       }
     }
     throw new ClassNotFoundException("CustomClassLoader didn't find " + className);
   }
 
+  /** Sets a profiler which will be notified about every class found in lazily loaded dex files. */
+  public void setModuleProfiler(@Nullable ModuleProfiler moduleProfiler) {
+    mModuleProfiler = moduleProfiler;
+  }
+
   /** Lazily loaded modules should add their dex files using this method. */
   @Override
   public void addDex(File dexFile, File odexFile) throws IOException {
@@ -92,8 +102,16 @@ public final class CustomClassLoader extends ClassLoader implements DexAdder {
     for (int i = 0; i < mDexFiles.length; ++i) {
       newDexList.add(mDexFiles[i]);
     }
-    DexFile loadedDex =
-        DexFile.loadDex(dexFile.getAbsolutePath(), odexFile.getAbsolutePath(), 0 /* flags */);
+    // Loading a dex file optimizes it if it has not been optimized yet, a trace shows that as the
+    // DEXOPT phase of the loader around this section
+    ModuleTrace.beginSection("addDex", dexFile.getName());
+    DexFile loadedDex;
+    try {
+      loadedDex =
+          DexFile.loadDex(dexFile.getAbsolutePath(), odexFile.getAbsolutePath(), 0 /* flags */);
+    } finally {
+      ModuleTrace.endSection();
+    }
     newDexList.add(loadedDex);
 
     mDexFiles = newDexList.toArray(new DexFile[newDexList.size()]);
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** File operations on the local file system, see {@link ModuleFileIO}. */
+public class DefaultModuleFileIO implements ModuleFileIO {
+
+  @Override
+  public void createDirectory(File directory) throws IOException {
+    FileIOUtils.createDirectoryOrThrow(directory);
+  }
+
+  @Override
+  public void copy(InputStream from, File to, boolean sync) throws IOException {
+    FileIOUtils.copyFile(from, new FileOutputStream(to), sync);
+  }
+
+  @Override
+  public void copy(ByteBuffer from, File to, boolean sync) throws IOException {
+    FileIOUtils.copyFile(from, new FileOutputStream(to), sync);
+  }
+
+  @Override
+  public void rename(File from, File to) throws IOException {
+    if (!from.renameTo(to)) {
+      throw new IOException("Unable to rename a file");
+    }
+  }
+
+  @Override
+  public void sync(File file) throws IOException {
+    FileIOUtils.syncFile(file);
+  }
+
+  @Override
+  public void syncDirectory(File directory) throws IOException {
+    FileIOUtils.syncDirectory(directory);
+  }
+}
@@ -12,8 +12,17 @@ package com.instagram.lazyload.base;
 import android.content.Context;
 import android.os.Build;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 
 /**
  * This class is responsible for preparing and computing internal paths to module dex files. It
@@ -22,18 +31,59 @@ import java.io.IOException;
  * a directory name so as the modules change their hashes will change and new versions of modules
  * will be put in new directory
  */
-public class DefaultModuleStore implements ModuleStore {
+public class DefaultModuleStore implements ModuleStore, ModuleFootprintProvider {
 
   private static final String MODULES_DIRECTORY = "modules";
 
   private static final String DEX_FILE_STORAGE = "dex_modules";
   private static final String OPTIMIZED_DEX_FILE_STORAGE = "opt_dex_modules";
+  private static final String PENDING_OPTIMIZED_DEX_FILE_STORAGE = "opt_dex_modules_pending";
+  private static final String PROFILE_STORAGE = "profile";
+  private static final String PROFILE_FILE_SUFFIX = ".prof";
+  private static final String READY_MARKER_SUFFIX = ".ready";
   private static final String NATIVE_LIBS_STORAGE = "libs";
 
   private final Context mContext;
+  @Nullable private final ModuleBundle mModuleBundle;
+  @Nullable private final LoadPhaseListener mLoadPhaseListener;
+  private final ModuleFileIO mFileIO;
+  private final ModuleDurability mDurability;
+  private final ConcurrentHashMap<String, ModuleInstallJournal> mInstallJournals =
+      new ConcurrentHashMap<>();
 
   public DefaultModuleStore(Context context) {
-    mContext = context;
+    this(context, null);
+  }
+
+  /**
+   * @param moduleBundle optional bundle which files of modules are extracted from instead of
+   *     separate assets, it also allows to extract native libraries of modules, see {@link
+   *     ModuleBundle}
+   */
+  public DefaultModuleStore(Context context, @Nullable ModuleBundle moduleBundle) {
+    this(context, moduleBundle, null);
+  }
+
+  /**
+   * @param moduleBundle optional bundle of module files, see {@link ModuleBundle}
+   * @param loadPhaseListener optional listener notified about bytes copied into data dir
+   */
+  public DefaultModuleStore(
+      Context context,
+      @Nullable ModuleBundle moduleBundle,
+      @Nullable LoadPhaseListener loadPhaseListener) {
+    this(
+        new Builder(context)
+            .setModuleBundle(moduleBundle)
+            .setLoadPhaseListener(loadPhaseListener));
+  }
+
+  private DefaultModuleStore(Builder builder) {
+    mContext = builder.context;
+    mModuleBundle = builder.moduleBundle;
+    mLoadPhaseListener = builder.loadPhaseListener;
+    mFileIO = builder.fileIO;
+    mDurability = builder.durability;
   }
 
   /** Returns a File handle to a directory which contains all modules sub-directories */
@@ -46,6 +96,104 @@ public class DefaultModuleStore implements ModuleStore {
     return moduleManifest.getModuleName() + "_" + moduleManifest.getModuleHash();
   }
 
+  /**
+   * Returns name of a module stored in a given directory, it's the reverse of {@link
+   * #getDirectoryNameForModule}. A name of a directory which wasn't created by the store is
+   * returned as is.
+   */
+  public static String getModuleNameFromDirectoryName(String moduleDirectoryName) {
+    int hashSeparator = moduleDirectoryName.lastIndexOf('_');
+    return hashSeparator > 0
+        ? moduleDirectoryName.substring(0, hashSeparator)
+        : moduleDirectoryName;
+  }
+
+  /**
+   * Returns a location where an optimized dex file can be produced in the background. The file is
+   * swapped in place of the optimized dex file next time the module paths are resolved, see {@link
+   * #markPendingOptimizedDexReady(File)}.
+   */
+  public static File getPendingOptimizedDexFile(File optimizedDexFile) {
+    File moduleDirectory = optimizedDexFile.getParentFile().getParentFile();
+    return new File(
+        new File(moduleDirectory, PENDING_OPTIMIZED_DEX_FILE_STORAGE), optimizedDexFile.getName());
+  }
+
+  /**
+   * Marks a pending optimized dex file as complete. Pending files without a marker are treated as
+   * leftovers of an interrupted optimization and are never swapped in.
+   */
+  public static void markPendingOptimizedDexReady(File pendingOptimizedDexFile)
+      throws IOException {
+    File readyMarker = new File(pendingOptimizedDexFile.getAbsolutePath() + READY_MARKER_SUFFIX);
+    if (!readyMarker.exists() && !readyMarker.createNewFile()) {
+      throw new IOException("Unable to create a file");
+    }
+  }
+
+  /** Returns true if a pending optimized dex file was completely produced */
+  public static boolean isPendingOptimizedDexReady(File pendingOptimizedDexFile) {
+    return new File(pendingOptimizedDexFile.getAbsolutePath() + READY_MARKER_SUFFIX).exists();
+  }
+
+  /** Deletes a pending optimized dex file together with its ready marker. */
+  public static void discardPendingOptimizedDex(File pendingOptimizedDexFile) {
+    new File(pendingOptimizedDexFile.getAbsolutePath() + READY_MARKER_SUFFIX).delete();
+    OptimizedDexFingerprint.getFingerprintFile(pendingOptimizedDexFile).delete();
+    pendingOptimizedDexFile.delete();
+  }
+
+  /** Returns a location of a hot classes profile of a given module dex file */
+  public static File getProfileFile(File dexFile) {
+    File moduleDirectory = dexFile.getParentFile().getParentFile();
+    return new File(
+        new File(moduleDirectory, PROFILE_STORAGE), dexFile.getName() + PROFILE_FILE_SUFFIX);
+  }
+
+  /**
+   * Returns given modules (e.g. all modules of the current app version) which have an optimized dex
+   * file produced under a different runtime or system image (e.g. before an OS update) and not yet
+   * replaced by a pending one. Modules of old app versions are not checked. It reads a fingerprint
+   * of every module, see {@link BackgroundDexOptimizer#reoptimizeStaleModules} which calls it on a
+   * background thread.
+   */
+  public static List<ModulePathsAndDependencies> findModulesWithStaleOptimizedDex(
+      Context context, ModuleManifestReader moduleManifestReader, Collection<String> moduleNames)
+      throws IOException {
+    List<ModulePathsAndDependencies> staleModules = new ArrayList<>();
+    File modulesDirectory = getDirectoryForAllModules(context);
+    for (String moduleName : moduleNames) {
+      ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+      if (!moduleManifest.containsDexFile()) {
+        continue;
+      }
+      File moduleDirectory = new File(modulesDirectory, getDirectoryNameForModule(moduleManifest));
+      File dexFile =
+          new File(new File(moduleDirectory, DEX_FILE_STORAGE), moduleManifest.getDexFileName());
+      File optimizedDexFile =
+          new File(
+              new File(moduleDirectory, OPTIMIZED_DEX_FILE_STORAGE),
+              moduleManifest.getDexFileName());
+      if (!dexFile.exists()) {
+        continue;
+      }
+      File pendingOptimizedDexFile = getPendingOptimizedDexFile(optimizedDexFile);
+      boolean isReplacementReady =
+          isPendingOptimizedDexReady(pendingOptimizedDexFile)
+              && !OptimizedDexFingerprint.isStale(pendingOptimizedDexFile);
+      if (!isReplacementReady && OptimizedDexFingerprint.isStale(optimizedDexFile)) {
+        staleModules.add(
+            new ModulePathsAndDependencies(
+                moduleName,
+                dexFile,
+                optimizedDexFile,
+                null,
+                moduleManifest.getModuleDependencies()));
+      }
+    }
+    return staleModules;
+  }
+
   /**
    * Creates all necessary paths and moves (if needed) a dex file from assets dir into data dir.
    * Note that a dex file cannot be loaded from assets/ dir, it needs to be copied first.
@@ -56,28 +204,35 @@ public class DefaultModuleStore implements ModuleStore {
   @Override
   public ModulePathsAndDependencies resolveModulePaths(
       ModuleManifestReader moduleManifestReader, String moduleName) throws IOException {
-    ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+    ModuleManifest moduleManifest;
+    ModuleTrace.beginSection("readManifest", moduleName);
+    try {
+      moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+    } finally {
+      ModuleTrace.endSection();
+    }
     File modulePath = getModulePathInDataDir(moduleManifest);
-    FileIOUtils.createDirectoryOrThrow(modulePath);
+    ModuleInstallJournal installJournal = getInstallJournal(modulePath);
+    // Directories and files of a module which was completely extracted don't need to be checked.
+    if (!installJournal.isExtracted()) {
+      extractModule(modulePath, moduleManifest, installJournal);
+    }
 
     File dexFile = null;
     File optimizedDexFile = null;
     File nativeLibsDirectory = null;
     // A module could contain only native libraries.
     if (moduleManifest.containsDexFile()) {
-      File dexDirectoryPath = new File(modulePath, DEX_FILE_STORAGE);
-      FileIOUtils.createDirectoryOrThrow(dexDirectoryPath);
-
-      File optimizedDexDirectoryPath = new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE);
-      FileIOUtils.createDirectoryOrThrow(optimizedDexDirectoryPath);
-      optimizedDexFile = new File(optimizedDexDirectoryPath, moduleManifest.getDexFileName());
-
-      dexFile = new File(dexDirectoryPath, moduleManifest.getDexFileName());
-
-      if (!dexFile.exists()) {
-        // Only copy a dex from assets into data dir if it has not been copied before
-        copyDexToDataDirectory(dexFile, moduleManifest);
+      dexFile = new File(new File(modulePath, DEX_FILE_STORAGE), moduleManifest.getDexFileName());
+      optimizedDexFile =
+          new File(
+              new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE), moduleManifest.getDexFileName());
+      if (!installJournal.isOptimized()) {
+        // Dexopt doesn't create a directory for its output, and recovery of older versions of the
+        // library deleted it from modules which stayed extracted.
+        mFileIO.createDirectory(optimizedDexFile.getParentFile());
       }
+      promotePendingOptimizedDex(modulePath, optimizedDexFile);
     }
 
     if (moduleManifest.containsNativeLib()) {
@@ -90,22 +245,347 @@ public class DefaultModuleStore implements ModuleStore {
         dexFile,
         optimizedDexFile,
         nativeLibsDirectory,
-        moduleManifest.getModuleDependencies());
+        moduleManifest.getModuleDependencies(),
+        installJournal);
+  }
+
+  @Override
+  public ModuleFootprint getModuleFootprint(
+      ModuleManifestReader moduleManifestReader, String moduleName) throws IOException {
+    ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+    File modulePath = getModulePathInDataDir(moduleManifest);
+    long dexBytes = 0;
+    long optimizedDexBytes = 0;
+    long pendingOptimizedDexBytes = 0;
+    long nativeLibsBytes = 0;
+    // File.length() returns 0 for files which don't exist, so a module doesn't need to be extracted
+    if (moduleManifest.containsDexFile()) {
+      dexBytes =
+          new File(new File(modulePath, DEX_FILE_STORAGE), moduleManifest.getDexFileName())
+              .length();
+      File optimizedDexFile =
+          new File(
+              new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE), moduleManifest.getDexFileName());
+      optimizedDexBytes = optimizedDexFile.length();
+      pendingOptimizedDexBytes = getPendingOptimizedDexFile(optimizedDexFile).length();
+    }
+    if (moduleManifest.containsNativeLib()) {
+      File[] libFiles =
+          new File(modulePath, NATIVE_LIBS_STORAGE + File.separator + Build.CPU_ABI).listFiles();
+      if (libFiles != null) {
+        for (File libFile : libFiles) {
+          nativeLibsBytes += libFile.length();
+        }
+      }
+    }
+    return new ModuleFootprint(
+        moduleName,
+        moduleManifest.getModuleSizeBytes(),
+        dexBytes,
+        optimizedDexBytes,
+        pendingOptimizedDexBytes,
+        nativeLibsBytes,
+        false,
+        0);
+  }
+
+  /**
+   * Extracts given modules into data dir without loading them, e.g. all modules on app upgrade.
+   * With {@link ModuleDurability#GROUP_COMMIT} files of all modules are synced together once at the
+   * end instead of once per module. Modules are locked until all of them are journaled as
+   * extracted, so a load of one of them in another thread or process waits for the whole batch.
+   */
+  public void extractModules(
+      ModuleManifestReader moduleManifestReader, Collection<String> moduleNames)
+      throws IOException {
+    // Modules are locked in the order of their directories, so concurrent calls can't deadlock
+    Map<File, ModuleManifest> moduleManifests = new TreeMap<>();
+    for (String moduleName : moduleNames) {
+      ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+      File modulePath = getModulePathInDataDir(moduleManifest);
+      if (!getInstallJournal(modulePath).isExtracted()) {
+        moduleManifests.put(modulePath, moduleManifest);
+      }
+    }
+    PendingSyncs pendingSyncs = new PendingSyncs();
+    List<ModuleInstallJournal> extractedJournals = new ArrayList<>();
+    List<ModuleManifest> extractedManifests = new ArrayList<>();
+    List<Long> extractedBytes = new ArrayList<>();
+    List<ModuleFileLock> locks = new ArrayList<>();
+    try {
+      for (Map.Entry<File, ModuleManifest> entry : moduleManifests.entrySet()) {
+        ModuleInstallJournal installJournal = getInstallJournal(entry.getKey());
+        mFileIO.createDirectory(entry.getKey());
+        locks.add(installJournal.lock());
+        long bytesCopied =
+            extractModuleFiles(entry.getKey(), entry.getValue(), installJournal, pendingSyncs);
+        if (bytesCopied >= 0) {
+          extractedJournals.add(installJournal);
+          extractedManifests.add(entry.getValue());
+          extractedBytes.add(bytesCopied);
+        }
+      }
+      pendingSyncs.sync(mFileIO);
+      for (ModuleInstallJournal installJournal : extractedJournals) {
+        installJournal.append(ModuleInstallJournal.EXTRACT_DONE);
+      }
+    } finally {
+      releaseLocks(locks);
+    }
+    for (int i = 0; i < extractedManifests.size(); ++i) {
+      notifyModuleExtracted(extractedManifests.get(i), extractedBytes.get(i));
+    }
+  }
+
+  /**
+   * Rolls back install phases that were interrupted by a process death, so that they are redone
+   * from a clean state when the module is resolved next time. It also reads install journals of all
+   * modules, so that modules which were completely installed skip file checks when resolved. It is
+   * a single pass over module directories meant to be called once on process start, before any
+   * module is loaded, e.g. on the thread which loads the first module.
+   */
+  public void recoverInterruptedInstalls() throws IOException {
+    File[] moduleDirectories = getDirectoryForAllModules(mContext).listFiles();
+    if (moduleDirectories == null) {
+      return;
+    }
+    for (File moduleDirectory : moduleDirectories) {
+      ModuleInstallJournal installJournal = getInstallJournal(moduleDirectory);
+      if (!installJournal.hasInterruptedPhase()) {
+        continue;
+      }
+      // The phase may still be in progress in another process, so it can only be rolled back by
+      // the holder of the lock.
+      ModuleFileLock lock = installJournal.lock();
+      try {
+        installJournal.reload();
+        if (installJournal.isExtractionInterrupted()) {
+          // Partially copied files (including .tmp ones) and anything derived from them
+          deleteModuleStorage(moduleDirectory, DEX_FILE_STORAGE);
+          deleteModuleStorage(moduleDirectory, OPTIMIZED_DEX_FILE_STORAGE);
+          deleteModuleStorage(moduleDirectory, PENDING_OPTIMIZED_DEX_FILE_STORAGE);
+          deleteModuleStorage(moduleDirectory, NATIVE_LIBS_STORAGE);
+        } else if (installJournal.isOptimizationInterrupted()) {
+          // Runtime would most likely detect a broken optimized dex file, but don't rely on it. The
+          // directory itself stays, the module is extracted and it won't be created again.
+          deleteModuleStorageContent(moduleDirectory, OPTIMIZED_DEX_FILE_STORAGE);
+        }
+        installJournal.rollBackInterruptedPhases();
+      } finally {
+        lock.release();
+      }
+    }
   }
 
-  private void copyDexToDataDirectory(File targetDexPath, ModuleManifest moduleManifest)
+  private ModuleInstallJournal getInstallJournal(File modulePath) throws IOException {
+    ModuleInstallJournal installJournal = mInstallJournals.get(modulePath.getName());
+    if (installJournal == null) {
+      installJournal = ModuleInstallJournal.open(modulePath);
+      ModuleInstallJournal previousJournal =
+          mInstallJournals.putIfAbsent(modulePath.getName(), installJournal);
+      if (previousJournal != null) {
+        installJournal = previousJournal;
+      }
+    }
+    return installJournal;
+  }
+
+  private static void deleteModuleStorage(File moduleDirectory, String storageName) {
+    FileIOUtils.deletePathRecursively(new File(moduleDirectory, storageName).getAbsolutePath());
+  }
+
+  private static void deleteModuleStorageContent(File moduleDirectory, String storageName) {
+    File[] files = new File(moduleDirectory, storageName).listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      FileIOUtils.deletePathRecursively(file.getAbsolutePath());
+    }
+  }
+
+  private void extractModule(
+      File modulePath, ModuleManifest moduleManifest, ModuleInstallJournal installJournal)
+      throws IOException {
+    mFileIO.createDirectory(modulePath);
+    // Another process may be extracting the same module, wait for it and reuse what it extracted.
+    // The lock is held until the module is journaled as extracted, otherwise recovery in another
+    // process could delete the copied files before that.
+    PendingSyncs pendingSyncs = new PendingSyncs();
+    long bytesCopied;
+    ModuleFileLock lock = installJournal.lock();
+    try {
+      bytesCopied = extractModuleFiles(modulePath, moduleManifest, installJournal, pendingSyncs);
+      if (bytesCopied < 0) {
+        return;
+      }
+      pendingSyncs.sync(mFileIO);
+      installJournal.append(ModuleInstallJournal.EXTRACT_DONE);
+    } finally {
+      lock.release();
+    }
+    notifyModuleExtracted(moduleManifest, bytesCopied);
+  }
+
+  /**
+   * Copies files of a module, files which are not synced yet are added to pending syncs. Returns
+   * number of copied bytes or -1 if the module was extracted by another thread or process in the
+   * meantime. Caller must hold the lock of the module.
+   */
+  private long extractModuleFiles(
+      File modulePath,
+      ModuleManifest moduleManifest,
+      ModuleInstallJournal installJournal,
+      PendingSyncs pendingSyncs)
+      throws IOException {
+    installJournal.reload();
+    if (installJournal.isExtracted()) {
+      return -1;
+    }
+    long bytesCopied = 0;
+    if (moduleManifest.containsDexFile()) {
+      File dexDirectoryPath = new File(modulePath, DEX_FILE_STORAGE);
+      mFileIO.createDirectory(dexDirectoryPath);
+      mFileIO.createDirectory(new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE));
+
+      File dexFile = new File(dexDirectoryPath, moduleManifest.getDexFileName());
+      if (!dexFile.exists()) {
+        // Only copy a dex from assets into data dir if it has not been copied before
+        installJournal.append(ModuleInstallJournal.EXTRACT_STARTED);
+        copyDexToDataDirectory(dexFile, moduleManifest, pendingSyncs);
+        bytesCopied += dexFile.length();
+      } else {
+        // It may have been copied by an install which didn't sync it yet
+        pendingSyncs.addFile(dexFile);
+      }
+    }
+    if (moduleManifest.containsNativeLib() && mModuleBundle != null) {
+      bytesCopied +=
+          extractNativeLibsFromBundle(modulePath, moduleManifest, installJournal, pendingSyncs);
+    }
+    return bytesCopied;
+  }
+
+  private void notifyModuleExtracted(ModuleManifest moduleManifest, long bytesCopied) {
+    if (mLoadPhaseListener != null && bytesCopied > 0) {
+      mLoadPhaseListener.onModuleExtracted(moduleManifest.getModuleName(), bytesCopied);
+    }
+  }
+
+  private static void releaseLocks(List<ModuleFileLock> locks) throws IOException {
+    IOException failure = null;
+    for (int i = locks.size() - 1; i >= 0; --i) {
+      try {
+        locks.get(i).release();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void copyDexToDataDirectory(
+      File targetDexPath, ModuleManifest moduleManifest, PendingSyncs pendingSyncs)
       throws IOException {
     // App can be killed when file is being copied, so we copy file first to the temporary file
     // and then do the atomic rename to the target file name.
     File tmpDexPath = new File(targetDexPath.getAbsolutePath() + ".tmp");
-    FileIOUtils.copyFile(
-        mContext
-            .getAssets()
-            .open(
-                moduleManifest.getModuleName() + File.separator + moduleManifest.getDexFileName()),
-        new FileOutputStream(tmpDexPath));
-    if (!tmpDexPath.renameTo(targetDexPath)) {
-      throw new IOException("Unable to rename a file");
+    String assetPath =
+        moduleManifest.getModuleName() + File.separator + moduleManifest.getDexFileName();
+    ByteBuffer bundledDexFile = mModuleBundle != null ? mModuleBundle.getFile(assetPath) : null;
+    boolean sync = mDurability == ModuleDurability.STRICT;
+    ModuleTrace.beginSection("copy", moduleManifest.getModuleName());
+    try {
+      if (bundledDexFile != null) {
+        mFileIO.copy(bundledDexFile, tmpDexPath, sync);
+      } else {
+        mFileIO.copy(mContext.getAssets().open(assetPath), tmpDexPath, sync);
+      }
+    } finally {
+      ModuleTrace.endSection();
+    }
+    renameCopiedFile(tmpDexPath, targetDexPath, pendingSyncs);
+  }
+
+  private long extractNativeLibsFromBundle(
+      File modulePath,
+      ModuleManifest moduleManifest,
+      ModuleInstallJournal installJournal,
+      PendingSyncs pendingSyncs)
+      throws IOException {
+    long bytesCopied = 0;
+    String libsPath = NATIVE_LIBS_STORAGE + File.separator + Build.CPU_ABI;
+    File nativeLibsDirectory = new File(modulePath, libsPath);
+    for (String libPath :
+        mModuleBundle.listFiles(moduleManifest.getModuleName() + File.separator + libsPath)) {
+      File libFile = new File(nativeLibsDirectory, new File(libPath).getName());
+      if (libFile.exists()) {
+        pendingSyncs.addFile(libFile);
+        continue;
+      }
+      installJournal.append(ModuleInstallJournal.EXTRACT_STARTED);
+      mFileIO.createDirectory(nativeLibsDirectory);
+      File tmpLibFile = new File(libFile.getAbsolutePath() + ".tmp");
+      ModuleTrace.beginSection("copy", moduleManifest.getModuleName());
+      try {
+        mFileIO.copy(
+            mModuleBundle.getFile(libPath), tmpLibFile, mDurability == ModuleDurability.STRICT);
+      } finally {
+        ModuleTrace.endSection();
+      }
+      renameCopiedFile(tmpLibFile, libFile, pendingSyncs);
+      bytesCopied += libFile.length();
+    }
+    return bytesCopied;
+  }
+
+  private void renameCopiedFile(File tmpFile, File file, PendingSyncs pendingSyncs)
+      throws IOException {
+    mFileIO.rename(tmpFile, file);
+    if (mDurability == ModuleDurability.STRICT) {
+      // The file itself was synced before the rename
+      mFileIO.syncDirectory(file.getParentFile());
+    } else {
+      pendingSyncs.addFile(file);
+    }
+  }
+
+  private static void promotePendingOptimizedDex(File modulePath, File optimizedDexFile)
+      throws IOException {
+    // The optimized dex file may be in use already (by another process, or by this one when an
+    // injected module is resolved by BackgroundDexOptimizer#prepareModule), but a rename only
+    // replaces the directory entry and existing mappings keep the old file. The dex file is swapped
+    // first, then its fingerprint, and the ready marker is deleted last, so a swap interrupted
+    // halfway is finished by the next resolve.
+    File pendingOptimizedDexFile = getPendingOptimizedDexFile(optimizedDexFile);
+    File readyMarker = new File(pendingOptimizedDexFile.getAbsolutePath() + READY_MARKER_SUFFIX);
+    if (!readyMarker.exists()) {
+      return;
+    }
+    // Another process may be swapping the same file
+    ModuleFileLock lock = ModuleFileLock.acquire(modulePath);
+    try {
+      if (!readyMarker.exists()) {
+        return;
+      }
+      if (pendingOptimizedDexFile.exists()
+          && !pendingOptimizedDexFile.renameTo(optimizedDexFile)) {
+        throw new IOException("Unable to rename a file");
+      }
+      File pendingFingerprintFile =
+          OptimizedDexFingerprint.getFingerprintFile(pendingOptimizedDexFile);
+      if (pendingFingerprintFile.exists()
+          && !pendingFingerprintFile.renameTo(
+              OptimizedDexFingerprint.getFingerprintFile(optimizedDexFile))) {
+        throw new IOException("Unable to rename a file");
+      }
+      readyMarker.delete();
+    } finally {
+      lock.release();
     }
   }
 
@@ -115,4 +595,71 @@ public class DefaultModuleStore implements ModuleStore {
     // which contains a changed hash.
     return new File(getDirectoryForAllModules(mContext), getDirectoryNameForModule(moduleManifest));
   }
+
+  /**
+   * Files written without a sync, they are synced before their install is journaled as done. Each
+   * file is synced once even if it was added again, and directories are synced after all files.
+   */
+  private static class PendingSyncs {
+    private final Set<File> mFiles = new LinkedHashSet<>();
+
+    void addFile(File file) {
+      mFiles.add(file);
+    }
+
+    void sync(ModuleFileIO fileIO) throws IOException {
+      Set<File> directories = new LinkedHashSet<>();
+      for (File file : mFiles) {
+        fileIO.sync(file);
+        directories.add(file.getParentFile());
+      }
+      for (File directory : directories) {
+        fileIO.syncDirectory(directory);
+      }
+      mFiles.clear();
+    }
+  }
+
+  public static class Builder {
+    private final Context context;
+    @Nullable private ModuleBundle moduleBundle;
+    @Nullable private LoadPhaseListener loadPhaseListener;
+    private ModuleFileIO fileIO = new DefaultModuleFileIO();
+    private ModuleDurability durability = ModuleDurability.STRICT;
+
+    public Builder(Context context) {
+      this.context = context;
+    }
+
+    /**
+     * Sets an optional bundle which files of modules are extracted from instead of separate
+     * assets, see {@link ModuleBundle}
+     */
+    public Builder setModuleBundle(@Nullable ModuleBundle moduleBundle) {
+      this.moduleBundle = moduleBundle;
+      return this;
+    }
+
+    /** Sets an optional listener notified about bytes copied into data dir */
+    public Builder setLoadPhaseListener(@Nullable LoadPhaseListener loadPhaseListener) {
+      this.loadPhaseListener = loadPhaseListener;
+      return this;
+    }
+
+    /** Sets file operations used to extract modules, see {@link ModuleFileIO} */
+    public Builder setFileIO(ModuleFileIO fileIO) {
+      this.fileIO = fileIO;
+      return this;
+    }
+
+    /** Sets how files are synced to storage, {@link ModuleDurability#STRICT} by default */
+    public Builder setDurability(ModuleDurability durability) {
+      this.durability = durability;
+      return this;
+    }
+
+    public DefaultModuleStore build() {
+      return new DefaultModuleStore(this);
+    }
+  }
 }
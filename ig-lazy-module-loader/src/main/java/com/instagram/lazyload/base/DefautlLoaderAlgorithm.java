@@ -10,24 +10,41 @@
 package com.instagram.lazyload.base;
 
 import android.content.Context;
-import android.os.SystemClock;
+import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
-/** Default algorithm used for module lazy loading. */
-public class DefautlLoaderAlgorithm implements LoaderAlgorithm {
+/**
+ * Default algorithm used for module lazy loading. It doesn't depend on Android by itself, it can
+ * also load modules on a plain JVM when built with a class loader instead of a context, see {@link
+ * JvmModuleClassLoader} and {@link DirectoryModuleStore}.
+ */
+public class DefautlLoaderAlgorithm implements LoaderAlgorithm, ModuleFootprintProvider {
+
+  private static final long DEFAULT_INITIAL_FAILURE_BACKOFF_MS = 1000;
+  private static final long DEFAULT_MAX_FAILURE_BACKOFF_MS = 5 * 60 * 1000;
 
-  private final Context mContext;
+  // Exactly one of them is set
+  @Nullable private final Context mContext;
+  @Nullable private final ClassLoader mClassLoader;
+  private final ModuleClock mClock;
   private final DexAdder mDexAdder;
   private final LazyLoadListener mLazyLoadListener;
   private final boolean mAreAppModulesEnabled;
   private final ModuleStore mModuleStore;
   private final ModuleManifestReader mModuleManifestReader;
   @Nullable private final NativeModuleLoader mNativeModuleLoader;
-  private final Set<String> mLazilyLoadedModules = new HashSet<>();
+  @Nullable private final BackgroundDexOptimizer mBackgroundDexOptimizer;
+  @Nullable private final LoadPhaseListener mLoadPhaseListener;
+  private final ModuleFailureBackoff mFailureBackoff;
+  // Read without holding a lock by getModuleFootprint
+  private final Set<String> mLazilyLoadedModules =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
   public DefautlLoaderAlgorithm(
       Context context,
@@ -37,37 +54,89 @@ public class DefautlLoaderAlgorithm implements LoaderAlgorithm {
       @Nullable NativeModuleLoader nativeModuleLoader,
       DexAdder dexAdder,
       boolean areAppModulesEnabled) {
-    mContext = context;
-    mLazyLoadListener = lazyLoadListener;
-    mAreAppModulesEnabled = areAppModulesEnabled;
-    mModuleStore = moduleStore;
-    mModuleManifestReader = moduleManifestReader;
-    mNativeModuleLoader = nativeModuleLoader;
-    mDexAdder = dexAdder;
+    this(
+        context,
+        moduleStore,
+        moduleManifestReader,
+        lazyLoadListener,
+        nativeModuleLoader,
+        dexAdder,
+        areAppModulesEnabled,
+        null);
+  }
+
+  /**
+   * @param backgroundDexOptimizer optional post-install stage which is notified about every
+   *     injected module, see {@link BackgroundDexOptimizer}
+   */
+  public DefautlLoaderAlgorithm(
+      Context context,
+      ModuleStore moduleStore,
+      ModuleManifestReader moduleManifestReader,
+      LazyLoadListener lazyLoadListener,
+      @Nullable NativeModuleLoader nativeModuleLoader,
+      DexAdder dexAdder,
+      boolean areAppModulesEnabled,
+      @Nullable BackgroundDexOptimizer backgroundDexOptimizer) {
+    this(
+        new Builder(context, moduleStore, moduleManifestReader, lazyLoadListener, dexAdder)
+            .setNativeModuleLoader(nativeModuleLoader)
+            .setAppModulesEnabled(areAppModulesEnabled)
+            .setBackgroundDexOptimizer(backgroundDexOptimizer));
+  }
+
+  private DefautlLoaderAlgorithm(Builder builder) {
+    mContext = builder.context;
+    mClassLoader = builder.classLoader;
+    mClock = builder.clock;
+    mLazyLoadListener = builder.lazyLoadListener;
+    mAreAppModulesEnabled = builder.areAppModulesEnabled;
+    mModuleStore = builder.moduleStore;
+    mModuleManifestReader = builder.moduleManifestReader;
+    mNativeModuleLoader = builder.nativeModuleLoader;
+    mDexAdder = builder.dexAdder;
+    mBackgroundDexOptimizer = builder.backgroundDexOptimizer;
+    mLoadPhaseListener = builder.loadPhaseListener;
+    mFailureBackoff =
+        new ModuleFailureBackoff(
+            builder.clock, builder.initialFailureBackoffMs, builder.maxFailureBackoffMs);
   }
 
   @Override
   public Class loadModule(String moduleName, String className) throws LazyLoadingException {
+    boolean isModuleLoaded = !mAreAppModulesEnabled || mLazilyLoadedModules.contains(moduleName);
+    LoadPhase loadPhase = isModuleLoaded ? LoadPhase.WARM_LOAD : LoadPhase.COLD_LOAD;
+    long loadPhaseStartTime = startPhase(moduleName, loadPhase);
+    final Class implClass;
     try {
-      final Class implClass;
-      if (!mAreAppModulesEnabled || mLazilyLoadedModules.contains(moduleName)) {
-        implClass = mContext.getClassLoader().loadClass(className);
+      if (isModuleLoaded) {
+        implClass = getClassLoader().loadClass(className);
       } else {
-        ModulePathsAndDependencies modulePathsAndDependencies =
-            mModuleStore.resolveModulePaths(mModuleManifestReader, moduleName);
-        installDependentModules(modulePathsAndDependencies.getModuleDependencies());
-        final long loadStartTime = SystemClock.uptimeMillis();
+        mFailureBackoff.checkModule(moduleName);
+        ModulePathsAndDependencies modulePathsAndDependencies = resolveModulePaths(moduleName);
+        installDependentModules(moduleName, modulePathsAndDependencies.getModuleDependencies());
+        final long loadStartTime = mClock.nanoTime();
         injectModule(modulePathsAndDependencies);
 
-        implClass = mContext.getClassLoader().loadClass(className);
+        implClass = loadClass(moduleName, className);
 
-        final long loadEndTime = SystemClock.uptimeMillis();
-        mLazyLoadListener.moduleLazilyLoaded(moduleName, loadEndTime - loadStartTime);
+        final long loadEndTime = mClock.nanoTime();
+        mLazyLoadListener.moduleLazilyLoaded(
+            moduleName, TimeUnit.NANOSECONDS.toMillis(loadEndTime - loadStartTime));
       }
-      return implClass;
-    } catch (ClassNotFoundException | IOException e) {
+    } catch (IOException e) {
+      failPhase(moduleName, loadPhase, loadPhaseStartTime, e);
+      mFailureBackoff.onModuleFailed(moduleName, e);
+      throw new LazyLoadingException(e);
+    } catch (ClassNotFoundException e) {
+      failPhase(moduleName, loadPhase, loadPhaseStartTime, e);
       throw new LazyLoadingException(e);
+    } catch (RuntimeException e) {
+      failPhase(moduleName, loadPhase, loadPhaseStartTime, e);
+      throw e;
     }
+    finishPhase(moduleName, loadPhase, loadPhaseStartTime);
+    return implClass;
   }
 
   @Override
@@ -75,36 +144,328 @@ public class DefautlLoaderAlgorithm implements LoaderAlgorithm {
     if (!mAreAppModulesEnabled || mLazilyLoadedModules.contains(moduleName)) {
       return;
     }
-    ModulePathsAndDependencies modulePathsAndDependencies =
-        mModuleStore.resolveModulePaths(mModuleManifestReader, moduleName);
-    installDependentModules(modulePathsAndDependencies.getModuleDependencies());
-    final long loadStartTime = SystemClock.uptimeMillis();
-    injectModule(modulePathsAndDependencies);
-    final long loadEndTime = SystemClock.uptimeMillis();
-    mLazyLoadListener.moduleLazilyInstalled(moduleName, loadEndTime - loadStartTime);
+    long installPhaseStartTime = startPhase(moduleName, LoadPhase.INSTALL);
+    try {
+      mFailureBackoff.checkModule(moduleName);
+      ModulePathsAndDependencies modulePathsAndDependencies = resolveModulePaths(moduleName);
+      installDependentModules(moduleName, modulePathsAndDependencies.getModuleDependencies());
+      final long loadStartTime = mClock.nanoTime();
+      injectModule(modulePathsAndDependencies);
+      final long loadEndTime = mClock.nanoTime();
+      mLazyLoadListener.moduleLazilyInstalled(
+          moduleName, TimeUnit.NANOSECONDS.toMillis(loadEndTime - loadStartTime));
+    } catch (IOException e) {
+      failPhase(moduleName, LoadPhase.INSTALL, installPhaseStartTime, e);
+      mFailureBackoff.onModuleFailed(moduleName, e);
+      throw e;
+    } catch (RuntimeException e) {
+      failPhase(moduleName, LoadPhase.INSTALL, installPhaseStartTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.INSTALL, installPhaseStartTime);
   }
 
-  private void installDependentModules(List<String> dependentModules) throws IOException {
-    for (String module : dependentModules) {
-      installModule(module);
+  /**
+   * Returns the footprint of a module from the store (or only its size from the manifest if the
+   * store isn't a {@link ModuleFootprintProvider}) and marks modules loaded by this algorithm as
+   * mapped.
+   */
+  @Override
+  public ModuleFootprint getModuleFootprint(
+      ModuleManifestReader moduleManifestReader, String moduleName) throws IOException {
+    ModuleFootprint footprint =
+        mModuleStore instanceof ModuleFootprintProvider
+            ? ((ModuleFootprintProvider) mModuleStore)
+                .getModuleFootprint(moduleManifestReader, moduleName)
+            : ModuleFootprint.fromManifest(moduleManifestReader.readModuleManifest(moduleName));
+    if (!mLazilyLoadedModules.contains(moduleName)) {
+      return footprint;
     }
+    // The runtime maps the optimized dex file and the linker maps native libraries, a pending
+    // optimized dex file is not mapped until it replaces the optimized one.
+    return footprint.withMapping(
+        true, footprint.getOptimizedDexBytes() + footprint.getNativeLibsBytes());
   }
 
-  private synchronized void injectModule(ModulePathsAndDependencies modulePathsAndDependencies)
+  private ModulePathsAndDependencies resolveModulePaths(String moduleName) throws IOException {
+    long startTime = startPhase(moduleName, LoadPhase.RESOLVE);
+    ModulePathsAndDependencies modulePathsAndDependencies;
+    try {
+      modulePathsAndDependencies =
+          mModuleStore.resolveModulePaths(mModuleManifestReader, moduleName);
+    } catch (IOException | RuntimeException e) {
+      failPhase(moduleName, LoadPhase.RESOLVE, startTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.RESOLVE, startTime);
+    return modulePathsAndDependencies;
+  }
+
+  private void installDependentModules(String moduleName, List<String> dependentModules)
       throws IOException {
-    if (modulePathsAndDependencies.containsDexFile()) {
-      // inject .dex file into ClassLoader
+    if (dependentModules.isEmpty()) {
+      return;
+    }
+    long startTime = startPhase(moduleName, LoadPhase.DEPENDENCIES);
+    try {
+      for (String module : dependentModules) {
+        installModule(module);
+      }
+    } catch (IOException | RuntimeException e) {
+      failPhase(moduleName, LoadPhase.DEPENDENCIES, startTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.DEPENDENCIES, startTime);
+  }
+
+  private Class loadClass(String moduleName, String className) throws ClassNotFoundException {
+    long startTime = startPhase(moduleName, LoadPhase.CLASS_LOAD);
+    Class implClass;
+    try {
+      implClass = getClassLoader().loadClass(className);
+    } catch (ClassNotFoundException | RuntimeException e) {
+      failPhase(moduleName, LoadPhase.CLASS_LOAD, startTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.CLASS_LOAD, startTime);
+    return implClass;
+  }
+
+  private void injectModule(ModulePathsAndDependencies modulePathsAndDependencies)
+      throws IOException {
+    String moduleName = modulePathsAndDependencies.getModuleName();
+    long startTime = startPhase(moduleName, LoadPhase.INJECT);
+    try {
+      injectModuleFiles(modulePathsAndDependencies);
+    } catch (IOException | RuntimeException e) {
+      failPhase(moduleName, LoadPhase.INJECT, startTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.INJECT, startTime);
+  }
+
+  // A listener may throw (e.g. MainThreadLoadPolicy), so it's called outside of a trace section
+  // and after the phase it reports is over.
+  private long startPhase(String moduleName, LoadPhase phase) {
+    if (mLoadPhaseListener != null) {
+      mLoadPhaseListener.onPhaseStarted(moduleName, phase);
+    }
+    ModuleTrace.beginSection(phase.name(), moduleName);
+    return mClock.nanoTime();
+  }
+
+  private void finishPhase(String moduleName, LoadPhase phase, long startTime) {
+    long durationNs = mClock.nanoTime() - startTime;
+    ModuleTrace.endSection();
+    if (mLoadPhaseListener != null) {
+      mLoadPhaseListener.onPhaseFinished(moduleName, phase, durationNs);
+    }
+  }
+
+  private void failPhase(String moduleName, LoadPhase phase, long startTime, Throwable error) {
+    long durationNs = mClock.nanoTime() - startTime;
+    ModuleTrace.endSection();
+    if (mLoadPhaseListener != null) {
+      mLoadPhaseListener.onPhaseFailed(moduleName, phase, durationNs, error);
+    }
+  }
+
+  private ClassLoader getClassLoader() {
+    return mContext != null ? mContext.getClassLoader() : mClassLoader;
+  }
+
+  private void addDexWithOptimization(ModulePathsAndDependencies modulePathsAndDependencies)
+      throws IOException {
+    String moduleName = modulePathsAndDependencies.getModuleName();
+    long startTime = startPhase(moduleName, LoadPhase.DEXOPT);
+    try {
+      // inject .dex file into ClassLoader, it's optimized first
       mDexAdder.addDex(
           modulePathsAndDependencies.getDexFile(),
           modulePathsAndDependencies.getOptimizedDexFile());
+    } catch (IOException | RuntimeException e) {
+      failPhase(moduleName, LoadPhase.DEXOPT, startTime, e);
+      throw e;
+    }
+    finishPhase(moduleName, LoadPhase.DEXOPT, startTime);
+    File optimizedDexFile = modulePathsAndDependencies.getOptimizedDexFile();
+    if (optimizedDexFile.exists()) {
+      try {
+        // Next loads of the module know that it's optimized for this runtime
+        OptimizedDexFingerprint.record(optimizedDexFile);
+      } catch (IOException e) {
+        // The module is loaded, the next load only reports a dexopt which doesn't happen
+      }
+    }
+  }
+
+  /**
+   * Returns true if adding a dex file optimizes it: there's no optimized dex file yet or it was
+   * produced under a different runtime or system image, see {@link OptimizedDexFingerprint}.
+   */
+  private static boolean isOptimizationNeeded(File optimizedDexFile) {
+    return !optimizedDexFile.exists() || OptimizedDexFingerprint.isStale(optimizedDexFile);
+  }
+
+  private synchronized void injectModuleFiles(
+      ModulePathsAndDependencies modulePathsAndDependencies) throws IOException {
+    // Threads which raced past the check in loadModule or installModule wait here for the one which
+    // injects the module, a dex file must not be added twice.
+    if (mLazilyLoadedModules.contains(modulePathsAndDependencies.getModuleName())) {
+      return;
+    }
+    ModuleInstallJournal installJournal = modulePathsAndDependencies.getInstallJournal();
+    if (modulePathsAndDependencies.containsDexFile()) {
+      // Another process may be optimizing the same dex file for the first time, wait for it so that
+      // the optimized dex file it produces is reused. Once it's optimized adding it is cheap.
+      ModuleFileLock lock = null;
+      if (installJournal != null && !installJournal.isOptimized()) {
+        lock = installJournal.lock();
+        installJournal.reload();
+      }
+      try {
+        boolean isOptimizationJournaled = lock != null && !installJournal.isOptimized();
+        if (isOptimizationJournaled) {
+          installJournal.append(ModuleInstallJournal.OPTIMIZE_STARTED);
+          addDexWithOptimization(modulePathsAndDependencies);
+          installJournal.append(ModuleInstallJournal.OPTIMIZE_DONE);
+        } else if (isOptimizationNeeded(modulePathsAndDependencies.getOptimizedDexFile())) {
+          // Stores without a journal, or an optimized dex file which the runtime re-optimizes
+          // after an OS update although the journal says it's optimized
+          addDexWithOptimization(modulePathsAndDependencies);
+        } else {
+          // inject .dex file into ClassLoader
+          mDexAdder.addDex(
+              modulePathsAndDependencies.getDexFile(),
+              modulePathsAndDependencies.getOptimizedDexFile());
+        }
+      } finally {
+        if (lock != null) {
+          lock.release();
+        }
+      }
     }
     if (modulePathsAndDependencies.containsNativeLib()) {
       if (mNativeModuleLoader == null) {
         throw new IllegalArgumentException("Native loader must not be null");
       }
       // Inject .so files into System's native lib loader
-      mNativeModuleLoader.load(modulePathsAndDependencies);
+      ModuleTrace.beginSection("nativeLoad", modulePathsAndDependencies.getModuleName());
+      try {
+        mNativeModuleLoader.load(modulePathsAndDependencies);
+      } finally {
+        ModuleTrace.endSection();
+      }
+      if (installJournal != null) {
+        installJournal.append(ModuleInstallJournal.LIBS_DONE);
+      }
     }
     mLazilyLoadedModules.add(modulePathsAndDependencies.getModuleName());
+    mFailureBackoff.onModuleInstalled(modulePathsAndDependencies.getModuleName());
+    if (mBackgroundDexOptimizer != null) {
+      mBackgroundDexOptimizer.onModuleInjected(modulePathsAndDependencies);
+    }
+  }
+
+  public static class Builder {
+    @Nullable private final Context context;
+    @Nullable private final ClassLoader classLoader;
+    private final ModuleStore moduleStore;
+    private final ModuleManifestReader moduleManifestReader;
+    private final LazyLoadListener lazyLoadListener;
+    private final DexAdder dexAdder;
+    private boolean areAppModulesEnabled = true;
+    @Nullable private NativeModuleLoader nativeModuleLoader;
+    @Nullable private BackgroundDexOptimizer backgroundDexOptimizer;
+    @Nullable private LoadPhaseListener loadPhaseListener;
+    private ModuleClock clock = ModuleClock.SYSTEM;
+    private long initialFailureBackoffMs = DEFAULT_INITIAL_FAILURE_BACKOFF_MS;
+    private long maxFailureBackoffMs = DEFAULT_MAX_FAILURE_BACKOFF_MS;
+
+    /** Classes of modules are loaded by a class loader of the context */
+    public Builder(
+        Context context,
+        ModuleStore moduleStore,
+        ModuleManifestReader moduleManifestReader,
+        LazyLoadListener lazyLoadListener,
+        DexAdder dexAdder) {
+      this(context, null, moduleStore, moduleManifestReader, lazyLoadListener, dexAdder);
+    }
+
+    /**
+     * Classes of modules are loaded by a given class loader, it doesn't require Android (e.g. a
+     * {@link JvmModuleClassLoader} which is also the dex adder).
+     */
+    public Builder(
+        ClassLoader classLoader,
+        ModuleStore moduleStore,
+        ModuleManifestReader moduleManifestReader,
+        LazyLoadListener lazyLoadListener,
+        DexAdder dexAdder) {
+      this(null, classLoader, moduleStore, moduleManifestReader, lazyLoadListener, dexAdder);
+    }
+
+    private Builder(
+        @Nullable Context context,
+        @Nullable ClassLoader classLoader,
+        ModuleStore moduleStore,
+        ModuleManifestReader moduleManifestReader,
+        LazyLoadListener lazyLoadListener,
+        DexAdder dexAdder) {
+      this.context = context;
+      this.classLoader = classLoader;
+      this.moduleStore = moduleStore;
+      this.moduleManifestReader = moduleManifestReader;
+      this.lazyLoadListener = lazyLoadListener;
+      this.dexAdder = dexAdder;
+    }
+
+    public Builder setAppModulesEnabled(boolean areAppModulesEnabled) {
+      this.areAppModulesEnabled = areAppModulesEnabled;
+      return this;
+    }
+
+    public Builder setNativeModuleLoader(@Nullable NativeModuleLoader nativeModuleLoader) {
+      this.nativeModuleLoader = nativeModuleLoader;
+      return this;
+    }
+
+    /**
+     * Sets an optional post-install stage which is notified about every injected module, see
+     * {@link BackgroundDexOptimizer}
+     */
+    public Builder setBackgroundDexOptimizer(
+        @Nullable BackgroundDexOptimizer backgroundDexOptimizer) {
+      this.backgroundDexOptimizer = backgroundDexOptimizer;
+      return this;
+    }
+
+    /** Sets an optional listener of load phases, e.g. {@link ModuleLoadMetrics} */
+    public Builder setLoadPhaseListener(@Nullable LoadPhaseListener loadPhaseListener) {
+      this.loadPhaseListener = loadPhaseListener;
+      return this;
+    }
+
+    /** Sets a clock which durations of loads are measured with, e.g. a fake one in tests */
+    public Builder setClock(ModuleClock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Sets how long a module which failed to install (with an IOException, e.g. because storage is
+     * full) fails fast with {@link ModuleBackoffException} before it's tried again. The window
+     * doubles with every failure in a row up to the maximum, 0 turns the backoff off. By default
+     * it's 1 second up to 5 minutes.
+     */
+    public Builder setFailureBackoff(long initialBackoffMs, long maxBackoffMs) {
+      this.initialFailureBackoffMs = initialBackoffMs;
+      this.maxFailureBackoffMs = maxBackoffMs;
+      return this;
+    }
+
+    public DefautlLoaderAlgorithm build() {
+      return new DefautlLoaderAlgorithm(this);
+    }
   }
 }
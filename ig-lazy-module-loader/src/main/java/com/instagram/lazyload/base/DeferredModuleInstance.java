@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * An instance of a class of a lazily loaded module which is created when the module is loaded. It's
+ * used by proxies generated for interfaces annotated with {@link LazyModuleProxy}.
+ *
+ * <p>When created with an executor, the module starts loading on that executor right away and
+ * callers don't wait for it: calls which don't return anything are queued (see {@link #run}) and
+ * replayed in order once the instance is created, calls which need the instance (see {@link #get})
+ * wait for it at most a given time. Replayed calls run on the thread of the executor, not on the
+ * threads which made them, so calls which need a particular thread (e.g. the main thread for views)
+ * shouldn't be deferred. Calls made after the instance is ready run directly on the calling thread,
+ * and so do calls which replayed calls make on the executor thread. Without an executor the module
+ * is loaded on first call on the calling thread.
+ *
+ * <p>If the load fails, queued calls are dropped and reported to a {@link LoadFailureListener}, and
+ * the next call starts a new load. Callers of replayed calls have already returned, so exceptions
+ * thrown by replayed calls are reported to the listener too (and lost without one).
+ */
+public class DeferredModuleInstance<T> {
+
+  /** A call which doesn't return anything, so it can be deferred until the instance is ready */
+  public interface Call<T> {
+    void run(T instance);
+  }
+
+  /** Interface to implement by clients to learn about calls which were never run */
+  public interface LoadFailureListener {
+
+    /** Called on the thread of the executor when a load fails, after queued calls are dropped */
+    void onLoadFailed(String moduleName, Throwable failure, int droppedCallCount);
+
+    /** Called on the thread of the executor when a queued call throws while it's replayed */
+    void onReplayedCallFailed(String moduleName, RuntimeException failure);
+  }
+
+  private final LazyModuleLoader mLoader;
+  private final Class<T> mType;
+  private final String mModuleName;
+  private final String mClassName;
+  @Nullable private final Executor mExecutor;
+  private final long mTimeoutMs;
+  @Nullable private final LoadFailureListener mLoadFailureListener;
+  private final Runnable mLoadTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          loadAndReplayPendingCalls();
+        }
+      };
+  // Set once the instance is created and all pending calls are replayed
+  @Nullable private volatile T mInstance;
+  // Fields below are guarded by this
+  private final ArrayDeque<Call<T>> mPendingCalls = new ArrayDeque<>();
+  private boolean mIsLoading;
+  private int mLoadCount;
+  // Number of the last load which failed, callers waiting for that load see its failure
+  private int mFailedLoad;
+  @Nullable private Throwable mFailure;
+  // Set while pending calls are replayed, calls made by them on that thread run directly
+  @Nullable private Thread mReplayingThread;
+  @Nullable private T mReplayingInstance;
+
+  /** Creates an instance which is loaded on first call on the calling thread. */
+  public DeferredModuleInstance(
+      LazyModuleLoader loader, Class<T> type, String moduleName, String className) {
+    this(loader, type, moduleName, className, null, 0, null);
+  }
+
+  /**
+   * Creates an instance which starts loading on a given executor right away.
+   *
+   * @param timeoutMs how long {@link #get} waits for the instance before it fails
+   */
+  public DeferredModuleInstance(
+      LazyModuleLoader loader,
+      Class<T> type,
+      String moduleName,
+      String className,
+      @Nullable Executor executor,
+      long timeoutMs) {
+    this(loader, type, moduleName, className, executor, timeoutMs, null);
+  }
+
+  /**
+   * Same as above, calls dropped because the load failed are reported to a given listener.
+   *
+   * @param timeoutMs how long {@link #get} waits for the instance before it fails
+   */
+  public DeferredModuleInstance(
+      LazyModuleLoader loader,
+      Class<T> type,
+      String moduleName,
+      String className,
+      @Nullable Executor executor,
+      long timeoutMs,
+      @Nullable LoadFailureListener loadFailureListener) {
+    mLoader = loader;
+    mType = type;
+    mModuleName = moduleName;
+    mClassName = className;
+    mExecutor = executor;
+    mTimeoutMs = timeoutMs;
+    mLoadFailureListener = loadFailureListener;
+    if (executor != null) {
+      synchronized (this) {
+        startLoad();
+      }
+    }
+  }
+
+  /** Returns the instance if it's ready, it never waits. */
+  @Nullable
+  public T getIfReady() {
+    return mInstance;
+  }
+
+  /**
+   * Returns the instance, it waits for the module to be loaded if needed. If the last load failed,
+   * a new one is started.
+   *
+   * @throws IllegalStateException if the module can't be loaded or it's not loaded in time
+   */
+  public T get() {
+    T instance = mInstance;
+    if (instance != null) {
+      return instance;
+    }
+    if (mExecutor == null) {
+      return loadOnCallingThread();
+    }
+    synchronized (this) {
+      if (mReplayingThread == Thread.currentThread()) {
+        return mReplayingInstance;
+      }
+      if (mInstance == null && !mIsLoading) {
+        startLoad();
+      }
+      int load = mLoadCount;
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mTimeoutMs);
+      while (mInstance == null && mFailedLoad != load) {
+        long remainingNs = deadline - System.nanoTime();
+        if (remainingNs <= 0) {
+          throw new IllegalStateException(
+              "Module " + mModuleName + " was not loaded within " + mTimeoutMs + "ms");
+        }
+        try {
+          TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for " + mModuleName, e);
+        }
+      }
+      if (mInstance == null) {
+        throw new IllegalStateException("Unable to load module " + mModuleName, mFailure);
+      }
+      return mInstance;
+    }
+  }
+
+  /**
+   * Runs a call on the instance. If the instance is being loaded in the background, the call is
+   * queued and this method returns immediately. If the last load failed, a new one is started.
+   *
+   * @throws IllegalStateException if the module can't be loaded on the calling thread
+   */
+  public void run(Call<T> call) {
+    synchronized (this) {
+      // A call made by a replayed call runs right away, see get()
+      boolean isReplaying = mReplayingThread == Thread.currentThread();
+      if (mExecutor != null && mInstance == null && !isReplaying) {
+        mPendingCalls.add(call);
+        if (!mIsLoading) {
+          startLoad();
+        }
+        return;
+      }
+    }
+    call.run(get());
+  }
+
+  // Caller must hold the lock of this
+  private void startLoad() {
+    mIsLoading = true;
+    mLoadCount++;
+    mExecutor.execute(mLoadTask);
+  }
+
+  private synchronized T loadOnCallingThread() {
+    if (mInstance == null) {
+      try {
+        mInstance = mType.cast(mLoader.createModuleInstance(mModuleName, mClassName));
+      } catch (LazyLoadingException e) {
+        // Nothing is cached, so next call tries again
+        throw new IllegalStateException("Unable to load module " + mModuleName, e);
+      }
+    }
+    return mInstance;
+  }
+
+  private void loadAndReplayPendingCalls() {
+    T instance;
+    try {
+      instance = mType.cast(mLoader.createModuleInstance(mModuleName, mClassName));
+    } catch (LazyLoadingException | RuntimeException e) {
+      int droppedCallCount;
+      synchronized (this) {
+        // Callers of queued calls have already returned, the calls can only be reported
+        droppedCallCount = mPendingCalls.size();
+        mPendingCalls.clear();
+        mFailure = e;
+        mFailedLoad = mLoadCount;
+        mIsLoading = false;
+        notifyAll();
+      }
+      if (mLoadFailureListener != null) {
+        mLoadFailureListener.onLoadFailed(mModuleName, e, droppedCallCount);
+      }
+      return;
+    }
+    synchronized (this) {
+      mReplayingThread = Thread.currentThread();
+      mReplayingInstance = instance;
+    }
+    while (true) {
+      Call<T> call;
+      synchronized (this) {
+        call = mPendingCalls.poll();
+        if (call == null) {
+          // Calls made from now on run directly, they can't overtake the replayed ones
+          mInstance = instance;
+          mReplayingThread = null;
+          mReplayingInstance = null;
+          mIsLoading = false;
+          mFailure = null;
+          notifyAll();
+          break;
+        }
+      }
+      try {
+        call.run(instance);
+      } catch (RuntimeException e) {
+        // Callers have already returned and a failure thrown on the executor thread could kill
+        // the process, so it's only reported
+        if (mLoadFailureListener != null) {
+          mLoadFailureListener.onReplayedCallFailed(mModuleName, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Module store which uses files of modules in place from a directory, with the same layout as
+ * assets: a dex (or jar) file of a module is located at {@code <directory>/<module name>/<dex file
+ * name>} and its native libraries in {@code <directory>/<module name>/libs}. Nothing is copied, so
+ * unlike {@link DefaultModuleStore} it doesn't depend on Android and it can be used on a plain JVM
+ * together with {@link JvmModuleClassLoader}. Optimized dex files (if any are produced by a dex
+ * adder) are put in a sub-directory of a module, so the directory must be writable.
+ */
+public class DirectoryModuleStore implements ModuleStore, ModuleFootprintProvider {
+
+  private static final String OPTIMIZED_DEX_FILE_STORAGE = "opt";
+  private static final String NATIVE_LIBS_STORAGE = "libs";
+
+  private final File mDirectory;
+
+  public DirectoryModuleStore(File directory) {
+    mDirectory = directory;
+  }
+
+  @Override
+  public ModulePathsAndDependencies resolveModulePaths(
+      ModuleManifestReader moduleManifestReader, String moduleName) throws IOException {
+    ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+    File modulePath = new File(mDirectory, moduleName);
+
+    File dexFile = null;
+    File optimizedDexFile = null;
+    File nativeLibsDirectory = null;
+    if (moduleManifest.containsDexFile()) {
+      dexFile = new File(modulePath, moduleManifest.getDexFileName());
+      if (!dexFile.isFile()) {
+        throw new IOException("Module file not found " + dexFile);
+      }
+      File optimizedDexDirectory = new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE);
+      FileIOUtils.createDirectoryOrThrow(optimizedDexDirectory);
+      optimizedDexFile = new File(optimizedDexDirectory, moduleManifest.getDexFileName());
+    }
+    if (moduleManifest.containsNativeLib()) {
+      nativeLibsDirectory = new File(modulePath, NATIVE_LIBS_STORAGE);
+    }
+
+    return new ModulePathsAndDependencies(
+        moduleName,
+        dexFile,
+        optimizedDexFile,
+        nativeLibsDirectory,
+        moduleManifest.getModuleDependencies());
+  }
+
+  @Override
+  public ModuleFootprint getModuleFootprint(
+      ModuleManifestReader moduleManifestReader, String moduleName) throws IOException {
+    ModuleManifest moduleManifest = moduleManifestReader.readModuleManifest(moduleName);
+    File modulePath = new File(mDirectory, moduleName);
+    long dexBytes = 0;
+    long optimizedDexBytes = 0;
+    long nativeLibsBytes = 0;
+    if (moduleManifest.containsDexFile()) {
+      dexBytes = new File(modulePath, moduleManifest.getDexFileName()).length();
+      optimizedDexBytes =
+          new File(
+                  new File(modulePath, OPTIMIZED_DEX_FILE_STORAGE),
+                  moduleManifest.getDexFileName())
+              .length();
+    }
+    if (moduleManifest.containsNativeLib()) {
+      File[] libFiles = new File(modulePath, NATIVE_LIBS_STORAGE).listFiles();
+      if (libFiles != null) {
+        for (File libFile : libFiles) {
+          nativeLibsBytes += libFile.length();
+        }
+      }
+    }
+    return new ModuleFootprint(
+        moduleName,
+        moduleManifest.getModuleSizeBytes(),
+        dexBytes,
+        optimizedDexBytes,
+        0,
+        nativeLibsBytes,
+        false,
+        0);
+  }
+}
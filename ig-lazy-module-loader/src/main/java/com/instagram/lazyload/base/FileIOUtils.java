@@ -9,12 +9,20 @@
 
 package com.instagram.lazyload.base;
 
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Locale;
 import java.util.Set;
 
@@ -26,6 +34,12 @@ public class FileIOUtils {
 
   /** This method allows to a copy a file from one stream to another */
   public static void copyFile(InputStream from, FileOutputStream to) throws IOException {
+    copyFile(from, to, true);
+  }
+
+  /** Same as above, the file is synced to storage only if requested. */
+  public static void copyFile(InputStream from, FileOutputStream to, boolean sync)
+      throws IOException {
     BufferedInputStream reader = null;
     BufferedOutputStream writer = null;
     try {
@@ -39,7 +53,9 @@ public class FileIOUtils {
     } finally {
       if (writer != null) {
         writer.flush();
-        to.getFD().sync();
+        if (sync) {
+          to.getFD().sync();
+        }
         writer.close();
       }
       if (reader != null) {
@@ -48,12 +64,68 @@ public class FileIOUtils {
     }
   }
 
+  /**
+   * Copies content of a buffer (e.g. a slice of a memory-mapped file) into a file, the buffer is
+   * written directly without copying it through a heap array.
+   */
+  public static void copyFile(ByteBuffer from, FileOutputStream to) throws IOException {
+    copyFile(from, to, true);
+  }
+
+  /** Same as above, the file is synced to storage only if requested. */
+  public static void copyFile(ByteBuffer from, FileOutputStream to, boolean sync)
+      throws IOException {
+    try {
+      FileChannel channel = to.getChannel();
+      while (from.hasRemaining()) {
+        channel.write(from);
+      }
+      if (sync) {
+        to.getFD().sync();
+      }
+    } finally {
+      to.close();
+    }
+  }
+
+  /** Flushes content of a file to storage */
+  public static void syncFile(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.getFD().sync();
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Flushes entries of a directory (e.g. a file renamed into it) to storage. A directory can't be
+   * opened by java.io, it's opened through {@link Os} which is available from Lollipop, so this is
+   * a no-op on older versions.
+   */
+  public static void syncDirectory(File directory) throws IOException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return;
+    }
+    try {
+      FileDescriptor fd = Os.open(directory.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+      try {
+        Os.fsync(fd);
+      } finally {
+        Os.close(fd);
+      }
+    } catch (ErrnoException e) {
+      throw new IOException(e);
+    }
+  }
+
   /**
    * Deletes modules used by old app versions. This method can be called on app upgrade (e.g. on
    * MY_PACKAGE_REPLACED broadcast received).
    *
    * @param parentDirectory directory which contains module sub-directories
    * @param moduleDirectoriesToKeep name of directories that should be kept, others will be deleted
+   * @see ModuleCleaner for a variant which deletes modules in the background
    */
   public static void deleteModulesOtherThan(
       File parentDirectory, Set<String> moduleDirectoriesToKeep) {
@@ -66,22 +138,14 @@ public class FileIOUtils {
     }
     for (String module : modules) {
       if (!moduleDirectoriesToKeep.contains(module)) {
-        deletePathRecursively(new File(parentDirectory, module).getAbsolutePath());
+        new FileTreeDeleter(new File(parentDirectory, module)).deleteBatch(Integer.MAX_VALUE);
       }
     }
   }
 
-  private static void deletePathRecursively(String directory) {
-    File fileOrDirectory = new File(directory);
-    if (fileOrDirectory.isDirectory()) {
-      File[] files = fileOrDirectory.listFiles();
-      if (files != null) {
-        for (File child : files) {
-          deletePathRecursively(child.toString());
-        }
-      }
-    }
-    fileOrDirectory.delete();
+  /** Deletes a file or a directory with all its content. */
+  static void deletePathRecursively(String directory) {
+    new FileTreeDeleter(new File(directory)).deleteBatch(Integer.MAX_VALUE);
   }
 
   /** A helper method to create a directory, it will throw exception if creation fails. */
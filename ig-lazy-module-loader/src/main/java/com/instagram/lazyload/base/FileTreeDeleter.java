@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.util.ArrayDeque;
+
+/**
+ * Deletes a file or a directory with all its content without recursion, so that deep trees don't
+ * need deep stacks, and in batches of limited size, so that a large tree can be deleted
+ * incrementally. Directories are deleted after their content, in reverse order of visiting them.
+ */
+class FileTreeDeleter {
+
+  private final ArrayDeque<File> mFilesToVisit = new ArrayDeque<>();
+  private final ArrayDeque<File> mDirectoriesToDelete = new ArrayDeque<>();
+
+  FileTreeDeleter(File root) {
+    mFilesToVisit.push(root);
+  }
+
+  /**
+   * Deletes at most a given number of files and directories. Returns number of bytes of deleted
+   * files.
+   */
+  long deleteBatch(int maxDeletes) {
+    long bytesDeleted = 0;
+    int deletes = 0;
+    while (deletes < maxDeletes && !isDone()) {
+      if (!mFilesToVisit.isEmpty()) {
+        File file = mFilesToVisit.pop();
+        File[] children = file.listFiles();
+        if (children != null) {
+          // It's a directory, delete it once its content is deleted
+          mDirectoriesToDelete.push(file);
+          for (File child : children) {
+            mFilesToVisit.push(child);
+          }
+          continue;
+        }
+        long length = file.length();
+        if (file.delete()) {
+          bytesDeleted += length;
+        }
+      } else {
+        mDirectoriesToDelete.pop().delete();
+      }
+      ++deletes;
+    }
+    return bytesDeleted;
+  }
+
+  boolean isDone() {
+    return mFilesToVisit.isEmpty() && mDirectoriesToDelete.isEmpty();
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageButton;
+import android.widget.ProgressBar;
+import javax.annotation.Nullable;
+
+/**
+ * Shared part of {@link LazyFragmentHost} and {@link LazySupportFragmentHost}. It tracks how far
+ * the host fragment got in its lifecycle, replays that into the hosted object once the module is
+ * loaded and swaps the placeholder, error and hosted views in the container of the host. All
+ * methods are called on the main thread.
+ */
+abstract class FragmentHostController<T extends FragmentLikeLifecycle> {
+
+  private int mState = HostLifecycle.INITIALIZING;
+  @Nullable private T mFragmentLike;
+  @Nullable private LazyLoadingException mLoadFailure;
+  private boolean mIsLoading;
+  @Nullable private Bundle mSavedInstanceState;
+  @Nullable private LayoutInflater mLayoutInflater;
+  @Nullable private ViewGroup mContainer;
+
+  /** Starts loading the module in the background, the result is passed to {@link #onLoaded} */
+  abstract void startLoad();
+
+  /** Returns the activity the host is attached to */
+  abstract Context getHostContext();
+
+  abstract View createPlaceholderView(Context context);
+
+  abstract View createErrorView(Context context, LazyLoadingException e);
+
+  /** Called before the error view is shown */
+  abstract void onLoadFailed(LazyLoadingException e);
+
+  /** Returns a container of the placeholder, error and hosted views */
+  ViewGroup createContainer(Context context) {
+    return new FrameLayout(context);
+  }
+
+  @Nullable
+  T getFragmentLike() {
+    return mFragmentLike;
+  }
+
+  void onCreate(@Nullable Bundle savedInstanceState) {
+    mState = HostLifecycle.CREATED;
+    mSavedInstanceState = savedInstanceState;
+    mIsLoading = true;
+    startLoad();
+  }
+
+  View onCreateView(LayoutInflater inflater, @Nullable Bundle savedInstanceState) {
+    mLayoutInflater = inflater;
+    mContainer = createContainer(inflater.getContext());
+    if (mFragmentLike != null) {
+      addFragmentLikeView(mFragmentLike.onCreateView(inflater, mContainer, savedInstanceState));
+    } else if (mLoadFailure != null) {
+      mContainer.addView(createErrorView(inflater.getContext(), mLoadFailure));
+    } else {
+      mContainer.addView(createPlaceholderView(inflater.getContext()));
+    }
+    return mContainer;
+  }
+
+  void onActivityCreated(@Nullable Bundle savedInstanceState) {
+    mState = HostLifecycle.ACTIVITY_CREATED;
+    if (mFragmentLike != null) {
+      mFragmentLike.onActivityCreated(savedInstanceState);
+    }
+  }
+
+  void onStart() {
+    mState = HostLifecycle.STARTED;
+    if (mFragmentLike != null) {
+      mFragmentLike.onStart();
+    }
+  }
+
+  void onResume() {
+    mState = HostLifecycle.RESUMED;
+    if (mFragmentLike != null) {
+      mFragmentLike.onResume();
+    }
+  }
+
+  void onPause() {
+    if (mFragmentLike != null) {
+      mFragmentLike.onPause();
+    }
+    mState = HostLifecycle.STARTED;
+  }
+
+  void onStop() {
+    if (mFragmentLike != null) {
+      mFragmentLike.onStop();
+    }
+    mState = HostLifecycle.ACTIVITY_CREATED;
+  }
+
+  void onDestroyView() {
+    if (mFragmentLike != null) {
+      mFragmentLike.onDestroyView();
+    }
+    mState = HostLifecycle.CREATED;
+    mLayoutInflater = null;
+    mContainer = null;
+  }
+
+  void onDestroy() {
+    if (mFragmentLike != null) {
+      mFragmentLike.onDestroy();
+    }
+    mState = HostLifecycle.DESTROYED;
+  }
+
+  void onDetach() {
+    if (mFragmentLike != null) {
+      mFragmentLike.onDetach();
+    }
+  }
+
+  /** Loads the module again after a failure, the placeholder is shown until it's loaded */
+  void retry() {
+    if (mFragmentLike != null || mIsLoading || mState == HostLifecycle.DESTROYED) {
+      return;
+    }
+    mLoadFailure = null;
+    if (mContainer != null) {
+      mContainer.removeAllViews();
+      mContainer.addView(createPlaceholderView(mContainer.getContext()));
+    }
+    mIsLoading = true;
+    startLoad();
+  }
+
+  void onLoaded(@Nullable T fragmentLike, @Nullable LazyLoadingException failure) {
+    mIsLoading = false;
+    if (mState == HostLifecycle.DESTROYED) {
+      // The fragment is gone, the loaded module is kept by the loader for the next use
+      return;
+    }
+    if (fragmentLike == null) {
+      mLoadFailure = failure;
+      onLoadFailed(failure);
+      if (mContainer != null) {
+        mContainer.removeAllViews();
+        mContainer.addView(createErrorView(mContainer.getContext(), failure));
+      }
+      return;
+    }
+    mFragmentLike = fragmentLike;
+    fragmentLike.onAttach(getHostContext());
+    fragmentLike.onCreate(mSavedInstanceState);
+    if (mContainer != null) {
+      mContainer.removeAllViews();
+      addFragmentLikeView(
+          fragmentLike.onCreateView(mLayoutInflater, mContainer, mSavedInstanceState));
+    }
+    if (mState >= HostLifecycle.ACTIVITY_CREATED) {
+      fragmentLike.onActivityCreated(mSavedInstanceState);
+    }
+    if (mState >= HostLifecycle.STARTED) {
+      fragmentLike.onStart();
+    }
+    if (mState >= HostLifecycle.RESUMED) {
+      fragmentLike.onResume();
+    }
+  }
+
+  private void addFragmentLikeView(@Nullable View view) {
+    if (view != null && mContainer != null) {
+      mContainer.addView(view);
+    }
+  }
+
+  /** Returns a progress bar in the middle of the container */
+  static View createDefaultPlaceholderView(Context context) {
+    ProgressBar progressBar = new ProgressBar(context);
+    progressBar.setLayoutParams(createCenteredLayoutParams());
+    return progressBar;
+  }
+
+  /** Returns a button in the middle of the container which loads the module again */
+  static View createDefaultErrorView(Context context, final FragmentHostController<?> controller) {
+    ImageButton retryButton = new ImageButton(context);
+    // A standard icon, so the library doesn't need resources nor translations
+    retryButton.setImageResource(android.R.drawable.ic_menu_rotate);
+    retryButton.setLayoutParams(createCenteredLayoutParams());
+    retryButton.setOnClickListener(
+        new View.OnClickListener() {
+          @Override
+          public void onClick(View view) {
+            controller.retry();
+          }
+        });
+    return retryButton;
+  }
+
+  private static FrameLayout.LayoutParams createCenteredLayoutParams() {
+    return new FrameLayout.LayoutParams(
+        ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.CENTER);
+  }
+}
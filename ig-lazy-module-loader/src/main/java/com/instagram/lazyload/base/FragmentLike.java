@@ -17,8 +17,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import javax.annotation.Nullable;
 
-/** Similar concept to {@link SupportFragmentLike}. */
-public abstract class FragmentLike {
+/** Similar concept to {@link SupportFragmentLike}, it can be hosted by {@link LazyFragmentHost}. */
+public abstract class FragmentLike implements FragmentLikeLifecycle {
 
   /** Actual fragment that embeds this object */
   protected final Fragment mFragment;
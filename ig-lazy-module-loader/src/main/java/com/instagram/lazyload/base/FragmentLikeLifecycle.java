@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import javax.annotation.Nullable;
+
+/**
+ * Lifecycle methods shared by {@link FragmentLike} and {@link SupportFragmentLike}, so that their
+ * hosts can share {@link FragmentHostController}.
+ */
+interface FragmentLikeLifecycle {
+
+  void onAttach(Context context);
+
+  void onCreate(@Nullable Bundle savedInstanceState);
+
+  @Nullable
+  View onCreateView(
+      LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState);
+
+  void onActivityCreated(@Nullable Bundle savedInstanceState);
+
+  void onStart();
+
+  void onResume();
+
+  void onPause();
+
+  void onStop();
+
+  void onDestroyView();
+
+  void onDestroy();
+
+  void onDetach();
+}
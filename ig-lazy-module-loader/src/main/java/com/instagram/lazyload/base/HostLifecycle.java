@@ -0,0 +1,23 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/** States of a host fragment, ordered as they are reached when it's created. */
+final class HostLifecycle {
+
+  static final int DESTROYED = -1;
+  static final int INITIALIZING = 0;
+  static final int CREATED = 1;
+  static final int ACTIVITY_CREATED = 2;
+  static final int STARTED = 3;
+  static final int RESUMED = 4;
+
+  private HostLifecycle() {}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Loads a module of a host of an Android component (see {@link LazyServiceHost} and {@link
+ * LazySupportFragmentHost}) on a background thread and passes the result to the main thread.
+ */
+abstract class HostModuleLoad<T> implements Runnable {
+
+  private static Executor sDefaultExecutor;
+
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+  /** Called on the loading thread */
+  protected abstract T load() throws LazyLoadingException;
+
+  /** Called on the main thread with either the loaded object or the failure */
+  protected abstract void onLoaded(@Nullable T loaded, @Nullable LazyLoadingException failure);
+
+  @Override
+  public void run() {
+    T loaded = null;
+    LazyLoadingException failure = null;
+    try {
+      loaded = load();
+    } catch (LazyLoadingException e) {
+      failure = e;
+    }
+    final T loadedObject = loaded;
+    final LazyLoadingException loadFailure = failure;
+    mMainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            onLoaded(loadedObject, loadFailure);
+          }
+        });
+  }
+
+  /** Returns a thread shared by all hosts */
+  static synchronized Executor getDefaultExecutor() {
+    if (sDefaultExecutor == null) {
+      sDefaultExecutor =
+          Executors.newSingleThreadExecutor(
+              new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  Thread thread = new Thread(runnable, "LazyModuleHost");
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+    }
+    return sDefaultExecutor;
+  }
+}
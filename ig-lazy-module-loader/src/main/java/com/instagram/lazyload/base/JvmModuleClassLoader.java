@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * {@link DexAdder} for a plain JVM (e.g. build tools or server processes) which loads classes of
+ * modules from jar files instead of dex files. Modules are added to this class loader, which is a
+ * child of a given parent, so it should also be the class loader used to load classes of modules,
+ * see {@link DefautlLoaderAlgorithm.Builder#Builder(ClassLoader, ModuleStore,
+ * ModuleManifestReader, LazyLoadListener, DexAdder)}.
+ */
+public class JvmModuleClassLoader extends URLClassLoader implements DexAdder {
+
+  public JvmModuleClassLoader(ClassLoader parent) {
+    super(new URL[0], parent);
+  }
+
+  /** Jar files are not optimized, so the optimized dex file is ignored. */
+  @Override
+  public void addDex(File dexFile, File odexFile) throws IOException {
+    if (!dexFile.isFile()) {
+      throw new IOException("Module file not found " + dexFile);
+    }
+    addURL(dexFile.toURI().toURL());
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with a fixed memory footprint. Values are counted in buckets of
+ * logarithmic size split into {@link #SUB_BUCKET_COUNT} linear sub-buckets (as in HdrHistogram), so
+ * a value is reported with a relative error of at most 1 / {@link #SUB_BUCKET_COUNT}. Recording a
+ * value doesn't allocate and doesn't block.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+  // Values are in microseconds, larger values (more than an hour) are clamped
+  private static final int MAX_VALUE_BITS = 32;
+  private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong mMaxValue = new AtomicLong();
+
+  public void recordValue(long valueUs) {
+    long value = Math.min(Math.max(valueUs, 0), MAX_VALUE);
+    mBuckets.incrementAndGet(getBucketIndex(value));
+    long maxValue;
+    while (value > (maxValue = mMaxValue.get()) && !mMaxValue.compareAndSet(maxValue, value)) {
+      // retry, another thread recorded a value in the meantime
+    }
+  }
+
+  /**
+   * Returns counts recorded so far and, if reset is true, starts counting from scratch. Each bucket
+   * is reset atomically, so a value recorded concurrently is counted either in this snapshot or in
+   * the next one.
+   */
+  public Snapshot getSnapshot(boolean reset) {
+    long[] buckets = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      buckets[i] = reset ? mBuckets.getAndSet(i, 0) : mBuckets.get(i);
+    }
+    return new Snapshot(buckets, reset ? mMaxValue.getAndSet(0) : mMaxValue.get());
+  }
+
+  static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /** Returns the highest value counted in a given bucket */
+  static long getBucketHighestValue(int index) {
+    int bucket = index >>> SUB_BUCKET_BITS;
+    if (bucket == 0) {
+      return index;
+    }
+    long lowestValue = (long) (SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK)) << (bucket - 1);
+    return lowestValue + (1L << (bucket - 1)) - 1;
+  }
+
+  /** Immutable copy of counts of a histogram */
+  public static class Snapshot {
+    static final Snapshot EMPTY = new Snapshot(new long[0], 0);
+
+    private final long[] mBuckets;
+    private final long mMaxValue;
+    private final long mCount;
+
+    private Snapshot(long[] buckets, long maxValue) {
+      mBuckets = buckets;
+      mMaxValue = maxValue;
+      long count = 0;
+      for (long bucket : buckets) {
+        count += bucket;
+      }
+      mCount = count;
+    }
+
+    public long getCount() {
+      return mCount;
+    }
+
+    public long getMaxUs() {
+      return mMaxValue;
+    }
+
+    /**
+     * Returns a value (in microseconds) which is higher than or equal to a given percentage of
+     * recorded values, e.g. getPercentileUs(99) returns p99. Returns 0 if nothing was recorded.
+     */
+    public long getPercentileUs(double percentile) {
+      if (mCount == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+      long count = 0;
+      for (int i = 0; i < mBuckets.length; ++i) {
+        count += mBuckets[i];
+        if (count >= rank) {
+          return Math.min(getBucketHighestValue(i), mMaxValue);
+        }
+      }
+      return mMaxValue;
+    }
+  }
+}
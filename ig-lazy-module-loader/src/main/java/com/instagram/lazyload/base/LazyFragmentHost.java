@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.app.Fragment;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Same as {@link LazySupportFragmentHost} for a {@link FragmentLike} which is hosted by a framework
+ * fragment.
+ */
+public abstract class LazyFragmentHost extends Fragment {
+
+  private static final String TAG = "LazyFragmentHost";
+
+  private final FragmentHostController<FragmentLike> mController =
+      new FragmentHostController<FragmentLike>() {
+        @Override
+        void startLoad() {
+          loadFragmentLike();
+        }
+
+        @Override
+        Context getHostContext() {
+          return getActivity();
+        }
+
+        @Override
+        View createPlaceholderView(Context context) {
+          return onCreatePlaceholderView(context);
+        }
+
+        @Override
+        View createErrorView(Context context, LazyLoadingException e) {
+          return onCreateErrorView(context, e);
+        }
+
+        @Override
+        void onLoadFailed(LazyLoadingException e) {
+          LazyFragmentHost.this.onLoadFailed(e);
+        }
+      };
+
+  /**
+   * Returns a loader of the module. It's called on the loading thread, so it may create a new
+   * loader (which does disk I/O).
+   */
+  protected abstract LazyModuleLoader getLazyModuleLoader();
+
+  protected abstract String getModuleName();
+
+  /** Returns name of the {@link FragmentLike} class of the module */
+  protected abstract String getFragmentLikeClassName();
+
+  /** Returns an executor which loads the module, by default a thread shared by all hosts */
+  protected Executor getLoadExecutor() {
+    return HostModuleLoad.getDefaultExecutor();
+  }
+
+  /**
+   * Returns a view shown until the module is loaded, by default a progress bar. It should be cheap
+   * to create, e.g. it shouldn't be inflated from a complex layout.
+   */
+  protected View onCreatePlaceholderView(Context context) {
+    return FragmentHostController.createDefaultPlaceholderView(context);
+  }
+
+  /**
+   * Returns a view shown instead of the placeholder when the module can't be loaded, by default a
+   * button which loads it again (see {@link #retryLoad}).
+   */
+  protected View onCreateErrorView(Context context, LazyLoadingException e) {
+    return FragmentHostController.createDefaultErrorView(context, mController);
+  }
+
+  /**
+   * Called on the main thread when the module can't be loaded, before the error view is shown. By
+   * default it only logs the failure.
+   */
+  protected void onLoadFailed(LazyLoadingException e) {
+    Log.e(TAG, "Unable to load module " + getModuleName(), e);
+  }
+
+  /** Loads the module again after it failed to load, e.g. from a custom error view */
+  public void retryLoad() {
+    mController.retry();
+  }
+
+  /** Returns the hosted object or null if the module isn't loaded yet */
+  @Nullable
+  public FragmentLike getFragmentLike() {
+    return mController.getFragmentLike();
+  }
+
+  @Override
+  public void onCreate(@Nullable Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    mController.onCreate(savedInstanceState);
+  }
+
+  @Override
+  public View onCreateView(
+      LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+    return mController.onCreateView(inflater, savedInstanceState);
+  }
+
+  @Override
+  public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+    super.onActivityCreated(savedInstanceState);
+    mController.onActivityCreated(savedInstanceState);
+  }
+
+  @Override
+  public void onStart() {
+    super.onStart();
+    mController.onStart();
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    mController.onResume();
+  }
+
+  @Override
+  public void onPause() {
+    mController.onPause();
+    super.onPause();
+  }
+
+  @Override
+  public void onStop() {
+    mController.onStop();
+    super.onStop();
+  }
+
+  @Override
+  public void onDestroyView() {
+    mController.onDestroyView();
+    super.onDestroyView();
+  }
+
+  @Override
+  public void onDestroy() {
+    mController.onDestroy();
+    super.onDestroy();
+  }
+
+  @Override
+  public void onDetach() {
+    mController.onDetach();
+    super.onDetach();
+  }
+
+  private void loadFragmentLike() {
+    final String moduleName = getModuleName();
+    final String className = getFragmentLikeClassName();
+    getLoadExecutor()
+        .execute(
+            new HostModuleLoad<FragmentLike>() {
+              @Override
+              protected FragmentLike load() throws LazyLoadingException {
+                return getLazyModuleLoader()
+                    .loadFragmentModule(LazyFragmentHost.this, moduleName, className);
+              }
+
+              @Override
+              protected void onLoaded(
+                  @Nullable FragmentLike fragmentLike,
+                  @Nullable LazyLoadingException failure) {
+                mController.onLoaded(fragmentLike, failure);
+              }
+            });
+  }
+}
@@ -15,4 +15,8 @@ public class LazyLoadingException extends Exception {
   public LazyLoadingException(Throwable cause) {
     super(cause);
   }
+
+  public LazyLoadingException(String message) {
+    super(message);
+  }
 }
@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Creates instances of a class of a lazily loaded module without reflection. Implementations are
+ * generated into the module by LazyModuleProcessor for classes annotated with {@link
+ * LazyModuleImplementation}, see {@link LazyModuleLoader} for how they are found.
+ */
+public interface LazyModuleFactory<T> {
+
+  /**
+   * @param host argument passed to the constructor if it has one, e.g. a Context for a {@link
+   *     ServiceLike} or a hosting fragment for a {@link FragmentLike}
+   */
+  T create(Object host);
+}
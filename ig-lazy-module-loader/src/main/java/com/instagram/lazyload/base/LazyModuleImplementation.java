@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class of a lazily loaded module which is created by the base app, e.g. a {@link
+ * ServiceLike} or an implementation of an interface annotated with {@link LazyModuleProxy}.
+ * LazyModuleProcessor generates a {@link LazyModuleFactory} for it, so {@link LazyModuleLoader}
+ * creates its instances by a direct constructor call. The class should have a public constructor
+ * with no arguments or with a single argument which is passed the host, e.g. a Context.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface LazyModuleImplementation {}
@@ -14,6 +14,21 @@ import android.content.Context;
 import android.support.v4.app.Fragment;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Class responsible for loading modules on demand. It provides a method to load a module and get
@@ -22,11 +37,38 @@ import java.lang.reflect.Constructor;
  * method to install a module without actually using the modules - this aims to optimize the first
  * use of the module which is longer than any next load - see {@link
  * LazyModuleLoader#installModule(String)}
+ *
+ * <p>Requests are handled one at a time, except loads of classes of modules which this loader has
+ * loaded or installed already. Loads and installs are foreground requests unless an install is
+ * requested with {@link LoadPriority#BACKGROUND}, waiting foreground requests go first
+ * (see {@link LoadPriority}). A foreground request which waits for a background install (e.g. of
+ * the same module or its dependency) raises the priority of the installing thread until it's done.
+ *
+ * <p>Loads and installs may also be given a deadline and a {@link LoadCancellationToken}, see
+ * {@link LazyModuleLoader#loadModule(String, String, long, LoadCancellationToken)}.
+ *
+ * <p>Classes of modules are instantiated by factories generated by LazyModuleProcessor (see {@link
+ * LazyModuleImplementation}) if there are any, reflection is used only for classes without one.
  */
 public class LazyModuleLoader {
 
+  private static final String FACTORY_CLASS_NAME_SUFFIX = "LazyFactory";
+
   private final Context mContext;
   private final LoaderAlgorithm mLoaderAlgorithm;
+  private final ModuleLoadLock mLock = new ModuleLoadLock();
+  // Guarded by mLock
+  private final Map<Class<?>, LazyModuleFactory<?>> mFactories = new HashMap<>();
+  // Classes which don't have a generated factory, so they aren't looked up again
+  private final Set<Class<?>> mClassesWithoutFactory =
+      Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+  // Modules loaded or installed by this loader, their loads don't need to be moved off the caller
+  private final Set<String> mInstalledModules =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // Loads and installs with a deadline which are in progress in the background, guarded by itself
+  private final Map<String, PendingRequest> mPendingRequests = new HashMap<>();
+  // Runs requests with a deadline, created with the first one and guarded by mPendingRequests
+  @Nullable private Executor mBackgroundExecutor;
 
   public LazyModuleLoader(Context context, LoaderAlgorithm loaderAlgorithm) {
     Context appContext = context.getApplicationContext();
@@ -35,66 +77,76 @@ public class LazyModuleLoader {
   }
 
   /** Convenience methods that loads a module that is known to be a service */
-  public synchronized ServiceLike loadServiceModule(String moduleName, String className)
+  public ServiceLike loadServiceModule(String moduleName, String className)
       throws LazyLoadingException {
-    try {
-      Class lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
-      Constructor c = lazyLoadedClass.getConstructor(Context.class);
-      ServiceLike serviceLike = (ServiceLike) c.newInstance(mContext);
-      return serviceLike;
-    } catch (Throwable t) {
-      throw new LazyLoadingException(t);
-    }
+    return (ServiceLike) newModuleInstance(moduleName, className, Context.class, mContext);
   }
 
   /** Convenience methods that loads a module that is known to be a fragment */
-  public synchronized SupportFragmentLike loadSupportFragmentModule(
+  public SupportFragmentLike loadSupportFragmentModule(
       Fragment hostingFragment, String moduleName, String className) throws LazyLoadingException {
-    try {
-      Class lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
-      Constructor c = lazyLoadedClass.getConstructor(Fragment.class);
-      SupportFragmentLike fragmentLike = (SupportFragmentLike) c.newInstance(hostingFragment);
-      return fragmentLike;
-    } catch (Throwable t) {
-      throw new LazyLoadingException(t);
-    }
+    return (SupportFragmentLike)
+        newModuleInstance(moduleName, className, Fragment.class, hostingFragment);
   }
 
   /** Convenience methods that loads a module that is known to be a fragment */
-  public synchronized FragmentLike loadFragmentModule(
+  public FragmentLike loadFragmentModule(
       android.app.Fragment hostingFragment, String moduleName, String className)
       throws LazyLoadingException {
-    try {
-      Class lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
-      Constructor c = lazyLoadedClass.getConstructor(android.app.Fragment.class);
-      FragmentLike fragmentLike = (FragmentLike) c.newInstance(hostingFragment);
-      return fragmentLike;
-    } catch (Throwable t) {
-      throw new LazyLoadingException(t);
-    }
+    return (FragmentLike)
+        newModuleInstance(moduleName, className, android.app.Fragment.class, hostingFragment);
   }
 
   /** Convenience methods that loads a module that is known to be an activity */
-  public synchronized ActivityLike loadActivityModule(
+  public ActivityLike loadActivityModule(
       Activity activity, String moduleName, String className) throws LazyLoadingException {
+    return (ActivityLike) newModuleInstance(moduleName, className, Activity.class, activity);
+  }
+
+  /**
+   * Loads a module and creates an instance of a given class of it. The class should have a public
+   * constructor which takes a Context or, if it's annotated with {@link LazyModuleImplementation},
+   * a public constructor with no arguments.
+   */
+  public Object createModuleInstance(String moduleName, String className)
+      throws LazyLoadingException {
+    return newModuleInstance(moduleName, className, Context.class, mContext);
+  }
+
+  /** Loads any type of module - it could custom class or Android component */
+  public Class loadModule(String moduleName, String className) throws LazyLoadingException {
+    if (mInstalledModules.contains(moduleName)) {
+      // The module is in memory already, so its class is loaded without the lock and the caller
+      // doesn't wait behind installs of other modules (e.g. a pre-install in the background)
+      return loadModuleClass(moduleName, className);
+    }
+    mLock.acquire(LoadPriority.FOREGROUND);
     try {
-      Class lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
-      Constructor c = lazyLoadedClass.getConstructor(Activity.class);
-      ActivityLike activityLike = (ActivityLike) c.newInstance(activity);
-      return activityLike;
-    } catch (Throwable t) {
-      throw new LazyLoadingException(t);
+      return loadModuleClass(moduleName, className);
+    } finally {
+      mLock.release();
     }
   }
 
-  /** Loads any type of module - it could custom class or Android component */
-  public synchronized Class loadModule(String moduleName, String className)
+  /**
+   * Same as above with a deadline, e.g. for an entry point of a feature which shows a fallback
+   * rather than waits. A module which isn't loaded yet is loaded on a background thread and the
+   * caller waits for it at most timeoutMs ({@link Long#MAX_VALUE} means no deadline) or until the
+   * token is cancelled. Then {@link LoadTimeoutException} or {@link LoadCancelledException} is
+   * thrown, but the load keeps going, so a next call either finds the module loaded or waits for
+   * the same load.
+   */
+  public Class loadModule(
+      String moduleName,
+      String className,
+      long timeoutMs,
+      @Nullable LoadCancellationToken cancellationToken)
       throws LazyLoadingException {
-    try {
-      return mLoaderAlgorithm.loadModule(moduleName, className);
-    } catch (Throwable t) {
-      throw new LazyLoadingException(t);
+    if (mInstalledModules.contains(moduleName)) {
+      // Loaded without the lock on the caller's thread
+      return loadModule(moduleName, className);
     }
+    return awaitInBackground(moduleName, className, timeoutMs, cancellationToken);
   }
 
   /**
@@ -104,7 +156,279 @@ public class LazyModuleLoader {
    * upgrade. App upgrade usually happen in the background so an app may listen for
    * MY_PACKAGE_REPLACED broadcast.
    */
-  public synchronized void installModule(String moduleName) throws IOException {
-    mLoaderAlgorithm.installModule(moduleName);
+  public void installModule(String moduleName) throws IOException {
+    installModule(moduleName, LoadPriority.FOREGROUND);
+  }
+
+  /**
+   * Same as above, a pre-install on app upgrade should use {@link LoadPriority#BACKGROUND} so that
+   * loads of modules the user waits for don't wait for it (see {@link ModulePreInstaller}).
+   */
+  public void installModule(String moduleName, LoadPriority priority) throws IOException {
+    mLock.acquire(priority);
+    try {
+      mLoaderAlgorithm.installModule(moduleName);
+      mInstalledModules.add(moduleName);
+    } finally {
+      mLock.release();
+    }
+  }
+
+  /**
+   * Same as {@link #installModule(String)} with a deadline, see {@link #loadModule(String, String,
+   * long, LoadCancellationToken)}. A failed install is thrown as a {@link LazyLoadingException}.
+   */
+  public void installModule(
+      String moduleName, long timeoutMs, @Nullable LoadCancellationToken cancellationToken)
+      throws LazyLoadingException {
+    if (!mInstalledModules.contains(moduleName)) {
+      awaitInBackground(moduleName, null, timeoutMs, cancellationToken);
+    }
+  }
+
+  /** Returns the lock which loads and installs of this loader take, e.g. to measure its waits */
+  ModuleLoadLock getLoadLock() {
+    return mLock;
+  }
+
+  /**
+   * Returns disk usage and memory footprint of given modules (e.g. all modules listed by {@link
+   * BinaryModuleManifestReader#getModuleNames()}). It doesn't wait for loads in progress and it
+   * only checks sizes of a few files per module, so it's cheap enough to be polled periodically,
+   * but it should not be called on the main thread. If the loader algorithm isn't a {@link
+   * ModuleFootprintProvider}, only sizes from the manifests are reported.
+   */
+  public List<ModuleFootprint> getModuleFootprints(
+      ModuleManifestReader moduleManifestReader, Collection<String> moduleNames)
+      throws IOException {
+    List<ModuleFootprint> footprints = new ArrayList<>(moduleNames.size());
+    for (String moduleName : moduleNames) {
+      if (mLoaderAlgorithm instanceof ModuleFootprintProvider) {
+        footprints.add(
+            ((ModuleFootprintProvider) mLoaderAlgorithm)
+                .getModuleFootprint(moduleManifestReader, moduleName));
+      } else {
+        footprints.add(
+            ModuleFootprint.fromManifest(moduleManifestReader.readModuleManifest(moduleName)));
+      }
+    }
+    return footprints;
+  }
+
+  private Object newModuleInstance(
+      String moduleName, String className, Class<?> hostType, Object host)
+      throws LazyLoadingException {
+    mLock.acquire(LoadPriority.FOREGROUND);
+    try {
+      Class<?> lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
+      mInstalledModules.add(moduleName);
+      LazyModuleFactory<?> factory = getFactory(lazyLoadedClass);
+      if (factory != null) {
+        return factory.create(host);
+      }
+      Constructor<?> c = lazyLoadedClass.getConstructor(hostType);
+      return c.newInstance(host);
+    } catch (Throwable t) {
+      throw new LazyLoadingException(t);
+    } finally {
+      mLock.release();
+    }
+  }
+
+  private Class loadModuleClass(String moduleName, String className) throws LazyLoadingException {
+    Class lazyLoadedClass;
+    try {
+      lazyLoadedClass = mLoaderAlgorithm.loadModule(moduleName, className);
+    } catch (Throwable t) {
+      throw new LazyLoadingException(t);
+    }
+    mInstalledModules.add(moduleName);
+    return lazyLoadedClass;
+  }
+
+  /**
+   * Loads a class of a module (or only installs the module if className is null) on a background
+   * thread, unless the same request is in progress already, and waits for it.
+   */
+  @Nullable
+  private Class awaitInBackground(
+      final String moduleName,
+      @Nullable final String className,
+      long timeoutMs,
+      @Nullable LoadCancellationToken cancellationToken)
+      throws LazyLoadingException {
+    final String requestKey = className != null ? moduleName + '/' + className : moduleName;
+    PendingRequest request;
+    synchronized (mPendingRequests) {
+      request = mPendingRequests.get(requestKey);
+      if (request == null) {
+        final PendingRequest newRequest = new PendingRequest();
+        mPendingRequests.put(requestKey, newRequest);
+        getBackgroundExecutor()
+            .execute(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    Class loadedClass = null;
+                    Throwable failure = null;
+                    try {
+                      if (className != null) {
+                        loadedClass = loadModule(moduleName, className);
+                      } else {
+                        installModule(moduleName);
+                      }
+                    } catch (Throwable t) {
+                      failure = t;
+                    }
+                    synchronized (mPendingRequests) {
+                      mPendingRequests.remove(requestKey);
+                    }
+                    newRequest.finish(loadedClass, failure);
+                  }
+                });
+        request = newRequest;
+      }
+    }
+    return request.await(moduleName, timeoutMs, cancellationToken);
+  }
+
+  // Called with mPendingRequests held
+  private Executor getBackgroundExecutor() {
+    if (mBackgroundExecutor == null) {
+      // One thread per loader like its lock, so loaders of different stores don't wait for each
+      // other, while a second thread of this loader would only wait for the lock
+      mBackgroundExecutor =
+          Executors.newSingleThreadExecutor(
+              new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  Thread thread = new Thread(runnable, "LazyModuleLoader");
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+    }
+    return mBackgroundExecutor;
+  }
+
+  /** Returns a factory generated for a given class or null if it doesn't have one. */
+  @Nullable
+  private LazyModuleFactory<?> getFactory(Class<?> lazyLoadedClass)
+      throws InstantiationException, IllegalAccessException, NoSuchMethodException,
+          InvocationTargetException {
+    LazyModuleFactory<?> factory = mFactories.get(lazyLoadedClass);
+    if (factory != null || mClassesWithoutFactory.contains(lazyLoadedClass)) {
+      return factory;
+    }
+    // The factory is in the same module as the class, so it's looked up by its class loader
+    String factoryClassName = getFactoryClassName(lazyLoadedClass.getName());
+    try {
+      factory =
+          (LazyModuleFactory<?>)
+              Class.forName(factoryClassName, true, lazyLoadedClass.getClassLoader())
+                  .getDeclaredConstructor()
+                  .newInstance();
+    } catch (ClassNotFoundException e) {
+      mClassesWithoutFactory.add(lazyLoadedClass);
+      return null;
+    }
+    mFactories.put(lazyLoadedClass, factory);
+    return factory;
+  }
+
+  /**
+   * Returns a name of a factory generated by the annotation processor for a given class. Outside of
+   * the package name '_' is doubled and the '$' of nested classes is replaced by "_0", so two
+   * different classes (e.g. {@code A_B} and {@code A$B}) never map to the same factory.
+   */
+  static String getFactoryClassName(String className) {
+    int simpleNameStart = className.lastIndexOf('.') + 1;
+    StringBuilder factoryClassName = new StringBuilder(className.substring(0, simpleNameStart));
+    for (int i = simpleNameStart; i < className.length(); ++i) {
+      char c = className.charAt(i);
+      if (c == '_') {
+        factoryClassName.append("__");
+      } else if (c == '$') {
+        factoryClassName.append("_0");
+      } else {
+        factoryClassName.append(c);
+      }
+    }
+    return factoryClassName.append(FACTORY_CLASS_NAME_SUFFIX).toString();
+  }
+
+  /** Load or install in progress in the background which callers with a deadline wait for */
+  private static class PendingRequest {
+    // Fields below are guarded by this
+    private final List<CountDownLatch> mWaiters = new ArrayList<>();
+    private boolean mIsDone;
+    @Nullable private Class mLoadedClass;
+    @Nullable private Throwable mFailure;
+
+    synchronized void finish(@Nullable Class loadedClass, @Nullable Throwable failure) {
+      mIsDone = true;
+      mLoadedClass = loadedClass;
+      mFailure = failure;
+      for (CountDownLatch waiter : mWaiters) {
+        waiter.countDown();
+      }
+      mWaiters.clear();
+    }
+
+    @Nullable
+    Class await(
+        String moduleName, long timeoutMs, @Nullable LoadCancellationToken cancellationToken)
+        throws LazyLoadingException {
+      // Counted down when the request is done or when the token is cancelled
+      final CountDownLatch waiter = new CountDownLatch(1);
+      Runnable cancellationListener =
+          new Runnable() {
+            @Override
+            public void run() {
+              waiter.countDown();
+            }
+          };
+      synchronized (this) {
+        if (!mIsDone) {
+          mWaiters.add(waiter);
+        }
+      }
+      if (cancellationToken != null) {
+        cancellationToken.addListener(cancellationListener);
+      }
+      try {
+        if (!isDone()) {
+          waiter.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new LoadCancelledException(moduleName);
+      } finally {
+        synchronized (this) {
+          mWaiters.remove(waiter);
+        }
+        if (cancellationToken != null) {
+          cancellationToken.removeListener(cancellationListener);
+        }
+      }
+      synchronized (this) {
+        if (mIsDone) {
+          if (mFailure != null) {
+            // Every waiter gets its own exception with its own stack trace, they only share the
+            // cause, so a caller which adds suppressed exceptions doesn't change the others' ones
+            throw new LazyLoadingException(mFailure);
+          }
+          return mLoadedClass;
+        }
+      }
+      if (cancellationToken != null && cancellationToken.isCancelled()) {
+        throw new LoadCancelledException(moduleName);
+      }
+      throw new LoadTimeoutException(moduleName, timeoutMs);
+    }
+
+    private synchronized boolean isDone() {
+      return mIsDone;
+    }
   }
 }
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface of the base app which is implemented by a class of a lazily loaded module.
+ * LazyModuleProcessor generates a proxy next to the interface (named after the interface with a
+ * LazyProxy suffix) which loads the module on first call and then forwards every call directly to
+ * the implementation, so that the base app does not need to write such proxy by hand.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface LazyModuleProxy {
+
+  /** Name of the module which contains the implementation */
+  String module();
+
+  /**
+   * Fully qualified name of the implementation, it should be annotated with {@link
+   * LazyModuleImplementation}
+   */
+  String implementation();
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+import android.util.Log;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Service of the base app which hosts a {@link ServiceLike} of a lazily loaded module without
+ * loading the module on the main thread. A subclass only tells which module and class to load.
+ *
+ * <p>The module is loaded on a background thread when the service is created. Lifecycle calls
+ * which arrive in the meantime are queued and replayed in order on the main thread once the {@link
+ * ServiceLike} is created:
+ *
+ * <p>(1) {@link #onStartCommand} returns {@link #getPendingStartMode} for a queued intent. The
+ * value which the {@link ServiceLike} returns when the intent is replayed can't be passed to the
+ * system anymore, so a host whose module isn't {@link Service#START_NOT_STICKY} should override it.
+ *
+ * <p>(2) {@link #onBind} returns a binder which forwards transactions to the binder returned by
+ * {@link ServiceLike#onBind} once there is one. Transactions of remote clients wait on binder
+ * threads at most {@link #getBinderTimeoutMs}, but a client in the same process should not call
+ * the service on the main thread before the module is loaded.
+ *
+ * <p>(3) {@link #onUnbind} is queued as well.
+ *
+ * <p>If the service is destroyed before the module is loaded, queued calls are dropped and the
+ * {@link ServiceLike} is never created. If the module can't be loaded, queued calls are dropped and
+ * {@link #onLoadFailed} is called.
+ */
+public abstract class LazyServiceHost extends Service {
+
+  private static final String TAG = "LazyServiceHost";
+  private static final long DEFAULT_BINDER_TIMEOUT_MS = 10000;
+
+  // Accessed on the main thread only, created in onCreate
+  private ServiceLikeDispatcher mDispatcher;
+
+  /**
+   * Returns a loader of the module. It's called on the loading thread, so it may create a new
+   * loader (which does disk I/O).
+   */
+  protected abstract LazyModuleLoader getLazyModuleLoader();
+
+  protected abstract String getModuleName();
+
+  /** Returns name of the {@link ServiceLike} class of the module */
+  protected abstract String getServiceLikeClassName();
+
+  /** Returns an executor which loads the module, by default a thread shared by all hosts */
+  protected Executor getLoadExecutor() {
+    return HostModuleLoad.getDefaultExecutor();
+  }
+
+  /**
+   * Returns how long a transaction of a client bound before the module is loaded waits for it on a
+   * binder thread. After that the transaction fails as if the module returned no binder.
+   */
+  protected long getBinderTimeoutMs() {
+    return DEFAULT_BINDER_TIMEOUT_MS;
+  }
+
+  /**
+   * Returns what {@link #onStartCommand} returns for an intent which arrives before the module is
+   * loaded. It's {@link Service#START_NOT_STICKY} by default like in {@link Service}, so that a
+   * killed process doesn't restart the service for intents the module may not want redelivered.
+   * Return {@link Service#START_REDELIVER_INTENT} if the module must handle every intent.
+   */
+  protected int getPendingStartMode() {
+    return Service.START_NOT_STICKY;
+  }
+
+  /** Called on the main thread when the module can't be loaded, by default it stops the service */
+  protected void onLoadFailed(LazyLoadingException e) {
+    Log.e(TAG, "Unable to load module " + getModuleName(), e);
+    stopSelf();
+  }
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    mDispatcher = new ServiceLikeDispatcher(getBinderTimeoutMs(), getPendingStartMode());
+    final String moduleName = getModuleName();
+    final String className = getServiceLikeClassName();
+    getLoadExecutor()
+        .execute(
+            new HostModuleLoad<ServiceLike>() {
+              @Override
+              protected ServiceLike load() throws LazyLoadingException {
+                return getLazyModuleLoader().loadServiceModule(moduleName, className);
+              }
+
+              @Override
+              protected void onLoaded(
+                  @Nullable ServiceLike serviceLike, @Nullable LazyLoadingException failure) {
+                onServiceLikeLoaded(serviceLike, failure);
+              }
+            });
+  }
+
+  @Override
+  public int onStartCommand(Intent intent, int flags, int startId) {
+    return mDispatcher.onStartCommand(intent, flags, startId);
+  }
+
+  @Override
+  @Nullable
+  public IBinder onBind(Intent intent) {
+    return mDispatcher.onBind(intent);
+  }
+
+  @Override
+  public boolean onUnbind(Intent intent) {
+    return mDispatcher.onUnbind(intent);
+  }
+
+  @Override
+  public void onDestroy() {
+    mDispatcher.onDestroy();
+    super.onDestroy();
+  }
+
+  private void onServiceLikeLoaded(
+      @Nullable ServiceLike serviceLike, @Nullable LazyLoadingException failure) {
+    if (mDispatcher.isDestroyed()) {
+      // Nobody is waiting for the module anymore, neither for its failure
+      return;
+    }
+    if (serviceLike == null) {
+      mDispatcher.onLoadFailed();
+      onLoadFailed(failure);
+      return;
+    }
+    mDispatcher.onLoaded(serviceLike);
+  }
+}
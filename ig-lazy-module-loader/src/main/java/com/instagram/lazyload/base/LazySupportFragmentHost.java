@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Fragment of the base app which hosts a {@link SupportFragmentLike} of a lazily loaded module
+ * without loading the module on the main thread. A subclass only tells which module and class to
+ * load.
+ *
+ * <p>The module is loaded on a background thread when the fragment is created and until it's
+ * loaded the fragment shows a placeholder (see {@link #onCreatePlaceholderView}). Once the {@link
+ * SupportFragmentLike} is created on the loading thread, lifecycle calls the fragment already got
+ * are replayed into it on the main thread (onAttach, onCreate, onCreateView, onActivityCreated,
+ * onStart and onResume, as far as the fragment got) and its view replaces the placeholder. From
+ * then on calls are forwarded directly. If the module can't be loaded, an error view (see {@link
+ * #onCreateErrorView}) replaces the placeholder.
+ *
+ * <p>See {@link LazyFragmentHost} for a host of a {@link FragmentLike}.
+ */
+public abstract class LazySupportFragmentHost extends Fragment {
+
+  private static final String TAG = "LazySupportFragmentHost";
+
+  private final FragmentHostController<SupportFragmentLike> mController =
+      new FragmentHostController<SupportFragmentLike>() {
+        @Override
+        void startLoad() {
+          loadSupportFragmentLike();
+        }
+
+        @Override
+        Context getHostContext() {
+          return getActivity();
+        }
+
+        @Override
+        View createPlaceholderView(Context context) {
+          return onCreatePlaceholderView(context);
+        }
+
+        @Override
+        View createErrorView(Context context, LazyLoadingException e) {
+          return onCreateErrorView(context, e);
+        }
+
+        @Override
+        void onLoadFailed(LazyLoadingException e) {
+          LazySupportFragmentHost.this.onLoadFailed(e);
+        }
+      };
+
+  /**
+   * Returns a loader of the module. It's called on the loading thread, so it may create a new
+   * loader (which does disk I/O).
+   */
+  protected abstract LazyModuleLoader getLazyModuleLoader();
+
+  protected abstract String getModuleName();
+
+  /** Returns name of the {@link SupportFragmentLike} class of the module */
+  protected abstract String getFragmentLikeClassName();
+
+  /** Returns an executor which loads the module, by default a thread shared by all hosts */
+  protected Executor getLoadExecutor() {
+    return HostModuleLoad.getDefaultExecutor();
+  }
+
+  /**
+   * Returns a view shown until the module is loaded, by default a progress bar. It should be cheap
+   * to create, e.g. it shouldn't be inflated from a complex layout.
+   */
+  protected View onCreatePlaceholderView(Context context) {
+    return FragmentHostController.createDefaultPlaceholderView(context);
+  }
+
+  /**
+   * Returns a view shown instead of the placeholder when the module can't be loaded, by default a
+   * button which loads it again (see {@link #retryLoad}).
+   */
+  protected View onCreateErrorView(Context context, LazyLoadingException e) {
+    return FragmentHostController.createDefaultErrorView(context, mController);
+  }
+
+  /**
+   * Called on the main thread when the module can't be loaded, before the error view is shown. By
+   * default it only logs the failure.
+   */
+  protected void onLoadFailed(LazyLoadingException e) {
+    Log.e(TAG, "Unable to load module " + getModuleName(), e);
+  }
+
+  /** Loads the module again after it failed to load, e.g. from a custom error view */
+  public void retryLoad() {
+    mController.retry();
+  }
+
+  /** Returns the hosted object or null if the module isn't loaded yet */
+  @Nullable
+  public SupportFragmentLike getFragmentLike() {
+    return mController.getFragmentLike();
+  }
+
+  @Override
+  public void onCreate(@Nullable Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    mController.onCreate(savedInstanceState);
+  }
+
+  @Override
+  public View onCreateView(
+      LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+    return mController.onCreateView(inflater, savedInstanceState);
+  }
+
+  @Override
+  public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+    super.onActivityCreated(savedInstanceState);
+    mController.onActivityCreated(savedInstanceState);
+  }
+
+  @Override
+  public void onStart() {
+    super.onStart();
+    mController.onStart();
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    mController.onResume();
+  }
+
+  @Override
+  public void onPause() {
+    mController.onPause();
+    super.onPause();
+  }
+
+  @Override
+  public void onStop() {
+    mController.onStop();
+    super.onStop();
+  }
+
+  @Override
+  public void onDestroyView() {
+    mController.onDestroyView();
+    super.onDestroyView();
+  }
+
+  @Override
+  public void onDestroy() {
+    mController.onDestroy();
+    super.onDestroy();
+  }
+
+  @Override
+  public void onDetach() {
+    mController.onDetach();
+    super.onDetach();
+  }
+
+  private void loadSupportFragmentLike() {
+    final String moduleName = getModuleName();
+    final String className = getFragmentLikeClassName();
+    getLoadExecutor()
+        .execute(
+            new HostModuleLoad<SupportFragmentLike>() {
+              @Override
+              protected SupportFragmentLike load() throws LazyLoadingException {
+                return getLazyModuleLoader()
+                    .loadSupportFragmentModule(LazySupportFragmentHost.this, moduleName, className);
+              }
+
+              @Override
+              protected void onLoaded(
+                  @Nullable SupportFragmentLike fragmentLike,
+                  @Nullable LazyLoadingException failure) {
+                mController.onLoaded(fragmentLike, failure);
+              }
+            });
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets a caller stop waiting for a load or an install of {@link LazyModuleLoader} which was given a
+ * deadline, e.g. when a user navigates away from a feature before it's loaded. One token may be
+ * passed to many calls and it can't be reset once cancelled.
+ */
+public final class LoadCancellationToken {
+
+  // Fields below are guarded by this
+  private final List<Runnable> mListeners = new ArrayList<>();
+  private boolean mIsCancelled;
+
+  /** Waiting callers throw {@link LoadCancelledException}, it may be called on any thread */
+  public void cancel() {
+    List<Runnable> listeners;
+    synchronized (this) {
+      if (mIsCancelled) {
+        return;
+      }
+      mIsCancelled = true;
+      listeners = new ArrayList<>(mListeners);
+      mListeners.clear();
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  public synchronized boolean isCancelled() {
+    return mIsCancelled;
+  }
+
+  /** The listener is run on the cancelling thread, or right away if the token is cancelled */
+  void addListener(Runnable listener) {
+    synchronized (this) {
+      if (!mIsCancelled) {
+        mListeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  synchronized void removeListener(Runnable listener) {
+    mListeners.remove(listener);
+  }
+}
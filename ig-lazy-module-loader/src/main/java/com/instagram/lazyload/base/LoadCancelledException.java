@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Thrown when a caller stops waiting for a module because its {@link LoadCancellationToken} was
+ * cancelled (or its thread was interrupted), the load keeps going in the background.
+ */
+public class LoadCancelledException extends LazyLoadingException {
+
+  public LoadCancelledException(String moduleName) {
+    super("Waiting for module " + moduleName + " cancelled");
+  }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/** Phases of loading a module reported to {@link LoadPhaseListener}. */
+public enum LoadPhase {
+  /** Whole loading of a module which was not loaded yet, it contains all phases below */
+  COLD_LOAD,
+  /** Loading a class of a module which was already loaded */
+  WARM_LOAD,
+  /** Whole installing of a module which was not installed yet, it contains all phases below */
+  INSTALL,
+  /** Reading a manifest and copying module files into data dir */
+  RESOLVE,
+  /** Installing modules a module depends on */
+  DEPENDENCIES,
+  /** Adding a dex file (optimizing it the first time) and native libraries of a module */
+  INJECT,
+  /** Optimizing a dex file which was not optimized before, it's a part of {@link #INJECT} */
+  DEXOPT,
+  /** Loading the requested class once a module was injected */
+  CLASS_LOAD
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Interface to implement by clients to track phases of lazy loading. Unlike {@link
+ * LazyLoadListener} it's notified about failures too and phases of a single module are nested on
+ * the thread which loads it, e.g. {@link LoadPhase#RESOLVE} starts and finishes within {@link
+ * LoadPhase#COLD_LOAD}. Callbacks are made on the loading thread, so they should be cheap.
+ *
+ * @see ModuleLoadMetrics
+ */
+public interface LoadPhaseListener {
+
+  void onPhaseStarted(String moduleName, LoadPhase phase);
+
+  void onPhaseFinished(String moduleName, LoadPhase phase, long durationNs);
+
+  void onPhaseFailed(String moduleName, LoadPhase phase, long durationNs, Throwable error);
+
+  /** Called when files of a module were copied from assets into data dir */
+  void onModuleExtracted(String moduleName, long bytesCopied);
+}
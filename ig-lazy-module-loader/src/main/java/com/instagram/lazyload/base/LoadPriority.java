@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Priority of a request to {@link LazyModuleLoader}. The loader handles one request at a time and
+ * whenever a request is done, waiting foreground requests go before waiting background ones.
+ */
+public enum LoadPriority {
+  /** A load or an install a user waits for, e.g. on navigation into a feature */
+  FOREGROUND,
+  /**
+   * An install nobody waits for, e.g. a pre-install on app upgrade. A batch of such installs should
+   * install one module per call so that foreground requests get in between them.
+   */
+  BACKGROUND
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Thrown when a module isn't loaded within a deadline given to {@link LazyModuleLoader}, the load
+ * keeps going in the background.
+ */
+public class LoadTimeoutException extends LazyLoadingException {
+
+  public LoadTimeoutException(String moduleName, long timeoutMs) {
+    super("Module " + moduleName + " not loaded within " + timeoutMs + " ms");
+  }
+}
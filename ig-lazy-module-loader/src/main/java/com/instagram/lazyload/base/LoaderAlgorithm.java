@@ -14,7 +14,12 @@ import java.io.IOException;
 /** Interface allows to inject and experiment with different loading algorithms. */
 public interface LoaderAlgorithm {
 
-  /** Loads a modules into memory and returns a class representing an entry point to that modules */
+  /**
+   * Loads a modules into memory and returns a class representing an entry point to that modules.
+   *
+   * <p>A class of a module this algorithm loaded or installed before may be loaded without the lock
+   * of {@link LazyModuleLoader}, i.e. concurrently with loads and installs of other modules.
+   */
   Class loadModule(String moduleName, String className) throws LazyLoadingException;
 
   /** Loads a module into memory, client can load any class from that module */
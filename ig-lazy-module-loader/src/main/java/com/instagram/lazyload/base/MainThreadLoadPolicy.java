@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Looper;
+import android.util.Log;
+import javax.annotation.Nullable;
+
+/**
+ * StrictMode-like detector of loads which block the main thread. Pass it as a {@link
+ * LoadPhaseListener} to {@link DefautlLoaderAlgorithm} and {@link DefaultModuleStore} (the store
+ * reports copying). A load or install on the main thread is reported as a {@link
+ * BlockingLoadViolation} when it takes longer than a threshold or when it needs to copy module
+ * files or optimize a dex file, which are slow regardless of how long they took this time.
+ *
+ * <p>Violations are reported once the whole load is over, so nested installs of dependencies are
+ * reported as a part of the load which triggered them. Optionally a violation is thrown from the
+ * load, which is meant for debug builds.
+ */
+public class MainThreadLoadPolicy implements LoadPhaseListener {
+
+  private static final String TAG = "MainThreadLoadPolicy";
+
+  /** Receives violations, it's called on the main thread. */
+  public interface ViolationHandler {
+
+    void onViolation(BlockingLoadViolation violation);
+  }
+
+  private static final ViolationHandler LOG_VIOLATION_HANDLER =
+      new ViolationHandler() {
+        @Override
+        public void onViolation(BlockingLoadViolation violation) {
+          Log.w(TAG, "Blocking load on the main thread", violation);
+        }
+      };
+
+  @Nullable private final Thread mMainThread;
+  private final long mThresholdNs;
+  private final ViolationHandler mViolationHandler;
+  private final boolean mShouldThrow;
+  // Accessed only on the main thread
+  private int mLoadDepth;
+  private boolean mHasColdCopy;
+  private boolean mHasDexopt;
+
+  private MainThreadLoadPolicy(Builder builder) {
+    Looper mainLooper = Looper.getMainLooper();
+    mMainThread = mainLooper != null ? mainLooper.getThread() : null;
+    mThresholdNs = builder.thresholdMs * 1000000;
+    mViolationHandler = builder.violationHandler;
+    mShouldThrow = builder.shouldThrow;
+  }
+
+  @Override
+  public void onPhaseStarted(String moduleName, LoadPhase phase) {
+    if (isLoadPhase(phase) && isMainThread()) {
+      if (mLoadDepth == 0) {
+        mHasColdCopy = false;
+        mHasDexopt = false;
+      }
+      ++mLoadDepth;
+    }
+  }
+
+  @Override
+  public void onPhaseFinished(String moduleName, LoadPhase phase, long durationNs) {
+    if (!isMainThread()) {
+      return;
+    }
+    if (phase == LoadPhase.DEXOPT) {
+      mHasDexopt = true;
+    } else if (isLoadPhase(phase)) {
+      BlockingLoadViolation violation = finishLoad(moduleName, phase, durationNs);
+      if (violation != null) {
+        mViolationHandler.onViolation(violation);
+        if (mShouldThrow) {
+          throw violation;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void onPhaseFailed(String moduleName, LoadPhase phase, long durationNs, Throwable error) {
+    if (isLoadPhase(phase) && isMainThread()) {
+      // Never thrown, so that the original error is propagated
+      BlockingLoadViolation violation = finishLoad(moduleName, phase, durationNs);
+      if (violation != null) {
+        mViolationHandler.onViolation(violation);
+      }
+    }
+  }
+
+  @Override
+  public void onModuleExtracted(String moduleName, long bytesCopied) {
+    if (isMainThread()) {
+      mHasColdCopy = true;
+    }
+  }
+
+  @Nullable
+  private BlockingLoadViolation finishLoad(String moduleName, LoadPhase phase, long durationNs) {
+    if (mLoadDepth == 0 || --mLoadDepth > 0) {
+      return null;
+    }
+    BlockingLoadViolation.Reason reason = null;
+    if (mHasDexopt) {
+      reason = BlockingLoadViolation.Reason.DEXOPT;
+    } else if (mHasColdCopy) {
+      reason = BlockingLoadViolation.Reason.COLD_COPY;
+    } else if (durationNs > mThresholdNs) {
+      reason = BlockingLoadViolation.Reason.SLOW;
+    }
+    return reason != null ? new BlockingLoadViolation(moduleName, phase, durationNs, reason) : null;
+  }
+
+  private boolean isMainThread() {
+    return Thread.currentThread() == mMainThread;
+  }
+
+  private static boolean isLoadPhase(LoadPhase phase) {
+    return phase == LoadPhase.COLD_LOAD
+        || phase == LoadPhase.WARM_LOAD
+        || phase == LoadPhase.INSTALL;
+  }
+
+  public static class Builder {
+    private long thresholdMs = 16;
+    private ViolationHandler violationHandler = LOG_VIOLATION_HANDLER;
+    private boolean shouldThrow;
+
+    /** Sets how long a load may block the main thread, it's a frame (16ms) by default */
+    public Builder setThresholdMs(long thresholdMs) {
+      this.thresholdMs = thresholdMs;
+      return this;
+    }
+
+    /** Sets a handler of violations, by default they are logged */
+    public Builder setViolationHandler(ViolationHandler violationHandler) {
+      this.violationHandler = violationHandler;
+      return this;
+    }
+
+    /** Makes a load throw a violation after it was handled, e.g. for debug builds */
+    public Builder setShouldThrow(boolean shouldThrow) {
+      this.shouldThrow = shouldThrow;
+      return this;
+    }
+
+    public MainThreadLoadPolicy build() {
+      return new MainThreadLoadPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.IOException;
+
+/**
+ * Thrown without trying to install a module which failed recently, until its backoff window is
+ * over (see {@link DefautlLoaderAlgorithm.Builder#setFailureBackoff}). The cause is the last
+ * failure of the module. It's reported to {@link LoadPhaseListener#onPhaseFailed} like any other
+ * failure.
+ */
+public class ModuleBackoffException extends IOException {
+
+  private final String mModuleName;
+  private final int mFailureCount;
+  private final long mRetryDelayMs;
+
+  public ModuleBackoffException(
+      String moduleName, int failureCount, long retryDelayMs, Throwable lastFailure) {
+    super(
+        "Module "
+            + moduleName
+            + " failed "
+            + failureCount
+            + " times, next try in "
+            + retryDelayMs
+            + " ms",
+        lastFailure);
+    mModuleName = moduleName;
+    mFailureCount = failureCount;
+    mRetryDelayMs = retryDelayMs;
+  }
+
+  public String getModuleName() {
+    return mModuleName;
+  }
+
+  /** Returns number of failed installs in a row */
+  public int getFailureCount() {
+    return mFailureCount;
+  }
+
+  /** Returns time left until the module may be installed again */
+  public long getRetryDelayMs() {
+    return mRetryDelayMs;
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A single file which contains dex files and native libraries of all modules, written at build time
+ * by {@link ModuleBundleWriter}. The bundle is memory-mapped once and files of a module are sliced
+ * out of the mapping, so installing many modules doesn't open an asset (and a file descriptor) per
+ * module. See {@link ModuleBundleFormat} for description of the format.
+ *
+ * <p>It's used by {@link DefaultModuleStore} when passed to its constructor, modules missing in the
+ * bundle are still copied from assets.
+ */
+public class ModuleBundle {
+
+  private final ByteBuffer mBuffer;
+  private final Map<String, Integer> mEntries;
+
+  public ModuleBundle(ByteBuffer buffer) throws IOException {
+    mBuffer = buffer;
+    if (buffer.capacity() < ModuleBundleFormat.HEADER_SIZE
+        || buffer.getInt(0) != ModuleBundleFormat.MAGIC) {
+      throw new IOException("Not a module bundle");
+    }
+    if (buffer.getInt(4) != ModuleBundleFormat.VERSION) {
+      throw new IOException("Unsupported module bundle version " + buffer.getInt(4));
+    }
+    int entryCount = buffer.getInt(8);
+    long entriesEnd =
+        ModuleBundleFormat.HEADER_SIZE + (long) entryCount * ModuleBundleFormat.ENTRY_SIZE;
+    if (entryCount < 0 || entriesEnd > buffer.capacity()) {
+      throw new IOException("Corrupted module bundle");
+    }
+    // The index is small, decode it once so that lookups don't touch the mapping
+    mEntries = new HashMap<>(entryCount * 2);
+    for (int i = 0; i < entryCount; ++i) {
+      int entry = ModuleBundleFormat.HEADER_SIZE + i * ModuleBundleFormat.ENTRY_SIZE;
+      long payloadOffset = buffer.getLong(entry + 8);
+      long payloadLength = buffer.getLong(entry + 16);
+      if (payloadOffset < 0
+          || payloadLength < 0
+          || payloadOffset + payloadLength > buffer.capacity()) {
+        throw new IOException("Corrupted module bundle");
+      }
+      mEntries.put(readName(entry), entry);
+    }
+  }
+
+  /** Memory-maps a bundle stored in a file. */
+  public static ModuleBundle fromFile(File bundleFile) throws IOException {
+    FileInputStream inputStream = new FileInputStream(bundleFile);
+    try {
+      FileChannel channel = inputStream.getChannel();
+      // The mapping stays valid after the channel is closed
+      return new ModuleBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Memory-maps a bundle stored in assets. The asset must not be compressed by aapt, see
+   * aaptOptions.noCompress in the build file.
+   */
+  public static ModuleBundle fromAsset(Context context, String assetName) throws IOException {
+    AssetFileDescriptor assetFileDescriptor = context.getAssets().openFd(assetName);
+    try {
+      FileInputStream inputStream = assetFileDescriptor.createInputStream();
+      try {
+        return new ModuleBundle(
+            inputStream
+                .getChannel()
+                .map(
+                    FileChannel.MapMode.READ_ONLY,
+                    assetFileDescriptor.getStartOffset(),
+                    assetFileDescriptor.getLength()));
+      } finally {
+        inputStream.close();
+      }
+    } finally {
+      assetFileDescriptor.close();
+    }
+  }
+
+  public boolean contains(String path) {
+    return mEntries.containsKey(path);
+  }
+
+  /**
+   * Returns content of a file as a read-only slice of the mapping, or null if the bundle doesn't
+   * contain it. Each call returns a new buffer, so it can be consumed independently.
+   */
+  @Nullable
+  public ByteBuffer getFile(String path) {
+    Integer entry = mEntries.get(path);
+    if (entry == null) {
+      return null;
+    }
+    int payloadOffset = (int) mBuffer.getLong(entry + 8);
+    int payloadLength = (int) mBuffer.getLong(entry + 16);
+    ByteBuffer payload = mBuffer.asReadOnlyBuffer();
+    payload.position(payloadOffset);
+    payload.limit(payloadOffset + payloadLength);
+    return payload.slice();
+  }
+
+  /** Returns paths of all files in the bundle which are located in a given directory. */
+  public List<String> listFiles(String directory) {
+    String prefix = directory.endsWith(File.separator) ? directory : directory + File.separator;
+    List<String> paths = new ArrayList<>();
+    for (String path : mEntries.keySet()) {
+      if (path.startsWith(prefix) && path.indexOf(File.separatorChar, prefix.length()) < 0) {
+        paths.add(path);
+      }
+    }
+    Collections.sort(paths);
+    return paths;
+  }
+
+  private String readName(int entry) {
+    int offset = mBuffer.getInt(entry);
+    int length = mBuffer.getInt(entry + 4);
+    byte[] bytes = new byte[length];
+    ByteBuffer buffer = mBuffer.duplicate();
+    buffer.position(offset);
+    buffer.get(bytes);
+    return new String(bytes, ModuleBundleFormat.UTF_8);
+  }
+}
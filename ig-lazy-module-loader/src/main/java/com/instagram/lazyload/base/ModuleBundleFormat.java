@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.nio.charset.Charset;
+
+/**
+ * Binary format of a module bundle shared by {@link ModuleBundleWriter} and {@link ModuleBundle}.
+ * It doesn't depend on Android APIs, so it can be used by build steps.
+ *
+ * <p>Format (all numbers are big-endian):
+ *
+ * <pre>
+ * header:   int magic, int version, int entry count, int reserved
+ * entries:  entry count * 24 bytes:
+ *           int name offset, int name length, long payload offset, long payload length
+ * names:    UTF-8 bytes, offsets are relative to the beginning of the bundle
+ * payloads: content of files, each payload starts at a multiple of PAYLOAD_ALIGNMENT
+ * </pre>
+ *
+ * Entry names are paths the files would have in assets, e.g. "ModuleName/module.dex" or
+ * "ModuleName/libs/armeabi-v7a/libmodule.so".
+ */
+final class ModuleBundleFormat {
+
+  static final int MAGIC = 0x4c4d424e; // "LMBN"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int ENTRY_SIZE = 24;
+  // Page size, so that payloads never share a page and can be read without extra faults
+  static final int PAYLOAD_ALIGNMENT = 4096;
+
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ModuleBundleFormat() {}
+}
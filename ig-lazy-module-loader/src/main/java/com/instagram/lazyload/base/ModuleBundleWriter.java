@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes files of modules into a single bundle read by {@link ModuleBundle}. It's meant to be run
+ * at build time (it does not depend on Android APIs), the same way as {@link
+ * BinaryModuleManifestWriter}.
+ */
+public class ModuleBundleWriter {
+
+  /**
+   * @param entries files keyed by paths they would have in assets, e.g. "ModuleName/module.dex"
+   * @param outputStream stream the bundle is written to
+   */
+  public static void write(Map<String, File> entries, OutputStream outputStream)
+      throws IOException {
+    Map<String, File> sortedEntries = new TreeMap<>(entries);
+    List<byte[]> names = new ArrayList<>(sortedEntries.size());
+    int namesSize = 0;
+    for (String name : sortedEntries.keySet()) {
+      byte[] nameBytes = name.getBytes(ModuleBundleFormat.UTF_8);
+      names.add(nameBytes);
+      namesSize += nameBytes.length;
+    }
+    int namesPosition =
+        ModuleBundleFormat.HEADER_SIZE + sortedEntries.size() * ModuleBundleFormat.ENTRY_SIZE;
+
+    DataOutputStream bundle = new DataOutputStream(outputStream);
+    bundle.writeInt(ModuleBundleFormat.MAGIC);
+    bundle.writeInt(ModuleBundleFormat.VERSION);
+    bundle.writeInt(sortedEntries.size());
+    bundle.writeInt(0);
+
+    int nextNamePosition = namesPosition;
+    long nextPayloadPosition = align(namesPosition + namesSize);
+    int i = 0;
+    for (File file : sortedEntries.values()) {
+      bundle.writeInt(nextNamePosition);
+      bundle.writeInt(names.get(i).length);
+      bundle.writeLong(nextPayloadPosition);
+      bundle.writeLong(file.length());
+      nextNamePosition += names.get(i).length;
+      nextPayloadPosition = align(nextPayloadPosition + file.length());
+      ++i;
+    }
+    for (byte[] name : names) {
+      bundle.write(name);
+    }
+
+    long position = namesPosition + namesSize;
+    byte[] buf = new byte[ModuleBundleFormat.PAYLOAD_ALIGNMENT];
+    for (File file : sortedEntries.values()) {
+      bundle.write(buf, 0, (int) (align(position) - position));
+      position = align(position);
+      FileInputStream reader = new FileInputStream(file);
+      try {
+        int len;
+        while ((len = reader.read(buf)) > 0) {
+          bundle.write(buf, 0, len);
+          position += len;
+        }
+      } finally {
+        reader.close();
+      }
+      // the buffer is reused for padding
+      Arrays.fill(buf, (byte) 0);
+    }
+    bundle.flush();
+  }
+
+  /** Writes a bundle into a file. */
+  public static void write(Map<String, File> entries, File bundleFile) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(bundleFile);
+    try {
+      write(entries, outputStream);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private static long align(long position) {
+    int alignment = ModuleBundleFormat.PAYLOAD_ALIGNMENT;
+    return (position + alignment - 1) / alignment * alignment;
+  }
+}
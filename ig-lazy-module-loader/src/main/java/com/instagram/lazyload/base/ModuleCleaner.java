@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Process;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Deletes modules used by old app versions without blocking the caller. Modules to delete are
+ * first renamed into a trash directory next to the modules directory, which is a cheap and atomic
+ * operation that fits into the time budget of e.g. MY_PACKAGE_REPLACED broadcast receiver. The
+ * trash is then emptied on a low priority thread in small batches, each batch being a separate
+ * task, so that other tasks sharing the executor are not delayed by a large delete.
+ *
+ * <p>If the process dies before the trash is emptied, the rest is deleted by {@link #emptyTrash}
+ * which should be called on process start.
+ */
+public class ModuleCleaner {
+
+  private static final String TRASH_DIRECTORY_SUFFIX = ".trash";
+  private static final int DEFAULT_BATCH_SIZE = 32;
+
+  /** Interface to implement by clients to track deleted modules, e.g. by {@link ModuleEventLog}. */
+  public interface Listener {
+
+    /**
+     * Called when a module directory was moved into the trash. A directory of {@link
+     * DefaultModuleStore} is named after the module and its hash, so one module may have several
+     * directories, e.g. one per app version.
+     *
+     * @param moduleName name of the module, see {@link
+     *     DefaultModuleStore#getModuleNameFromDirectoryName}
+     * @param moduleDirectoryName name of the trashed directory
+     */
+    void onModuleTrashed(String moduleName, String moduleDirectoryName);
+
+    /** Called on the background thread when the trash of a modules directory was emptied */
+    void onTrashEmptied(File parentDirectory, long bytesReclaimed);
+  }
+
+  private final Executor mExecutor;
+  private final int mBatchSize;
+  @Nullable private final Listener mListener;
+
+  /**
+   * @param executor executor which runs batches of deletes, its threads should run at a low
+   *     priority as the deletes aren't urgent
+   * @param batchSize maximum number of files and directories deleted by a single task
+   */
+  public ModuleCleaner(Executor executor, int batchSize, @Nullable Listener listener) {
+    mExecutor = executor;
+    mBatchSize = batchSize;
+    mListener = listener;
+  }
+
+  /** Creates a cleaner which runs on a single background thread of the lowest priority. */
+  public static ModuleCleaner createDefault(@Nullable Listener listener) {
+    return new ModuleCleaner(
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable runnable) {
+                Thread thread =
+                    new Thread(
+                        new Runnable() {
+                          @Override
+                          public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                            runnable.run();
+                          }
+                        },
+                        "LazyModuleCleaner");
+                thread.setDaemon(true);
+                return thread;
+              }
+            }),
+        DEFAULT_BATCH_SIZE,
+        listener);
+  }
+
+  /**
+   * Moves modules used by old app versions into the trash and schedules emptying of the trash.
+   *
+   * @param parentDirectory directory which contains module sub-directories
+   * @param moduleDirectoriesToKeep name of directories that should be kept, others will be deleted
+   */
+  public void deleteModulesOtherThan(File parentDirectory, Set<String> moduleDirectoriesToKeep)
+      throws IOException {
+    String[] modules = parentDirectory.list();
+    if (modules == null) {
+      return;
+    }
+    File trashDirectory = getTrashDirectory(parentDirectory);
+    FileIOUtils.createDirectoryOrThrow(trashDirectory);
+    for (String module : modules) {
+      if (!moduleDirectoriesToKeep.contains(module)) {
+        moveToTrash(new File(parentDirectory, module), trashDirectory);
+      }
+    }
+    emptyTrash(parentDirectory);
+  }
+
+  /** Schedules deletion of everything in the trash of a given modules directory. */
+  public void emptyTrash(File parentDirectory) {
+    File trashDirectory = getTrashDirectory(parentDirectory);
+    if (trashDirectory.exists()) {
+      mExecutor.execute(new EmptyTrashTask(parentDirectory, trashDirectory));
+    }
+  }
+
+  /** Returns the trash directory, it's on the same file system, so renames into it are atomic */
+  static File getTrashDirectory(File parentDirectory) {
+    return new File(
+        parentDirectory.getParentFile(), parentDirectory.getName() + TRASH_DIRECTORY_SUFFIX);
+  }
+
+  private void moveToTrash(File moduleDirectory, File trashDirectory) {
+    // A module with the same name may be in the trash already, e.g. one not deleted before a crash
+    File trashedDirectory = new File(trashDirectory, moduleDirectory.getName());
+    for (int i = 1; trashedDirectory.exists(); ++i) {
+      trashedDirectory = new File(trashDirectory, moduleDirectory.getName() + "." + i);
+    }
+    if (!moduleDirectory.renameTo(trashedDirectory)) {
+      // Ignore, it will be deleted next time modules are cleaned up
+      return;
+    }
+    if (mListener != null) {
+      mListener.onModuleTrashed(
+          DefaultModuleStore.getModuleNameFromDirectoryName(moduleDirectory.getName()),
+          moduleDirectory.getName());
+    }
+  }
+
+  private class EmptyTrashTask implements Runnable {
+    private final File mParentDirectory;
+    private final FileTreeDeleter mFileTreeDeleter;
+    private long mBytesReclaimed;
+
+    EmptyTrashTask(File parentDirectory, File trashDirectory) {
+      mParentDirectory = parentDirectory;
+      mFileTreeDeleter = new FileTreeDeleter(trashDirectory);
+    }
+
+    @Override
+    public void run() {
+      mBytesReclaimed += mFileTreeDeleter.deleteBatch(mBatchSize);
+      if (!mFileTreeDeleter.isDone()) {
+        mExecutor.execute(this);
+        return;
+      }
+      if (mListener != null) {
+        mListener.onTrashEmptied(mParentDirectory, mBytesReclaimed);
+      }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Monotonic clock used to measure durations of loads. It is not affected by changes of wall clock
+ * time, and it can be replaced in tests.
+ */
+public interface ModuleClock {
+
+  /** Clock of the runtime, {@link System#nanoTime()} is monotonic on Android and on a JVM */
+  ModuleClock SYSTEM =
+      new ModuleClock() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+      };
+
+  /** Returns current time in nanoseconds, it's only meaningful as a difference of two values */
+  long nanoTime();
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * How files written by {@link DefaultModuleStore} are synced to storage. A sync is the most
+ * expensive part of extracting a small module on slow storage. Whatever the mode, a completed
+ * phase is only journaled (see {@link ModuleInstallJournal}) after its files were synced as the
+ * mode requires, so a phase interrupted by a crash is detected and redone.
+ */
+public enum ModuleDurability {
+  /**
+   * Every extracted file is synced before it's renamed into place, and then its directory is synced
+   * so that the rename itself survives a crash. Optimized dex files are synced before they're
+   * marked ready.
+   */
+  STRICT,
+  /**
+   * Extracted files are written without syncs and synced together (every file and directory once)
+   * when an install is done, e.g. once for all modules extracted by {@link
+   * DefaultModuleStore#extractModules}. Optimized dex files are synced as in {@link #STRICT}.
+   */
+  GROUP_COMMIT,
+  /**
+   * Same as {@link #GROUP_COMMIT} for extracted files, which are the only copy the rest depends on.
+   * Artifacts which are regenerated when broken, such as optimized dex files, are never synced, a
+   * broken one is detected by the runtime and by its fingerprint (see {@link
+   * OptimizedDexFingerprint}).
+   */
+  RELAXED
+}
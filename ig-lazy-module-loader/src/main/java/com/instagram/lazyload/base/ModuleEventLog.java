@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent log of module events (loads, installs, failures, extractions and evictions) which
+ * survives process death, so that e.g. slow first loads after an app upgrade can be correlated with
+ * later sessions. Events are written into a fixed-size ring buffer in a memory-mapped file, so
+ * recording an event is a few memory writes without any syscall and the kernel flushes the pages
+ * to disk. Once the log is full the oldest events are overwritten. Use {@link ModuleEventLogReader}
+ * to decode the log.
+ *
+ * <p>Pass it as a {@link LoadPhaseListener} (see {@link CompositeLoadPhaseListener} to use it
+ * together with other listeners) and call {@link #recordEviction(String)} when modules are deleted,
+ * e.g. from {@link ModuleCleaner.Listener#onModuleTrashed}. Every process should use its own log
+ * file.
+ */
+public class ModuleEventLog implements LoadPhaseListener {
+
+  private static final String DEFAULT_FILE_NAME = "module_events.log";
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private final MappedByteBuffer mBuffer;
+  private final int mCapacity;
+  private final long mSessionId;
+  private final int mAppVersionCode;
+  private final AtomicLong mNextSequence;
+  // Encoded module names, so that recording an event doesn't allocate
+  private final ConcurrentHashMap<String, byte[]> mModuleNames = new ConcurrentHashMap<>();
+
+  private ModuleEventLog(
+      MappedByteBuffer buffer, int capacity, long nextSequence, int appVersionCode) {
+    mBuffer = buffer;
+    mCapacity = capacity;
+    mNextSequence = new AtomicLong(nextSequence);
+    mAppVersionCode = appVersionCode;
+    mSessionId = System.currentTimeMillis();
+  }
+
+  /** Returns a default location of the log, it's next to the directory of all modules */
+  public static File getDefaultFile(Context context) {
+    return new File(
+        DefaultModuleStore.getDirectoryForAllModules(context).getParentFile(), DEFAULT_FILE_NAME);
+  }
+
+  /** Opens a log in a default location with a default capacity. */
+  public static ModuleEventLog open(Context context, int appVersionCode) throws IOException {
+    return open(getDefaultFile(context), DEFAULT_CAPACITY, appVersionCode);
+  }
+
+  /**
+   * Opens a log, a log with a different capacity or format is discarded and created from scratch.
+   * Opening scans all records to find the newest one, so it's best done once per process, off the
+   * main thread, before the log is added to a loader.
+   *
+   * @param capacity maximum number of events kept in the log
+   * @param appVersionCode version of the app recorded with every event
+   */
+  public static ModuleEventLog open(File logFile, int capacity, int appVersionCode)
+      throws IOException {
+    long size =
+        ModuleEventLogFormat.HEADER_SIZE + (long) capacity * ModuleEventLogFormat.RECORD_SIZE;
+    RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+    try {
+      boolean isValid =
+          file.length() == size
+              && file.readInt() == ModuleEventLogFormat.MAGIC
+              && file.readInt() == ModuleEventLogFormat.VERSION
+              && file.readInt() == ModuleEventLogFormat.RECORD_SIZE
+              && file.readInt() == capacity;
+      if (!isValid) {
+        // setLength doesn't clear existing bytes, start with an empty file
+        file.setLength(0);
+        file.setLength(size);
+      }
+      MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (!isValid) {
+        buffer.putInt(0, ModuleEventLogFormat.MAGIC);
+        buffer.putInt(4, ModuleEventLogFormat.VERSION);
+        buffer.putInt(
+            ModuleEventLogFormat.HEADER_RECORD_SIZE_OFFSET, ModuleEventLogFormat.RECORD_SIZE);
+        buffer.putInt(ModuleEventLogFormat.HEADER_CAPACITY_OFFSET, capacity);
+      }
+      // Continue after the newest record, so that the header doesn't need to be updated per event
+      long lastSequence = 0;
+      for (int i = 0; i < capacity; ++i) {
+        lastSequence =
+            Math.max(
+                lastSequence,
+                buffer.getLong(
+                    ModuleEventLogFormat.HEADER_SIZE + i * ModuleEventLogFormat.RECORD_SIZE));
+      }
+      return new ModuleEventLog(buffer, capacity, lastSequence + 1, appVersionCode);
+    } finally {
+      // The mapping stays valid after the file is closed
+      file.close();
+    }
+  }
+
+  /** Records that files of a module were deleted from data dir */
+  public void recordEviction(String moduleName) {
+    record(ModuleEventLogFormat.TYPE_EVICTION, moduleName, 0);
+  }
+
+  /**
+   * Asks the kernel to write the log to disk. It's not needed for the log to survive process death,
+   * only a crash of the whole system.
+   */
+  public void flush() {
+    mBuffer.force();
+  }
+
+  @Override
+  public void onPhaseStarted(String moduleName, LoadPhase phase) {}
+
+  @Override
+  public void onPhaseFinished(String moduleName, LoadPhase phase, long durationNs) {
+    // Warm loads and phases within a load are too frequent to be persisted
+    if (phase == LoadPhase.COLD_LOAD) {
+      record(ModuleEventLogFormat.TYPE_LOAD, moduleName, durationNs / 1000);
+    } else if (phase == LoadPhase.INSTALL) {
+      record(ModuleEventLogFormat.TYPE_INSTALL, moduleName, durationNs / 1000);
+    }
+  }
+
+  @Override
+  public void onPhaseFailed(String moduleName, LoadPhase phase, long durationNs, Throwable error) {
+    // A failure propagates through all enclosing phases, record it once
+    if (phase == LoadPhase.COLD_LOAD
+        || phase == LoadPhase.WARM_LOAD
+        || phase == LoadPhase.INSTALL) {
+      record(ModuleEventLogFormat.TYPE_FAILURE, moduleName, durationNs / 1000);
+    }
+  }
+
+  @Override
+  public void onModuleExtracted(String moduleName, long bytesCopied) {
+    record(ModuleEventLogFormat.TYPE_EXTRACTION, moduleName, bytesCopied);
+  }
+
+  private void record(short type, String moduleName, long value) {
+    long sequence = mNextSequence.getAndIncrement();
+    int record =
+        ModuleEventLogFormat.HEADER_SIZE
+            + (int) (sequence % mCapacity) * ModuleEventLogFormat.RECORD_SIZE;
+    byte[] name = getEncodedModuleName(moduleName);
+    // Mark the record as not written, so that a reader never sees a half written record as valid
+    mBuffer.putLong(record + ModuleEventLogFormat.RECORD_SEQUENCE_OFFSET, 0);
+    mBuffer.putLong(
+        record + ModuleEventLogFormat.RECORD_TIMESTAMP_OFFSET, System.currentTimeMillis());
+    mBuffer.putLong(record + ModuleEventLogFormat.RECORD_SESSION_ID_OFFSET, mSessionId);
+    mBuffer.putLong(record + ModuleEventLogFormat.RECORD_VALUE_OFFSET, value);
+    mBuffer.putInt(record + ModuleEventLogFormat.RECORD_APP_VERSION_CODE_OFFSET, mAppVersionCode);
+    mBuffer.putShort(record + ModuleEventLogFormat.RECORD_TYPE_OFFSET, type);
+    mBuffer.putShort(
+        record + ModuleEventLogFormat.RECORD_MODULE_NAME_LENGTH_OFFSET, (short) name.length);
+    for (int i = 0; i < name.length; ++i) {
+      mBuffer.put(record + ModuleEventLogFormat.RECORD_MODULE_NAME_OFFSET + i, name[i]);
+    }
+    mBuffer.putLong(record + ModuleEventLogFormat.RECORD_SEQUENCE_OFFSET, sequence);
+  }
+
+  private byte[] getEncodedModuleName(String moduleName) {
+    byte[] name = mModuleNames.get(moduleName);
+    if (name == null) {
+      byte[] bytes = moduleName.getBytes(ModuleEventLogFormat.UTF_8);
+      name = new byte[Math.min(bytes.length, ModuleEventLogFormat.MAX_MODULE_NAME_LENGTH)];
+      System.arraycopy(bytes, 0, name, 0, name.length);
+      mModuleNames.put(moduleName, name);
+    }
+    return name;
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.nio.charset.Charset;
+
+/**
+ * Binary format of a module event log shared by {@link ModuleEventLog} and {@link
+ * ModuleEventLogReader}. It doesn't depend on Android APIs, so logs pulled from devices can be
+ * decoded offline.
+ *
+ * <p>Format (all numbers are big-endian):
+ *
+ * <pre>
+ * header:  int magic, int version, int record size, int capacity, 48 bytes reserved
+ * records: capacity * 96 bytes, a record with sequence N is stored at index N % capacity:
+ *          long sequence (0 for a record that was never written), long timestamp (ms since epoch),
+ *          long session id, long value, int app version code, short event type,
+ *          short module name length, 56 bytes of UTF-8 module name (truncated if longer)
+ * </pre>
+ *
+ * Value of a record depends on its type, it's a duration in microseconds for loads, installs and
+ * failures and a number of bytes for extractions.
+ */
+final class ModuleEventLogFormat {
+
+  static final int MAGIC = 0x4c4d4556; // "LMEV"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 96;
+  static final int MAX_MODULE_NAME_LENGTH = 56;
+
+  static final int HEADER_RECORD_SIZE_OFFSET = 8;
+  static final int HEADER_CAPACITY_OFFSET = 12;
+
+  static final int RECORD_SEQUENCE_OFFSET = 0;
+  static final int RECORD_TIMESTAMP_OFFSET = 8;
+  static final int RECORD_SESSION_ID_OFFSET = 16;
+  static final int RECORD_VALUE_OFFSET = 24;
+  static final int RECORD_APP_VERSION_CODE_OFFSET = 32;
+  static final int RECORD_TYPE_OFFSET = 36;
+  static final int RECORD_MODULE_NAME_LENGTH_OFFSET = 38;
+  static final int RECORD_MODULE_NAME_OFFSET = 40;
+
+  static final short TYPE_LOAD = 1;
+  static final short TYPE_INSTALL = 2;
+  static final short TYPE_FAILURE = 3;
+  static final short TYPE_EXTRACTION = 4;
+  static final short TYPE_EVICTION = 5;
+
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ModuleEventLogFormat() {}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes a log written by {@link ModuleEventLog}. It doesn't depend on Android APIs, so it can be
+ * used offline to analyze logs pulled from devices.
+ */
+public class ModuleEventLogReader {
+
+  /** Types of logged events */
+  public enum EventType {
+    LOAD,
+    INSTALL,
+    FAILURE,
+    EXTRACTION,
+    EVICTION,
+    UNKNOWN
+  }
+
+  /** A single logged event */
+  public static class Event {
+    private final long mSequence;
+    private final long mTimestampMs;
+    private final long mSessionId;
+    private final int mAppVersionCode;
+    private final EventType mType;
+    private final String mModuleName;
+    private final long mValue;
+
+    private Event(
+        long sequence,
+        long timestampMs,
+        long sessionId,
+        int appVersionCode,
+        EventType type,
+        String moduleName,
+        long value) {
+      mSequence = sequence;
+      mTimestampMs = timestampMs;
+      mSessionId = sessionId;
+      mAppVersionCode = appVersionCode;
+      mType = type;
+      mModuleName = moduleName;
+      mValue = value;
+    }
+
+    public long getSequence() {
+      return mSequence;
+    }
+
+    public long getTimestampMs() {
+      return mTimestampMs;
+    }
+
+    /** Events of the same process share a session id (time of opening the log) */
+    public long getSessionId() {
+      return mSessionId;
+    }
+
+    public int getAppVersionCode() {
+      return mAppVersionCode;
+    }
+
+    public EventType getType() {
+      return mType;
+    }
+
+    /** Name of a module, it's truncated if it was too long */
+    public String getModuleName() {
+      return mModuleName;
+    }
+
+    /** Duration in microseconds for loads, installs and failures, bytes copied for extractions */
+    public long getValue() {
+      return mValue;
+    }
+  }
+
+  /** Reads all events from a log file, the oldest event comes first. */
+  public static List<Event> read(File logFile) throws IOException {
+    FileInputStream inputStream = new FileInputStream(logFile);
+    try {
+      return read(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /** Reads all events from a log, the oldest event comes first. */
+  public static List<Event> read(InputStream inputStream) throws IOException {
+    DataInputStream log = new DataInputStream(inputStream);
+    byte[] header = new byte[ModuleEventLogFormat.HEADER_SIZE];
+    log.readFully(header);
+    ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+    if (headerBuffer.getInt(0) != ModuleEventLogFormat.MAGIC) {
+      throw new IOException("Not a module event log");
+    }
+    if (headerBuffer.getInt(4) != ModuleEventLogFormat.VERSION) {
+      throw new IOException("Unsupported module event log version " + headerBuffer.getInt(4));
+    }
+    int recordSize = headerBuffer.getInt(ModuleEventLogFormat.HEADER_RECORD_SIZE_OFFSET);
+    int capacity = headerBuffer.getInt(ModuleEventLogFormat.HEADER_CAPACITY_OFFSET);
+    if (recordSize != ModuleEventLogFormat.RECORD_SIZE || capacity < 0) {
+      throw new IOException("Corrupted module event log");
+    }
+
+    List<Event> events = new ArrayList<>();
+    byte[] record = new byte[recordSize];
+    ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    for (int i = 0; i < capacity; ++i) {
+      log.readFully(record);
+      long sequence = recordBuffer.getLong(ModuleEventLogFormat.RECORD_SEQUENCE_OFFSET);
+      if (sequence == 0) {
+        // never written or interrupted while being written
+        continue;
+      }
+      int nameLength =
+          Math.min(
+              recordBuffer.getShort(ModuleEventLogFormat.RECORD_MODULE_NAME_LENGTH_OFFSET),
+              ModuleEventLogFormat.MAX_MODULE_NAME_LENGTH);
+      events.add(
+          new Event(
+              sequence,
+              recordBuffer.getLong(ModuleEventLogFormat.RECORD_TIMESTAMP_OFFSET),
+              recordBuffer.getLong(ModuleEventLogFormat.RECORD_SESSION_ID_OFFSET),
+              recordBuffer.getInt(ModuleEventLogFormat.RECORD_APP_VERSION_CODE_OFFSET),
+              getEventType(recordBuffer.getShort(ModuleEventLogFormat.RECORD_TYPE_OFFSET)),
+              new String(
+                  record,
+                  ModuleEventLogFormat.RECORD_MODULE_NAME_OFFSET,
+                  Math.max(nameLength, 0),
+                  ModuleEventLogFormat.UTF_8),
+              recordBuffer.getLong(ModuleEventLogFormat.RECORD_VALUE_OFFSET)));
+    }
+    Collections.sort(
+        events,
+        new Comparator<Event>() {
+          @Override
+          public int compare(Event first, Event second) {
+            return first.mSequence < second.mSequence
+                ? -1
+                : (first.mSequence == second.mSequence ? 0 : 1);
+          }
+        });
+    return events;
+  }
+
+  /**
+   * Returns how many times each module was loaded, a module is loaded at most once per process, so
+   * it's the number of sessions it was used in (as far as the log goes back). It can be used to
+   * rank modules for {@link ModulePreInstaller}.
+   */
+  public static Map<String, Integer> countLoads(List<Event> events) {
+    Map<String, Integer> loadCounts = new HashMap<>();
+    for (Event event : events) {
+      if (event.getType() == EventType.LOAD) {
+        Integer loadCount = loadCounts.get(event.getModuleName());
+        loadCounts.put(event.getModuleName(), loadCount != null ? loadCount + 1 : 1);
+      }
+    }
+    return loadCounts;
+  }
+
+  private static EventType getEventType(short type) {
+    switch (type) {
+      case ModuleEventLogFormat.TYPE_LOAD:
+        return EventType.LOAD;
+      case ModuleEventLogFormat.TYPE_INSTALL:
+        return EventType.INSTALL;
+      case ModuleEventLogFormat.TYPE_FAILURE:
+        return EventType.FAILURE;
+      case ModuleEventLogFormat.TYPE_EXTRACTION:
+        return EventType.EXTRACTION;
+      case ModuleEventLogFormat.TYPE_EVICTION:
+        return EventType.EVICTION;
+      default:
+        // written by a newer version
+        return EventType.UNKNOWN;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers modules which failed to install (e.g. because storage is full or an asset is broken)
+ * and makes next attempts fail fast for a while, so that a caller which retries doesn't copy and
+ * optimize a module again and again. The window starts at an initial backoff and doubles with every
+ * failure in a row up to a maximum, a successful install clears it.
+ */
+class ModuleFailureBackoff {
+
+  private final ModuleClock mClock;
+  private final long mInitialBackoffNs;
+  private final long mMaxBackoffNs;
+  // Guarded by this
+  private final Map<String, Failure> mFailures = new HashMap<>();
+
+  ModuleFailureBackoff(ModuleClock clock, long initialBackoffMs, long maxBackoffMs) {
+    mClock = clock;
+    mInitialBackoffNs = TimeUnit.MILLISECONDS.toNanos(initialBackoffMs);
+    mMaxBackoffNs = TimeUnit.MILLISECONDS.toNanos(Math.max(initialBackoffMs, maxBackoffMs));
+  }
+
+  /** Throws if the module failed recently and its backoff window isn't over yet */
+  synchronized void checkModule(String moduleName) throws ModuleBackoffException {
+    Failure failure = mFailures.get(moduleName);
+    if (failure == null) {
+      return;
+    }
+    long retryDelayNs = failure.mRetryTimeNs - mClock.nanoTime();
+    if (retryDelayNs > 0) {
+      throw new ModuleBackoffException(
+          moduleName,
+          failure.mCount,
+          TimeUnit.NANOSECONDS.toMillis(retryDelayNs),
+          failure.mLastFailure);
+    }
+  }
+
+  synchronized void onModuleFailed(String moduleName, IOException error) {
+    if (mInitialBackoffNs <= 0 || error instanceof ModuleBackoffException) {
+      // A fail-fast attempt doesn't extend the window
+      return;
+    }
+    Failure failure = mFailures.get(moduleName);
+    if (failure == null) {
+      failure = new Failure();
+      mFailures.put(moduleName, failure);
+    }
+    long backoffNs = mInitialBackoffNs;
+    for (int i = 0; i < failure.mCount && backoffNs < mMaxBackoffNs; i++) {
+      backoffNs *= 2;
+    }
+    failure.mCount++;
+    failure.mLastFailure = error;
+    failure.mRetryTimeNs = mClock.nanoTime() + Math.min(backoffNs, mMaxBackoffNs);
+  }
+
+  synchronized void onModuleInstalled(String moduleName) {
+    mFailures.remove(moduleName);
+  }
+
+  private static class Failure {
+    private int mCount;
+    private Throwable mLastFailure;
+    private long mRetryTimeNs;
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * File operations done by {@link DefaultModuleStore} when it extracts a module. They are the
+ * expensive part of a first load on slow storage, so they can be wrapped, e.g. by benchmarks which
+ * model storage of low-end devices. See {@link DefaultModuleFileIO} for the default implementation.
+ */
+public interface ModuleFileIO {
+
+  /** Creates a directory and its missing parents, it's a no-op if the directory exists */
+  void createDirectory(File directory) throws IOException;
+
+  /** Copies a stream into a file and closes the stream, the file is synced if requested */
+  void copy(InputStream from, File to, boolean sync) throws IOException;
+
+  /** Copies remaining bytes of a buffer into a file, the file is synced if requested */
+  void copy(ByteBuffer from, File to, boolean sync) throws IOException;
+
+  /** Atomically renames a file, it replaces an existing target file */
+  void rename(File from, File to) throws IOException;
+
+  /** Flushes content of a file to storage */
+  void sync(File file) throws IOException;
+
+  /** Flushes entries of a directory to storage, e.g. to make a rename into it durable */
+  void syncDirectory(File directory) throws IOException;
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * Exclusive lock of a module directory shared by all processes of an app. Module code may run in
+ * several processes (e.g. a secondary process of a video player) and every process has its own
+ * loader, so without a lock two processes loading the same module for the first time would copy
+ * the same files and optimize the same dex file at the same time. Holder of the lock should check
+ * again whether the work is still needed, as another process may have done it in the meantime.
+ *
+ * <p>{@link FileLock} is held on behalf of the whole process, so threads of the same process are
+ * serialized by an additional in-process lock. The lock is reentrant for a thread that holds it.
+ */
+public class ModuleFileLock {
+
+  private static final String LOCK_FILE_NAME = "install.lock";
+
+  private static final ConcurrentHashMap<String, ReentrantLock> sInProcessLocks =
+      new ConcurrentHashMap<>();
+
+  private final ReentrantLock mInProcessLock;
+  @Nullable private final RandomAccessFile mLockFile;
+  @Nullable private final FileLock mFileLock;
+
+  private ModuleFileLock(
+      ReentrantLock inProcessLock,
+      @Nullable RandomAccessFile lockFile,
+      @Nullable FileLock fileLock) {
+    mInProcessLock = inProcessLock;
+    mLockFile = lockFile;
+    mFileLock = fileLock;
+  }
+
+  /** Acquires a lock of a given module directory, it blocks until the lock is available. */
+  public static ModuleFileLock acquire(File moduleDirectory) throws IOException {
+    File lockFile = new File(moduleDirectory, LOCK_FILE_NAME);
+    ReentrantLock inProcessLock = getInProcessLock(lockFile.getAbsolutePath());
+    ModuleTrace.beginSection("waitForLock", moduleDirectory.getName());
+    try {
+      inProcessLock.lock();
+      if (inProcessLock.getHoldCount() > 1) {
+        // This thread already holds the file lock, locking it again would throw
+        return new ModuleFileLock(inProcessLock, null, null);
+      }
+      RandomAccessFile file = null;
+      try {
+        file = new RandomAccessFile(lockFile, "rw");
+        FileLock fileLock = file.getChannel().lock();
+        return new ModuleFileLock(inProcessLock, file, fileLock);
+      } catch (IOException | RuntimeException e) {
+        if (file != null) {
+          file.close();
+        }
+        inProcessLock.unlock();
+        throw e;
+      }
+    } finally {
+      ModuleTrace.endSection();
+    }
+  }
+
+  /** Releases the lock, must be called by the thread which acquired it. */
+  public void release() throws IOException {
+    try {
+      if (mFileLock != null) {
+        mFileLock.release();
+        mLockFile.close();
+      }
+    } finally {
+      mInProcessLock.unlock();
+    }
+  }
+
+  private static ReentrantLock getInProcessLock(String lockFilePath) {
+    ReentrantLock inProcessLock = sInProcessLocks.get(lockFilePath);
+    if (inProcessLock == null) {
+      inProcessLock = new ReentrantLock();
+      ReentrantLock previousLock = sInProcessLocks.putIfAbsent(lockFilePath, inProcessLock);
+      if (previousLock != null) {
+        inProcessLock = previousLock;
+      }
+    }
+    return inProcessLock;
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+/**
+ * Disk and memory cost of a single module, see {@link LazyModuleLoader#getModuleFootprints}. It
+ * helps to decide which features are worth loading lazily.
+ */
+public class ModuleFootprint {
+
+  private final String mModuleName;
+  private final long mAssetBytes;
+  private final long mDexBytes;
+  private final long mOptimizedDexBytes;
+  private final long mPendingOptimizedDexBytes;
+  private final long mNativeLibsBytes;
+  private final boolean mIsMapped;
+  private final long mResidentBytesEstimate;
+
+  public ModuleFootprint(
+      String moduleName,
+      long assetBytes,
+      long dexBytes,
+      long optimizedDexBytes,
+      long pendingOptimizedDexBytes,
+      long nativeLibsBytes,
+      boolean isMapped,
+      long residentBytesEstimate) {
+    mModuleName = moduleName;
+    mAssetBytes = assetBytes;
+    mDexBytes = dexBytes;
+    mOptimizedDexBytes = optimizedDexBytes;
+    mPendingOptimizedDexBytes = pendingOptimizedDexBytes;
+    mNativeLibsBytes = nativeLibsBytes;
+    mIsMapped = isMapped;
+    mResidentBytesEstimate = residentBytesEstimate;
+  }
+
+  /** Returns a footprint with the size from the manifest only, e.g. of a module not extracted */
+  static ModuleFootprint fromManifest(ModuleManifest moduleManifest) {
+    return new ModuleFootprint(
+        moduleManifest.getModuleName(), moduleManifest.getModuleSizeBytes(), 0, 0, 0, 0, false, 0);
+  }
+
+  public String getModuleName() {
+    return mModuleName;
+  }
+
+  /** Size of module files in the apk or {@link ModuleManifest#UNKNOWN_SIZE} */
+  public long getAssetBytes() {
+    return mAssetBytes;
+  }
+
+  /** Size of a dex file extracted into data dir, 0 if the module was not extracted */
+  public long getDexBytes() {
+    return mDexBytes;
+  }
+
+  /** Size of an optimized dex file which is used when the module is loaded */
+  public long getOptimizedDexBytes() {
+    return mOptimizedDexBytes;
+  }
+
+  /**
+   * Size of an optimized dex file produced in the background (see {@link BackgroundDexOptimizer})
+   * which replaces the one above next time the module is resolved. It's never mapped before that.
+   */
+  public long getPendingOptimizedDexBytes() {
+    return mPendingOptimizedDexBytes;
+  }
+
+  /** Size of native libraries extracted into data dir */
+  public long getNativeLibsBytes() {
+    return mNativeLibsBytes;
+  }
+
+  /** Returns bytes taken by the module in data dir (the apk is not included) */
+  public long getDiskBytes() {
+    return mDexBytes + mOptimizedDexBytes + mPendingOptimizedDexBytes + mNativeLibsBytes;
+  }
+
+  /** Returns true if the module was loaded and its files are mapped in this process */
+  public boolean isMapped() {
+    return mIsMapped;
+  }
+
+  /**
+   * Returns an upper bound of memory taken by the module in this process: size of its mapped
+   * optimized dex file and native libraries. Pages which were never touched are not resident, so
+   * the real value is usually lower. It's 0 if the module is not mapped.
+   */
+  public long getResidentBytesEstimate() {
+    return mResidentBytesEstimate;
+  }
+
+  ModuleFootprint withMapping(boolean isMapped, long residentBytesEstimate) {
+    return new ModuleFootprint(
+        mModuleName,
+        mAssetBytes,
+        mDexBytes,
+        mOptimizedDexBytes,
+        mPendingOptimizedDexBytes,
+        mNativeLibsBytes,
+        isMapped,
+        residentBytesEstimate);
+  }
+}
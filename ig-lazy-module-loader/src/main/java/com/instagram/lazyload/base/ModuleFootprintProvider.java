@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+
+package com.instagram.lazyload.base;
+
+import java.io.IOException;
+
+/**
+ * Optional interface of a {@link ModuleStore} or a {@link LoaderAlgorithm} which knows disk usage
+ * of its modules, see {@link LazyModuleLoader#getModuleFootprints}. A loader reports only sizes
+ * known from the manifest for modules of an algorithm which doesn't implement it.
+ */
+public interface ModuleFootprintProvider {
+
+  /**
+   * Returns disk and memory footprint of a module without extracting it and without waiting for
+   * loads in progress. It's polled periodically, so it should be cheap.
+   */
+  ModuleFootprint getModuleFootprint(ModuleManifestReader moduleManifestReader, String moduleName)
+      throws IOException;
+}
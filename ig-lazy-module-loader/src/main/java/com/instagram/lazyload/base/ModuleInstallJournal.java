@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Small append-only journal of install phases of a single module. Every phase writes a record when
+ * it starts and when it's done, so after a process death it's known which phase was interrupted and
+ * which artifacts can't be trusted. Each record is a single byte, so an append is atomic and a torn
+ * write can only lose the last record.
+ *
+ * <p>Once a module is fully installed the journal allows to skip checking its files on every
+ * resolve, see {@link DefaultModuleStore#recoverInterruptedInstalls()}.
+ */
+public class ModuleInstallJournal {
+
+  public static final byte EXTRACT_STARTED = 1;
+  public static final byte EXTRACT_DONE = 2;
+  public static final byte OPTIMIZE_STARTED = 3;
+  public static final byte OPTIMIZE_DONE = 4;
+  public static final byte LIBS_DONE = 5;
+
+  private static final String JOURNAL_FILE_NAME = "install.journal";
+
+  private static final int STATE_EXTRACTING = 1;
+  private static final int STATE_EXTRACTED = 1 << 1;
+  private static final int STATE_OPTIMIZING = 1 << 2;
+  private static final int STATE_OPTIMIZED = 1 << 3;
+  private static final int STATE_LIBS_EXTRACTED = 1 << 4;
+  private static final int STATES_IN_PROGRESS = STATE_EXTRACTING | STATE_OPTIMIZING;
+
+  private final File mJournalFile;
+  private int mState;
+
+  private ModuleInstallJournal(File journalFile, int state) {
+    mJournalFile = journalFile;
+    mState = state;
+  }
+
+  /** Opens (and reads) a journal of a module located in a given directory. */
+  public static ModuleInstallJournal open(File moduleDirectory) throws IOException {
+    File journalFile = new File(moduleDirectory, JOURNAL_FILE_NAME);
+    return new ModuleInstallJournal(journalFile, readState(journalFile));
+  }
+
+  /**
+   * Reads the journal again, it may have been appended by another process. Callers should hold the
+   * lock of the module directory, see {@link #lock()}.
+   */
+  public synchronized void reload() throws IOException {
+    mState = readState(mJournalFile);
+  }
+
+  /**
+   * Acquires a lock which serializes install phases of this module across all threads and
+   * processes of the app.
+   */
+  public ModuleFileLock lock() throws IOException {
+    return ModuleFileLock.acquire(mJournalFile.getParentFile());
+  }
+
+  /** Appends a record to the journal, it is a no-op if the record would not change the state. */
+  public synchronized void append(byte record) throws IOException {
+    int newState = applyRecord(mState, record);
+    if (newState == mState) {
+      return;
+    }
+    FileOutputStream writer = new FileOutputStream(mJournalFile, true /* append */);
+    try {
+      writer.write(record);
+    } finally {
+      writer.close();
+    }
+    mState = newState;
+  }
+
+  public synchronized boolean isExtracted() {
+    return (mState & STATE_EXTRACTED) != 0;
+  }
+
+  public synchronized boolean isOptimized() {
+    return (mState & STATE_OPTIMIZED) != 0;
+  }
+
+  public synchronized boolean areLibsExtracted() {
+    return (mState & STATE_LIBS_EXTRACTED) != 0;
+  }
+
+  public synchronized boolean isExtractionInterrupted() {
+    return (mState & STATE_EXTRACTING) != 0;
+  }
+
+  public synchronized boolean isOptimizationInterrupted() {
+    return (mState & STATE_OPTIMIZING) != 0;
+  }
+
+  public synchronized boolean hasInterruptedPhase() {
+    return (mState & STATES_IN_PROGRESS) != 0;
+  }
+
+  /**
+   * Forgets interrupted phases (after their artifacts were rolled back) and rewrites the journal so
+   * that it contains only records of completed phases.
+   */
+  public synchronized void rollBackInterruptedPhases() throws IOException {
+    int state = mState & ~STATES_IN_PROGRESS;
+    if (state == mState) {
+      return;
+    }
+    if ((mState & STATE_EXTRACTING) != 0) {
+      // everything depends on extracted files, so nothing else can be trusted either
+      state = 0;
+    }
+    File tmpJournalFile = new File(mJournalFile.getAbsolutePath() + ".tmp");
+    FileOutputStream writer = new FileOutputStream(tmpJournalFile);
+    try {
+      if ((state & STATE_EXTRACTED) != 0) {
+        writer.write(EXTRACT_DONE);
+      }
+      if ((state & STATE_OPTIMIZED) != 0) {
+        writer.write(OPTIMIZE_DONE);
+      }
+      if ((state & STATE_LIBS_EXTRACTED) != 0) {
+        writer.write(LIBS_DONE);
+      }
+    } finally {
+      writer.close();
+    }
+    if (!tmpJournalFile.renameTo(mJournalFile)) {
+      throw new IOException("Unable to rename a file");
+    }
+    mState = state;
+  }
+
+  private static int readState(File journalFile) throws IOException {
+    int state = 0;
+    if (!journalFile.exists()) {
+      return state;
+    }
+    FileInputStream reader = new FileInputStream(journalFile);
+    try {
+      byte[] records = new byte[(int) journalFile.length()];
+      int len;
+      while ((len = reader.read(records)) > 0) {
+        for (int i = 0; i < len; ++i) {
+          state = applyRecord(state, records[i]);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return state;
+  }
+
+  private static int applyRecord(int state, byte record) {
+    switch (record) {
+      case EXTRACT_STARTED:
+        return (state | STATE_EXTRACTING) & ~STATE_EXTRACTED;
+      case EXTRACT_DONE:
+        return (state | STATE_EXTRACTED) & ~STATE_EXTRACTING;
+      case OPTIMIZE_STARTED:
+        return (state | STATE_OPTIMIZING) & ~STATE_OPTIMIZED;
+      case OPTIMIZE_DONE:
+        return (state | STATE_OPTIMIZED) & ~STATE_OPTIMIZING;
+      case LIBS_DONE:
+        return state | STATE_LIBS_EXTRACTED;
+      default:
+        // unknown record (e.g. written by a newer version), ignore it
+        return state;
+    }
+  }
+}
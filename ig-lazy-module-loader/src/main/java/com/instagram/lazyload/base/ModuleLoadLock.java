@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Process;
+import javax.annotation.Nullable;
+
+/**
+ * Reentrant lock of {@link LazyModuleLoader} which is handed to waiting {@link
+ * LoadPriority#FOREGROUND} requests before waiting {@link LoadPriority#BACKGROUND} ones. Work in
+ * progress isn't interrupted (e.g. dexopt of a module), but while a foreground request waits for a
+ * background one, the thread of the background request runs at the priority of the waiting thread.
+ */
+final class ModuleLoadLock {
+
+  // Fields below are guarded by this
+  @Nullable private Thread mOwner;
+  private int mHoldCount;
+  private int mWaitingForegroundRequests;
+  // Set only when the owner is a background request, its thread priority may be raised
+  private int mBackgroundOwnerTid;
+  private boolean mIsBackgroundOwner;
+  private boolean mIsOwnerPriorityRaised;
+  private int mOwnerThreadPriority;
+  // Time requests spent waiting for the lock and how many of them waited, e.g. for a stress test
+  private long mWaitTimeNs;
+  private int mWaitCount;
+
+  synchronized void acquire(LoadPriority priority) {
+    Thread currentThread = Thread.currentThread();
+    if (mOwner == currentThread) {
+      mHoldCount++;
+      return;
+    }
+    boolean isForeground = priority == LoadPriority.FOREGROUND;
+    boolean isInterrupted = false;
+    boolean hasWaited = false;
+    long waitStartNs = 0;
+    if (isForeground) {
+      mWaitingForegroundRequests++;
+    }
+    try {
+      while (mOwner != null || (!isForeground && mWaitingForegroundRequests > 0)) {
+        if (!hasWaited) {
+          hasWaited = true;
+          waitStartNs = System.nanoTime();
+        }
+        if (isForeground) {
+          raiseBackgroundOwnerPriority();
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // Loads aren't interruptible, the interrupt is kept for the caller
+          isInterrupted = true;
+        }
+      }
+    } finally {
+      if (isForeground) {
+        mWaitingForegroundRequests--;
+      }
+    }
+    if (hasWaited) {
+      mWaitTimeNs += System.nanoTime() - waitStartNs;
+      mWaitCount++;
+    }
+    mOwner = currentThread;
+    mHoldCount = 1;
+    mIsBackgroundOwner = !isForeground;
+    if (mIsBackgroundOwner) {
+      mBackgroundOwnerTid = Process.myTid();
+    }
+    if (isInterrupted) {
+      currentThread.interrupt();
+    }
+  }
+
+  synchronized void release() {
+    if (mOwner != Thread.currentThread()) {
+      throw new IllegalStateException("Lock is not held by the current thread");
+    }
+    if (--mHoldCount > 0) {
+      return;
+    }
+    if (mIsOwnerPriorityRaised) {
+      restoreThreadPriority(mBackgroundOwnerTid, mOwnerThreadPriority);
+      mIsOwnerPriorityRaised = false;
+    }
+    mOwner = null;
+    mIsBackgroundOwner = false;
+    notifyAll();
+  }
+
+  /** Returns total time requests waited in {@link #acquire} since the lock was created */
+  synchronized long getWaitTimeNs() {
+    return mWaitTimeNs;
+  }
+
+  /** Returns how many requests had to wait in {@link #acquire} since the lock was created */
+  synchronized int getWaitCount() {
+    return mWaitCount;
+  }
+
+  private void raiseBackgroundOwnerPriority() {
+    if (!mIsBackgroundOwner) {
+      return;
+    }
+    try {
+      // Lower value is higher priority
+      int waitingThreadPriority = Process.getThreadPriority(Process.myTid());
+      int ownerThreadPriority = Process.getThreadPriority(mBackgroundOwnerTid);
+      if (waitingThreadPriority >= ownerThreadPriority) {
+        return;
+      }
+      if (!mIsOwnerPriorityRaised) {
+        mOwnerThreadPriority = ownerThreadPriority;
+        mIsOwnerPriorityRaised = true;
+      }
+      Process.setThreadPriority(mBackgroundOwnerTid, waitingThreadPriority);
+    } catch (IllegalArgumentException | SecurityException e) {
+      // The priority isn't allowed, it only makes the wait longer
+    }
+  }
+
+  private static void restoreThreadPriority(int tid, int priority) {
+    try {
+      Process.setThreadPriority(tid, priority);
+    } catch (IllegalArgumentException | SecurityException e) {
+      // The thread keeps the raised priority
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Built-in recorder of lazy loading metrics, pass it as a {@link LoadPhaseListener} to {@link
+ * DefautlLoaderAlgorithm} and {@link DefaultModuleStore}. It keeps a {@link LatencyHistogram} for
+ * every module and phase together with counts of cold and warm loads, failures and bytes copied.
+ * Apart from the first event of a module and phase, recording doesn't allocate. Use {@link
+ * #getSnapshots(boolean)} to periodically report percentiles of load latencies.
+ */
+public class ModuleLoadMetrics implements LoadPhaseListener {
+
+  private static final LoadPhase[] PHASES = LoadPhase.values();
+
+  private final ConcurrentHashMap<String, ModuleMetrics> mModuleMetrics =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public void onPhaseStarted(String moduleName, LoadPhase phase) {}
+
+  @Override
+  public void onPhaseFinished(String moduleName, LoadPhase phase, long durationNs) {
+    getModuleMetrics(moduleName).getHistogram(phase).recordValue(durationNs / 1000);
+  }
+
+  @Override
+  public void onPhaseFailed(String moduleName, LoadPhase phase, long durationNs, Throwable error) {
+    ModuleMetrics moduleMetrics = getModuleMetrics(moduleName);
+    // A failure propagates through all enclosing phases, count it once
+    if (phase == LoadPhase.COLD_LOAD
+        || phase == LoadPhase.WARM_LOAD
+        || phase == LoadPhase.INSTALL) {
+      moduleMetrics.mFailures.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void onModuleExtracted(String moduleName, long bytesCopied) {
+    getModuleMetrics(moduleName).mBytesCopied.addAndGet(bytesCopied);
+  }
+
+  /**
+   * Returns metrics of all modules recorded so far.
+   *
+   * @param reset whether to start counting from scratch, e.g. after the snapshots were reported
+   */
+  public List<Snapshot> getSnapshots(boolean reset) {
+    List<Snapshot> snapshots = new ArrayList<>(mModuleMetrics.size());
+    for (Map.Entry<String, ModuleMetrics> entry : mModuleMetrics.entrySet()) {
+      snapshots.add(entry.getValue().getSnapshot(entry.getKey(), reset));
+    }
+    return snapshots;
+  }
+
+  private ModuleMetrics getModuleMetrics(String moduleName) {
+    ModuleMetrics moduleMetrics = mModuleMetrics.get(moduleName);
+    if (moduleMetrics == null) {
+      moduleMetrics = new ModuleMetrics();
+      ModuleMetrics previousMetrics = mModuleMetrics.putIfAbsent(moduleName, moduleMetrics);
+      if (previousMetrics != null) {
+        moduleMetrics = previousMetrics;
+      }
+    }
+    return moduleMetrics;
+  }
+
+  private static class ModuleMetrics {
+    // Histograms are created when a phase is recorded for the first time
+    private final AtomicReferenceArray<LatencyHistogram> mHistograms =
+        new AtomicReferenceArray<>(PHASES.length);
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mBytesCopied = new AtomicLong();
+
+    LatencyHistogram getHistogram(LoadPhase phase) {
+      LatencyHistogram histogram = mHistograms.get(phase.ordinal());
+      if (histogram == null) {
+        mHistograms.compareAndSet(phase.ordinal(), null, new LatencyHistogram());
+        histogram = mHistograms.get(phase.ordinal());
+      }
+      return histogram;
+    }
+
+    Snapshot getSnapshot(String moduleName, boolean reset) {
+      LatencyHistogram.Snapshot[] histograms = new LatencyHistogram.Snapshot[PHASES.length];
+      for (LoadPhase phase : PHASES) {
+        LatencyHistogram histogram = mHistograms.get(phase.ordinal());
+        histograms[phase.ordinal()] =
+            histogram != null ? histogram.getSnapshot(reset) : LatencyHistogram.Snapshot.EMPTY;
+      }
+      return new Snapshot(
+          moduleName,
+          histograms,
+          reset ? mFailures.getAndSet(0) : mFailures.get(),
+          reset ? mBytesCopied.getAndSet(0) : mBytesCopied.get());
+    }
+  }
+
+  /** Metrics of a single module */
+  public static class Snapshot {
+    private final String mModuleName;
+    private final LatencyHistogram.Snapshot[] mHistograms;
+    private final long mFailures;
+    private final long mBytesCopied;
+
+    private Snapshot(
+        String moduleName,
+        LatencyHistogram.Snapshot[] histograms,
+        long failures,
+        long bytesCopied) {
+      mModuleName = moduleName;
+      mHistograms = histograms;
+      mFailures = failures;
+      mBytesCopied = bytesCopied;
+    }
+
+    public String getModuleName() {
+      return mModuleName;
+    }
+
+    /** Returns latencies of a phase, failed phases are not included */
+    public LatencyHistogram.Snapshot getLatency(LoadPhase phase) {
+      return mHistograms[phase.ordinal()];
+    }
+
+    public long getColdLoads() {
+      return getLatency(LoadPhase.COLD_LOAD).getCount();
+    }
+
+    public long getWarmLoads() {
+      return getLatency(LoadPhase.WARM_LOAD).getCount();
+    }
+
+    public long getFailures() {
+      return mFailures;
+    }
+
+    public long getBytesCopied() {
+      return mBytesCopied;
+    }
+  }
+}
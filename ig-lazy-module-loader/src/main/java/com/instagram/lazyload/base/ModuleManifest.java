@@ -16,10 +16,15 @@ import javax.annotation.Nullable;
 /** Metadata describing a module. */
 public class ModuleManifest {
 
+  /** Size of a module used when it is not known */
+  public static final long UNKNOWN_SIZE = -1;
+
   private final String mModuleName;
   @Nullable private final String mDexFileName;
   private final String mModuleHash;
   private final boolean mContainsNativeLib;
+  private final long mModuleSizeBytes;
+  private final int mPreInstallPriority;
 
   /** A module can be dependent on other modules that need to be loaded prior to this module */
   private final List<String> moduleDependencies = new ArrayList<>();
@@ -29,12 +34,16 @@ public class ModuleManifest {
       String moduleHash,
       String dexFileName,
       List<String> moduleDependencies,
-      boolean containsNativeLib) {
+      boolean containsNativeLib,
+      long moduleSizeBytes,
+      int preInstallPriority) {
     this.mModuleName = moduleName;
     this.mDexFileName = dexFileName;
     this.mModuleHash = moduleHash;
     this.moduleDependencies.addAll(moduleDependencies);
     this.mContainsNativeLib = containsNativeLib;
+    this.mModuleSizeBytes = moduleSizeBytes;
+    this.mPreInstallPriority = preInstallPriority;
   }
 
   public String getModuleName() {
@@ -61,11 +70,23 @@ public class ModuleManifest {
     return new ArrayList<>(moduleDependencies);
   }
 
+  /** Size of module files in assets or {@link #UNKNOWN_SIZE} */
+  public long getModuleSizeBytes() {
+    return mModuleSizeBytes;
+  }
+
+  /** Modules with higher priority are pre-installed first (see {@link ModulePreInstaller}) */
+  public int getPreInstallPriority() {
+    return mPreInstallPriority;
+  }
+
   public static class Builder {
     private final String moduleName;
     private String moduleHash;
     private String dexFileName;
     private boolean containsNativeLib;
+    private long moduleSizeBytes = UNKNOWN_SIZE;
+    private int preInstallPriority;
     private final List<String> moduleDependencies = new ArrayList<>();
 
     public Builder(String moduleName) {
@@ -87,6 +108,16 @@ public class ModuleManifest {
       return this;
     }
 
+    public Builder setModuleSizeBytes(long moduleSizeBytes) {
+      this.moduleSizeBytes = moduleSizeBytes;
+      return this;
+    }
+
+    public Builder setPreInstallPriority(int preInstallPriority) {
+      this.preInstallPriority = preInstallPriority;
+      return this;
+    }
+
     public Builder addDependency(String dependency) {
       moduleDependencies.add(dependency);
       return this;
@@ -94,7 +125,13 @@ public class ModuleManifest {
 
     public ModuleManifest build() {
       return new ModuleManifest(
-          moduleName, moduleHash, dexFileName, moduleDependencies, containsNativeLib);
+          moduleName,
+          moduleHash,
+          dexFileName,
+          moduleDependencies,
+          containsNativeLib,
+          moduleSizeBytes,
+          preInstallPriority);
     }
   }
 }
@@ -22,6 +22,7 @@ public class ModulePathsAndDependencies {
   @Nullable private final File mDexFile;
   @Nullable private final File mOptimizedDexFile;
   @Nullable private final File mNativeLibsDirectory;
+  @Nullable private final ModuleInstallJournal mInstallJournal;
 
   /** A module can be dependent on other modules that need to be loaded prior to this module */
   private final List<String> mModuleDependencies = new ArrayList<>();
@@ -38,11 +39,26 @@ public class ModulePathsAndDependencies {
       File optimizedDexFile,
       File nativeLibsDirectory,
       List<String> moduleDependencies) {
+    this(moduleName, dexFile, optimizedDexFile, nativeLibsDirectory, moduleDependencies, null);
+  }
+
+  /**
+   * Same as above, an install journal is provided by stores which track install phases of a
+   * module, see {@link ModuleInstallJournal}.
+   */
+  public ModulePathsAndDependencies(
+      String moduleName,
+      File dexFile,
+      File optimizedDexFile,
+      File nativeLibsDirectory,
+      List<String> moduleDependencies,
+      @Nullable ModuleInstallJournal installJournal) {
     mModuleName = moduleName;
     mDexFile = dexFile;
     mOptimizedDexFile = optimizedDexFile;
     mNativeLibsDirectory = nativeLibsDirectory;
     mModuleDependencies.addAll(moduleDependencies);
+    mInstallJournal = installJournal;
   }
 
   public String getModuleName() {
@@ -72,6 +88,11 @@ public class ModulePathsAndDependencies {
     return mNativeLibsDirectory != null;
   }
 
+  @Nullable
+  public ModuleInstallJournal getInstallJournal() {
+    return mInstallJournal;
+  }
+
   public List<String> getModuleDependencies() {
     return new ArrayList<>(mModuleDependencies);
   }
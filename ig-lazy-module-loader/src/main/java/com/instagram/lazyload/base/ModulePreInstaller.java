@@ -0,0 +1,468 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Installs modules ahead of their first use after an app upgrade, when none of the modules of the
+ * new version is extracted and optimized yet, so that the first load of a feature doesn't pay for
+ * it. {@link #run} is blocking and should be called on a background thread, e.g. from a service
+ * started on MY_PACKAGE_REPLACED broadcast.
+ *
+ * <p>Modules are installed in order of {@link ModuleManifest#getPreInstallPriority()} and then of
+ * usage counts (e.g. {@link ModuleEventLogReader#countLoads}), so that the modules most likely to
+ * be loaded are ready first. Installs go through {@link LoadPriority#BACKGROUND}, so a load the
+ * user waits for is never queued behind them.
+ *
+ * <p>Before every module the device conditions are checked (charging, idle) and a run stops once it
+ * used up its time budget. Installs are also paced so that they don't write faster than a given
+ * rate. A run which stopped should be repeated later, e.g. when the device is plugged in. Progress
+ * is persisted, so the next run (even in a new process) continues with modules which are not
+ * installed yet, and once all of them are installed a run returns right away.
+ */
+public class ModulePreInstaller {
+
+  private static final String PROGRESS_FILE_SUFFIX = ".preinstall";
+  private static final String PROGRESS_ENCODING = "UTF-8";
+  private static final String PROGRESS_DONE = "done ";
+  private static final String PROGRESS_FAILED = "failed ";
+
+  // Module which failed to install this many times is not pre-installed anymore, it will be
+  // installed by its first load.
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** Outcome of a single {@link #run} */
+  public enum Result {
+    /** All modules are installed, or were given up after failing to install too many times */
+    WARM,
+    /** Some modules failed to install and they will be tried again by the next run */
+    MODULES_FAILED,
+    /** Device stopped being idle or charging, the run should be repeated later */
+    CONSTRAINTS_NOT_MET,
+    /** The run used up its time budget, the run should be repeated later */
+    BUDGET_EXHAUSTED,
+    /** The run was cancelled or its thread was interrupted */
+    CANCELLED,
+  }
+
+  /** State of the device pre-installs depend on, see {@link #createDeviceConditions(Context)} */
+  public interface DeviceConditions {
+
+    boolean isCharging();
+
+    /** Returns true if the user doesn't use the device, e.g. its screen is off */
+    boolean isIdle();
+  }
+
+  private final LazyModuleLoader mLazyModuleLoader;
+  private final ModuleManifestReader mModuleManifestReader;
+  private final File mProgressFile;
+  private final Map<String, Integer> mUsageCounts;
+  @Nullable private final DeviceConditions mDeviceConditions;
+  private final boolean mRequiresCharging;
+  private final boolean mRequiresIdle;
+  private final long mMaxBytesPerSecond;
+  private final long mTimeBudgetMs;
+  private final ModuleClock mClock;
+
+  private ModulePreInstaller(Builder builder) {
+    mLazyModuleLoader = builder.lazyModuleLoader;
+    mModuleManifestReader = builder.moduleManifestReader;
+    mProgressFile = builder.progressFile;
+    mUsageCounts = builder.usageCounts;
+    mDeviceConditions = builder.deviceConditions;
+    mRequiresCharging = builder.requiresCharging;
+    mRequiresIdle = builder.requiresIdle;
+    mMaxBytesPerSecond = builder.maxBytesPerSecond;
+    mTimeBudgetMs = builder.timeBudgetMs;
+    mClock = builder.clock;
+  }
+
+  /** Returns a file next to the modules directory where progress of pre-installs is kept */
+  public static File getDefaultProgressFile(Context context) {
+    File modulesDirectory = DefaultModuleStore.getDirectoryForAllModules(context);
+    return new File(
+        modulesDirectory.getParentFile(), modulesDirectory.getName() + PROGRESS_FILE_SUFFIX);
+  }
+
+  /**
+   * Returns conditions of an Android device. It's charging if it's plugged in, and it's idle if its
+   * screen is off, which is the closest signal available on all supported versions.
+   */
+  public static DeviceConditions createDeviceConditions(Context context) {
+    final Context applicationContext = context.getApplicationContext();
+    return new DeviceConditions() {
+      @Override
+      public boolean isCharging() {
+        // Battery status is a sticky broadcast, so no receiver is needed to read it
+        Intent batteryStatus =
+            applicationContext.registerReceiver(
+                null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null
+            && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+      }
+
+      @Override
+      @SuppressWarnings("deprecation")
+      public boolean isIdle() {
+        PowerManager powerManager =
+            (PowerManager) applicationContext.getSystemService(Context.POWER_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
+          return !powerManager.isInteractive();
+        }
+        return !powerManager.isScreenOn();
+      }
+    };
+  }
+
+  /**
+   * Installs modules which are not installed yet, until all of them are installed or until the run
+   * has to stop.
+   *
+   * @param moduleNames modules of the current app version, e.g. all modules listed by {@link
+   *     BinaryModuleManifestReader#getModuleNames()}
+   * @param cancellationToken optional token which stops the run before the next module
+   */
+  public Result run(
+      Collection<String> moduleNames, @Nullable LoadCancellationToken cancellationToken)
+      throws IOException {
+    List<ModuleManifest> manifests = new ArrayList<>(moduleNames.size());
+    Set<String> progressKeys = new HashSet<>();
+    for (String moduleName : moduleNames) {
+      ModuleManifest manifest = mModuleManifestReader.readModuleManifest(moduleName);
+      manifests.add(manifest);
+      progressKeys.add(getProgressKey(manifest));
+    }
+    Set<String> doneModules = new HashSet<>();
+    Map<String, Integer> failedAttempts = new HashMap<>();
+    if (!readProgress(progressKeys, doneModules, failedAttempts)) {
+      // Entries of old app versions are dropped, so that the file doesn't grow with every upgrade
+      writeProgress(doneModules, failedAttempts);
+    }
+
+    List<ModuleManifest> pendingManifests = new ArrayList<>();
+    for (ModuleManifest manifest : manifests) {
+      String key = getProgressKey(manifest);
+      Integer attempts = failedAttempts.get(key);
+      if (!doneModules.contains(key) && (attempts == null || attempts < MAX_ATTEMPTS)) {
+        pendingManifests.add(manifest);
+      }
+    }
+    // The sort is stable, so modules of the same rank keep the order they were given in
+    Collections.sort(pendingManifests, new RankComparator(mUsageCounts));
+
+    boolean hasFailedModules = false;
+    long startNs = mClock.nanoTime();
+    for (ModuleManifest manifest : pendingManifests) {
+      if (cancellationToken != null && cancellationToken.isCancelled()) {
+        return Result.CANCELLED;
+      }
+      if (!areConstraintsMet()) {
+        return Result.CONSTRAINTS_NOT_MET;
+      }
+      if (mTimeBudgetMs > 0
+          && TimeUnit.NANOSECONDS.toMillis(mClock.nanoTime() - startNs) >= mTimeBudgetMs) {
+        return Result.BUDGET_EXHAUSTED;
+      }
+      String key = getProgressKey(manifest);
+      if (isWarm(manifest)) {
+        // Module was installed by a load since the upgrade
+        appendProgress(PROGRESS_DONE, key);
+        continue;
+      }
+      long installStartNs = mClock.nanoTime();
+      try {
+        mLazyModuleLoader.installModule(manifest.getModuleName(), LoadPriority.BACKGROUND);
+        appendProgress(PROGRESS_DONE, key);
+      } catch (ModuleBackoffException e) {
+        // The module failed recently and it wasn't really tried, so it's not an attempt
+        hasFailedModules = true;
+        continue;
+      } catch (IOException e) {
+        // The failure was already reported to the load phase listener
+        appendProgress(PROGRESS_FAILED, key);
+        hasFailedModules = true;
+      }
+      if (!pace(manifest.getModuleSizeBytes(), mClock.nanoTime() - installStartNs)) {
+        return Result.CANCELLED;
+      }
+    }
+    return hasFailedModules ? Result.MODULES_FAILED : Result.WARM;
+  }
+
+  private boolean areConstraintsMet() {
+    if (mDeviceConditions == null) {
+      return true;
+    }
+    return (!mRequiresCharging || mDeviceConditions.isCharging())
+        && (!mRequiresIdle || mDeviceConditions.isIdle());
+  }
+
+  /**
+   * Returns true if the module doesn't need to be installed: its dex file was already optimized or
+   * its native libraries were already extracted.
+   *
+   * <p>Only an optimized dex file which is in use counts. A module optimized by {@link
+   * BackgroundDexOptimizer} which hasn't been resolved since then only has a pending one (see
+   * {@link ModuleFootprint#getPendingOptimizedDexBytes()}), so it's still installed, which is cheap
+   * as the install only swaps the pending file in.
+   */
+  private boolean isWarm(ModuleManifest manifest) throws IOException {
+    ModuleFootprint footprint =
+        mLazyModuleLoader
+            .getModuleFootprints(
+                mModuleManifestReader, Collections.singletonList(manifest.getModuleName()))
+            .get(0);
+    if (manifest.containsDexFile()) {
+      // A pending optimized dex file isn't counted, see above
+      return footprint.getOptimizedDexBytes() > 0;
+    }
+    if (manifest.containsNativeLib()) {
+      return footprint.getNativeLibsBytes() > 0;
+    }
+    return true;
+  }
+
+  /**
+   * Sleeps after an install, so that on average modules are not written faster than the maximum
+   * rate. Returns false if the thread was interrupted.
+   */
+  private boolean pace(long moduleBytes, long installNs) {
+    if (mMaxBytesPerSecond <= 0 || moduleBytes <= 0) {
+      return true;
+    }
+    long minInstallMs = moduleBytes * 1000 / mMaxBytesPerSecond;
+    long sleepMs = minInstallMs - TimeUnit.NANOSECONDS.toMillis(installNs);
+    if (sleepMs <= 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(sleepMs);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static String getProgressKey(ModuleManifest manifest) {
+    return DefaultModuleStore.getDirectoryNameForModule(manifest);
+  }
+
+  /**
+   * Reads entries of given modules from the progress file. A torn last line (the process died while
+   * appending) doesn't match any module and is ignored. Returns false if the file contains entries
+   * of other modules, e.g. of an old app version.
+   */
+  private boolean readProgress(
+      Set<String> progressKeys, Set<String> doneModules, Map<String, Integer> failedAttempts)
+      throws IOException {
+    if (!mProgressFile.exists()) {
+      return true;
+    }
+    boolean isCurrent = true;
+    BufferedReader reader = null;
+    try {
+      reader =
+          new BufferedReader(
+              new InputStreamReader(new FileInputStream(mProgressFile), PROGRESS_ENCODING));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(PROGRESS_DONE)
+            && progressKeys.contains(line.substring(PROGRESS_DONE.length()))) {
+          doneModules.add(line.substring(PROGRESS_DONE.length()));
+        } else if (line.startsWith(PROGRESS_FAILED)
+            && progressKeys.contains(line.substring(PROGRESS_FAILED.length()))) {
+          String key = line.substring(PROGRESS_FAILED.length());
+          Integer attempts = failedAttempts.get(key);
+          failedAttempts.put(key, attempts == null ? 1 : attempts + 1);
+        } else {
+          isCurrent = false;
+        }
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    return isCurrent;
+  }
+
+  /** Replaces the progress file with given entries */
+  private void writeProgress(Set<String> doneModules, Map<String, Integer> failedAttempts)
+      throws IOException {
+    File tmpProgressFile = new File(mProgressFile.getAbsolutePath() + ".tmp");
+    BufferedWriter writer = null;
+    try {
+      writer =
+          new BufferedWriter(
+              new OutputStreamWriter(new FileOutputStream(tmpProgressFile), PROGRESS_ENCODING));
+      for (String key : doneModules) {
+        writer.write(PROGRESS_DONE + key);
+        writer.newLine();
+      }
+      for (Map.Entry<String, Integer> entry : failedAttempts.entrySet()) {
+        for (int i = 0; i < entry.getValue(); i++) {
+          writer.write(PROGRESS_FAILED + entry.getKey());
+          writer.newLine();
+        }
+      }
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+    if (!tmpProgressFile.renameTo(mProgressFile)) {
+      throw new IOException("Unable to rename a file");
+    }
+  }
+
+  /**
+   * Appends a single entry. The file is not synced, an entry lost by a power failure only means
+   * that a module is checked again by the next run.
+   */
+  private void appendProgress(String state, String key) throws IOException {
+    Writer writer =
+        new OutputStreamWriter(new FileOutputStream(mProgressFile, true), PROGRESS_ENCODING);
+    try {
+      writer.write(state + key + "\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** Higher pre-install priority first, then more frequently used modules first */
+  private static class RankComparator implements Comparator<ModuleManifest> {
+
+    private final Map<String, Integer> mUsageCounts;
+
+    RankComparator(Map<String, Integer> usageCounts) {
+      mUsageCounts = usageCounts;
+    }
+
+    @Override
+    public int compare(ModuleManifest first, ModuleManifest second) {
+      if (first.getPreInstallPriority() != second.getPreInstallPriority()) {
+        return first.getPreInstallPriority() > second.getPreInstallPriority() ? -1 : 1;
+      }
+      int firstUsage = getUsageCount(first.getModuleName());
+      int secondUsage = getUsageCount(second.getModuleName());
+      return firstUsage == secondUsage ? 0 : (firstUsage > secondUsage ? -1 : 1);
+    }
+
+    private int getUsageCount(String moduleName) {
+      Integer count = mUsageCounts.get(moduleName);
+      return count == null ? 0 : count;
+    }
+  }
+
+  public static class Builder {
+    private final LazyModuleLoader lazyModuleLoader;
+    private final ModuleManifestReader moduleManifestReader;
+    private final File progressFile;
+    private Map<String, Integer> usageCounts = new HashMap<>();
+    @Nullable private DeviceConditions deviceConditions;
+    private boolean requiresCharging;
+    private boolean requiresIdle;
+    private long maxBytesPerSecond;
+    private long timeBudgetMs;
+    private ModuleClock clock = ModuleClock.SYSTEM;
+
+    /**
+     * @param progressFile file where installed modules are recorded, e.g. {@link
+     *     #getDefaultProgressFile(Context)}
+     */
+    public Builder(
+        LazyModuleLoader lazyModuleLoader,
+        ModuleManifestReader moduleManifestReader,
+        File progressFile) {
+      this.lazyModuleLoader = lazyModuleLoader;
+      this.moduleManifestReader = moduleManifestReader;
+      this.progressFile = progressFile;
+    }
+
+    /** Sets how many times modules were loaded, e.g. by {@link ModuleEventLogReader#countLoads} */
+    public Builder setUsageCounts(Map<String, Integer> usageCounts) {
+      this.usageCounts = usageCounts;
+      return this;
+    }
+
+    /** Sets conditions which are checked before every module, if any of them is required */
+    public Builder setDeviceConditions(@Nullable DeviceConditions deviceConditions) {
+      this.deviceConditions = deviceConditions;
+      return this;
+    }
+
+    public Builder setRequiresCharging(boolean requiresCharging) {
+      this.requiresCharging = requiresCharging;
+      return this;
+    }
+
+    public Builder setRequiresIdle(boolean requiresIdle) {
+      this.requiresIdle = requiresIdle;
+      return this;
+    }
+
+    /** Limits average rate modules are installed at, 0 (the default) means no limit */
+    public Builder setMaxBytesPerSecond(long maxBytesPerSecond) {
+      this.maxBytesPerSecond = maxBytesPerSecond;
+      return this;
+    }
+
+    /**
+     * Limits time a single run spends installing, 0 (the default) means no limit. On ART most of
+     * the work is done by dex2oat in another process, so the time is a better measure of the cost
+     * than CPU time of the calling thread.
+     */
+    public Builder setTimeBudgetMs(long timeBudgetMs) {
+      this.timeBudgetMs = timeBudgetMs;
+      return this;
+    }
+
+    /** Sets a clock the time budget and the rate are measured with, e.g. a fake one in tests */
+    public Builder setClock(ModuleClock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public ModulePreInstaller build() {
+      if ((requiresCharging || requiresIdle) && deviceConditions == null) {
+        throw new IllegalStateException("Device conditions are required");
+      }
+      return new ModulePreInstaller(this);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records which classes of lazily loaded modules are actually used ("hot" classes). {@link
+ * CustomClassLoader} reports every class it finds in a module dex file and the profiler keeps the
+ * ones that belong to dex files it was asked to track. Profiles are persisted next to the module so
+ * that the next process can prepare the hot classes ahead of their first use.
+ */
+public class ModuleProfiler {
+
+  private static final String PROFILE_ENCODING = "UTF-8";
+
+  /** Hot classes keyed by absolute path of the dex file they were loaded from */
+  private final ConcurrentHashMap<String, Set<String>> mHotClasses = new ConcurrentHashMap<>();
+
+  /** Starts recording classes loaded from a given dex file. */
+  public void startProfiling(File dexFile) {
+    mHotClasses.putIfAbsent(
+        dexFile.getAbsolutePath(),
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+  }
+
+  /**
+   * Called by class loader every time a class is found in a module dex file. This is called on the
+   * class loading path so it must stay cheap and free from locks held for a long time.
+   */
+  public void recordClassLoaded(String dexFilePath, String className) {
+    Set<String> hotClasses = mHotClasses.get(dexFilePath);
+    if (hotClasses != null) {
+      hotClasses.add(className);
+    }
+  }
+
+  /** Returns a copy of the hot classes recorded so far for a given dex file. */
+  public List<String> getHotClasses(File dexFile) {
+    Set<String> hotClasses = mHotClasses.get(dexFile.getAbsolutePath());
+    if (hotClasses == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(hotClasses);
+  }
+
+  /**
+   * Persists a profile. Previously persisted classes are merged with the new ones so a session
+   * that used only a part of the module does not shrink the profile.
+   */
+  public static void writeProfile(File profileFile, Collection<String> hotClasses)
+      throws IOException {
+    Set<String> merged = new HashSet<>();
+    merged.addAll(readProfile(profileFile));
+    if (!merged.addAll(hotClasses) && profileFile.exists()) {
+      // nothing new was recorded
+      return;
+    }
+    FileIOUtils.createDirectoryOrThrow(profileFile.getParentFile());
+    // Profile is only a hint, but we still don't want readers to observe a half written file.
+    File tmpProfileFile = new File(profileFile.getAbsolutePath() + ".tmp");
+    BufferedWriter writer = null;
+    try {
+      writer =
+          new BufferedWriter(
+              new OutputStreamWriter(new FileOutputStream(tmpProfileFile), PROFILE_ENCODING));
+      for (String className : merged) {
+        writer.write(className);
+        writer.newLine();
+      }
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+    if (!tmpProfileFile.renameTo(profileFile)) {
+      throw new IOException("Unable to rename a file");
+    }
+  }
+
+  /** Reads a persisted profile, returns an empty list if there is no profile. */
+  public static List<String> readProfile(File profileFile) throws IOException {
+    List<String> hotClasses = new ArrayList<>();
+    if (!profileFile.exists()) {
+      return hotClasses;
+    }
+    BufferedReader reader = null;
+    try {
+      reader =
+          new BufferedReader(
+              new InputStreamReader(new FileInputStream(profileFile), PROFILE_ENCODING));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          hotClasses.add(line);
+        }
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    return hotClasses;
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits trace sections around phases of lazy loading (reading a manifest, copying, dexopt, native
+ * load, class load, waiting for dependencies and locks), so that module loading is visible in
+ * system traces instead of being an opaque gap. Tracing is disabled by default and costs a single
+ * volatile read per section when disabled. Enable it before any module is loaded, otherwise
+ * sections which are in progress may be left unbalanced.
+ *
+ * <p>By default sections are emitted with {@link Trace}, on a plain JVM a different {@link
+ * TraceSink} can be set, e.g. {@link ChromeTraceSink}.
+ */
+public final class ModuleTrace {
+
+  /** Receives trace sections, sections are nested on the thread which emits them. */
+  public interface TraceSink {
+
+    void beginSection(String sectionName);
+
+    void endSection();
+  }
+
+  private static final String SECTION_PREFIX = "LazyLoad.";
+
+  private static volatile boolean sIsEnabled = false;
+  private static volatile TraceSink sTraceSink = new SystemTraceSink();
+
+  private ModuleTrace() {}
+
+  public static void setEnabled(boolean isEnabled) {
+    sIsEnabled = isEnabled;
+  }
+
+  public static boolean isEnabled() {
+    return sIsEnabled;
+  }
+
+  public static void setTraceSink(TraceSink traceSink) {
+    sTraceSink = traceSink;
+  }
+
+  /**
+   * Begins a section, it must be ended by {@link #endSection()} on the same thread.
+   *
+   * @param section name of a phase
+   * @param moduleName module (or a file of a module) the phase is about
+   */
+  public static void beginSection(String section, String moduleName) {
+    if (sIsEnabled) {
+      sTraceSink.beginSection(SECTION_PREFIX + section + " " + moduleName);
+    }
+  }
+
+  public static void endSection() {
+    if (sIsEnabled) {
+      sTraceSink.endSection();
+    }
+  }
+
+  private static class SystemTraceSink implements TraceSink {
+    // Longer names are rejected by the system
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    @Override
+    public void beginSection(String sectionName) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        Trace.beginSection(
+            sectionName.length() > MAX_SECTION_NAME_LENGTH
+                ? sectionName.substring(0, MAX_SECTION_NAME_LENGTH)
+                : sectionName);
+      }
+    }
+
+    @Override
+    public void endSection() {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        Trace.endSection();
+      }
+    }
+  }
+}
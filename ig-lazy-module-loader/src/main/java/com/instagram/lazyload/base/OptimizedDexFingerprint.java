@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Build;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import javax.annotation.Nullable;
+
+/**
+ * Identifies the runtime and the system image an optimized dex file was produced under. After an OS
+ * update optimized dex files become invalid and the runtime silently re-optimizes them on the next
+ * load. Recording a fingerprint next to every optimized dex file allows to detect that in advance
+ * and re-optimize such modules in the background, see {@link
+ * BackgroundDexOptimizer#reoptimizeStaleModules}.
+ */
+public class OptimizedDexFingerprint {
+
+  private static final String FINGERPRINT_FILE_SUFFIX = ".fingerprint";
+  private static final String FINGERPRINT_ENCODING = "UTF-8";
+
+  /** Returns a fingerprint of the runtime and system image this process runs on */
+  public static String getCurrent() {
+    return Build.FINGERPRINT
+        + "/"
+        + Build.VERSION.SDK_INT
+        + "/"
+        + System.getProperty("java.vm.version");
+  }
+
+  /** Returns a file which stores a fingerprint of a given optimized dex file */
+  public static File getFingerprintFile(File optimizedDexFile) {
+    return new File(optimizedDexFile.getAbsolutePath() + FINGERPRINT_FILE_SUFFIX);
+  }
+
+  /** Records the current fingerprint of an optimized dex file, it's a no-op if it's up to date. */
+  public static void record(File optimizedDexFile) throws IOException {
+    File fingerprintFile = getFingerprintFile(optimizedDexFile);
+    String currentFingerprint = getCurrent();
+    if (currentFingerprint.equals(read(fingerprintFile))) {
+      return;
+    }
+    File tmpFingerprintFile = new File(fingerprintFile.getAbsolutePath() + ".tmp");
+    Writer writer =
+        new OutputStreamWriter(new FileOutputStream(tmpFingerprintFile), FINGERPRINT_ENCODING);
+    try {
+      writer.write(currentFingerprint);
+    } finally {
+      writer.close();
+    }
+    if (!tmpFingerprintFile.renameTo(fingerprintFile)) {
+      throw new IOException("Unable to rename a file");
+    }
+  }
+
+  /**
+   * Returns true if an optimized dex file exists but was produced under a different runtime or
+   * system image (or its fingerprint is unknown).
+   */
+  public static boolean isStale(File optimizedDexFile) {
+    if (!optimizedDexFile.exists()) {
+      return false;
+    }
+    try {
+      return !getCurrent().equals(read(getFingerprintFile(optimizedDexFile)));
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  @Nullable
+  private static String read(File fingerprintFile) throws IOException {
+    if (!fingerprintFile.exists()) {
+      return null;
+    }
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(fingerprintFile), FINGERPRINT_ENCODING));
+    try {
+      return reader.readLine();
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -45,6 +45,9 @@ import android.os.IBinder;
  *
  * <p>(4) In all PhotoPrefetchServiceProxy lifecycle methods delegate calls to ServiceLike which in
  * fact will delegate calls to PhotoPrefetchService
+ *
+ * <p>{@link LazyServiceHost} is such proxy which loads the module in the background instead of in
+ * onCreate on the main thread, so PhotoPrefetchServiceProxy may just extend it.
  */
 public abstract class ServiceLike {
 
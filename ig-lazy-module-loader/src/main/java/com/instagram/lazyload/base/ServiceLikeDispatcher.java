@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Lifecycle calls of a {@link ServiceLike} hosted by {@link LazyServiceHost}. Calls which arrive
+ * before the module is loaded are queued and replayed in order once it is, see {@link
+ * LazyServiceHost} for how each call is answered in the meantime. All methods are called on the
+ * main thread.
+ */
+final class ServiceLikeDispatcher {
+
+  private final long mBinderTimeoutMs;
+  private final int mPendingStartMode;
+  private final ArrayDeque<Runnable> mPendingCalls = new ArrayDeque<>();
+  private final List<PendingBinder> mPendingBinders = new ArrayList<>();
+  @Nullable private ServiceLike mServiceLike;
+  private boolean mLoadFailed;
+  private boolean mIsDestroyed;
+
+  /**
+   * @param binderTimeoutMs how long a transaction waits for the module on a binder thread
+   * @param pendingStartMode what {@link #onStartCommand} returns for a queued intent
+   */
+  ServiceLikeDispatcher(long binderTimeoutMs, int pendingStartMode) {
+    mBinderTimeoutMs = binderTimeoutMs;
+    mPendingStartMode = pendingStartMode;
+  }
+
+  /** Returns true if the service was destroyed before the module was loaded */
+  boolean isDestroyed() {
+    return mIsDestroyed;
+  }
+
+  int onStartCommand(final Intent intent, final int flags, final int startId) {
+    if (mServiceLike != null) {
+      return mServiceLike.onStartCommand(intent, flags, startId);
+    }
+    if (mLoadFailed || mIsDestroyed) {
+      return Service.START_NOT_STICKY;
+    }
+    mPendingCalls.add(
+        new Runnable() {
+          @Override
+          public void run() {
+            // The system got the pending mode already, so the module's own mode has no effect
+            mServiceLike.onStartCommand(intent, flags, startId);
+          }
+        });
+    return mPendingStartMode;
+  }
+
+  @Nullable
+  IBinder onBind(final Intent intent) {
+    if (mServiceLike != null) {
+      return mServiceLike.onBind(intent);
+    }
+    if (mLoadFailed || mIsDestroyed) {
+      return null;
+    }
+    final PendingBinder pendingBinder = new PendingBinder(mBinderTimeoutMs);
+    mPendingBinders.add(pendingBinder);
+    mPendingCalls.add(
+        new Runnable() {
+          @Override
+          public void run() {
+            pendingBinder.setBinder(mServiceLike.onBind(intent));
+          }
+        });
+    return pendingBinder;
+  }
+
+  boolean onUnbind(final Intent intent) {
+    if (mServiceLike != null) {
+      return mServiceLike.onUnbind(intent);
+    }
+    if (!mLoadFailed && !mIsDestroyed) {
+      mPendingCalls.add(
+          new Runnable() {
+            @Override
+            public void run() {
+              mServiceLike.onUnbind(intent);
+            }
+          });
+    }
+    return false;
+  }
+
+  void onDestroy() {
+    if (mServiceLike != null) {
+      mServiceLike.onDestroy();
+      return;
+    }
+    // Nothing was delivered to the module yet, so there's nothing to replay or tear down
+    mIsDestroyed = true;
+    dropPendingCalls();
+  }
+
+  /** Creates the loaded object and replays queued calls, unless the service is gone already */
+  void onLoaded(ServiceLike serviceLike) {
+    if (mIsDestroyed) {
+      // The loaded module is kept by the loader for the next use
+      return;
+    }
+    mServiceLike = serviceLike;
+    serviceLike.onCreate();
+    Runnable pendingCall;
+    while ((pendingCall = mPendingCalls.poll()) != null) {
+      pendingCall.run();
+    }
+    mPendingBinders.clear();
+  }
+
+  void onLoadFailed() {
+    mLoadFailed = true;
+    dropPendingCalls();
+  }
+
+  private void dropPendingCalls() {
+    mPendingCalls.clear();
+    for (PendingBinder pendingBinder : mPendingBinders) {
+      pendingBinder.setBinder(null);
+    }
+    mPendingBinders.clear();
+  }
+
+  /** Binder returned to clients before the module is loaded, it waits for the real one */
+  static class PendingBinder extends Binder {
+    private final long mTimeoutMs;
+    private final CountDownLatch mBinderSet = new CountDownLatch(1);
+    @Nullable private volatile IBinder mBinder;
+
+    PendingBinder(long timeoutMs) {
+      mTimeoutMs = timeoutMs;
+    }
+
+    void setBinder(@Nullable IBinder binder) {
+      mBinder = binder;
+      mBinderSet.countDown();
+    }
+
+    @Override
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags)
+        throws RemoteException {
+      try {
+        if (!mBinderSet.await(mTimeoutMs, TimeUnit.MILLISECONDS)) {
+          // Binder threads are a small shared pool, so it's failed as if there was no binder
+          return false;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RemoteException();
+      }
+      IBinder binder = mBinder;
+      return binder != null && binder.transact(code, data, reply, flags);
+    }
+  }
+}
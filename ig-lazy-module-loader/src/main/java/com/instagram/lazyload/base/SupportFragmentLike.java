@@ -24,8 +24,10 @@ import javax.annotation.Nullable;
  * (an example is in {@link ServiceLike}) we make sure that things will work correctly:
  * FragmentProxy will extend Android fragment class and will be included in the main application dex
  * file and will be responsible for lazy-loading a SupportFragmentLike class.
+ *
+ * <p>{@link LazySupportFragmentHost} is such a fragment which loads the module in the background.
  */
-public abstract class SupportFragmentLike {
+public abstract class SupportFragmentLike implements FragmentLikeLifecycle {
 
   /** Actual fragment that embeds this object */
   protected final Fragment mFragment;
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.os.Process;
+import dalvik.system.DexFile;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/** Unit tests for BackgroundDexOptimizer class. */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DexFile.class, Process.class})
+public class BackgroundDexOptimizerTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mDataDirectory = null;
+  private ModuleManifestReader mModuleManifestReader = null;
+  private DefaultModuleStore mModuleStore = null;
+  private BackgroundDexOptimizer mObjectUnderTest = null;
+
+  @Before
+  public void setUp() throws Exception {
+    mDataDirectory = mTemporaryFolder.newFolder("data");
+    Context contextMock = Mockito.mock(Context.class);
+    Mockito.when(contextMock.getDir(Mockito.anyString(), Mockito.anyInt()))
+        .thenReturn(mDataDirectory);
+    Map<String, File> entries = new HashMap<>();
+    entries.put(MODULE_NAME_NO1 + "/module.dex", createFile("module_a.dex", 3));
+    File bundleFile = mTemporaryFolder.newFile("modules.bundle");
+    ModuleBundleWriter.write(entries, bundleFile);
+    mModuleStore =
+        new DefaultModuleStore.Builder(contextMock)
+            .setModuleBundle(ModuleBundle.fromFile(bundleFile))
+            .build();
+    mModuleManifestReader =
+        new ModuleManifestReader() {
+          @Override
+          public ModuleManifest readModuleManifest(String moduleName) {
+            return new ModuleManifest.Builder(moduleName)
+                .setModuleHash("hash")
+                .setDexFileName("module.dex")
+                .build();
+          }
+        };
+
+    PowerMockito.mockStatic(Process.class);
+    PowerMockito.mockStatic(DexFile.class);
+    final DexFile dexFileMock = PowerMockito.mock(DexFile.class);
+    // Optimization produces a file at the requested output path
+    Mockito.when(DexFile.loadDex(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+        .thenAnswer(
+            new Answer<DexFile>() {
+              @Override
+              public DexFile answer(InvocationOnMock invocation) throws IOException {
+                writeFile(new File((String) invocation.getArguments()[1]), 5);
+                return dexFileMock;
+              }
+            });
+    mObjectUnderTest =
+        new BackgroundDexOptimizer(
+            new Executor() {
+              @Override
+              public void execute(Runnable runnable) {
+                runnable.run();
+              }
+            },
+            new ModuleProfiler(),
+            getClass().getClassLoader());
+  }
+
+  @Test
+  public void testThatPreparedModuleIsOptimizedIntoPendingLocation() throws Exception {
+    // when
+    mObjectUnderTest.prepareModule(mModuleStore, mModuleManifestReader, MODULE_NAME_NO1);
+
+    // then
+    File optimizedDexFile =
+        new File(mDataDirectory, MODULE_NAME_NO1 + "_hash/opt_dex_modules/module.dex");
+    File pendingOptimizedDexFile = DefaultModuleStore.getPendingOptimizedDexFile(optimizedDexFile);
+    PowerMockito.verifyStatic();
+    DexFile.loadDex(
+        Mockito.anyString(), Mockito.eq(pendingOptimizedDexFile.getAbsolutePath()), Mockito.eq(0));
+    Assert.assertTrue(DefaultModuleStore.isPendingOptimizedDexReady(pendingOptimizedDexFile));
+    Assert.assertFalse(OptimizedDexFingerprint.isStale(pendingOptimizedDexFile));
+    Assert.assertFalse(optimizedDexFile.exists());
+  }
+
+  @Test
+  public void testThatPendingOptimizedDexIsPromotedWhenModuleIsResolved() throws Exception {
+    // given
+    File optimizedDexFile = resolveOptimizedDexFile(mModuleStore);
+    File pendingOptimizedDexFile = DefaultModuleStore.getPendingOptimizedDexFile(optimizedDexFile);
+    writeFile(optimizedDexFile, 1);
+    mObjectUnderTest.optimize(
+        new File(optimizedDexFile.getParentFile().getParentFile(), "dex_modules/module.dex"),
+        optimizedDexFile);
+    Assert.assertTrue(DefaultModuleStore.isPendingOptimizedDexReady(pendingOptimizedDexFile));
+    Assert.assertEquals(1, optimizedDexFile.length());
+
+    // when
+    resolveOptimizedDexFile(mModuleStore);
+
+    // then
+    Assert.assertEquals(5, optimizedDexFile.length());
+    Assert.assertFalse(OptimizedDexFingerprint.isStale(optimizedDexFile));
+    Assert.assertFalse(pendingOptimizedDexFile.exists());
+    Assert.assertFalse(DefaultModuleStore.isPendingOptimizedDexReady(pendingOptimizedDexFile));
+  }
+
+  private File resolveOptimizedDexFile(ModuleStore moduleStore) throws IOException {
+    return moduleStore
+        .resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO1)
+        .getOptimizedDexFile();
+  }
+
+  private File createFile(String name, int size) throws IOException {
+    File file = mTemporaryFolder.newFile(name);
+    writeFile(file, size);
+    return file;
+  }
+
+  private static void writeFile(File file, int size) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[size]);
+    } finally {
+      outputStream.close();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for BinaryModuleManifestReader and BinaryModuleManifestWriter classes. */
+public class BinaryModuleManifestReaderTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+  private final String MODULE_NAME_NO3 = "java.com.instagram.module_\u00e9";
+
+  private BinaryModuleManifestReader mObjectUnderTest = null;
+
+  @Before
+  public void setUp() throws IOException {
+    List<ModuleManifest> moduleManifests = new ArrayList<>();
+    moduleManifests.add(
+        new ModuleManifest.Builder(MODULE_NAME_NO2)
+            .setModuleHash("hash_b")
+            .setContainsNativeLib(true)
+            .build());
+    moduleManifests.add(
+        new ModuleManifest.Builder(MODULE_NAME_NO1)
+            .setModuleHash("hash_a")
+            .setDexFileName("module_a.dex")
+            .setModuleSizeBytes(1024)
+            .setPreInstallPriority(7)
+            .addDependency(MODULE_NAME_NO2)
+            .addDependency(MODULE_NAME_NO3)
+            .build());
+    moduleManifests.add(
+        new ModuleManifest.Builder(MODULE_NAME_NO3)
+            .setModuleHash("hash_c")
+            .setDexFileName("module_c.apk")
+            .build());
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    BinaryModuleManifestWriter.write(moduleManifests, index);
+    mObjectUnderTest = new BinaryModuleManifestReader(ByteBuffer.wrap(index.toByteArray()));
+  }
+
+  @Test
+  public void testThatManifestIsReadBack() throws IOException {
+    // when
+    ModuleManifest moduleManifest = mObjectUnderTest.readModuleManifest(MODULE_NAME_NO1);
+
+    // then
+    Assert.assertEquals(MODULE_NAME_NO1, moduleManifest.getModuleName());
+    Assert.assertEquals("hash_a", moduleManifest.getModuleHash());
+    Assert.assertEquals("module_a.dex", moduleManifest.getDexFileName());
+    Assert.assertEquals(1024, moduleManifest.getModuleSizeBytes());
+    Assert.assertEquals(7, moduleManifest.getPreInstallPriority());
+    Assert.assertFalse(moduleManifest.containsNativeLib());
+    Assert.assertEquals(2, moduleManifest.getModuleDependencies().size());
+    Assert.assertEquals(MODULE_NAME_NO2, moduleManifest.getModuleDependencies().get(0));
+    Assert.assertEquals(MODULE_NAME_NO3, moduleManifest.getModuleDependencies().get(1));
+  }
+
+  @Test
+  public void testThatNativeOnlyManifestIsReadBack() throws IOException {
+    // when
+    ModuleManifest moduleManifest = mObjectUnderTest.readModuleManifest(MODULE_NAME_NO2);
+
+    // then
+    Assert.assertFalse(moduleManifest.containsDexFile());
+    Assert.assertTrue(moduleManifest.containsNativeLib());
+    Assert.assertEquals(ModuleManifest.UNKNOWN_SIZE, moduleManifest.getModuleSizeBytes());
+    Assert.assertEquals(0, moduleManifest.getPreInstallPriority());
+  }
+
+  @Test
+  public void testThatNonAsciiModuleNameIsFound() throws IOException {
+    // when
+    ModuleManifest moduleManifest = mObjectUnderTest.readModuleManifest(MODULE_NAME_NO3);
+
+    // then
+    Assert.assertEquals("module_c.apk", moduleManifest.getDexFileName());
+  }
+
+  @Test
+  public void testThatManifestIsCached() throws IOException {
+    // when
+    ModuleManifest first = mObjectUnderTest.readModuleManifest(MODULE_NAME_NO1);
+    ModuleManifest second = mObjectUnderTest.readModuleManifest(MODULE_NAME_NO1);
+
+    // then
+    Assert.assertSame(first, second);
+  }
+
+  @Test(expected = IOException.class)
+  public void testThatUnknownModuleFails() throws IOException {
+    mObjectUnderTest.readModuleManifest("java.com.instagram.module");
+  }
+}
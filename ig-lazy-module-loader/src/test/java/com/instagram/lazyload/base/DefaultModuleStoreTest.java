@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/** Unit tests for DefaultModuleStore class. */
+public class DefaultModuleStoreTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mDataDirectory = null;
+  private Context mContextMock = null;
+  private ModuleBundle mModuleBundle = null;
+  private ModuleManifestReader mModuleManifestReader = null;
+  private RecordingFileIO mFileIO = null;
+
+  @Before
+  public void setUp() throws IOException {
+    mDataDirectory = mTemporaryFolder.newFolder("data");
+    mContextMock = Mockito.mock(Context.class);
+    Mockito.when(mContextMock.getDir(Mockito.anyString(), Mockito.anyInt()))
+        .thenReturn(mDataDirectory);
+
+    Map<String, File> entries = new HashMap<>();
+    entries.put(MODULE_NAME_NO1 + "/module.dex", createFile("module_a.dex"));
+    entries.put(MODULE_NAME_NO2 + "/module.dex", createFile("module_b.dex"));
+    File bundleFile = mTemporaryFolder.newFile("modules.bundle");
+    ModuleBundleWriter.write(entries, bundleFile);
+    mModuleBundle = ModuleBundle.fromFile(bundleFile);
+
+    mModuleManifestReader =
+        new ModuleManifestReader() {
+          @Override
+          public ModuleManifest readModuleManifest(String moduleName) {
+            return new ModuleManifest.Builder(moduleName)
+                .setModuleHash("hash")
+                .setDexFileName("module.dex")
+                .build();
+          }
+        };
+    mFileIO = new RecordingFileIO();
+  }
+
+  @Test
+  public void testThatStrictModeSyncsFileAndDirectoryOfEveryCopy() throws IOException {
+    // given
+    DefaultModuleStore store = createStore(ModuleDurability.STRICT);
+
+    // when
+    ModulePathsAndDependencies paths =
+        store.resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO1);
+
+    // then
+    Assert.assertEquals(
+        Arrays.asList("copy synced", "rename", "syncDirectory dex_modules"), mFileIO.mOperations);
+    Assert.assertTrue(paths.getInstallJournal().isExtracted());
+  }
+
+  @Test
+  public void testThatGroupCommitSyncsAllModulesOnceAtTheEnd() throws IOException {
+    // given
+    DefaultModuleStore store = createStore(ModuleDurability.GROUP_COMMIT);
+
+    // when
+    store.extractModules(mModuleManifestReader, Arrays.asList(MODULE_NAME_NO1, MODULE_NAME_NO2));
+
+    // then
+    Assert.assertEquals(
+        Arrays.asList(
+            "copy",
+            "rename",
+            "copy",
+            "rename",
+            "sync module.dex",
+            "sync module.dex",
+            "syncDirectory dex_modules",
+            "syncDirectory dex_modules"),
+        mFileIO.mOperations);
+    Assert.assertTrue(
+        store.resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO2)
+            .getInstallJournal()
+            .isExtracted());
+  }
+
+  @Test
+  public void testThatRecoveryWaitsUntilExtractedModuleIsJournaled() throws Exception {
+    // given
+    final Thread[] recoveryThread = new Thread[1];
+    mFileIO.mOnSyncDirectory =
+        new Runnable() {
+          @Override
+          public void run() {
+            // Another process starts while files are synced and sees an extraction in progress
+            recoveryThread[0] =
+                new Thread() {
+                  @Override
+                  public void run() {
+                    try {
+                      createStore(ModuleDurability.GROUP_COMMIT).recoverInterruptedInstalls();
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                };
+            recoveryThread[0].start();
+            try {
+              recoveryThread[0].join(100);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
+    DefaultModuleStore store = createStore(ModuleDurability.GROUP_COMMIT);
+
+    // when
+    store.extractModules(mModuleManifestReader, Arrays.asList(MODULE_NAME_NO1));
+    recoveryThread[0].join();
+
+    // then
+    mFileIO.mOnSyncDirectory = null;
+    ModulePathsAndDependencies paths =
+        createStore(ModuleDurability.GROUP_COMMIT)
+            .resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO1);
+    Assert.assertTrue(paths.getInstallJournal().isExtracted());
+    Assert.assertTrue(paths.getDexFile().exists());
+  }
+
+  @Test
+  public void testThatExtractedModuleIsNotCopiedAgain() throws IOException {
+    // given
+    createStore(ModuleDurability.RELAXED)
+        .extractModules(mModuleManifestReader, Arrays.asList(MODULE_NAME_NO1));
+    mFileIO.mOperations.clear();
+
+    // when
+    createStore(ModuleDurability.RELAXED)
+        .extractModules(mModuleManifestReader, Arrays.asList(MODULE_NAME_NO1));
+
+    // then
+    Assert.assertTrue(mFileIO.mOperations.isEmpty());
+  }
+
+  @Test
+  public void testThatStaleOptimizedDexIsOnlyFoundInCurrentModules() throws IOException {
+    // given
+    ModulePathsAndDependencies paths =
+        createStore(ModuleDurability.RELAXED)
+            .resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO1);
+    // Optimized dex files without a fingerprint are stale
+    writeFile(paths.getOptimizedDexFile());
+    File oldModuleDirectory = new File(mDataDirectory, MODULE_NAME_NO1 + "_oldhash");
+    writeFile(new File(oldModuleDirectory, "dex_modules/module.dex"));
+    writeFile(new File(oldModuleDirectory, "opt_dex_modules/module.dex"));
+
+    // when
+    List<ModulePathsAndDependencies> staleModules =
+        DefaultModuleStore.findModulesWithStaleOptimizedDex(
+            mContextMock, mModuleManifestReader, Arrays.asList(MODULE_NAME_NO1, MODULE_NAME_NO2));
+
+    // then
+    Assert.assertEquals(1, staleModules.size());
+    Assert.assertEquals(MODULE_NAME_NO1, staleModules.get(0).getModuleName());
+    Assert.assertEquals(paths.getOptimizedDexFile(), staleModules.get(0).getOptimizedDexFile());
+  }
+
+  @Test
+  public void testThatModuleIsOptimizedAgainAfterInterruptedDexopt() throws IOException {
+    // given
+    FakeDexAdder dexAdder = new FakeDexAdder();
+    dexAdder.mIsInterrupted = true;
+    try {
+      createLoaderAlgorithm(createStore(ModuleDurability.STRICT), dexAdder)
+          .installModule(MODULE_NAME_NO1);
+      Assert.fail("Dexopt should be interrupted");
+    } catch (IllegalStateException e) {
+      // expected, the process died
+    }
+    dexAdder.mIsInterrupted = false;
+    DefaultModuleStore store = createStore(ModuleDurability.STRICT);
+    store.recoverInterruptedInstalls();
+
+    // when
+    createLoaderAlgorithm(store, dexAdder).installModule(MODULE_NAME_NO1);
+
+    // then
+    ModulePathsAndDependencies paths =
+        store.resolveModulePaths(mModuleManifestReader, MODULE_NAME_NO1);
+    Assert.assertEquals(2, dexAdder.mOptimizations);
+    Assert.assertTrue(paths.getInstallJournal().isOptimized());
+    Assert.assertTrue(paths.getOptimizedDexFile().exists());
+  }
+
+  private DefaultModuleStore createStore(ModuleDurability durability) {
+    return new DefaultModuleStore.Builder(mContextMock)
+        .setModuleBundle(mModuleBundle)
+        .setFileIO(mFileIO)
+        .setDurability(durability)
+        .build();
+  }
+
+  private File createFile(String name) throws IOException {
+    File file = mTemporaryFolder.newFile(name);
+    writeFile(file);
+    return file;
+  }
+
+  private static void writeFile(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[] {1, 2, 3});
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private DefautlLoaderAlgorithm createLoaderAlgorithm(ModuleStore store, DexAdder dexAdder) {
+    return new DefautlLoaderAlgorithm.Builder(
+            getClass().getClassLoader(),
+            store,
+            mModuleManifestReader,
+            Mockito.mock(LazyLoadListener.class),
+            dexAdder)
+        .build();
+  }
+
+  // Optimizes a dex file like the runtime, which requires a directory for the optimized file
+  private static class FakeDexAdder implements DexAdder {
+    boolean mIsInterrupted;
+    int mOptimizations;
+
+    @Override
+    public void addDex(File dexFile, File odexFile) throws IOException {
+      if (!odexFile.getParentFile().isDirectory()) {
+        throw new IOException("Unable to open optimized dex file");
+      }
+      ++mOptimizations;
+      writeFile(odexFile);
+      if (mIsInterrupted) {
+        throw new IllegalStateException("Process died");
+      }
+    }
+  }
+
+  // Records file operations which are not creating directories
+  private static class RecordingFileIO extends DefaultModuleFileIO {
+    final List<String> mOperations = new ArrayList<>();
+    @Nullable Runnable mOnSyncDirectory;
+
+    @Override
+    public void copy(InputStream from, File to, boolean sync) throws IOException {
+      mOperations.add(sync ? "copy synced" : "copy");
+      super.copy(from, to, sync);
+    }
+
+    @Override
+    public void copy(ByteBuffer from, File to, boolean sync) throws IOException {
+      mOperations.add(sync ? "copy synced" : "copy");
+      super.copy(from, to, sync);
+    }
+
+    @Override
+    public void rename(File from, File to) throws IOException {
+      mOperations.add("rename");
+      super.rename(from, to);
+    }
+
+    @Override
+    public void sync(File file) throws IOException {
+      mOperations.add("sync " + file.getName());
+      super.sync(file);
+    }
+
+    @Override
+    public void syncDirectory(File directory) throws IOException {
+      mOperations.add("syncDirectory " + directory.getName());
+      super.syncDirectory(directory);
+      if (mOnSyncDirectory != null) {
+        mOnSyncDirectory.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Unit tests for DeferredModuleInstance class. */
+public class DeferredModuleInstanceTest {
+
+  private static final String MODULE_NAME = "java.com.instagram.module_a";
+  private static final String CLASS_NAME = "com.instagram.module_a.Impl";
+
+  @Mock LazyModuleLoader mLazyModuleLoaderMock;
+
+  private final List<Runnable> mTasks = new ArrayList<>();
+  private Throwable mLoadFailure = null;
+  private int mDroppedCallCount = -1;
+  private final List<RuntimeException> mReplayFailures = new ArrayList<>();
+  private final Executor mExecutor =
+      new Executor() {
+        @Override
+        public void execute(Runnable task) {
+          mTasks.add(task);
+        }
+      };
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void testThatCallsAreQueuedUntilInstanceIsCreated() throws LazyLoadingException {
+    // given
+    StringBuilder instance = new StringBuilder();
+    Mockito.when(mLazyModuleLoaderMock.createModuleInstance(MODULE_NAME, CLASS_NAME))
+        .thenReturn(instance);
+    DeferredModuleInstance<StringBuilder> objectUnderTest =
+        new DeferredModuleInstance<>(
+            mLazyModuleLoaderMock,
+            StringBuilder.class,
+            MODULE_NAME,
+            CLASS_NAME,
+            mExecutor,
+            1000 /* timeoutMs */);
+
+    // when
+    objectUnderTest.run(append("a"));
+    objectUnderTest.run(append("b"));
+    Assert.assertNull(objectUnderTest.getIfReady());
+    Assert.assertEquals("", instance.toString());
+    mTasks.remove(0).run();
+    objectUnderTest.run(append("c"));
+
+    // then
+    Assert.assertEquals("abc", objectUnderTest.get().toString());
+    Assert.assertSame(instance, objectUnderTest.getIfReady());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testThatGetFailsIfInstanceIsNotCreatedInTime() {
+    // given
+    DeferredModuleInstance<StringBuilder> objectUnderTest =
+        new DeferredModuleInstance<>(
+            mLazyModuleLoaderMock,
+            StringBuilder.class,
+            MODULE_NAME,
+            CLASS_NAME,
+            mExecutor,
+            10 /* timeoutMs */);
+
+    // when
+    objectUnderTest.get();
+  }
+
+  @Test
+  public void testThatLoadFailureIsReportedToCallers() throws Exception {
+    // given
+    LazyLoadingException failure = new LazyLoadingException(new IOException());
+    Mockito.when(mLazyModuleLoaderMock.createModuleInstance(MODULE_NAME, CLASS_NAME))
+        .thenThrow(failure);
+    final DeferredModuleInstance<StringBuilder> objectUnderTest =
+        createWithListener(1000 /* timeoutMs */);
+    objectUnderTest.run(append("a"));
+    objectUnderTest.run(append("b"));
+    final Throwable[] getFailure = new Throwable[1];
+    Thread waitingThread =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              objectUnderTest.get();
+            } catch (IllegalStateException e) {
+              getFailure[0] = e.getCause();
+            }
+          }
+        };
+    waitingThread.start();
+    while (waitingThread.getState() != Thread.State.TIMED_WAITING) {
+      Thread.yield();
+    }
+
+    // when
+    mTasks.remove(0).run();
+    waitingThread.join();
+
+    // then
+    Assert.assertSame(failure, getFailure[0]);
+    Assert.assertSame(failure, mLoadFailure);
+    Assert.assertEquals(2, mDroppedCallCount);
+  }
+
+  @Test
+  public void testThatNextCallRetriesFailedLoad() throws LazyLoadingException {
+    // given
+    StringBuilder instance = new StringBuilder();
+    Mockito.when(mLazyModuleLoaderMock.createModuleInstance(MODULE_NAME, CLASS_NAME))
+        .thenThrow(new LazyLoadingException(new IOException()))
+        .thenReturn(instance);
+    DeferredModuleInstance<StringBuilder> objectUnderTest =
+        createWithListener(1000 /* timeoutMs */);
+    objectUnderTest.run(append("a"));
+    mTasks.remove(0).run();
+
+    // when
+    objectUnderTest.run(append("b"));
+    Assert.assertEquals(1, mTasks.size());
+    mTasks.remove(0).run();
+
+    // then
+    Assert.assertEquals("b", objectUnderTest.get().toString());
+    Assert.assertEquals(1, mDroppedCallCount);
+  }
+
+  @Test
+  public void testThatCallsMadeByReplayedCallRunDirectly() throws LazyLoadingException {
+    // given
+    StringBuilder instance = new StringBuilder();
+    Mockito.when(mLazyModuleLoaderMock.createModuleInstance(MODULE_NAME, CLASS_NAME))
+        .thenReturn(instance);
+    final DeferredModuleInstance<StringBuilder> objectUnderTest =
+        createWithListener(10 /* timeoutMs */);
+    objectUnderTest.run(
+        new DeferredModuleInstance.Call<StringBuilder>() {
+          @Override
+          public void run(StringBuilder instance) {
+            // Calls back into the proxy, as an implementation calling its own interface would
+            objectUnderTest.run(append("b"));
+            objectUnderTest.get().append("c");
+            instance.append("a");
+          }
+        });
+    objectUnderTest.run(append("d"));
+
+    // when
+    mTasks.remove(0).run();
+
+    // then
+    Assert.assertEquals("bcad", instance.toString());
+    Assert.assertTrue(mReplayFailures.isEmpty());
+  }
+
+  @Test
+  public void testThatFailureOfReplayedCallIsReportedAndOtherCallsRun()
+      throws LazyLoadingException {
+    // given
+    StringBuilder instance = new StringBuilder();
+    Mockito.when(mLazyModuleLoaderMock.createModuleInstance(MODULE_NAME, CLASS_NAME))
+        .thenReturn(instance);
+    final IllegalArgumentException failure = new IllegalArgumentException();
+    DeferredModuleInstance<StringBuilder> objectUnderTest =
+        createWithListener(1000 /* timeoutMs */);
+    objectUnderTest.run(
+        new DeferredModuleInstance.Call<StringBuilder>() {
+          @Override
+          public void run(StringBuilder instance) {
+            throw failure;
+          }
+        });
+    objectUnderTest.run(append("a"));
+
+    // when
+    mTasks.remove(0).run();
+
+    // then
+    Assert.assertEquals("a", instance.toString());
+    Assert.assertSame(instance, objectUnderTest.getIfReady());
+    Assert.assertEquals(1, mReplayFailures.size());
+    Assert.assertSame(failure, mReplayFailures.get(0));
+  }
+
+  private DeferredModuleInstance<StringBuilder> createWithListener(long timeoutMs) {
+    return new DeferredModuleInstance<>(
+        mLazyModuleLoaderMock,
+        StringBuilder.class,
+        MODULE_NAME,
+        CLASS_NAME,
+        mExecutor,
+        timeoutMs,
+        new DeferredModuleInstance.LoadFailureListener() {
+          @Override
+          public void onLoadFailed(String moduleName, Throwable failure, int droppedCallCount) {
+            mLoadFailure = failure;
+            mDroppedCallCount = droppedCallCount;
+          }
+
+          @Override
+          public void onReplayedCallFailed(String moduleName, RuntimeException failure) {
+            mReplayFailures.add(failure);
+          }
+        });
+  }
+
+  private static DeferredModuleInstance.Call<StringBuilder> append(final String text) {
+    return new DeferredModuleInstance.Call<StringBuilder>() {
+      @Override
+      public void run(StringBuilder instance) {
+        instance.append(text);
+      }
+    };
+  }
+}
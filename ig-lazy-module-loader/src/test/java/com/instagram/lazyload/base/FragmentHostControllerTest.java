@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Unit tests for FragmentHostController class. */
+public class FragmentHostControllerTest {
+
+  @Mock FragmentLike mFragmentLikeMock;
+  @Mock Context mContextMock;
+  @Mock LayoutInflater mLayoutInflaterMock;
+  @Mock ViewGroup mContainerMock;
+  @Mock View mPlaceholderViewMock;
+  @Mock View mErrorViewMock;
+  @Mock View mFragmentLikeViewMock;
+
+  private TestController mObjectUnderTest = null;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mLayoutInflaterMock.getContext()).thenReturn(mContextMock);
+    Mockito.when(mContainerMock.getContext()).thenReturn(mContextMock);
+    // Bundle is final, the host is created without a saved state
+    Mockito.when(mFragmentLikeMock.onCreateView(mLayoutInflaterMock, mContainerMock, null))
+        .thenReturn(mFragmentLikeViewMock);
+    mObjectUnderTest = new TestController();
+  }
+
+  @Test
+  public void testThatLifecycleIsReplayedInOrderOnceLoaded() {
+    // given
+    mObjectUnderTest.onCreate(null);
+    mObjectUnderTest.onCreateView(mLayoutInflaterMock, null);
+    mObjectUnderTest.onActivityCreated(null);
+    mObjectUnderTest.onStart();
+    mObjectUnderTest.onResume();
+
+    // when
+    mObjectUnderTest.onLoaded(mFragmentLikeMock, null);
+
+    // then
+    InOrder inOrder = Mockito.inOrder(mFragmentLikeMock, mContainerMock);
+    inOrder.verify(mContainerMock).addView(mPlaceholderViewMock);
+    inOrder.verify(mFragmentLikeMock).onAttach(mContextMock);
+    inOrder.verify(mFragmentLikeMock).onCreate(null);
+    inOrder.verify(mContainerMock).removeAllViews();
+    inOrder.verify(mContainerMock).addView(mFragmentLikeViewMock);
+    inOrder.verify(mFragmentLikeMock).onActivityCreated(null);
+    inOrder.verify(mFragmentLikeMock).onStart();
+    inOrder.verify(mFragmentLikeMock).onResume();
+    Assert.assertSame(mFragmentLikeMock, mObjectUnderTest.getFragmentLike());
+  }
+
+  @Test
+  public void testThatErrorViewReplacesPlaceholderOnFailure() {
+    // given
+    LazyLoadingException failure = new LazyLoadingException("test");
+    mObjectUnderTest.onCreate(null);
+    mObjectUnderTest.onCreateView(mLayoutInflaterMock, null);
+
+    // when
+    mObjectUnderTest.onLoaded(null, failure);
+
+    // then
+    Assert.assertSame(failure, mObjectUnderTest.mLoadFailure);
+    InOrder inOrder = Mockito.inOrder(mContainerMock);
+    inOrder.verify(mContainerMock).addView(mPlaceholderViewMock);
+    inOrder.verify(mContainerMock).removeAllViews();
+    inOrder.verify(mContainerMock).addView(mErrorViewMock);
+  }
+
+  @Test
+  public void testThatErrorViewIsShownIfViewIsCreatedAfterFailure() {
+    // given
+    mObjectUnderTest.onCreate(null);
+    mObjectUnderTest.onLoaded(null, new LazyLoadingException("test"));
+
+    // when
+    mObjectUnderTest.onCreateView(mLayoutInflaterMock, null);
+
+    // then
+    Mockito.verify(mContainerMock).addView(mErrorViewMock);
+    Mockito.verify(mContainerMock, Mockito.never()).addView(mPlaceholderViewMock);
+  }
+
+  @Test
+  public void testThatRetryLoadsModuleAgainAfterFailure() {
+    // given
+    mObjectUnderTest.onCreate(null);
+    mObjectUnderTest.onCreateView(mLayoutInflaterMock, null);
+    mObjectUnderTest.onLoaded(null, new LazyLoadingException("test"));
+
+    // when
+    mObjectUnderTest.retry();
+    mObjectUnderTest.retry();
+    mObjectUnderTest.onLoaded(mFragmentLikeMock, null);
+
+    // then
+    Assert.assertEquals(2, mObjectUnderTest.mLoadCount);
+    Mockito.verify(mContainerMock, Mockito.times(2)).addView(mPlaceholderViewMock);
+    Mockito.verify(mContainerMock).addView(mFragmentLikeViewMock);
+    Assert.assertSame(mFragmentLikeMock, mObjectUnderTest.getFragmentLike());
+  }
+
+  @Test
+  public void testThatModuleLoadedAfterDestroyIsIgnored() {
+    // given
+    mObjectUnderTest.onCreate(null);
+    mObjectUnderTest.onDestroy();
+
+    // when
+    mObjectUnderTest.onLoaded(mFragmentLikeMock, null);
+    mObjectUnderTest.retry();
+
+    // then
+    Assert.assertEquals(1, mObjectUnderTest.mLoadCount);
+    Assert.assertNull(mObjectUnderTest.getFragmentLike());
+    Mockito.verifyZeroInteractions(mFragmentLikeMock);
+  }
+
+  private class TestController extends FragmentHostController<FragmentLike> {
+
+    int mLoadCount;
+    LazyLoadingException mLoadFailure;
+
+    @Override
+    void startLoad() {
+      mLoadCount++;
+    }
+
+    @Override
+    Context getHostContext() {
+      return mContextMock;
+    }
+
+    @Override
+    View createPlaceholderView(Context context) {
+      return mPlaceholderViewMock;
+    }
+
+    @Override
+    View createErrorView(Context context, LazyLoadingException e) {
+      return mErrorViewMock;
+    }
+
+    @Override
+    void onLoadFailed(LazyLoadingException e) {
+      mLoadFailure = e;
+    }
+
+    @Override
+    ViewGroup createContainer(Context context) {
+      return mContainerMock;
+    }
+  }
+}
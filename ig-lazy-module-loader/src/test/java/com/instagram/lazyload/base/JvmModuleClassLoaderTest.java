@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/** Unit tests for JvmModuleClassLoader and DirectoryModuleStore classes. */
+public class JvmModuleClassLoaderTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private JvmModuleClassLoader mClassLoader = null;
+  private ModuleManifestReader mModuleManifestReader;
+  private DefautlLoaderAlgorithm mObjectUnderTest = null;
+
+  // Class that represents an entry point of a module packaged in a jar
+  public static final class JarModule {}
+
+  @Before
+  public void setUp() throws IOException {
+    File modulesDirectory = mTemporaryFolder.newFolder("modules");
+    File moduleDirectory = new File(modulesDirectory, MODULE_NAME_NO1);
+    Assert.assertTrue(moduleDirectory.mkdir());
+    TestJars.writeJar(new File(moduleDirectory, "module_a.jar"), JarModule.class);
+
+    final ModuleManifest moduleManifestNo1 =
+        new ModuleManifest.Builder(MODULE_NAME_NO1).setDexFileName("module_a.jar").build();
+    final ModuleManifest moduleManifestNo2 =
+        new ModuleManifest.Builder(MODULE_NAME_NO2).setDexFileName("module_b.jar").build();
+    mModuleManifestReader =
+        new ModuleManifestReader() {
+          @Override
+          public ModuleManifest readModuleManifest(String moduleName) {
+            return MODULE_NAME_NO1.equals(moduleName) ? moduleManifestNo1 : moduleManifestNo2;
+          }
+        };
+
+    // No parent except the bootstrap class loader, so classes can only be found in added jars
+    mClassLoader = new JvmModuleClassLoader(null);
+    mObjectUnderTest =
+        new DefautlLoaderAlgorithm.Builder(
+                mClassLoader,
+                new DirectoryModuleStore(modulesDirectory),
+                mModuleManifestReader,
+                Mockito.mock(LazyLoadListener.class),
+                mClassLoader)
+            .build();
+  }
+
+  @Test
+  public void testThatClassIsLoadedFromJar() throws LazyLoadingException {
+    // when
+    Class moduleClass = mObjectUnderTest.loadModule(MODULE_NAME_NO1, JarModule.class.getName());
+
+    // then
+    Assert.assertEquals(JarModule.class.getName(), moduleClass.getName());
+    Assert.assertSame(mClassLoader, moduleClass.getClassLoader());
+  }
+
+  @Test
+  public void testThatFootprintReportsSizeOfJar() throws IOException {
+    // when
+    ModuleFootprint footprint =
+        mObjectUnderTest.getModuleFootprint(mModuleManifestReader, MODULE_NAME_NO1);
+
+    // then
+    Assert.assertTrue(footprint.getDexBytes() > 0);
+    Assert.assertEquals(0, footprint.getOptimizedDexBytes());
+  }
+
+  @Test(expected = IOException.class)
+  public void testThatMissingJarFails() throws IOException {
+    mObjectUnderTest.installModule(MODULE_NAME_NO2);
+  }
+}
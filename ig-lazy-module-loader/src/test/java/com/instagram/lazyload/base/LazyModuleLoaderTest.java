@@ -14,16 +14,24 @@ import android.content.Context;
 import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -36,11 +44,15 @@ public class LazyModuleLoaderTest {
   private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
   private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
 
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
   @Mock Context mContextMock;
-  @Mock ModuleStore mModuleStoreMock;
+  @Mock(extraInterfaces = ModuleFootprintProvider.class)
+  ModuleStore mModuleStoreMock;
   @Mock ModuleManifestReader mModuleManifestReaderMock;
   @Mock LazyLoadListener mLazyLoadListenerMock;
   @Mock NativeModuleLoader mNativeModuleLoaderMock;
+  @Mock LoadPhaseListener mLoadPhaseListenerMock;
 
   @Mock CustomClassLoader mCustomClassLoaderMock;
   @Mock ModulePathsAndDependencies mModulePathsNo1Mock;
@@ -189,6 +201,58 @@ public class LazyModuleLoaderTest {
         .moduleLazilyInstalled(Mockito.eq(MODULE_NAME_NO1), Mockito.anyLong());
   }
 
+  @Test
+  public void testThatFootprintReportsMappingOfInstalledModule() throws IOException {
+    // given
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo1Mock);
+    ModuleFootprintProvider footprintProvider = (ModuleFootprintProvider) mModuleStoreMock;
+    Mockito.when(footprintProvider.getModuleFootprint(mModuleManifestReaderMock, MODULE_NAME_NO1))
+        .thenReturn(new ModuleFootprint(MODULE_NAME_NO1, 100, 100, 300, 200, 0, false, 0));
+    Mockito.when(footprintProvider.getModuleFootprint(mModuleManifestReaderMock, MODULE_NAME_NO2))
+        .thenReturn(new ModuleFootprint(MODULE_NAME_NO2, 100, 0, 0, 0, 0, false, 0));
+    List<String> moduleNames = new ArrayList<>();
+    moduleNames.add(MODULE_NAME_NO1);
+    moduleNames.add(MODULE_NAME_NO2);
+
+    // when
+    mObjectUnderTest.installModule(MODULE_NAME_NO1);
+    List<ModuleFootprint> footprints =
+        mObjectUnderTest.getModuleFootprints(mModuleManifestReaderMock, moduleNames);
+
+    // then
+    Assert.assertTrue(footprints.get(0).isMapped());
+    Assert.assertEquals(600, footprints.get(0).getDiskBytes());
+    Assert.assertEquals(300, footprints.get(0).getResidentBytesEstimate());
+    Assert.assertFalse(footprints.get(1).isMapped());
+    Assert.assertEquals(0, footprints.get(1).getResidentBytesEstimate());
+  }
+
+  @Test
+  public void testThatFootprintOfAlgorithmWithoutProviderHasManifestSize() throws IOException {
+    // given
+    LazyModuleLoader loader =
+        new LazyModuleLoader(mContextMock, Mockito.mock(LoaderAlgorithm.class));
+    Mockito.when(mModuleManifestReaderMock.readModuleManifest(MODULE_NAME_NO1))
+        .thenReturn(
+            new ModuleManifest.Builder(MODULE_NAME_NO1)
+                .setDexFileName("module_a.dex")
+                .setModuleSizeBytes(100)
+                .build());
+
+    // when
+    List<ModuleFootprint> footprints =
+        loader.getModuleFootprints(
+            mModuleManifestReaderMock, Collections.singletonList(MODULE_NAME_NO1));
+
+    // then
+    Assert.assertEquals(MODULE_NAME_NO1, footprints.get(0).getModuleName());
+    Assert.assertEquals(100, footprints.get(0).getAssetBytes());
+    Assert.assertEquals(0, footprints.get(0).getDiskBytes());
+    Assert.assertFalse(footprints.get(0).isMapped());
+  }
+
   @Test
   public void testThatTwoModulesCanBeInstalled() throws IOException {
     // given
@@ -408,4 +472,299 @@ public class LazyModuleLoaderTest {
     Mockito.verify(mClassLoaderMock).loadClass(AppFragmentModule.class.getName());
     Mockito.verifyZeroInteractions(mNativeModuleLoaderMock);
   }
+
+  @Test
+  public void testThatLoadWithDeadlineTimesOutAndLoadKeepsGoing() throws Exception {
+    // given
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo1Mock);
+    CountDownLatch dexoptDone = blockAddingDex();
+
+    try {
+      // when
+      mObjectUnderTest.loadModule(MODULE_NAME_NO1, LazyModule.class.getName(), 10, null);
+      Assert.fail("Load should time out");
+    } catch (LoadTimeoutException e) {
+      // expected
+    } finally {
+      dexoptDone.countDown();
+    }
+    Class returnedClass =
+        mObjectUnderTest.loadModule(MODULE_NAME_NO1, LazyModule.class.getName(), 10000, null);
+
+    // then
+    Assert.assertEquals(returnedClass, LazyModule.class);
+    Mockito.verify(mCustomClassLoaderMock)
+        .addDex(Mockito.eq(mDexFileNo1Mock), Mockito.eq(mOptDexFileNo1Mock));
+  }
+
+  @Test
+  public void testThatLoadOfInstalledModuleDoesNotWaitForLock() throws Exception {
+    // given
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo1Mock);
+    Mockito.when(mModulePathsNo2Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo2Mock.getDexFile()).thenReturn(mDexFileNo2Mock);
+    Mockito.when(mModulePathsNo2Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo2Mock);
+    mObjectUnderTest.installModule(MODULE_NAME_NO1);
+    CountDownLatch dexoptDone = blockAddingDex();
+    // A pre-install of another module holds the lock until its dex file is added
+    Thread preInstall =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              mObjectUnderTest.installModule(MODULE_NAME_NO2, LoadPriority.BACKGROUND);
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
+    preInstall.start();
+    Mockito.verify(mCustomClassLoaderMock, Mockito.timeout(10000))
+        .addDex(mDexFileNo2Mock, mOptDexFileNo2Mock);
+
+    try {
+      // when
+      Class returnedClass =
+          mObjectUnderTest.loadModule(MODULE_NAME_NO1, LazyModule.class.getName());
+      Class returnedClassWithDeadline =
+          mObjectUnderTest.loadModule(MODULE_NAME_NO1, LazyModule.class.getName(), 10, null);
+
+      // then
+      Assert.assertEquals(returnedClass, LazyModule.class);
+      Assert.assertEquals(returnedClassWithDeadline, LazyModule.class);
+    } finally {
+      dexoptDone.countDown();
+      preInstall.join();
+    }
+  }
+
+  @Test
+  public void testThatWaitersOfFailedLoadGetTheirOwnExceptions() throws Exception {
+    // given
+    final IOException diskFull = new IOException("No space left on device");
+    final CountDownLatch resolveStarted = new CountDownLatch(1);
+    final CountDownLatch resolveDone = new CountDownLatch(1);
+    Mockito.when(mModuleStoreMock.resolveModulePaths(mModuleManifestReaderMock, MODULE_NAME_NO1))
+        .thenAnswer(
+            new Answer<ModulePathsAndDependencies>() {
+              @Override
+              public ModulePathsAndDependencies answer(InvocationOnMock invocation)
+                  throws Exception {
+                resolveStarted.countDown();
+                resolveDone.await();
+                throw diskFull;
+              }
+            });
+    final LazyLoadingException[] failures = new LazyLoadingException[2];
+    Thread[] waiters = new Thread[failures.length];
+    for (int i = 0; i < waiters.length; i++) {
+      final int waiterIndex = i;
+      waiters[i] =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                mObjectUnderTest.loadModule(
+                    MODULE_NAME_NO1, LazyModule.class.getName(), Long.MAX_VALUE, null);
+              } catch (LazyLoadingException e) {
+                failures[waiterIndex] = e;
+              }
+            }
+          };
+      waiters[i].start();
+    }
+    resolveStarted.await();
+    // Both waiters wait for the same request before it fails
+    for (Thread waiter : waiters) {
+      while (waiter.getState() != Thread.State.TIMED_WAITING) {
+        Thread.sleep(1);
+      }
+    }
+
+    // when
+    resolveDone.countDown();
+    for (Thread waiter : waiters) {
+      waiter.join();
+    }
+
+    // then
+    Assert.assertNotNull(failures[0]);
+    Assert.assertNotNull(failures[1]);
+    Assert.assertNotSame(failures[0], failures[1]);
+    Assert.assertSame(failures[0].getCause(), failures[1].getCause());
+    Mockito.verify(mModuleStoreMock).resolveModulePaths(mModuleManifestReaderMock, MODULE_NAME_NO1);
+  }
+
+  @Test
+  public void testThatCancelledInstallStopsWaiting() throws Exception {
+    // given
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo1Mock);
+    CountDownLatch dexoptDone = blockAddingDex();
+    LoadCancellationToken cancellationToken = new LoadCancellationToken();
+    cancellationToken.cancel();
+
+    try {
+      // when
+      mObjectUnderTest.installModule(MODULE_NAME_NO1, Long.MAX_VALUE, cancellationToken);
+      Assert.fail("Install should be cancelled");
+    } catch (LoadCancelledException e) {
+      // expected
+    } finally {
+      dexoptDone.countDown();
+    }
+    mObjectUnderTest.installModule(MODULE_NAME_NO1, 10000, null);
+
+    // then
+    Mockito.verify(mLazyLoadListenerMock)
+        .moduleLazilyInstalled(Mockito.eq(MODULE_NAME_NO1), Mockito.anyLong());
+  }
+
+  @Test
+  public void testThatFailedModuleFailsFastUntilBackoffIsOver() throws Exception {
+    // given
+    final long[] nowNs = {0};
+    ModuleClock clock =
+        new ModuleClock() {
+          @Override
+          public long nanoTime() {
+            return nowNs[0];
+          }
+        };
+    LazyModuleLoader objectUnderTest =
+        new LazyModuleLoader(
+            mContextMock,
+            new DefautlLoaderAlgorithm.Builder(
+                    mContextMock,
+                    mModuleStoreMock,
+                    mModuleManifestReaderMock,
+                    mLazyLoadListenerMock,
+                    mCustomClassLoaderMock)
+                .setClock(clock)
+                .setFailureBackoff(1000, 10000)
+                .build());
+    IOException diskFull = new IOException("No space left on device");
+    Mockito.when(mModuleStoreMock.resolveModulePaths(mModuleManifestReaderMock, MODULE_NAME_NO1))
+        .thenThrow(diskFull)
+        .thenReturn(mModulePathsNo1Mock);
+
+    // when
+    loadAndExpectFailure(objectUnderTest);
+    nowNs[0] = TimeUnit.MILLISECONDS.toNanos(500);
+    Throwable fastFailure = loadAndExpectFailure(objectUnderTest);
+    nowNs[0] = TimeUnit.MILLISECONDS.toNanos(1000);
+    Class returnedClass = objectUnderTest.loadModule(MODULE_NAME_NO1, LazyModule.class.getName());
+
+    // then
+    Assert.assertTrue(fastFailure instanceof ModuleBackoffException);
+    Assert.assertEquals(1, ((ModuleBackoffException) fastFailure).getFailureCount());
+    Assert.assertEquals(500, ((ModuleBackoffException) fastFailure).getRetryDelayMs());
+    Assert.assertSame(diskFull, fastFailure.getCause());
+    Assert.assertEquals(returnedClass, LazyModule.class);
+    Mockito.verify(mModuleStoreMock, Mockito.times(2))
+        .resolveModulePaths(mModuleManifestReaderMock, MODULE_NAME_NO1);
+  }
+
+  @Test
+  public void testThatDexoptIsReportedWithoutJournalIfOptimizedDexIsMissing() throws Exception {
+    // given
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(mOptDexFileNo1Mock);
+    Mockito.when(mOptDexFileNo1Mock.exists()).thenReturn(false);
+
+    // when
+    createLoaderWithPhaseListener().installModule(MODULE_NAME_NO1);
+
+    // then
+    Mockito.verify(mLoadPhaseListenerMock).onPhaseStarted(MODULE_NAME_NO1, LoadPhase.DEXOPT);
+    Mockito.verify(mLoadPhaseListenerMock)
+        .onPhaseFinished(
+            Mockito.eq(MODULE_NAME_NO1), Mockito.eq(LoadPhase.DEXOPT), Mockito.anyLong());
+  }
+
+  @Test
+  public void testThatDexoptIsReportedOnlyForStaleOptimizedDex() throws Exception {
+    // given
+    File freshOptimizedDexFile = mTemporaryFolder.newFile("module_a.odex");
+    OptimizedDexFingerprint.record(freshOptimizedDexFile);
+    File staleOptimizedDexFile = mTemporaryFolder.newFile("module_b.odex");
+    // Produced before an OS update
+    FileOutputStream fingerprint =
+        new FileOutputStream(OptimizedDexFingerprint.getFingerprintFile(staleOptimizedDexFile));
+    fingerprint.write("old/fingerprint".getBytes("UTF-8"));
+    fingerprint.close();
+    Mockito.when(mModulePathsNo1Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo1Mock.getDexFile()).thenReturn(mDexFileNo1Mock);
+    Mockito.when(mModulePathsNo1Mock.getOptimizedDexFile()).thenReturn(freshOptimizedDexFile);
+    Mockito.when(mModulePathsNo2Mock.containsDexFile()).thenReturn(true);
+    Mockito.when(mModulePathsNo2Mock.getDexFile()).thenReturn(mDexFileNo2Mock);
+    Mockito.when(mModulePathsNo2Mock.getOptimizedDexFile()).thenReturn(staleOptimizedDexFile);
+    LazyModuleLoader loader = createLoaderWithPhaseListener();
+
+    // when
+    loader.installModule(MODULE_NAME_NO1);
+    loader.installModule(MODULE_NAME_NO2);
+
+    // then
+    Mockito.verify(mLoadPhaseListenerMock, Mockito.never())
+        .onPhaseStarted(MODULE_NAME_NO1, LoadPhase.DEXOPT);
+    Mockito.verify(mLoadPhaseListenerMock).onPhaseStarted(MODULE_NAME_NO2, LoadPhase.DEXOPT);
+    Assert.assertFalse(OptimizedDexFingerprint.isStale(staleOptimizedDexFile));
+  }
+
+  @Test
+  public void testThatFactoryNamesOfNestedClassAndClassWithUnderscoreDiffer() {
+    // when
+    String nestedFactory = LazyModuleLoader.getFactoryClassName("module_a.B$C");
+    String underscoreFactory = LazyModuleLoader.getFactoryClassName("module_a.B_C");
+
+    // then
+    Assert.assertEquals("module_a.B_0CLazyFactory", nestedFactory);
+    Assert.assertEquals("module_a.B__CLazyFactory", underscoreFactory);
+  }
+
+  private LazyModuleLoader createLoaderWithPhaseListener() {
+    return new LazyModuleLoader(
+        mContextMock,
+        new DefautlLoaderAlgorithm.Builder(
+                mContextMock,
+                mModuleStoreMock,
+                mModuleManifestReaderMock,
+                mLazyLoadListenerMock,
+                mCustomClassLoaderMock)
+            .setLoadPhaseListener(mLoadPhaseListenerMock)
+            .build());
+  }
+
+  /** Returns the cause of the failure, loads wrap it twice */
+  private Throwable loadAndExpectFailure(LazyModuleLoader loader) {
+    try {
+      loader.loadModule(MODULE_NAME_NO1, LazyModule.class.getName());
+    } catch (LazyLoadingException e) {
+      return e.getCause().getCause();
+    }
+    throw new AssertionError("Load should fail");
+  }
+
+  /** Adding a dex file waits until the returned latch is counted down */
+  private CountDownLatch blockAddingDex() throws IOException {
+    final CountDownLatch dexoptDone = new CountDownLatch(1);
+    Mockito.doAnswer(
+            new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                dexoptDone.await();
+                return null;
+              }
+            })
+        .when(mCustomClassLoaderMock)
+        .addDex(Mockito.any(File.class), Mockito.any(File.class));
+    return dexoptDone;
+  }
 }
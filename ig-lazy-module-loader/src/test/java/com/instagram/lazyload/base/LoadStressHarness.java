@@ -0,0 +1,286 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs loads and installs of overlapping sets of modules from many threads at the same time, while
+ * another thread keeps adding unrelated dex files, and measures throughput, latency, time spent
+ * blocked on monitors and time spent waiting for the {@link ModuleLoadLock} of a {@link
+ * LazyModuleLoader}. Every thread uses its own seeded random, so a run is reproducible except for
+ * thread scheduling.
+ *
+ * <p>Blocked time comes from {@link ThreadMXBean}, which only counts waits to enter {@code
+ * synchronized} blocks. The load lock waits in {@link Object#wait()}, which isn't blocking for
+ * {@link ThreadMXBean}, so its waits are measured by the lock itself (see {@link #setLoadLock}).
+ */
+class LoadStressHarness {
+
+  private final LoaderAlgorithm mLoader;
+  private final List<String> mModuleNames = new ArrayList<>();
+  private final List<String> mClassNames = new ArrayList<>();
+  private int mThreadCount = 8;
+  private int mOperationsPerThread = 1000;
+  private int mInstallPercentage = 20;
+  private long mSeed = 0;
+  private DexAdder mExtraDexAdder = null;
+  private List<File> mExtraDexFiles = Collections.emptyList();
+  private ModuleLoadLock mLoadLock = null;
+
+  LoadStressHarness(LoaderAlgorithm loader) {
+    mLoader = loader;
+  }
+
+  /** Adds a module and a class which is loaded from it */
+  LoadStressHarness addModule(String moduleName, String className) {
+    mModuleNames.add(moduleName);
+    mClassNames.add(className);
+    return this;
+  }
+
+  LoadStressHarness setThreadCount(int threadCount) {
+    mThreadCount = threadCount;
+    return this;
+  }
+
+  LoadStressHarness setOperationsPerThread(int operationsPerThread) {
+    mOperationsPerThread = operationsPerThread;
+    return this;
+  }
+
+  /** Sets a percentage of operations which only install a module instead of loading a class */
+  LoadStressHarness setInstallPercentage(int installPercentage) {
+    mInstallPercentage = installPercentage;
+    return this;
+  }
+
+  LoadStressHarness setSeed(long seed) {
+    mSeed = seed;
+    return this;
+  }
+
+  /** Sets dex files which are added (by a separate thread) while modules are being loaded */
+  LoadStressHarness setExtraDexFiles(DexAdder dexAdder, List<File> dexFiles) {
+    mExtraDexAdder = dexAdder;
+    mExtraDexFiles = dexFiles;
+    return this;
+  }
+
+  /** Sets a lock of the tested loader, see {@link LazyModuleLoader#getLoadLock()} */
+  LoadStressHarness setLoadLock(ModuleLoadLock loadLock) {
+    mLoadLock = loadLock;
+    return this;
+  }
+
+  Report run() throws InterruptedException {
+    final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean.isThreadContentionMonitoringSupported()) {
+      threadMXBean.setThreadContentionMonitoringEnabled(true);
+    }
+    final Report report = new Report();
+    final CountDownLatch startGate = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < mThreadCount; ++i) {
+      final Random random = new Random(mSeed + i);
+      threads.add(
+          new Thread("LoadStress-" + i) {
+            @Override
+            public void run() {
+              awaitQuietly(startGate);
+              for (int j = 0; j < mOperationsPerThread; ++j) {
+                runOperation(random, report);
+              }
+              report.addBlockedTime(threadMXBean);
+            }
+          });
+    }
+    if (mExtraDexAdder != null) {
+      threads.add(
+          new Thread("LoadStress-DexAdder") {
+            @Override
+            public void run() {
+              awaitQuietly(startGate);
+              for (File dexFile : mExtraDexFiles) {
+                try {
+                  mExtraDexAdder.addDex(dexFile, dexFile);
+                } catch (IOException | RuntimeException e) {
+                  report.addFailure(e);
+                }
+                Thread.yield();
+              }
+              report.addBlockedTime(threadMXBean);
+            }
+          });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    long lockWaitTimeNs = mLoadLock != null ? mLoadLock.getWaitTimeNs() : 0;
+    int lockWaitCount = mLoadLock != null ? mLoadLock.getWaitCount() : 0;
+    long startTime = System.nanoTime();
+    startGate.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    report.mDurationNs = System.nanoTime() - startTime;
+    if (mLoadLock != null) {
+      report.mLockWaitTimeNs = mLoadLock.getWaitTimeNs() - lockWaitTimeNs;
+      report.mLockWaitCount = mLoadLock.getWaitCount() - lockWaitCount;
+    }
+    return report;
+  }
+
+  private void runOperation(Random random, Report report) {
+    int module = random.nextInt(mModuleNames.size());
+    boolean isInstall = random.nextInt(100) < mInstallPercentage;
+    long startTime = System.nanoTime();
+    try {
+      if (isInstall) {
+        mLoader.installModule(mModuleNames.get(module));
+      } else {
+        Class moduleClass = mLoader.loadModule(mModuleNames.get(module), mClassNames.get(module));
+        if (!mClassNames.get(module).equals(moduleClass.getName())) {
+          throw new IllegalStateException("Unexpected class " + moduleClass.getName());
+        }
+      }
+    } catch (Throwable t) {
+      report.addFailure(t);
+    }
+    report.mLatency.recordValue((System.nanoTime() - startTime) / 1000);
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Results of a single run */
+  static class Report {
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final List<Throwable> mFailures =
+        Collections.synchronizedList(new ArrayList<Throwable>());
+    private final AtomicLong mBlockedTimeMs = new AtomicLong();
+    private final AtomicLong mBlockedCount = new AtomicLong();
+    private volatile long mDurationNs;
+    private volatile long mLockWaitTimeNs = -1;
+    private volatile int mLockWaitCount = -1;
+
+    List<Throwable> getFailures() {
+      return mFailures;
+    }
+
+    LatencyHistogram.Snapshot getLatency() {
+      return mLatency.getSnapshot(false);
+    }
+
+    double getThroughputPerSecond() {
+      return getLatency().getCount() * 1e9 / Math.max(1, mDurationNs);
+    }
+
+    /**
+     * Total time threads waited to enter a monitor, -1 if it's not supported by the JVM. Time
+     * parked on {@code java.util.concurrent} locks or spent in {@link Object#wait()} is not
+     * included.
+     */
+    long getBlockedTimeMs() {
+      return mBlockedTimeMs.get();
+    }
+
+    long getBlockedCount() {
+      return mBlockedCount.get();
+    }
+
+    /** Total time operations waited for the load lock, -1 if the harness has no lock */
+    long getLockWaitTimeMs() {
+      return mLockWaitTimeNs < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(mLockWaitTimeNs);
+    }
+
+    /** How many operations waited for the load lock, -1 if the harness has no lock */
+    int getLockWaitCount() {
+      return mLockWaitCount;
+    }
+
+    void addFailure(Throwable failure) {
+      mFailures.add(failure);
+    }
+
+    // Info of a thread is not available after it terminates, so every thread reports itself
+    void addBlockedTime(ThreadMXBean threadMXBean) {
+      ThreadInfo threadInfo = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+      if (threadInfo.getBlockedTime() < 0) {
+        mBlockedTimeMs.set(-1);
+        return;
+      }
+      mBlockedTimeMs.addAndGet(threadInfo.getBlockedTime());
+      mBlockedCount.addAndGet(threadInfo.getBlockedCount());
+    }
+
+    @Override
+    public String toString() {
+      LatencyHistogram.Snapshot latency = getLatency();
+      return String.format(
+          (Locale) null,
+          "%d ops, %.0f ops/s, p50 %d us, p99 %d us, max %d us, blocked %d times for %d ms, "
+              + "waited for the load lock %d times for %d ms, %d failures",
+          latency.getCount(),
+          getThroughputPerSecond(),
+          latency.getPercentileUs(50),
+          latency.getPercentileUs(99),
+          latency.getMaxUs(),
+          getBlockedCount(),
+          getBlockedTimeMs(),
+          getLockWaitCount(),
+          getLockWaitTimeMs(),
+          mFailures.size());
+    }
+  }
+
+  /** Dex adder which counts how many times every dex file was added */
+  static class CountingDexAdder implements DexAdder {
+    private final DexAdder mDexAdder;
+    private final ConcurrentHashMap<String, AtomicInteger> mAddCounts = new ConcurrentHashMap<>();
+
+    CountingDexAdder(DexAdder dexAdder) {
+      mDexAdder = dexAdder;
+    }
+
+    @Override
+    public void addDex(File dexFile, File odexFile) throws IOException {
+      AtomicInteger addCount = new AtomicInteger();
+      AtomicInteger previousAddCount = mAddCounts.putIfAbsent(dexFile.getAbsolutePath(), addCount);
+      (previousAddCount != null ? previousAddCount : addCount).incrementAndGet();
+      mDexAdder.addDex(dexFile, odexFile);
+    }
+
+    Map<String, AtomicInteger> getAddCounts() {
+      return mAddCounts;
+    }
+  }
+}
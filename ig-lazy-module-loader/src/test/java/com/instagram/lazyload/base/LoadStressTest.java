@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/**
+ * Stress tests of concurrent loads of modules on the JVM backend, see {@link LoadStressHarness}.
+ * Modules depend on each other, so loads of different modules race on installs of shared
+ * dependencies.
+ */
+public class LoadStressTest {
+
+  private static final int MODULE_COUNT = 6;
+  private static final int EXTRA_DEX_FILE_COUNT = 50;
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private LoadStressHarness.CountingDexAdder mCountingDexAdder = null;
+  private DefautlLoaderAlgorithm mLoaderAlgorithm = null;
+  private List<File> mExtraDexFiles = null;
+
+  // Entry points of modules, they are packaged into jars of modules
+  public static final class Module0 {}
+
+  public static final class Module1 {}
+
+  public static final class Module2 {}
+
+  public static final class Module3 {}
+
+  public static final class Module4 {}
+
+  public static final class Module5 {}
+
+  // Class of dex files which are added while modules are being loaded
+  public static final class ExtraClass {}
+
+  private static final Class[] MODULE_CLASSES = {
+    Module0.class, Module1.class, Module2.class, Module3.class, Module4.class, Module5.class
+  };
+
+  @Before
+  public void setUp() throws IOException {
+    File modulesDirectory = mTemporaryFolder.newFolder("modules");
+    final Map<String, ModuleManifest> moduleManifests = new HashMap<>();
+    for (int i = 0; i < MODULE_COUNT; ++i) {
+      File moduleDirectory = new File(modulesDirectory, getModuleName(i));
+      Assert.assertTrue(moduleDirectory.mkdir());
+      TestJars.writeJar(new File(moduleDirectory, "module.jar"), MODULE_CLASSES[i]);
+      ModuleManifest.Builder builder =
+          new ModuleManifest.Builder(getModuleName(i)).setDexFileName("module.jar");
+      // module_2 -> module_1, module_4 -> module_3, module_5 -> module_0, module_3
+      if (i == 2 || i == 4) {
+        builder.addDependency(getModuleName(i - 1));
+      } else if (i == 5) {
+        builder.addDependency(getModuleName(0)).addDependency(getModuleName(3));
+      }
+      moduleManifests.put(getModuleName(i), builder.build());
+    }
+    mExtraDexFiles = new ArrayList<>();
+    File extraDirectory = mTemporaryFolder.newFolder("extra");
+    for (int i = 0; i < EXTRA_DEX_FILE_COUNT; ++i) {
+      File extraDexFile = new File(extraDirectory, "extra_" + i + ".jar");
+      TestJars.writeJar(extraDexFile, ExtraClass.class);
+      mExtraDexFiles.add(extraDexFile);
+    }
+
+    // No parent except the bootstrap class loader, so classes can only be found in added jars
+    JvmModuleClassLoader classLoader = new JvmModuleClassLoader(null);
+    mCountingDexAdder = new LoadStressHarness.CountingDexAdder(classLoader);
+    mLoaderAlgorithm =
+        new DefautlLoaderAlgorithm.Builder(
+                classLoader,
+                new DirectoryModuleStore(modulesDirectory),
+                new ModuleManifestReader() {
+                  @Override
+                  public ModuleManifest readModuleManifest(String moduleName)
+                      throws IOException {
+                    ModuleManifest moduleManifest = moduleManifests.get(moduleName);
+                    if (moduleManifest == null) {
+                      throw new IOException("Unknown module " + moduleName);
+                    }
+                    return moduleManifest;
+                  }
+                },
+                Mockito.mock(LazyLoadListener.class),
+                mCountingDexAdder)
+            .build();
+  }
+
+  @Test
+  public void testThatConcurrentLoadsOfAlgorithmInstallEveryModuleOnce()
+      throws InterruptedException {
+    // when
+    LoadStressHarness.Report report = createHarness(mLoaderAlgorithm).run();
+
+    // then
+    assertNoFailures(report);
+    assertEveryDexFileAddedOnce();
+  }
+
+  @Test
+  public void testThatConcurrentLoadsOfLazyModuleLoaderInstallEveryModuleOnce()
+      throws InterruptedException {
+    // given
+    final LazyModuleLoader lazyModuleLoader =
+        new LazyModuleLoader(Mockito.mock(Context.class), mLoaderAlgorithm);
+    LoaderAlgorithm loader =
+        new LoaderAlgorithm() {
+          @Override
+          public Class loadModule(String moduleName, String className)
+              throws LazyLoadingException {
+            return lazyModuleLoader.loadModule(moduleName, className);
+          }
+
+          @Override
+          public void installModule(String moduleName) throws IOException {
+            lazyModuleLoader.installModule(moduleName);
+          }
+        };
+
+    // when
+    LoadStressHarness.Report report =
+        createHarness(loader).setLoadLock(lazyModuleLoader.getLoadLock()).run();
+
+    // then
+    assertNoFailures(report);
+    assertEveryDexFileAddedOnce();
+    Assert.assertTrue(report.toString(), report.getLockWaitCount() >= 0);
+  }
+
+  private LoadStressHarness createHarness(LoaderAlgorithm loader) {
+    LoadStressHarness harness =
+        new LoadStressHarness(loader)
+            .setThreadCount(8)
+            .setOperationsPerThread(2000)
+            .setInstallPercentage(20)
+            .setSeed(42)
+            .setExtraDexFiles(mCountingDexAdder, mExtraDexFiles);
+    for (int i = 0; i < MODULE_COUNT; ++i) {
+      harness.addModule(getModuleName(i), MODULE_CLASSES[i].getName());
+    }
+    return harness;
+  }
+
+  private static void assertNoFailures(LoadStressHarness.Report report) {
+    if (!report.getFailures().isEmpty()) {
+      AssertionError error = new AssertionError(report.toString());
+      error.initCause(report.getFailures().get(0));
+      throw error;
+    }
+  }
+
+  private void assertEveryDexFileAddedOnce() {
+    Collection<AtomicInteger> addCounts = mCountingDexAdder.getAddCounts().values();
+    Assert.assertEquals(MODULE_COUNT + EXTRA_DEX_FILE_COUNT, addCounts.size());
+    for (Map.Entry<String, AtomicInteger> entry : mCountingDexAdder.getAddCounts().entrySet()) {
+      Assert.assertEquals(entry.getKey(), 1, entry.getValue().get());
+    }
+  }
+
+  private static String getModuleName(int index) {
+    return "java.com.instagram.module_" + index;
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/** Unit tests for MainThreadLoadPolicy class. */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Looper.class})
+public class MainThreadLoadPolicyTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+  private final long FAST_LOAD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final List<BlockingLoadViolation> mViolations = new ArrayList<>();
+  private MainThreadLoadPolicy.Builder mBuilder = null;
+
+  @Before
+  public void setUp() {
+    // The test thread is the main thread
+    PowerMockito.mockStatic(Looper.class);
+    Looper mainLooperMock = PowerMockito.mock(Looper.class);
+    Mockito.when(mainLooperMock.getThread()).thenReturn(Thread.currentThread());
+    Mockito.when(Looper.getMainLooper()).thenReturn(mainLooperMock);
+    mBuilder =
+        new MainThreadLoadPolicy.Builder()
+            .setViolationHandler(
+                new MainThreadLoadPolicy.ViolationHandler() {
+                  @Override
+                  public void onViolation(BlockingLoadViolation violation) {
+                    mViolations.add(violation);
+                  }
+                });
+  }
+
+  @Test
+  public void testThatDexoptOfDependencyIsReportedOnceByOuterLoad() {
+    // given
+    MainThreadLoadPolicy policy = mBuilder.build();
+
+    // when
+    policy.onPhaseStarted(MODULE_NAME_NO1, LoadPhase.COLD_LOAD);
+    policy.onPhaseStarted(MODULE_NAME_NO2, LoadPhase.INSTALL);
+    policy.onPhaseStarted(MODULE_NAME_NO2, LoadPhase.DEXOPT);
+    policy.onPhaseFinished(MODULE_NAME_NO2, LoadPhase.DEXOPT, FAST_LOAD_NS);
+    policy.onPhaseFinished(MODULE_NAME_NO2, LoadPhase.INSTALL, FAST_LOAD_NS);
+    int violationsOfNestedLoad = mViolations.size();
+    policy.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, FAST_LOAD_NS);
+
+    // then
+    Assert.assertEquals(0, violationsOfNestedLoad);
+    Assert.assertEquals(1, mViolations.size());
+    Assert.assertEquals(MODULE_NAME_NO1, mViolations.get(0).getModuleName());
+    Assert.assertEquals(LoadPhase.COLD_LOAD, mViolations.get(0).getPhase());
+    Assert.assertEquals(BlockingLoadViolation.Reason.DEXOPT, mViolations.get(0).getReason());
+  }
+
+  @Test
+  public void testThatColdCopyOnMainThreadIsThrownFromFinishedInstall() {
+    // given
+    MainThreadLoadPolicy policy = mBuilder.setShouldThrow(true).build();
+    policy.onPhaseStarted(MODULE_NAME_NO1, LoadPhase.INSTALL);
+    policy.onModuleExtracted(MODULE_NAME_NO1, 1024);
+
+    // when
+    BlockingLoadViolation thrownViolation = null;
+    try {
+      policy.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.INSTALL, FAST_LOAD_NS);
+    } catch (BlockingLoadViolation e) {
+      thrownViolation = e;
+    }
+
+    // then
+    Assert.assertNotNull(thrownViolation);
+    Assert.assertEquals(BlockingLoadViolation.Reason.COLD_COPY, thrownViolation.getReason());
+    Assert.assertEquals(1, mViolations.size());
+    // The next load starts with a clean state
+    policy.onPhaseStarted(MODULE_NAME_NO1, LoadPhase.WARM_LOAD);
+    policy.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.WARM_LOAD, FAST_LOAD_NS);
+    Assert.assertEquals(1, mViolations.size());
+  }
+
+  @Test
+  public void testThatLoadOnBackgroundThreadIsNotReported() throws Exception {
+    // given
+    final MainThreadLoadPolicy policy = mBuilder.setShouldThrow(true).build();
+
+    // when
+    Thread backgroundThread =
+        new Thread() {
+          @Override
+          public void run() {
+            policy.onPhaseStarted(MODULE_NAME_NO1, LoadPhase.COLD_LOAD);
+            policy.onModuleExtracted(MODULE_NAME_NO1, 1024);
+            policy.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.DEXOPT, FAST_LOAD_NS);
+            policy.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, Long.MAX_VALUE);
+          }
+        };
+    backgroundThread.start();
+    backgroundThread.join();
+
+    // then
+    Assert.assertTrue(mViolations.isEmpty());
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for ModuleBundle and ModuleBundleWriter classes. */
+public class ModuleBundleTest {
+
+  private final String DEX_FILE_PATH = "ModuleA/module_a.dex";
+  private final String LIB_FILE_PATH = "ModuleA/libs/x86/libmodule_a.so";
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private ModuleBundle mObjectUnderTest = null;
+
+  @Before
+  public void setUp() throws IOException {
+    Map<String, File> entries = new HashMap<>();
+    entries.put(DEX_FILE_PATH, createFile("module_a.dex", new byte[] {1, 2, 3}));
+    entries.put(LIB_FILE_PATH, createFile("libmodule_a.so", new byte[5000]));
+    File bundleFile = mTemporaryFolder.newFile("modules.bundle");
+    ModuleBundleWriter.write(entries, bundleFile);
+    mObjectUnderTest = ModuleBundle.fromFile(bundleFile);
+  }
+
+  @Test
+  public void testThatFileIsSlicedOut() {
+    // when
+    ByteBuffer dexFile = mObjectUnderTest.getFile(DEX_FILE_PATH);
+
+    // then
+    Assert.assertEquals(3, dexFile.remaining());
+    Assert.assertEquals(1, dexFile.get(0));
+    Assert.assertEquals(3, dexFile.get(2));
+    Assert.assertEquals(5000, mObjectUnderTest.getFile(LIB_FILE_PATH).remaining());
+  }
+
+  @Test
+  public void testThatFilesOfDirectoryAreListed() {
+    // when
+    List<String> libs = mObjectUnderTest.listFiles("ModuleA/libs/x86");
+
+    // then
+    Assert.assertEquals(1, libs.size());
+    Assert.assertEquals(LIB_FILE_PATH, libs.get(0));
+    Assert.assertTrue(mObjectUnderTest.listFiles("ModuleA/libs").isEmpty());
+  }
+
+  @Test
+  public void testThatMissingFileIsNull() {
+    Assert.assertFalse(mObjectUnderTest.contains("ModuleB/module_b.dex"));
+    Assert.assertNull(mObjectUnderTest.getFile("ModuleB/module_b.dex"));
+  }
+
+  private File createFile(String name, byte[] content) throws IOException {
+    File file = mTemporaryFolder.newFile(name);
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(content);
+    } finally {
+      outputStream.close();
+    }
+    return file;
+  }
+}
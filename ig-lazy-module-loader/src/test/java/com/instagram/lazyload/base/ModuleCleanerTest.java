@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for ModuleCleaner class. */
+public class ModuleCleanerTest {
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private final List<Runnable> mTasks = new ArrayList<>();
+  private final List<String> mTrashedModules = new ArrayList<>();
+  private final List<String> mTrashedDirectories = new ArrayList<>();
+  private long mBytesReclaimed = -1;
+  private File mModulesDirectory = null;
+  private ModuleCleaner mObjectUnderTest = null;
+
+  @Before
+  public void setUp() throws IOException {
+    mModulesDirectory = mTemporaryFolder.newFolder("dex_modules");
+    mObjectUnderTest =
+        new ModuleCleaner(
+            new Executor() {
+              @Override
+              public void execute(Runnable task) {
+                mTasks.add(task);
+              }
+            },
+            2 /* batchSize */,
+            new ModuleCleaner.Listener() {
+              @Override
+              public void onModuleTrashed(String moduleName, String moduleDirectoryName) {
+                mTrashedModules.add(moduleName);
+                mTrashedDirectories.add(moduleDirectoryName);
+              }
+
+              @Override
+              public void onTrashEmptied(File parentDirectory, long bytesReclaimed) {
+                mBytesReclaimed = bytesReclaimed;
+              }
+            });
+  }
+
+  @Test
+  public void testThatOldModulesAreMovedToTrashBeforeTheyAreDeleted() throws IOException {
+    // given
+    createModule("module_a_new", 10);
+    createModule("module_a_old", 100);
+    createModule("module_b_old", 1000);
+
+    // when
+    mObjectUnderTest.deleteModulesOtherThan(
+        mModulesDirectory, new HashSet<>(Collections.singletonList("module_a_new")));
+
+    // then
+    Assert.assertEquals(Arrays.asList("module_a_new"), Arrays.asList(mModulesDirectory.list()));
+    Collections.sort(mTrashedModules);
+    Assert.assertEquals(Arrays.asList("module_a", "module_b"), mTrashedModules);
+    Collections.sort(mTrashedDirectories);
+    Assert.assertEquals(Arrays.asList("module_a_old", "module_b_old"), mTrashedDirectories);
+    Assert.assertTrue(ModuleCleaner.getTrashDirectory(mModulesDirectory).exists());
+    Assert.assertEquals(1, mTasks.size());
+  }
+
+  @Test
+  public void testThatTrashIsEmptiedInBatches() throws IOException {
+    // given
+    createModule("module_a_new", 10);
+    createModule("module_a_old", 100);
+    createModule("module_b_old", 1000);
+    mObjectUnderTest.deleteModulesOtherThan(
+        mModulesDirectory, new HashSet<>(Collections.singletonList("module_a_new")));
+
+    // when
+    int taskCount = runAllTasks();
+
+    // then
+    // 4 files, 2 module directories, 2 libs directories and the trash directory
+    Assert.assertEquals(5, taskCount);
+    Assert.assertFalse(ModuleCleaner.getTrashDirectory(mModulesDirectory).exists());
+    Assert.assertEquals(2 * 100 + 2 * 1000, mBytesReclaimed);
+    Assert.assertTrue(new File(mModulesDirectory, "module_a_new").exists());
+  }
+
+  @Test
+  public void testThatTrashLeftByPreviousProcessIsEmptied() throws IOException {
+    // given
+    createModule("module_a_old", 100);
+    mObjectUnderTest.deleteModulesOtherThan(mModulesDirectory, new HashSet<String>());
+    mTasks.clear();
+    // Trash of the same module may be left by more processes
+    createModule("module_a_old", 100);
+    mObjectUnderTest.deleteModulesOtherThan(mModulesDirectory, new HashSet<String>());
+    mTasks.clear();
+
+    // when
+    mObjectUnderTest.emptyTrash(mModulesDirectory);
+    runAllTasks();
+
+    // then
+    Assert.assertFalse(ModuleCleaner.getTrashDirectory(mModulesDirectory).exists());
+    Assert.assertEquals(4 * 100, mBytesReclaimed);
+  }
+
+  private void createModule(String moduleDirectoryName, int fileSizeBytes) throws IOException {
+    File moduleDirectory = new File(mModulesDirectory, moduleDirectoryName);
+    File libsDirectory = new File(moduleDirectory, "libs");
+    Assert.assertTrue(libsDirectory.mkdirs());
+    writeFile(new File(moduleDirectory, "module.dex"), fileSizeBytes);
+    writeFile(new File(libsDirectory, "libmodule.so"), fileSizeBytes);
+  }
+
+  private static void writeFile(File file, int sizeBytes) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[sizeBytes]);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private int runAllTasks() {
+    int taskCount = 0;
+    while (!mTasks.isEmpty()) {
+      mTasks.remove(0).run();
+      ++taskCount;
+    }
+    return taskCount;
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for ModuleEventLog and ModuleEventLogReader classes. */
+public class ModuleEventLogTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+  private final int APP_VERSION_CODE = 42;
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mLogFile = null;
+
+  @Before
+  public void setUp() throws IOException {
+    mLogFile = new File(mTemporaryFolder.getRoot(), "module_events.log");
+  }
+
+  @Test
+  public void testThatEventsAreReadBack() throws IOException {
+    // given
+    ModuleEventLog log = ModuleEventLog.open(mLogFile, 8, APP_VERSION_CODE);
+    log.onModuleExtracted(MODULE_NAME_NO1, 4096);
+    log.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.RESOLVE, 1000000);
+    log.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, 2000000);
+    log.onPhaseFailed(MODULE_NAME_NO2, LoadPhase.INSTALL, 3000000, new IOException());
+    log.recordEviction(MODULE_NAME_NO2);
+
+    // when
+    List<ModuleEventLogReader.Event> events = ModuleEventLogReader.read(mLogFile);
+
+    // then
+    Assert.assertEquals(4, events.size());
+    Assert.assertEquals(ModuleEventLogReader.EventType.EXTRACTION, events.get(0).getType());
+    Assert.assertEquals(4096, events.get(0).getValue());
+    Assert.assertEquals(ModuleEventLogReader.EventType.LOAD, events.get(1).getType());
+    Assert.assertEquals(MODULE_NAME_NO1, events.get(1).getModuleName());
+    Assert.assertEquals(2000, events.get(1).getValue());
+    Assert.assertEquals(APP_VERSION_CODE, events.get(1).getAppVersionCode());
+    Assert.assertEquals(ModuleEventLogReader.EventType.FAILURE, events.get(2).getType());
+    Assert.assertEquals(ModuleEventLogReader.EventType.EVICTION, events.get(3).getType());
+    Assert.assertEquals(MODULE_NAME_NO2, events.get(3).getModuleName());
+  }
+
+  @Test
+  public void testThatOldestEventsAreOverwrittenAcrossSessions() throws IOException {
+    // given
+    ModuleEventLog firstSession = ModuleEventLog.open(mLogFile, 4, APP_VERSION_CODE);
+    for (int i = 0; i < 3; ++i) {
+      firstSession.recordEviction(MODULE_NAME_NO1);
+    }
+    ModuleEventLog secondSession = ModuleEventLog.open(mLogFile, 4, APP_VERSION_CODE + 1);
+    for (int i = 0; i < 3; ++i) {
+      secondSession.recordEviction(MODULE_NAME_NO2);
+    }
+
+    // when
+    List<ModuleEventLogReader.Event> events = ModuleEventLogReader.read(mLogFile);
+
+    // then
+    Assert.assertEquals(4, events.size());
+    Assert.assertEquals(3, events.get(0).getSequence());
+    Assert.assertEquals(MODULE_NAME_NO1, events.get(0).getModuleName());
+    Assert.assertEquals(APP_VERSION_CODE + 1, events.get(3).getAppVersionCode());
+    Assert.assertEquals(6, events.get(3).getSequence());
+  }
+}
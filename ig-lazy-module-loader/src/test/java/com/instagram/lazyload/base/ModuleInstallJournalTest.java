@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for ModuleInstallJournal class. */
+public class ModuleInstallJournalTest {
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mModuleDirectory = null;
+
+  @Before
+  public void setUp() throws IOException {
+    mModuleDirectory = mTemporaryFolder.newFolder("module_a_hash");
+  }
+
+  @Test
+  public void testThatEmptyJournalHasNoCompletedPhases() throws IOException {
+    // when
+    ModuleInstallJournal journal = ModuleInstallJournal.open(mModuleDirectory);
+
+    // then
+    Assert.assertFalse(journal.isExtracted());
+    Assert.assertFalse(journal.isOptimized());
+    Assert.assertFalse(journal.areLibsExtracted());
+    Assert.assertFalse(journal.hasInterruptedPhase());
+  }
+
+  @Test
+  public void testThatCompletedPhasesArePersisted() throws IOException {
+    // given
+    ModuleInstallJournal journal = ModuleInstallJournal.open(mModuleDirectory);
+    journal.append(ModuleInstallJournal.EXTRACT_STARTED);
+    journal.append(ModuleInstallJournal.EXTRACT_DONE);
+    journal.append(ModuleInstallJournal.OPTIMIZE_STARTED);
+    journal.append(ModuleInstallJournal.OPTIMIZE_DONE);
+    journal.append(ModuleInstallJournal.LIBS_DONE);
+
+    // when
+    ModuleInstallJournal reopenedJournal = ModuleInstallJournal.open(mModuleDirectory);
+
+    // then
+    Assert.assertTrue(reopenedJournal.isExtracted());
+    Assert.assertTrue(reopenedJournal.isOptimized());
+    Assert.assertTrue(reopenedJournal.areLibsExtracted());
+    Assert.assertFalse(reopenedJournal.hasInterruptedPhase());
+  }
+
+  @Test
+  public void testThatInterruptedOptimizationIsRolledBack() throws IOException {
+    // given
+    ModuleInstallJournal journal = ModuleInstallJournal.open(mModuleDirectory);
+    journal.append(ModuleInstallJournal.EXTRACT_STARTED);
+    journal.append(ModuleInstallJournal.EXTRACT_DONE);
+    journal.append(ModuleInstallJournal.OPTIMIZE_STARTED);
+
+    // when
+    ModuleInstallJournal reopenedJournal = ModuleInstallJournal.open(mModuleDirectory);
+    Assert.assertTrue(reopenedJournal.isOptimizationInterrupted());
+    reopenedJournal.rollBackInterruptedPhases();
+
+    // then
+    ModuleInstallJournal recoveredJournal = ModuleInstallJournal.open(mModuleDirectory);
+    Assert.assertTrue(recoveredJournal.isExtracted());
+    Assert.assertFalse(recoveredJournal.isOptimized());
+    Assert.assertFalse(recoveredJournal.hasInterruptedPhase());
+  }
+
+  @Test
+  public void testThatInterruptedExtractionDiscardsAllPhases() throws IOException {
+    // given
+    ModuleInstallJournal journal = ModuleInstallJournal.open(mModuleDirectory);
+    journal.append(ModuleInstallJournal.EXTRACT_STARTED);
+    journal.append(ModuleInstallJournal.EXTRACT_DONE);
+    journal.append(ModuleInstallJournal.OPTIMIZE_STARTED);
+    journal.append(ModuleInstallJournal.OPTIMIZE_DONE);
+    journal.append(ModuleInstallJournal.EXTRACT_STARTED);
+
+    // when
+    ModuleInstallJournal reopenedJournal = ModuleInstallJournal.open(mModuleDirectory);
+    Assert.assertTrue(reopenedJournal.isExtractionInterrupted());
+    reopenedJournal.rollBackInterruptedPhases();
+
+    // then
+    ModuleInstallJournal recoveredJournal = ModuleInstallJournal.open(mModuleDirectory);
+    Assert.assertFalse(recoveredJournal.isExtracted());
+    Assert.assertFalse(recoveredJournal.isOptimized());
+    Assert.assertFalse(recoveredJournal.hasInterruptedPhase());
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.os.Process;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/** Unit tests for ModuleLoadLock class. */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Process.class})
+public class ModuleLoadLockTest {
+
+  private static final int BACKGROUND_TID = 1;
+  private static final int FOREGROUND_TID = 2;
+
+  private final List<String> mAcquisitions = Collections.synchronizedList(new ArrayList<String>());
+  private Thread mBackgroundThread;
+  private ModuleLoadLock mObjectUnderTest;
+
+  @Before
+  public void setUp() {
+    PowerMockito.mockStatic(Process.class);
+    mBackgroundThread = Thread.currentThread();
+    // The test thread is the background owner, other threads are foreground
+    Mockito.when(Process.myTid())
+        .thenAnswer(
+            new Answer<Integer>() {
+              @Override
+              public Integer answer(InvocationOnMock invocation) {
+                return Thread.currentThread() == mBackgroundThread
+                    ? BACKGROUND_TID
+                    : FOREGROUND_TID;
+              }
+            });
+    Mockito.when(Process.getThreadPriority(BACKGROUND_TID))
+        .thenReturn(Process.THREAD_PRIORITY_BACKGROUND);
+    Mockito.when(Process.getThreadPriority(FOREGROUND_TID)).thenReturn(0);
+    mObjectUnderTest = new ModuleLoadLock();
+  }
+
+  @Test
+  public void testThatForegroundRequestGoesBeforeWaitingBackgroundRequest() throws Exception {
+    // given
+    mObjectUnderTest.acquire(LoadPriority.BACKGROUND);
+    Thread backgroundRequest = startRequest(LoadPriority.BACKGROUND, "background");
+    awaitWaiting(backgroundRequest);
+    Thread foregroundRequest = startRequest(LoadPriority.FOREGROUND, "foreground");
+    awaitWaiting(foregroundRequest);
+
+    // when
+    mObjectUnderTest.release();
+    backgroundRequest.join();
+    foregroundRequest.join();
+
+    // then
+    Assert.assertEquals(Arrays.asList("foreground", "background"), mAcquisitions);
+  }
+
+  @Test
+  public void testThatWaitingForegroundRequestRaisesPriorityOfBackgroundOwner() throws Exception {
+    // given
+    mObjectUnderTest.acquire(LoadPriority.BACKGROUND);
+    Thread foregroundRequest = startRequest(LoadPriority.FOREGROUND, "foreground");
+    awaitWaiting(foregroundRequest);
+
+    // when
+    mObjectUnderTest.release();
+    foregroundRequest.join();
+
+    // then
+    PowerMockito.verifyStatic();
+    Process.setThreadPriority(BACKGROUND_TID, 0);
+    PowerMockito.verifyStatic();
+    Process.setThreadPriority(BACKGROUND_TID, Process.THREAD_PRIORITY_BACKGROUND);
+    Assert.assertEquals(Collections.singletonList("foreground"), mAcquisitions);
+  }
+
+  @Test
+  public void testThatWaitsForLockAreMeasured() throws Exception {
+    // given
+    mObjectUnderTest.acquire(LoadPriority.BACKGROUND);
+    Thread foregroundRequest = startRequest(LoadPriority.FOREGROUND, "foreground");
+    awaitWaiting(foregroundRequest);
+    Thread.sleep(10);
+
+    // when
+    mObjectUnderTest.release();
+    foregroundRequest.join();
+
+    // then
+    Assert.assertEquals(1, mObjectUnderTest.getWaitCount());
+    Assert.assertTrue(mObjectUnderTest.getWaitTimeNs() >= TimeUnit.MILLISECONDS.toNanos(10));
+  }
+
+  @Test
+  public void testThatLockIsReentrant() {
+    // when
+    mObjectUnderTest.acquire(LoadPriority.BACKGROUND);
+    mObjectUnderTest.acquire(LoadPriority.FOREGROUND);
+    mObjectUnderTest.release();
+    mObjectUnderTest.release();
+
+    // then
+    try {
+      mObjectUnderTest.release();
+      Assert.fail("Lock should not be held anymore");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  private Thread startRequest(final LoadPriority priority, final String name) {
+    Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                mObjectUnderTest.acquire(priority);
+                mAcquisitions.add(name);
+                mObjectUnderTest.release();
+              }
+            });
+    thread.start();
+    return thread;
+  }
+
+  private static void awaitWaiting(Thread thread) {
+    while (thread.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+  }
+}
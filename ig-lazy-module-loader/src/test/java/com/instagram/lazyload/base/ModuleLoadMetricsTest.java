@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for ModuleLoadMetrics and LatencyHistogram classes. */
+public class ModuleLoadMetricsTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+
+  private ModuleLoadMetrics mObjectUnderTest = null;
+
+  @Before
+  public void setUp() {
+    mObjectUnderTest = new ModuleLoadMetrics();
+  }
+
+  @Test
+  public void testThatPercentilesAreWithinBucketPrecision() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; ++i) {
+      histogram.recordValue(i * 1000);
+    }
+
+    // when
+    LatencyHistogram.Snapshot snapshot = histogram.getSnapshot(false);
+
+    // then
+    Assert.assertEquals(1000, snapshot.getCount());
+    Assert.assertEquals(1000000, snapshot.getMaxUs());
+    assertWithinPrecision(500000, snapshot.getPercentileUs(50));
+    assertWithinPrecision(990000, snapshot.getPercentileUs(99));
+    Assert.assertEquals(1000000, snapshot.getPercentileUs(100));
+  }
+
+  @Test
+  public void testThatLoadsAndFailuresAreCounted() {
+    // given
+    mObjectUnderTest.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.RESOLVE, 2000000);
+    mObjectUnderTest.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, 3000000);
+    mObjectUnderTest.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.WARM_LOAD, 1000);
+    mObjectUnderTest.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.WARM_LOAD, 1000);
+    IOException error = new IOException();
+    mObjectUnderTest.onPhaseFailed(MODULE_NAME_NO1, LoadPhase.RESOLVE, 1000, error);
+    mObjectUnderTest.onPhaseFailed(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, 1000, error);
+    mObjectUnderTest.onModuleExtracted(MODULE_NAME_NO1, 4096);
+
+    // when
+    List<ModuleLoadMetrics.Snapshot> snapshots = mObjectUnderTest.getSnapshots(false);
+
+    // then
+    Assert.assertEquals(1, snapshots.size());
+    ModuleLoadMetrics.Snapshot snapshot = snapshots.get(0);
+    Assert.assertEquals(MODULE_NAME_NO1, snapshot.getModuleName());
+    Assert.assertEquals(1, snapshot.getColdLoads());
+    Assert.assertEquals(2, snapshot.getWarmLoads());
+    Assert.assertEquals(1, snapshot.getFailures());
+    Assert.assertEquals(4096, snapshot.getBytesCopied());
+    Assert.assertEquals(2000, snapshot.getLatency(LoadPhase.RESOLVE).getMaxUs());
+    Assert.assertEquals(0, snapshot.getLatency(LoadPhase.INJECT).getCount());
+  }
+
+  @Test
+  public void testThatResetStartsFromScratch() {
+    // given
+    mObjectUnderTest.onPhaseFinished(MODULE_NAME_NO1, LoadPhase.COLD_LOAD, 3000000);
+    mObjectUnderTest.onModuleExtracted(MODULE_NAME_NO1, 4096);
+
+    // when
+    mObjectUnderTest.getSnapshots(true);
+    ModuleLoadMetrics.Snapshot snapshot = mObjectUnderTest.getSnapshots(false).get(0);
+
+    // then
+    Assert.assertEquals(0, snapshot.getColdLoads());
+    Assert.assertEquals(0, snapshot.getBytesCopied());
+    Assert.assertEquals(0, snapshot.getLatency(LoadPhase.COLD_LOAD).getPercentileUs(99));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    Assert.assertTrue(
+        actual + " is not close to " + expected, Math.abs(actual - expected) <= expected / 8);
+  }
+}
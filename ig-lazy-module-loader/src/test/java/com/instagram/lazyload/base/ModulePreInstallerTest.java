@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/** Unit tests for ModulePreInstaller class. */
+public class ModulePreInstallerTest {
+
+  private static final String MODULE_NAME_NO1 = "module1";
+  private static final String MODULE_NAME_NO2 = "module2";
+  private static final String MODULE_NAME_NO3 = "module3";
+  private static final List<String> MODULE_NAMES =
+      Arrays.asList(MODULE_NAME_NO1, MODULE_NAME_NO2, MODULE_NAME_NO3);
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private LazyModuleLoader mLazyModuleLoader;
+  private ModuleManifestReader mModuleManifestReader;
+  private File mProgressFile;
+  private boolean mIsCharging = true;
+
+  @Before
+  public void setUp() throws Exception {
+    mLazyModuleLoader = Mockito.mock(LazyModuleLoader.class);
+    mModuleManifestReader = Mockito.mock(ModuleManifestReader.class);
+    mProgressFile = new File(mTemporaryFolder.getRoot(), "modules.preinstall");
+    mockManifest(MODULE_NAME_NO1, 0);
+    mockManifest(MODULE_NAME_NO2, 0);
+    mockManifest(MODULE_NAME_NO3, 1);
+    // None of the modules is optimized yet
+    Mockito.when(
+            mLazyModuleLoader.getModuleFootprints(
+                Mockito.any(ModuleManifestReader.class), Mockito.<Collection<String>>any()))
+        .thenAnswer(
+            new Answer<List<ModuleFootprint>>() {
+              @Override
+              @SuppressWarnings("unchecked")
+              public List<ModuleFootprint> answer(InvocationOnMock invocation) {
+                String moduleName =
+                    ((Collection<String>) invocation.getArguments()[1]).iterator().next();
+                return Collections.singletonList(
+                    new ModuleFootprint(moduleName, 100, 0, 0, 0, 0, false, 0));
+              }
+            });
+  }
+
+  @Test
+  public void testThatModulesAreInstalledByPriorityAndThenByUsage() throws Exception {
+    // given
+    Map<String, Integer> usageCounts = new HashMap<>();
+    usageCounts.put(MODULE_NAME_NO2, 5);
+    usageCounts.put(MODULE_NAME_NO1, 1);
+    ModulePreInstaller preInstaller = createBuilder().setUsageCounts(usageCounts).build();
+
+    // when
+    ModulePreInstaller.Result result = preInstaller.run(MODULE_NAMES, null);
+
+    // then
+    Assert.assertEquals(ModulePreInstaller.Result.WARM, result);
+    InOrder inOrder = Mockito.inOrder(mLazyModuleLoader);
+    inOrder.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO3, LoadPriority.BACKGROUND);
+    inOrder.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO2, LoadPriority.BACKGROUND);
+    inOrder.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO1, LoadPriority.BACKGROUND);
+  }
+
+  @Test
+  public void testThatStoppedRunIsResumedWhereItStopped() throws Exception {
+    // given
+    Mockito.doAnswer(
+            new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) {
+                // Device is unplugged while the first module is installed
+                mIsCharging = false;
+                return null;
+              }
+            })
+        .when(mLazyModuleLoader)
+        .installModule(MODULE_NAME_NO3, LoadPriority.BACKGROUND);
+    ModulePreInstaller.Result stoppedResult = createBuilder().build().run(MODULE_NAMES, null);
+    mIsCharging = true;
+
+    // when
+    ModulePreInstaller.Result result = createBuilder().build().run(MODULE_NAMES, null);
+    ModulePreInstaller.Result nextResult = createBuilder().build().run(MODULE_NAMES, null);
+
+    // then
+    Assert.assertEquals(ModulePreInstaller.Result.CONSTRAINTS_NOT_MET, stoppedResult);
+    Assert.assertEquals(ModulePreInstaller.Result.WARM, result);
+    Assert.assertEquals(ModulePreInstaller.Result.WARM, nextResult);
+    Mockito.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO3, LoadPriority.BACKGROUND);
+    Mockito.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO1, LoadPriority.BACKGROUND);
+    Mockito.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO2, LoadPriority.BACKGROUND);
+  }
+
+  @Test
+  public void testThatModuleWithOnlyPendingOptimizedDexIsInstalled() throws Exception {
+    // given
+    Mockito.when(
+            mLazyModuleLoader.getModuleFootprints(
+                mModuleManifestReader, Collections.singletonList(MODULE_NAME_NO1)))
+        .thenReturn(
+            Collections.singletonList(
+                new ModuleFootprint(MODULE_NAME_NO1, 100, 100, 200, 0, 0, false, 0)));
+    Mockito.when(
+            mLazyModuleLoader.getModuleFootprints(
+                mModuleManifestReader, Collections.singletonList(MODULE_NAME_NO2)))
+        .thenReturn(
+            Collections.singletonList(
+                new ModuleFootprint(MODULE_NAME_NO2, 100, 100, 0, 200, 0, false, 0)));
+
+    // when
+    ModulePreInstaller.Result result = createBuilder().build().run(MODULE_NAMES, null);
+
+    // then
+    Assert.assertEquals(ModulePreInstaller.Result.WARM, result);
+    Mockito.verify(mLazyModuleLoader, Mockito.never())
+        .installModule(MODULE_NAME_NO1, LoadPriority.BACKGROUND);
+    Mockito.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO2, LoadPriority.BACKGROUND);
+    Mockito.verify(mLazyModuleLoader).installModule(MODULE_NAME_NO3, LoadPriority.BACKGROUND);
+  }
+
+  private ModulePreInstaller.Builder createBuilder() {
+    return new ModulePreInstaller.Builder(mLazyModuleLoader, mModuleManifestReader, mProgressFile)
+        .setRequiresCharging(true)
+        .setDeviceConditions(
+            new ModulePreInstaller.DeviceConditions() {
+              @Override
+              public boolean isCharging() {
+                return mIsCharging;
+              }
+
+              @Override
+              public boolean isIdle() {
+                return true;
+              }
+            });
+  }
+
+  private void mockManifest(String moduleName, int preInstallPriority) throws Exception {
+    ModuleManifest manifest =
+        new ModuleManifest.Builder(moduleName)
+            .setModuleHash("hash")
+            .setDexFileName(moduleName + ".dex")
+            .setPreInstallPriority(preInstallPriority)
+            .build();
+    Mockito.when(mModuleManifestReader.readModuleManifest(moduleName)).thenReturn(manifest);
+  }
+}
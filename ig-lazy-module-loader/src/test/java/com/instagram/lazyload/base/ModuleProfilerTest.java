@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for ModuleProfiler class. */
+public class ModuleProfilerTest {
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mDexFile;
+  private ModuleProfiler mObjectUnderTest;
+
+  @Before
+  public void setUp() throws Exception {
+    mDexFile = new File(mTemporaryFolder.newFolder("module", "dex_modules"), "module.dex");
+    mObjectUnderTest = new ModuleProfiler();
+  }
+
+  @Test
+  public void testThatOnlyClassesOfProfiledDexFilesAreRecorded() throws Exception {
+    // given
+    File otherDexFile = new File(mDexFile.getParentFile(), "other.dex");
+    mObjectUnderTest.startProfiling(mDexFile);
+
+    // when
+    mObjectUnderTest.recordClassLoaded(mDexFile.getAbsolutePath(), "com.module.A");
+    mObjectUnderTest.recordClassLoaded(mDexFile.getAbsolutePath(), "com.module.A");
+    mObjectUnderTest.recordClassLoaded(otherDexFile.getAbsolutePath(), "com.other.B");
+
+    // then
+    Assert.assertEquals(
+        Collections.singletonList("com.module.A"), mObjectUnderTest.getHotClasses(mDexFile));
+    Assert.assertTrue(mObjectUnderTest.getHotClasses(otherDexFile).isEmpty());
+  }
+
+  @Test
+  public void testThatWrittenProfileIsMergedWithPersistedOne() throws Exception {
+    // given
+    File profileFile = DefaultModuleStore.getProfileFile(mDexFile);
+    ModuleProfiler.writeProfile(profileFile, Arrays.asList("com.module.A", "com.module.B"));
+
+    // when
+    ModuleProfiler.writeProfile(profileFile, Arrays.asList("com.module.B", "com.module.C"));
+
+    // then
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList("com.module.A", "com.module.B", "com.module.C")),
+        new HashSet<>(ModuleProfiler.readProfile(profileFile)));
+  }
+}
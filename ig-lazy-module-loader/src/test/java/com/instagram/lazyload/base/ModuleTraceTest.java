@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/** Unit tests for ModuleTrace and ChromeTraceSink classes. */
+public class ModuleTraceTest {
+
+  private final String MODULE_NAME_NO1 = "java.com.instagram.module_a";
+  private final String MODULE_NAME_NO2 = "java.com.instagram.module_b";
+
+  @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    ModuleTrace.setEnabled(false);
+  }
+
+  @Test
+  public void testThatNestedSectionsAreWrittenAsChromeTraceEvents() throws IOException {
+    // given
+    File traceFile = mTemporaryFolder.newFile("trace.json");
+    ChromeTraceSink traceSink = new ChromeTraceSink(traceFile);
+    ModuleTrace.setTraceSink(traceSink);
+    ModuleTrace.setEnabled(true);
+
+    // when
+    ModuleTrace.beginSection("COLD_LOAD", "module\"a");
+    ModuleTrace.beginSection("copy", "module.dex");
+    ModuleTrace.endSection();
+    ModuleTrace.endSection();
+    traceSink.close();
+
+    // then
+    String tid = String.valueOf(Thread.currentThread().getId());
+    Assert.assertEquals(
+        "[\n"
+            + "{\"ph\":\"B\",\"name\":\"LazyLoad.COLD_LOAD module\\\"a\","
+            + "\"ts\":0,\"pid\":0,\"tid\":"
+            + tid
+            + "},\n"
+            + "{\"ph\":\"B\",\"name\":\"LazyLoad.copy module.dex\",\"ts\":0,\"pid\":0,\"tid\":"
+            + tid
+            + "},\n"
+            + "{\"ph\":\"E\",\"ts\":0,\"pid\":0,\"tid\":"
+            + tid
+            + "},\n"
+            + "{\"ph\":\"E\",\"ts\":0,\"pid\":0,\"tid\":"
+            + tid
+            + "}\n"
+            + "]\n",
+        readFile(traceFile).replaceAll("\"ts\":\\d+", "\"ts\":0"));
+  }
+
+  @Test
+  public void testThatSectionsOfLoadsAreBalancedWhenLoadFails() throws Exception {
+    // given
+    RecordingTraceSink traceSink = new RecordingTraceSink();
+    ModuleTrace.setTraceSink(traceSink);
+    ModuleTrace.setEnabled(true);
+    ModuleStore moduleStoreMock = Mockito.mock(ModuleStore.class);
+    ModulePathsAndDependencies modulePathsMock = Mockito.mock(ModulePathsAndDependencies.class);
+    Mockito.when(modulePathsMock.getModuleName()).thenReturn(MODULE_NAME_NO1);
+    Mockito.when(
+            moduleStoreMock.resolveModulePaths(
+                Mockito.any(ModuleManifestReader.class), Mockito.eq(MODULE_NAME_NO1)))
+        .thenReturn(modulePathsMock);
+    Mockito.when(
+            moduleStoreMock.resolveModulePaths(
+                Mockito.any(ModuleManifestReader.class), Mockito.eq(MODULE_NAME_NO2)))
+        .thenThrow(new IOException("Storage is full"));
+    DefautlLoaderAlgorithm loaderAlgorithm =
+        new DefautlLoaderAlgorithm.Builder(
+                getClass().getClassLoader(),
+                moduleStoreMock,
+                Mockito.mock(ModuleManifestReader.class),
+                Mockito.mock(LazyLoadListener.class),
+                Mockito.mock(DexAdder.class))
+            .build();
+
+    // when
+    loaderAlgorithm.installModule(MODULE_NAME_NO1);
+    try {
+      loaderAlgorithm.installModule(MODULE_NAME_NO2);
+      Assert.fail("Install should fail");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // then
+    Assert.assertEquals(0, traceSink.mDepth);
+    Assert.assertEquals(
+        Arrays.asList(
+            "LazyLoad.INSTALL " + MODULE_NAME_NO1,
+            "LazyLoad.RESOLVE " + MODULE_NAME_NO1,
+            "LazyLoad.INJECT " + MODULE_NAME_NO1,
+            "LazyLoad.INSTALL " + MODULE_NAME_NO2,
+            "LazyLoad.RESOLVE " + MODULE_NAME_NO2),
+        traceSink.mSections);
+  }
+
+  private static String readFile(File file) throws IOException {
+    StringBuilder content = new StringBuilder();
+    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      char[] buffer = new char[1024];
+      int length;
+      while ((length = reader.read(buffer)) > 0) {
+        content.append(buffer, 0, length);
+      }
+    } finally {
+      reader.close();
+    }
+    return content.toString();
+  }
+
+  // Records names of sections and fails on an end without a begin
+  private static class RecordingTraceSink implements ModuleTrace.TraceSink {
+    final List<String> mSections = new ArrayList<>();
+    int mDepth;
+
+    @Override
+    public void beginSection(String sectionName) {
+      mSections.add(sectionName);
+      ++mDepth;
+    }
+
+    @Override
+    public void endSection() {
+      Assert.assertTrue("Section ended without a begin", mDepth > 0);
+      --mDepth;
+    }
+  }
+}
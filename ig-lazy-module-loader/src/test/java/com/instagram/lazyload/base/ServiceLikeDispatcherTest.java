@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.RemoteException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/** Unit tests for ServiceLikeDispatcher class. */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(ServiceLikeDispatcher.PendingBinder.class)
+public class ServiceLikeDispatcherTest {
+
+  @Mock ServiceLike mServiceLikeMock;
+  @Mock Intent mIntentMock;
+  @Mock IBinder mBinderMock;
+
+  private ServiceLikeDispatcher mObjectUnderTest = null;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    // Binder of android.jar can't be created outside of a device
+    PowerMockito.suppress(PowerMockito.constructor(Binder.class));
+    mObjectUnderTest =
+        new ServiceLikeDispatcher(1000 /* binderTimeoutMs */, Service.START_NOT_STICKY);
+  }
+
+  @Test
+  public void testThatQueuedCallsAreReplayedInOrderOnceLoaded() {
+    // given
+    int startResult = mObjectUnderTest.onStartCommand(mIntentMock, 0, 1);
+    mObjectUnderTest.onUnbind(mIntentMock);
+
+    // when
+    mObjectUnderTest.onLoaded(mServiceLikeMock);
+
+    // then
+    Assert.assertEquals(Service.START_NOT_STICKY, startResult);
+    InOrder inOrder = Mockito.inOrder(mServiceLikeMock);
+    inOrder.verify(mServiceLikeMock).onCreate();
+    inOrder.verify(mServiceLikeMock).onStartCommand(mIntentMock, 0, 1);
+    inOrder.verify(mServiceLikeMock).onUnbind(mIntentMock);
+  }
+
+  @Test
+  public void testThatQueuedStartReturnsConfiguredModeAndIgnoresModuleMode() {
+    // given
+    mObjectUnderTest =
+        new ServiceLikeDispatcher(1000 /* binderTimeoutMs */, Service.START_REDELIVER_INTENT);
+    Mockito.when(mServiceLikeMock.onStartCommand(mIntentMock, 0, 1))
+        .thenReturn(Service.START_NOT_STICKY);
+
+    // when
+    int startResult = mObjectUnderTest.onStartCommand(mIntentMock, 0, 1);
+    mObjectUnderTest.onLoaded(mServiceLikeMock);
+
+    // then
+    Assert.assertEquals(Service.START_REDELIVER_INTENT, startResult);
+    Mockito.verify(mServiceLikeMock).onStartCommand(mIntentMock, 0, 1);
+  }
+
+  @Test
+  public void testThatNothingIsReplayedIfServiceIsDestroyedBeforeLoad() {
+    // given
+    mObjectUnderTest.onStartCommand(mIntentMock, 0, 1);
+    mObjectUnderTest.onDestroy();
+
+    // when
+    mObjectUnderTest.onLoaded(mServiceLikeMock);
+
+    // then
+    Assert.assertTrue(mObjectUnderTest.isDestroyed());
+    Mockito.verifyZeroInteractions(mServiceLikeMock);
+  }
+
+  @Test
+  public void testThatPendingBinderForwardsTransactionsOnceLoaded() throws RemoteException {
+    // given
+    Mockito.when(mServiceLikeMock.onBind(mIntentMock)).thenReturn(mBinderMock);
+    Mockito.when(mBinderMock.transact(1, null, null, 0)).thenReturn(true);
+    ServiceLikeDispatcher.PendingBinder pendingBinder =
+        (ServiceLikeDispatcher.PendingBinder) mObjectUnderTest.onBind(mIntentMock);
+
+    // when
+    mObjectUnderTest.onLoaded(mServiceLikeMock);
+
+    // then
+    Assert.assertTrue(pendingBinder.onTransact(1, null, null, 0));
+    Mockito.verify(mBinderMock).transact(1, null, null, 0);
+  }
+
+  @Test
+  public void testThatPendingBinderFailsWhenModuleIsNotLoadedInTime() throws RemoteException {
+    // given
+    mObjectUnderTest =
+        new ServiceLikeDispatcher(10 /* binderTimeoutMs */, Service.START_NOT_STICKY);
+    ServiceLikeDispatcher.PendingBinder pendingBinder =
+        (ServiceLikeDispatcher.PendingBinder) mObjectUnderTest.onBind(mIntentMock);
+
+    // when
+    boolean transacted = pendingBinder.onTransact(1, null, null, 0);
+
+    // then
+    Assert.assertFalse(transacted);
+  }
+
+  @Test
+  public void testThatQueuedCallsAreDroppedWhenLoadFails() throws RemoteException {
+    // given
+    ServiceLikeDispatcher.PendingBinder pendingBinder =
+        (ServiceLikeDispatcher.PendingBinder) mObjectUnderTest.onBind(mIntentMock);
+    mObjectUnderTest.onStartCommand(mIntentMock, 0, 1);
+
+    // when
+    mObjectUnderTest.onLoadFailed();
+
+    // then
+    Assert.assertFalse(pendingBinder.onTransact(1, null, null, 0));
+    Assert.assertEquals(
+        Service.START_NOT_STICKY, mObjectUnderTest.onStartCommand(mIntentMock, 0, 2));
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2017-present, Facebook, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree. An additional grant
+ * of patent rights can be found in the PATENTS file in the same directory.
+ */
+
+package com.instagram.lazyload.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/** Jars of test classes which are loaded by {@link JvmModuleClassLoader} in tests. */
+final class TestJars {
+
+  private TestJars() {}
+
+  /** Writes a jar which contains only the class file of the given class */
+  static void writeJar(File file, Class clazz) throws IOException {
+    String entryName = clazz.getName().replace('.', '/') + ".class";
+    InputStream classFile = clazz.getClassLoader().getResourceAsStream(entryName);
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+    try {
+      jar.putNextEntry(new ZipEntry(entryName));
+      byte[] buf = new byte[8 * 1024];
+      int len;
+      while ((len = classFile.read(buf)) > 0) {
+        jar.write(buf, 0, len);
+      }
+      jar.closeEntry();
+    } finally {
+      jar.close();
+      classFile.close();
+    }
+  }
+}
@@ -11,12 +11,16 @@ package com.instagram.lazyload.lazyloadedservice;
 import android.content.Context;
 import android.widget.Toast;
 
+import com.instagram.lazyload.base.LazyModuleImplementation;
 import com.instagram.lazyload.base.ServiceLike;
 
 /**
  * Service that is compiled to apk file and placed in the assets directory of demo app.
- * Service will be loaded in the demo app upon request (e.g. button click).
+ * Service will be loaded in the demo app upon request (e.g. button click). The annotation
+ * processor generates a factory for it, but the apk checked in the demo app predates it, so until
+ * the asset is rebuilt the loader creates the service by reflection.
  */
+@LazyModuleImplementation
 public class LazyLoadedService extends ServiceLike {
 
   public LazyLoadedService(Context context) {